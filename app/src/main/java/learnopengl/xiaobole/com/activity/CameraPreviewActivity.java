@@ -2,18 +2,25 @@ package learnopengl.xiaobole.com.activity;
 
 import android.app.Activity;
 import android.opengl.GLSurfaceView;
+import android.os.Build;
 import android.os.Bundle;
 import android.support.annotation.Nullable;
 import android.view.View;
 import android.view.WindowManager;
 
+import java.io.File;
+
 import learnopengl.xiaobole.com.R;
+import learnopengl.xiaobole.com.camera.Camera2Source;
 import learnopengl.xiaobole.com.camera.CameraManager;
 import learnopengl.xiaobole.com.camera.CameraSetting;
+import learnopengl.xiaobole.com.utils.ProgramCache;
 
 public class CameraPreviewActivity extends Activity {
 
     private static final String TAG = "CameraPreviewActivity";
+    // boolean extra, preview through camera2 instead of android.hardware.Camera on API 21+
+    public static final String EXTRA_CAMERA2 = "camera2";
 
     private CameraManager mCameraManager;
 
@@ -22,6 +29,7 @@ public class CameraPreviewActivity extends Activity {
         super.onCreate(savedInstanceState);
         getWindow().addFlags(WindowManager.LayoutParams.FLAG_FULLSCREEN);
         setContentView(R.layout.activity_camera_preview);
+        ProgramCache.getInstance().setCacheDir(new File(getCacheDir(), "programs"));
 
         GLSurfaceView glSurfaceView = (GLSurfaceView) findViewById(R.id.gl_surfaceview);
 
@@ -30,6 +38,10 @@ public class CameraPreviewActivity extends Activity {
                 .setCameraPreviewSizeRatio(CameraSetting.CAMERA_PREVIEW_RATIO.RATIO_16_9)
                 .setCameraPreviewSizeLevel(CameraSetting.CAMERA_PREVIEW_SIZE_LEVEL.PREVIEW_SIZE_LEVEL_720P);
         mCameraManager = new CameraManager(glSurfaceView, cameraSetting);
+        if (getIntent().getBooleanExtra(EXTRA_CAMERA2, false)
+                && Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+            mCameraManager.setCameraSource(new Camera2Source(this));
+        }
     }
 
     @Override
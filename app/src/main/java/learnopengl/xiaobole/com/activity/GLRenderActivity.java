@@ -1,24 +1,46 @@
 package learnopengl.xiaobole.com.activity;
 
 import android.content.Context;
+import android.content.res.AssetFileDescriptor;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
 import android.opengl.GLSurfaceView;
 import android.os.Bundle;
 import android.support.annotation.Nullable;
 import android.support.v7.app.AppCompatActivity;
+import android.util.Log;
+import android.view.GestureDetector;
+import android.view.MotionEvent;
+import android.view.ScaleGestureDetector;
+import android.view.View;
 
-import java.io.InputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 
 import learnopengl.xiaobole.com.R;
 import learnopengl.xiaobole.com.drawer.BitmapDrawer;
+import learnopengl.xiaobole.com.drawer.CompressedTextureDrawer;
 import learnopengl.xiaobole.com.drawer.IDrawer;
 import learnopengl.xiaobole.com.drawer.RectangleDrawer;
+import learnopengl.xiaobole.com.drawer.SemiPlanarYUVDrawer;
+import learnopengl.xiaobole.com.drawer.TiledImageDrawer;
 import learnopengl.xiaobole.com.drawer.TriangleDrawer;
 import learnopengl.xiaobole.com.drawer.VAOTriangleDrawer;
 import learnopengl.xiaobole.com.drawer.VBOTriangleDrawer;
 import learnopengl.xiaobole.com.drawer.YUVImageDrawer;
+import learnopengl.xiaobole.com.player.YUVSequencePlayer;
+import learnopengl.xiaobole.com.player.YUVSequenceReader;
+import learnopengl.xiaobole.com.render.FramePacer;
 import learnopengl.xiaobole.com.render.OpenGLRender;
+import learnopengl.xiaobole.com.utils.GLStateCache;
+import learnopengl.xiaobole.com.utils.ProgramCache;
+import learnopengl.xiaobole.com.utils.TextureCache;
+import learnopengl.xiaobole.com.utils.Tracer;
+import learnopengl.xiaobole.com.utils.YUVConverter;
 
 public class GLRenderActivity extends AppCompatActivity {
 
@@ -28,13 +50,32 @@ public class GLRenderActivity extends AppCompatActivity {
     public static final int RENDER_TYPE_VAO_TRIANGLE = 3;
     public static final int RENDER_TYPE_BITMAP = 4;
     public static final int RENDER_TYPE_YUV = 5;
+    public static final int RENDER_TYPE_NV21 = 6;
+    public static final int RENDER_TYPE_COMPRESSED_TEXTURE = 7;
+    public static final int RENDER_TYPE_TILED_IMAGE = 8;
+
+    public static final String EXTRA_YUV_PATH = "YUVPath";
+    public static final String EXTRA_YUV_WIDTH = "YUVWidth";
+    public static final String EXTRA_YUV_HEIGHT = "YUVHeight";
+    public static final String EXTRA_IMAGE_PATH = "ImagePath";
+    /**
+     * boolean, record a trace while resumed and write it to files/trace.json on pause
+     */
+    public static final String EXTRA_TRACE = "Trace";
+
+    private static final String TAG = "GLRenderActivity";
 
     private GLSurfaceView mGLSurfaceView;
     private IDrawer mDrawer;
+    private OpenGLRender mRender;
+    private YUVSequencePlayer mYUVPlayer;
+    private boolean mTracing;
 
     @Override
     protected void onCreate(@Nullable Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
+        ProgramCache.getInstance().setCacheDir(new File(getCacheDir(), "programs"));
+        mTracing = getIntent().getBooleanExtra(EXTRA_TRACE, false);
 
         mGLSurfaceView = new GLSurfaceView(this);
         mGLSurfaceView.setEGLContextClientVersion(2);
@@ -43,7 +84,8 @@ public class GLRenderActivity extends AppCompatActivity {
         if (mDrawer == null) {
             return;
         }
-        mGLSurfaceView.setRenderer(new OpenGLRender(mDrawer));
+        mRender = new OpenGLRender(mDrawer);
+        mGLSurfaceView.setRenderer(mRender);
         mGLSurfaceView.setRenderMode(GLSurfaceView.RENDERMODE_WHEN_DIRTY);
         setContentView(mGLSurfaceView);
     }
@@ -61,8 +103,20 @@ public class GLRenderActivity extends AppCompatActivity {
             case RENDER_TYPE_BITMAP:
                 return new BitmapDrawer().setBitmap(loadBitmap(this, R.drawable.test));
             case RENDER_TYPE_YUV:
-                byte[] i420 = readYUVFrame(this, R.raw.test);
-                return new YUVImageDrawer().setI420Frame(i420, 1280, 720);
+                return createYUVSequenceDrawer(openYUVSequence(this, R.raw.test, 1280, 720));
+            case RENDER_TYPE_NV21:
+                byte[] i420 = readYUVFrame(this, R.raw.test, 1280, 720);
+                if (i420 == null) {
+                    return null;
+                }
+                byte[] nv21 = new byte[i420.length];
+                YUVConverter.i420ToSemiPlanar(i420, nv21, 1280, 720, true);
+                return new SemiPlanarYUVDrawer(true).setFrame(nv21, 1280, 720);
+            case RENDER_TYPE_COMPRESSED_TEXTURE:
+                // assets/textures/test.astc.ktx2 etc., the drawable when there is none for the device
+                return new CompressedTextureDrawer(this, "textures/test", R.drawable.test);
+            case RENDER_TYPE_TILED_IMAGE:
+                return createTiledImageDrawer();
         }
         return null;
     }
@@ -70,18 +124,69 @@ public class GLRenderActivity extends AppCompatActivity {
     @Override
     protected void onResume() {
         super.onResume();
-        mGLSurfaceView.onResume();
+        if (mTracing) {
+            Tracer.getInstance().clear();
+            Tracer.getInstance().setEnabled(true);
+        }
+        if (mRender != null) {
+            mGLSurfaceView.onResume();
+        }
+        if (mYUVPlayer != null) {
+            mYUVPlayer.start();
+        }
     }
 
     @Override
     protected void onPause() {
         super.onPause();
-        mGLSurfaceView.onPause();
+        if (mYUVPlayer != null) {
+            mYUVPlayer.stop();
+        }
+        if (mRender != null) {
+            // queued before onPause, so it runs on the GL thread while the context is still current;
+            // the drawer is initialized again in onSurfaceCreated of the next context
+            mGLSurfaceView.queueEvent(new Runnable() {
+                @Override
+                public void run() {
+                    mDrawer.release();
+                    mRender.releaseGL();
+                }
+            });
+            mGLSurfaceView.onPause();
+            Log.i(TAG, "frame stats:\n" + mRender.getFrameStats().dump()
+                    + "\n" + GLStateCache.getInstance().getStats()
+                    + "\n" + TextureCache.getInstance().getStats());
+        }
+        if (mTracing) {
+            exportTrace();
+        }
+    }
+
+    /**
+     * stop tracing and write the trace, pull it with adb and open it in chrome://tracing or Perfetto
+     */
+    private void exportTrace() {
+        Tracer tracer = Tracer.getInstance();
+        tracer.setEnabled(false);
+        File dir = getExternalFilesDir(null);
+        File file = new File(dir != null ? dir : getFilesDir(), "trace.json");
+        try {
+            tracer.exportChromeTrace(file);
+            Log.i(TAG, tracer.getRecordedCount() + " trace events written to " + file);
+        } catch (IOException e) {
+            Log.e(TAG, "failed to write trace: " + e.getMessage());
+        }
     }
 
     @Override
     protected void onDestroy() {
-        mDrawer.release();
+        if (mYUVPlayer != null) {
+            mYUVPlayer.release();
+        }
+        // the GL objects of the drawer were released on pause
+        if (mRender != null) {
+            mRender.release();
+        }
         super.onDestroy();
     }
 
@@ -104,15 +209,114 @@ public class GLRenderActivity extends AppCompatActivity {
         return bitmap;
     }
 
-    private static byte[] readYUVFrame(Context context, int resId){
+    private IDrawer createYUVSequenceDrawer(YUVSequenceReader reader) {
+        if (reader == null || reader.getFrameCount() == 0) {
+            return null;
+        }
+        final YUVImageDrawer drawer = new YUVImageDrawer();
+        try {
+            // the first frame decides the viewport before the GL thread starts
+            drawer.setI420Frame(reader.getFrame(0), reader.getWidth(), reader.getHeight());
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+        mYUVPlayer = new YUVSequencePlayer(reader, new YUVSequencePlayer.FrameListener() {
+            @Override
+            public void onFrame(final ByteBuffer frame, final int width, final int height, int index) {
+                mGLSurfaceView.queueEvent(new Runnable() {
+                    @Override
+                    public void run() {
+                        drawer.setI420Frame(frame, width, height);
+                    }
+                });
+                mGLSurfaceView.requestRender();
+            }
+        });
+        return drawer;
+    }
+
+    /**
+     * stream the image given by the intent, or the drawable by default, panned and pinched by touch
+     */
+    private IDrawer createTiledImageDrawer() {
+        String path = getIntent().getStringExtra(EXTRA_IMAGE_PATH);
+        final TiledImageDrawer drawer = path != null
+                ? new TiledImageDrawer(path) : new TiledImageDrawer(getResources(), R.drawable.test);
+        drawer.setRenderRequester(new FramePacer.RenderRequester() {
+            @Override
+            public void requestRender() {
+                mGLSurfaceView.requestRender();
+            }
+        });
+        final ScaleGestureDetector scaleDetector = new ScaleGestureDetector(this,
+                new ScaleGestureDetector.SimpleOnScaleGestureListener() {
+                    @Override
+                    public boolean onScale(ScaleGestureDetector detector) {
+                        drawer.zoomBy(detector.getScaleFactor(), detector.getFocusX(), detector.getFocusY());
+                        mGLSurfaceView.requestRender();
+                        return true;
+                    }
+                });
+        final GestureDetector panDetector = new GestureDetector(this, new GestureDetector.SimpleOnGestureListener() {
+            @Override
+            public boolean onScroll(MotionEvent e1, MotionEvent e2, float distanceX, float distanceY) {
+                drawer.panBy(-distanceX, -distanceY);
+                mGLSurfaceView.requestRender();
+                return true;
+            }
+        });
+        mGLSurfaceView.setOnTouchListener(new View.OnTouchListener() {
+            @Override
+            public boolean onTouch(View v, MotionEvent event) {
+                scaleDetector.onTouchEvent(event);
+                panDetector.onTouchEvent(event);
+                return true;
+            }
+        });
+        return drawer;
+    }
+
+    /**
+     * memory map the YUV sequence given by the intent, or the raw resource by default
+     */
+    private YUVSequenceReader openYUVSequence(Context context, int resId, int width, int height) {
+        String path = getIntent().getStringExtra(EXTRA_YUV_PATH);
         try {
-            InputStream in = context.getResources().openRawResource(resId);
-            int size = in.available();
-            byte[] buffer = new byte[size];
-            in.read(buffer);
+            if (path != null) {
+                FileChannel channel = new FileInputStream(path).getChannel();
+                if (path.endsWith(".y4m")) {
+                    return YUVSequenceReader.openY4M(channel, 0, channel.size());
+                }
+                return YUVSequenceReader.openI420(channel, 0, channel.size(),
+                        getIntent().getIntExtra(EXTRA_YUV_WIDTH, width),
+                        getIntent().getIntExtra(EXTRA_YUV_HEIGHT, height));
+            }
+            // raw resources are stored uncompressed (see aaptOptions), so they can be mapped in place
+            AssetFileDescriptor afd = context.getResources().openRawResourceFd(resId);
+            FileChannel channel = new FileInputStream(afd.getFileDescriptor()).getChannel();
+            return YUVSequenceReader.openI420(channel, afd.getStartOffset(), afd.getLength(), width, height);
+        } catch (IOException e) {
+            Log.e(TAG, "failed to open yuv sequence: " + e.getMessage());
+        }
+        return null;
+    }
+
+    /**
+     * read the first I420 frame of a raw resource, available() is not the resource length
+     */
+    private static byte[] readYUVFrame(Context context, int resId, int width, int height) {
+        byte[] buffer = new byte[YUVConverter.getI420Size(width, height)];
+        try {
+            DataInputStream in = new DataInputStream(context.getResources().openRawResource(resId));
+            try {
+                in.readFully(buffer);
+            } finally {
+                in.close();
+            }
             return buffer;
-        } catch (Exception e) {
-            e.printStackTrace();
+        } catch (IOException e) {
+            Log.e(TAG, "failed to read yuv frame: " + e.getMessage());
         }
         return null;
     }
@@ -38,10 +38,22 @@ public class MainActivity extends AppCompatActivity {
         jumpToRenderActivity(GLRenderActivity.RENDER_TYPE_BITMAP);
     }
 
+    public void onClickCompressedTexture(View v) {
+        jumpToRenderActivity(GLRenderActivity.RENDER_TYPE_COMPRESSED_TEXTURE);
+    }
+
+    public void onClickTiledImage(View v) {
+        jumpToRenderActivity(GLRenderActivity.RENDER_TYPE_TILED_IMAGE);
+    }
+
     public void onClickYUV(View v) {
         jumpToRenderActivity(GLRenderActivity.RENDER_TYPE_YUV);
     }
 
+    public void onClickNV21(View v) {
+        jumpToRenderActivity(GLRenderActivity.RENDER_TYPE_NV21);
+    }
+
     public void onClickCamera(View v) {
         if (ActivityCompat.checkSelfPermission(this, Manifest.permission.CAMERA) != PackageManager.PERMISSION_GRANTED) {
             ActivityCompat.requestPermissions(this, new String[]{Manifest.permission.CAMERA}, 1);
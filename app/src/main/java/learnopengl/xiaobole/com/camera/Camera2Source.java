@@ -0,0 +1,387 @@
+package learnopengl.xiaobole.com.camera;
+
+import android.annotation.TargetApi;
+import android.content.Context;
+import android.graphics.ImageFormat;
+import android.graphics.SurfaceTexture;
+import android.hardware.camera2.CameraAccessException;
+import android.hardware.camera2.CameraCaptureSession;
+import android.hardware.camera2.CameraCharacteristics;
+import android.hardware.camera2.CaptureRequest;
+import android.hardware.camera2.params.StreamConfigurationMap;
+import android.media.Image;
+import android.media.ImageReader;
+import android.os.Build;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.util.Log;
+import android.util.Range;
+import android.util.Size;
+import android.view.Surface;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * A {@link CameraSource} on camera2.
+ *
+ * The preview SurfaceTexture and, with a frame listener, an ImageReader in YUV_420_888
+ * are targets of the same repeating request, so the GL preview and the CPU consumer see
+ * the same stream. The {@link CameraFrame} planes are the Image plane buffers, the Image
+ * is closed when the frame is released.
+ */
+@TargetApi(Build.VERSION_CODES.LOLLIPOP)
+public class Camera2Source implements CameraSource {
+    private static final String TAG = "Camera2Source";
+
+    private static final int MAX_IMAGES = 3;
+    private static final long OPEN_TIMEOUT_MS = 3000;
+    private static final int MAX_DEFAULT_WIDTH = 1920;
+    private static final int MAX_DEFAULT_HEIGHT = 1080;
+
+    private final android.hardware.camera2.CameraManager mCameraManager;
+    private HandlerThread mThread;
+    private Handler mHandler;
+
+    private android.hardware.camera2.CameraDevice mCamera;
+    private CameraCharacteristics mCharacteristics;
+    private volatile CameraCaptureSession mSession;
+    private SurfaceTexture mSurfaceTexture;
+    private volatile Surface mPreviewSurface;
+    private ImageReader mImageReader;
+    private int mPreviewWidth;
+    private int mPreviewHeight;
+    private int[] mFpsRange;
+
+    private volatile FrameListener mFrameListener;
+    private final Object mLock = new Object();
+    private final ArrayDeque<CameraFrame> mFreeFrames = new ArrayDeque<>();
+    private long mDroppedCount;
+
+    public Camera2Source(Context context) {
+        mCameraManager = (android.hardware.camera2.CameraManager) context.getSystemService(Context.CAMERA_SERVICE);
+    }
+
+    @Override
+    public int getNumbersOfCameras() {
+        try {
+            return mCameraManager.getCameraIdList().length;
+        } catch (CameraAccessException e) {
+            Log.e(TAG, "getCameraIdList failed: " + e.getMessage());
+            return 0;
+        }
+    }
+
+    @Override
+    public boolean openCamera(int cameraId) {
+        releaseCamera();
+        mThread = new HandlerThread(TAG);
+        mThread.start();
+        mHandler = new Handler(mThread.getLooper());
+
+        final CountDownLatch latch = new CountDownLatch(1);
+        final AtomicReference<android.hardware.camera2.CameraDevice> opened = new AtomicReference<>();
+        final AtomicBoolean abandoned = new AtomicBoolean();
+        try {
+            String id = mCameraManager.getCameraIdList()[cameraId];
+            mCharacteristics = mCameraManager.getCameraCharacteristics(id);
+            mCameraManager.openCamera(id, new android.hardware.camera2.CameraDevice.StateCallback() {
+                @Override
+                public void onOpened(android.hardware.camera2.CameraDevice camera) {
+                    opened.set(camera);
+                    latch.countDown();
+                    if (abandoned.get() && opened.compareAndSet(camera, null)) {
+                        // opened after the timeout, nobody takes it
+                        camera.close();
+                    }
+                }
+
+                @Override
+                public void onDisconnected(android.hardware.camera2.CameraDevice camera) {
+                    Log.w(TAG, "camera disconnected");
+                    camera.close();
+                    latch.countDown();
+                }
+
+                @Override
+                public void onError(android.hardware.camera2.CameraDevice camera, int error) {
+                    Log.e(TAG, "camera error: " + error);
+                    camera.close();
+                    latch.countDown();
+                }
+            }, mHandler);
+            if (!latch.await(OPEN_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+                Log.e(TAG, "open camera " + cameraId + " timed out");
+                abandoned.set(true);
+            }
+        } catch (CameraAccessException | SecurityException | ArrayIndexOutOfBoundsException e) {
+            Log.e(TAG, "failed to open camera: " + cameraId + " " + e.getMessage());
+        } catch (InterruptedException e) {
+            abandoned.set(true);
+            Thread.currentThread().interrupt();
+        }
+
+        mCamera = abandoned.get() ? opened.getAndSet(null) : opened.get();
+        if (mCamera == null) {
+            releaseCamera();
+            return false;
+        }
+        selectDefaultPreviewSize();
+        Log.i(TAG, "open camera " + cameraId + " success, preview " + mPreviewWidth + "x" + mPreviewHeight);
+        return true;
+    }
+
+    @Override
+    public void releaseCamera() {
+        stopPreview();
+        if (mCamera != null) {
+            mCamera.close();
+            mCamera = null;
+        }
+        if (mThread != null) {
+            mThread.quitSafely();
+            mThread = null;
+            mHandler = null;
+        }
+        mFpsRange = null;
+    }
+
+    @Override
+    public boolean isFrontCamera() {
+        return mCharacteristics != null && Integer.valueOf(CameraCharacteristics.LENS_FACING_FRONT)
+                .equals(mCharacteristics.get(CameraCharacteristics.LENS_FACING));
+    }
+
+    @Override
+    public int getSensorOrientation() {
+        Integer orientation = mCharacteristics == null
+                ? null : mCharacteristics.get(CameraCharacteristics.SENSOR_ORIENTATION);
+        return orientation == null ? 0 : orientation;
+    }
+
+    @Override
+    public List<int[]> getSupportedPreviewSizeList() {
+        List<int[]> list = new ArrayList<>();
+        StreamConfigurationMap map = mCharacteristics == null
+                ? null : mCharacteristics.get(CameraCharacteristics.SCALER_STREAM_CONFIGURATION_MAP);
+        if (map == null) {
+            return list;
+        }
+        Size[] sizes = map.getOutputSizes(SurfaceTexture.class);
+        if (sizes != null) {
+            for (Size size : sizes) {
+                list.add(new int[]{size.getWidth(), size.getHeight()});
+            }
+        }
+        return list;
+    }
+
+    @Override
+    public boolean setPreviewSize(int width, int height) {
+        for (int[] size : getSupportedPreviewSizeList()) {
+            if (size[0] == width && size[1] == height) {
+                mPreviewWidth = width;
+                mPreviewHeight = height;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public int getPreviewWidth() {
+        return mPreviewWidth;
+    }
+
+    @Override
+    public int getPreviewHeight() {
+        return mPreviewHeight;
+    }
+
+    @Override
+    public List<int[]> getSupportFpsRange() {
+        List<int[]> list = new ArrayList<>();
+        Range<Integer>[] ranges = mCharacteristics == null
+                ? null : mCharacteristics.get(CameraCharacteristics.CONTROL_AE_AVAILABLE_TARGET_FPS_RANGES);
+        if (ranges != null) {
+            for (Range<Integer> range : ranges) {
+                list.add(new int[]{range.getLower() * 1000, range.getUpper() * 1000});
+            }
+        }
+        return list;
+    }
+
+    @Override
+    public void setPreviewFpsRange(int min, int max) {
+        mFpsRange = new int[]{min, max};
+    }
+
+    @Override
+    public void setPreviewTexture(SurfaceTexture surfaceTexture) {
+        mSurfaceTexture = surfaceTexture;
+    }
+
+    @Override
+    public void setFrameListener(FrameListener listener) {
+        mFrameListener = listener;
+    }
+
+    public long getDroppedCount() {
+        synchronized (mLock) {
+            return mDroppedCount;
+        }
+    }
+
+    @Override
+    public void startPreview() {
+        if (mCamera == null || mSurfaceTexture == null) {
+            Log.w(TAG, "startPreview failed, camera or preview texture is null");
+            return;
+        }
+        stopPreview();
+
+        final List<Surface> targets = new ArrayList<>();
+        mSurfaceTexture.setDefaultBufferSize(mPreviewWidth, mPreviewHeight);
+        mPreviewSurface = new Surface(mSurfaceTexture);
+        targets.add(mPreviewSurface);
+        if (mFrameListener != null) {
+            mImageReader = ImageReader.newInstance(mPreviewWidth, mPreviewHeight, ImageFormat.YUV_420_888, MAX_IMAGES);
+            mImageReader.setOnImageAvailableListener(mImageListener, mHandler);
+            targets.add(mImageReader.getSurface());
+        }
+
+        try {
+            mCamera.createCaptureSession(targets, new CameraCaptureSession.StateCallback() {
+                @Override
+                public void onConfigured(CameraCaptureSession session) {
+                    if (mPreviewSurface != targets.get(0)) {
+                        // stopped or restarted before the session was ready
+                        session.close();
+                        return;
+                    }
+                    mSession = session;
+                    startRepeating(session, targets);
+                }
+
+                @Override
+                public void onConfigureFailed(CameraCaptureSession session) {
+                    Log.e(TAG, "configure capture session failed");
+                }
+            }, mHandler);
+        } catch (CameraAccessException e) {
+            Log.e(TAG, "createCaptureSession failed: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public void stopPreview() {
+        if (mSession != null) {
+            mSession.close();
+            mSession = null;
+        }
+        if (mImageReader != null) {
+            // also closes the images of unreleased frames
+            mImageReader.close();
+            mImageReader = null;
+        }
+        if (mPreviewSurface != null) {
+            mPreviewSurface.release();
+            mPreviewSurface = null;
+        }
+    }
+
+    private void startRepeating(CameraCaptureSession session, List<Surface> targets) {
+        try {
+            CaptureRequest.Builder builder = mCamera.createCaptureRequest(android.hardware.camera2.CameraDevice.TEMPLATE_PREVIEW);
+            for (Surface target : targets) {
+                builder.addTarget(target);
+            }
+            builder.set(CaptureRequest.CONTROL_AF_MODE, CaptureRequest.CONTROL_AF_MODE_CONTINUOUS_VIDEO);
+            if (mFpsRange != null) {
+                builder.set(CaptureRequest.CONTROL_AE_TARGET_FPS_RANGE,
+                        new Range<>(mFpsRange[0] / 1000, mFpsRange[1] / 1000));
+            }
+            session.setRepeatingRequest(builder.build(), null, mHandler);
+        } catch (CameraAccessException | IllegalStateException e) {
+            // IllegalStateException if the session was closed meanwhile
+            Log.e(TAG, "setRepeatingRequest failed: " + e.getMessage());
+        }
+    }
+
+    private void selectDefaultPreviewSize() {
+        int bestArea = 0;
+        for (int[] size : getSupportedPreviewSizeList()) {
+            int area = size[0] * size[1];
+            if (size[0] <= MAX_DEFAULT_WIDTH && size[1] <= MAX_DEFAULT_HEIGHT && area > bestArea) {
+                bestArea = area;
+                mPreviewWidth = size[0];
+                mPreviewHeight = size[1];
+            }
+        }
+    }
+
+    private final ImageReader.OnImageAvailableListener mImageListener = new ImageReader.OnImageAvailableListener() {
+        @Override
+        public void onImageAvailable(ImageReader reader) {
+            Image image;
+            try {
+                image = reader.acquireNextImage();
+            } catch (IllegalStateException e) {
+                // the consumer holds all MAX_IMAGES images, the camera skips the reader meanwhile
+                synchronized (mLock) {
+                    mDroppedCount++;
+                }
+                return;
+            }
+            if (image == null) {
+                return;
+            }
+            FrameListener listener = mFrameListener;
+            if (listener == null) {
+                image.close();
+                return;
+            }
+
+            CameraFrame frame;
+            synchronized (mLock) {
+                frame = mFreeFrames.pollFirst();
+            }
+            if (frame == null) {
+                frame = new CameraFrame(mFrameRecycler);
+            }
+            Image.Plane[] planes = image.getPlanes();
+            for (int i = 0; i < 3; i++) {
+                frame.setPlane(i, planes[i].getBuffer(), planes[i].getRowStride(), planes[i].getPixelStride());
+            }
+            frame.setSize(image.getWidth(), image.getHeight());
+            frame.setTimestamp(image.getTimestamp());
+            frame.setTag(image);
+            frame.markInUse();
+            listener.onFrame(frame);
+        }
+    };
+
+    private final CameraFrame.Recycler mFrameRecycler = new CameraFrame.Recycler() {
+        @Override
+        public void recycle(CameraFrame frame) {
+            Image image = (Image) frame.getTag();
+            frame.setTag(null);
+            for (int i = 0; i < 3; i++) {
+                frame.setPlane(i, null, 0, 0);
+            }
+            if (image != null) {
+                image.close();
+            }
+            synchronized (mLock) {
+                if (mFreeFrames.size() < MAX_IMAGES) {
+                    mFreeFrames.offerLast(frame);
+                }
+            }
+        }
+    };
+}
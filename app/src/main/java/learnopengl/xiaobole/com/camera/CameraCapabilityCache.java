@@ -0,0 +1,199 @@
+package learnopengl.xiaobole.com.camera;
+
+import android.content.Context;
+import android.os.Build;
+import android.util.Log;
+import android.util.SparseArray;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * Remembers the preview configuration chosen for each camera and {@link CameraSetting},
+ * so a warm launch applies it without enumerating and filtering the supported values.
+ *
+ * The configurations are stored in a small binary file together with the build
+ * fingerprint; after a system update the whole file is discarded, since the camera
+ * HAL may report different capabilities.
+ */
+public class CameraCapabilityCache {
+    private static final String TAG = "CameraCapabilityCache";
+
+    private static final String FILE_NAME = "camera_capabilities.bin";
+    private static final int MAGIC = 0x43414d43;    // "CAMC"
+    private static final int VERSION = 1;
+
+    /**
+     * the preview configuration chosen for a camera
+     */
+    public static class Config {
+        private final int mPreviewWidth;
+        private final int mPreviewHeight;
+        private final int mPreviewFormat;
+        private final String mFocusMode;
+
+        /**
+         * @param previewFormat the preview format, 0 to keep the default
+         * @param focusMode the focus mode, null to keep the default
+         */
+        public Config(int previewWidth, int previewHeight, int previewFormat, String focusMode) {
+            mPreviewWidth = previewWidth;
+            mPreviewHeight = previewHeight;
+            mPreviewFormat = previewFormat;
+            mFocusMode = focusMode;
+        }
+
+        public int getPreviewWidth() {
+            return mPreviewWidth;
+        }
+
+        public int getPreviewHeight() {
+            return mPreviewHeight;
+        }
+
+        public int getPreviewFormat() {
+            return mPreviewFormat;
+        }
+
+        public String getFocusMode() {
+            return mFocusMode;
+        }
+
+        @Override
+        public String toString() {
+            return mPreviewWidth + "x" + mPreviewHeight + " format = " + mPreviewFormat + " focus = " + mFocusMode;
+        }
+    }
+
+    private final File mFile;
+    private final SparseArray<Config> mConfigs = new SparseArray<>();
+    private boolean mLoaded;
+
+    public CameraCapabilityCache(Context context) {
+        mFile = new File(context.getCacheDir(), FILE_NAME);
+    }
+
+    /**
+     * get the configuration chosen before
+     *
+     * @return the configuration, null if not cached for this build
+     */
+    public synchronized Config get(int cameraId, CameraSetting setting) {
+        load();
+        return mConfigs.get(getKey(cameraId, setting));
+    }
+
+    /**
+     * remember the chosen configuration and write the cache file
+     */
+    public synchronized void put(int cameraId, CameraSetting setting, Config config) {
+        load();
+        mConfigs.put(getKey(cameraId, setting), config);
+        save();
+    }
+
+    /**
+     * forget all configurations, e.g. when a cached one is rejected by the camera
+     */
+    public synchronized void clear() {
+        mConfigs.clear();
+        mLoaded = true;
+        if (mFile.exists() && !mFile.delete()) {
+            Log.w(TAG, "delete " + mFile + " failed");
+        }
+    }
+
+    private static int getKey(int cameraId, CameraSetting setting) {
+        return (cameraId << 16) | (setting.getPreviewSizeRatio().ordinal() << 8)
+                | setting.getPreviewSizeLevel().ordinal();
+    }
+
+    private void load() {
+        if (mLoaded) {
+            return;
+        }
+        mLoaded = true;
+        if (!mFile.exists()) {
+            return;
+        }
+
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(mFile)));
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                Log.i(TAG, "unknown cache format, discard");
+                return;
+            }
+            if (!Build.FINGERPRINT.equals(in.readUTF())) {
+                Log.i(TAG, "build fingerprint changed, discard");
+                return;
+            }
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                int key = in.readInt();
+                int width = in.readInt();
+                int height = in.readInt();
+                int format = in.readInt();
+                String focusMode = in.readBoolean() ? in.readUTF() : null;
+                mConfigs.put(key, new Config(width, height, format, focusMode));
+            }
+            Log.i(TAG, "loaded " + count + " configs");
+        } catch (IOException e) {
+            Log.w(TAG, "load failed: " + e.getMessage());
+            mConfigs.clear();
+        } finally {
+            closeQuietly(in);
+        }
+    }
+
+    private void save() {
+        File tmpFile = new File(mFile.getPath() + ".tmp");
+        DataOutputStream out = null;
+        try {
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile)));
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeUTF(Build.FINGERPRINT);
+            out.writeInt(mConfigs.size());
+            for (int i = 0; i < mConfigs.size(); i++) {
+                Config config = mConfigs.valueAt(i);
+                out.writeInt(mConfigs.keyAt(i));
+                out.writeInt(config.mPreviewWidth);
+                out.writeInt(config.mPreviewHeight);
+                out.writeInt(config.mPreviewFormat);
+                out.writeBoolean(config.mFocusMode != null);
+                if (config.mFocusMode != null) {
+                    out.writeUTF(config.mFocusMode);
+                }
+            }
+            out.close();
+            out = null;
+            // replace the old file in one step, a crash never leaves half a cache
+            if (!tmpFile.renameTo(mFile)) {
+                Log.w(TAG, "rename " + tmpFile + " failed");
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "save failed: " + e.getMessage());
+        } finally {
+            closeQuietly(out);
+        }
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable == null) {
+            return;
+        }
+        try {
+            closeable.close();
+        } catch (IOException e) {
+            Log.w(TAG, "close failed: " + e.getMessage());
+        }
+    }
+}
@@ -3,17 +3,26 @@ package learnopengl.xiaobole.com.camera;
 
 import android.graphics.SurfaceTexture;
 import android.hardware.Camera;
+import android.os.SystemClock;
 import android.util.Log;
 import android.view.SurfaceHolder;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.List;
 
-public class CameraDevice {
+public class CameraDevice implements CameraSource {
     private static final String TAG = "CameraDevice";
 
     private Camera mCamera;
     private Camera.CameraInfo mCameraInfo;
+    private volatile CameraParameterSnapshot mSnapshot;
+    private volatile int mParameterIpcCount;
+
+    private static final int FRAME_BUFFER_COUNT = 3;
+    private volatile FrameListener mFrameListener;
+    private volatile CameraFrame[] mFrames;
 
     private CameraDevice() {
         mCameraInfo = new Camera.CameraInfo();
@@ -27,6 +36,7 @@ public class CameraDevice {
         return CameraDeviceHolder.mInstance;
     }
 
+    @Override
     public int getNumbersOfCameras() {
         return Camera.getNumberOfCameras();
     }
@@ -35,15 +45,18 @@ public class CameraDevice {
         return mCameraInfo;
     }
 
+    @Override
     public boolean isFrontCamera() {
         return mCameraInfo.facing == Camera.CameraInfo.CAMERA_FACING_FRONT;
     }
 
+    @Override
     public boolean openCamera(int cameraId) {
         boolean opened = false;
 
         try {
             releaseCamera();
+            mSnapshot = null;
             mCamera = Camera.open(cameraId);
             opened = mCamera != null;
         } catch (RuntimeException e) {
@@ -59,6 +72,7 @@ public class CameraDevice {
         return opened;
     }
 
+    @Override
     public void releaseCamera() {
         if (mCamera == null) {
             Log.i(TAG, "camera is null !!!");
@@ -67,47 +81,123 @@ public class CameraDevice {
 
         mCamera.release();
         mCamera = null;
+        mSnapshot = null;
         Log.i(TAG, "release camera success !!!");
     }
 
+    @Override
     public int getPreviewWidth() {
-        Camera.Parameters parameters = getParameters();
-        if (parameters == null) {
-            return 0;
-        }
-        return parameters.getPreviewSize().width;
+        CameraParameterSnapshot snapshot = getParameterSnapshot();
+        return snapshot == null ? 0 : snapshot.getPreviewWidth();
     }
 
+    @Override
     public int getPreviewHeight() {
-        Camera.Parameters parameters = getParameters();
-        if (parameters == null) {
-            return 0;
-        }
-        return parameters.getPreviewSize().height;
+        CameraParameterSnapshot snapshot = getParameterSnapshot();
+        return snapshot == null ? 0 : snapshot.getPreviewHeight();
     }
 
+    /**
+     * get an editable copy of the parameters to change and pass to {@link #setParameters},
+     * it is read from the camera every time, use {@link #getParameterSnapshot()} to only read
+     */
     public Camera.Parameters getParameters() {
         if (mCamera == null) {
             Log.i(TAG, "getParameters failed, camera is null !!!");
             return null;
         }
-        return mCamera.getParameters();
+        Camera.Parameters parameters = readParameters();
+        if (mSnapshot == null) {
+            // take the snapshot before the caller changes anything
+            mSnapshot = new CameraParameterSnapshot(parameters);
+        }
+        return parameters;
+    }
+
+    /**
+     * get the current parameters without asking the camera again, the snapshot is only
+     * taken again after {@link #openCamera} or {@link #setParameters}
+     *
+     * @return the snapshot, null if the camera is not open
+     */
+    public CameraParameterSnapshot getParameterSnapshot() {
+        CameraParameterSnapshot snapshot = mSnapshot;
+        if (snapshot == null && mCamera != null) {
+            snapshot = new CameraParameterSnapshot(readParameters());
+            mSnapshot = snapshot;
+        }
+        return snapshot;
     }
 
+    /**
+     * @return the number of Camera#getParameters calls made, for profiling
+     */
+    public int getParameterIpcCount() {
+        return mParameterIpcCount;
+    }
+
+    @Override
     public List<int[]> getSupportFpsRange() {
+        CameraParameterSnapshot snapshot = getParameterSnapshot();
+        return snapshot == null ? null : snapshot.getSupportedPreviewFpsRange();
+    }
+
+    @Override
+    public int getSensorOrientation() {
+        return mCameraInfo.orientation;
+    }
+
+    @Override
+    public List<int[]> getSupportedPreviewSizeList() {
+        List<Camera.Size> sizes = getSupportedPreviewSizes();
+        if (sizes == null) {
+            return null;
+        }
+        List<int[]> list = new ArrayList<>(sizes.size());
+        for (Camera.Size size : sizes) {
+            list.add(new int[]{size.width, size.height});
+        }
+        return list;
+    }
+
+    @Override
+    public boolean setPreviewSize(int width, int height) {
         Camera.Parameters parameters = getParameters();
         if (parameters == null) {
-            return null;
+            return false;
         }
-        return parameters.getSupportedPreviewFpsRange();
+        for (Camera.Size size : getSupportedPreviewSizes()) {
+            if (size.width == width && size.height == height) {
+                parameters.setPreviewSize(width, height);
+                setParameters(parameters);
+                return true;
+            }
+        }
+        return false;
     }
 
-    public List<Camera.Size> getSupportedPreviewSizes() {
+    @Override
+    public void setPreviewFpsRange(int min, int max) {
         Camera.Parameters parameters = getParameters();
         if (parameters == null) {
-            return null;
+            return;
         }
-        return parameters.getSupportedPreviewSizes();
+        parameters.setPreviewFpsRange(min, max);
+        setParameters(parameters);
+    }
+
+    /**
+     * receive the NV21 preview frames as {@link CameraFrame}s, replaces the preview callback,
+     * so it can't be combined with a {@link PreviewFramePipeline}
+     */
+    @Override
+    public void setFrameListener(FrameListener listener) {
+        mFrameListener = listener;
+    }
+
+    public List<Camera.Size> getSupportedPreviewSizes() {
+        CameraParameterSnapshot snapshot = getParameterSnapshot();
+        return snapshot == null ? null : snapshot.getSupportedPreviewSizes();
     }
 
     public void setParameters(Camera.Parameters parameters) {
@@ -115,9 +205,16 @@ public class CameraDevice {
             Log.w(TAG, "setParameters failed, camera is null");
             return;
         }
+        // the driver may adjust the values, read them back on the next access
+        mSnapshot = null;
         mCamera.setParameters(parameters);
     }
 
+    private Camera.Parameters readParameters() {
+        mParameterIpcCount++;
+        return mCamera.getParameters();
+    }
+
     public boolean setPreviewDisplay(SurfaceHolder holder) {
         if (mCamera == null) {
             Log.w(TAG, "setPreviewDisplay failed, camera is null");
@@ -141,15 +238,20 @@ public class CameraDevice {
         mCamera.setDisplayOrientation(degrees);
     }
 
+    @Override
     public void startPreview() {
         if (mCamera == null) {
             Log.w(TAG, "startPreview failed, camera is null");
             return;
         }
+        if (mFrameListener != null) {
+            startFrameCallback();
+        }
         mCamera.startPreview();
     }
 
-    public void stopPreview () {
+    @Override
+    public void stopPreview() {
         if (mCamera == null) {
             Log.w(TAG, "stopPreview failed, camera is null");
             return;
@@ -181,6 +283,7 @@ public class CameraDevice {
         mCamera.setPreviewCallback(cb);
     }
 
+    @Override
     public void setPreviewTexture(SurfaceTexture surfaceTexture) {
         if (mCamera == null) {
             Log.w(TAG, "setPreviewTexture failed, camera is null");
@@ -193,4 +296,73 @@ public class CameraDevice {
             e.printStackTrace();
         }
     }
+
+    private void startFrameCallback() {
+        int width = getPreviewWidth();
+        int height = getPreviewHeight();
+        if (mFrames == null || mFrames[0].getWidth() != width || mFrames[0].getHeight() != height) {
+            mFrames = new CameraFrame[FRAME_BUFFER_COUNT];
+            for (int i = 0; i < FRAME_BUFFER_COUNT; i++) {
+                mFrames[i] = createNV21Frame(width, height);
+            }
+        }
+        for (CameraFrame frame : mFrames) {
+            mCamera.addCallbackBuffer((byte[]) frame.getTag());
+        }
+        mCamera.setPreviewCallbackWithBuffer(mFrameCallback);
+    }
+
+    /**
+     * wrap a callback buffer once, the planes point into it for every frame it receives
+     */
+    private CameraFrame createNV21Frame(int width, int height) {
+        int ySize = width * height;
+        int chromaRowStride = ((width + 1) / 2) * 2;
+        int chromaSize = chromaRowStride * ((height + 1) / 2);
+        byte[] data = new byte[ySize + chromaSize];
+        CameraFrame frame = new CameraFrame(mFrameRecycler);
+        frame.setTag(data);
+        frame.setSize(width, height);
+        frame.setPlane(CameraFrame.PLANE_Y, ByteBuffer.wrap(data, 0, ySize).slice(), width, 1);
+        // NV21 is VUVU..., U starts one byte after V
+        frame.setPlane(CameraFrame.PLANE_V, ByteBuffer.wrap(data, ySize, chromaSize).slice(), chromaRowStride, 2);
+        frame.setPlane(CameraFrame.PLANE_U, ByteBuffer.wrap(data, ySize + 1, chromaSize - 1).slice(), chromaRowStride, 2);
+        return frame;
+    }
+
+    private final Camera.PreviewCallback mFrameCallback = new Camera.PreviewCallback() {
+        @Override
+        public void onPreviewFrame(byte[] data, Camera camera) {
+            CameraFrame frame = null;
+            CameraFrame[] frames = mFrames;
+            for (int i = 0; frames != null && i < frames.length; i++) {
+                if (frames[i].getTag() == data) {
+                    frame = frames[i];
+                    break;
+                }
+            }
+            FrameListener listener = mFrameListener;
+            if (frame == null || listener == null) {
+                // a buffer of an older size, or nobody listens anymore
+                camera.addCallbackBuffer(data);
+                return;
+            }
+            frame.setTimestamp(SystemClock.elapsedRealtimeNanos());
+            frame.markInUse();
+            listener.onFrame(frame);
+        }
+    };
+
+    private final CameraFrame.Recycler mFrameRecycler = new CameraFrame.Recycler() {
+        @Override
+        public void recycle(CameraFrame frame) {
+            CameraFrame[] frames = mFrames;
+            for (int i = 0; frames != null && i < frames.length; i++) {
+                if (frames[i] == frame) {
+                    addCallbackBuffer((byte[]) frame.getTag());
+                    return;
+                }
+            }
+        }
+    };
 }
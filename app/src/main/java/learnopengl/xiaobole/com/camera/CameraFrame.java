@@ -0,0 +1,123 @@
+package learnopengl.xiaobole.com.camera;
+
+import android.util.Log;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A YUV 4:2:0 frame of a {@link CameraSource}, with the Y, U and V planes as buffers
+ * over the source's own memory, e.g. the planes of a camera2 Image, nothing is copied.
+ *
+ * The chroma planes may be interleaved, a pixel stride of 2 means U and V share one
+ * buffer like in NV21. The data is only valid until {@link #release()} is called, after
+ * which the memory goes back to the source; releasing it again is ignored.
+ */
+public class CameraFrame {
+    private static final String TAG = "CameraFrame";
+
+    public static final int PLANE_Y = 0;
+    public static final int PLANE_U = 1;
+    public static final int PLANE_V = 2;
+
+    interface Recycler {
+        void recycle(CameraFrame frame);
+    }
+
+    private final Recycler mRecycler;
+    private final ByteBuffer[] mPlanes = new ByteBuffer[3];
+    private final int[] mRowStrides = new int[3];
+    private final int[] mPixelStrides = new int[3];
+    private int mWidth;
+    private int mHeight;
+    private long mTimestamp;
+    private Object mTag;
+    // handed out and not released yet, so a second release can't give the memory back twice
+    private final AtomicBoolean mInUse = new AtomicBoolean();
+
+    CameraFrame(Recycler recycler) {
+        mRecycler = recycler;
+    }
+
+    void setSize(int width, int height) {
+        mWidth = width;
+        mHeight = height;
+    }
+
+    void setPlane(int plane, ByteBuffer buffer, int rowStride, int pixelStride) {
+        mPlanes[plane] = buffer;
+        mRowStrides[plane] = rowStride;
+        mPixelStrides[plane] = pixelStride;
+    }
+
+    void setTimestamp(long timestamp) {
+        mTimestamp = timestamp;
+    }
+
+    /**
+     * the source's handle of the frame memory, e.g. the Image or the callback buffer
+     */
+    /**
+     * the source hands the frame out, call before passing it to the listener
+     */
+    void markInUse() {
+        mInUse.set(true);
+    }
+
+    void setTag(Object tag) {
+        mTag = tag;
+    }
+
+    Object getTag() {
+        return mTag;
+    }
+
+    /**
+     * @param plane {@link #PLANE_Y}, {@link #PLANE_U} or {@link #PLANE_V}
+     * @return the plane data from its position on, must not be written
+     */
+    public ByteBuffer getPlane(int plane) {
+        return mPlanes[plane];
+    }
+
+    /**
+     * @return the bytes between the starts of two rows of the plane
+     */
+    public int getRowStride(int plane) {
+        return mRowStrides[plane];
+    }
+
+    /**
+     * @return the bytes between two samples in a row of the plane
+     */
+    public int getPixelStride(int plane) {
+        return mPixelStrides[plane];
+    }
+
+    public int getWidth() {
+        return mWidth;
+    }
+
+    public int getHeight() {
+        return mHeight;
+    }
+
+    /**
+     * @return the timestamp in nanoseconds, in the time base of the source
+     */
+    public long getTimestamp() {
+        return mTimestamp;
+    }
+
+    /**
+     * give the memory back to the source, the frame must not be used afterwards
+     */
+    public void release() {
+        if (!mInUse.compareAndSet(true, false)) {
+            // the source may already have handed the memory to the camera or another frame
+            Log.w(TAG, "frame released twice");
+            return;
+        }
+        mRecycler.recycle(this);
+    }
+}
@@ -4,16 +4,29 @@ import android.content.Context;
 import android.graphics.SurfaceTexture;
 import android.hardware.Camera;
 import android.opengl.GLSurfaceView;
+import android.os.Handler;
+import android.os.HandlerThread;
 import android.util.Log;
 
 import java.lang.ref.WeakReference;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
-import java.util.Iterator;
 import java.util.List;
-
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+import learnopengl.xiaobole.com.filter.FilterChain;
+import learnopengl.xiaobole.com.filter.GLFilter;
+import learnopengl.xiaobole.com.recorder.EncoderSink;
+import learnopengl.xiaobole.com.render.FrameReader;
+import learnopengl.xiaobole.com.render.FramePacer;
+import learnopengl.xiaobole.com.render.FrameStats;
 import learnopengl.xiaobole.com.render.GLVideoRender;
+import learnopengl.xiaobole.com.utils.GLStateCache;
+import learnopengl.xiaobole.com.utils.Tracer;
 import learnopengl.xiaobole.com.utils.Utils;
 
 import static android.graphics.ImageFormat.NV21;
@@ -24,13 +37,30 @@ public class CameraManager implements SurfaceTexture.OnFrameAvailableListener,
     private static final String TAG = "CameraManager";
     private static final double ASPECT_TOLERANCE = 0.05;
 
+    private static final int TRACE_FRAME_AVAILABLE = Tracer.getInstance().registerEvent("CameraFrameAvailable");
+    private static final int TRACE_FILTER = Tracer.getInstance().registerEvent("CameraFilter");
+
     private Context mContext;
     private CameraSetting mCameraSetting;
     private int mCurrentFacingId = Camera.CameraInfo.CAMERA_FACING_FRONT;
 
     private WeakReference<GLSurfaceView> mGLSurfaceView;
     private GLVideoRender mVideoRender;
+    private FramePacer mFramePacer;
     private CameraParamSelectCallback mCameraParamSelectCallback;
+    private PreviewFramePipeline mFramePipeline;
+    private FilterChain mFilterChain = new FilterChain();
+    private CameraCapabilityCache mCapabilityCache;
+    // null drives android.hardware.Camera through CameraDevice
+    private CameraSource mCameraSource;
+
+    // the camera is opened and controlled on its own thread, never on the GL thread
+    private HandlerThread mCameraThread;
+    private Handler mCameraHandler;
+    private Future<Boolean> mOpenFuture;
+    private boolean mCameraOpened;  // camera thread only
+    private volatile long mResumeTime;
+    private volatile long mFirstFrameLatency = -1;
 
     public interface CameraParamSelectCallback {
         Camera.Size onPreviewSizeSelected(List<Camera.Size> list);
@@ -43,6 +73,10 @@ public class CameraManager implements SurfaceTexture.OnFrameAvailableListener,
         mContext = context;
         mCameraSetting = setting;
         mCurrentFacingId = mCameraSetting.getCameraId();
+        mCapabilityCache = new CameraCapabilityCache(context);
+        mCameraThread = new HandlerThread("CameraThread");
+        mCameraThread.start();
+        mCameraHandler = new Handler(mCameraThread.getLooper());
     }
 
     public CameraManager(GLSurfaceView glSurfaceView, CameraSetting setting) {
@@ -50,6 +84,16 @@ public class CameraManager implements SurfaceTexture.OnFrameAvailableListener,
         mVideoRender = new GLVideoRender();
         mVideoRender.setOnFrameAvailableListener(this);
         mVideoRender.setVideoFilterListener(this);
+        mFramePacer = new FramePacer(new FramePacer.RenderRequester() {
+            @Override
+            public void requestRender() {
+                GLSurfaceView glSurfaceView = mGLSurfaceView.get();
+                if (glSurfaceView != null) {
+                    glSurfaceView.requestRender();
+                }
+            }
+        });
+        mVideoRender.setFramePacer(mFramePacer);
 
         glSurfaceView.setEGLContextClientVersion(2);
         glSurfaceView.setRenderer(mVideoRender);
@@ -59,6 +103,10 @@ public class CameraManager implements SurfaceTexture.OnFrameAvailableListener,
 
     public void resume() {
         Log.i(TAG, "resume");
+        mResumeTime = System.nanoTime();
+        mFirstFrameLatency = -1;
+        // open the camera while the GL thread creates the EGL context
+        openCamera();
         GLSurfaceView glSurfaceView = mGLSurfaceView.get();
         if (glSurfaceView != null) {
             glSurfaceView.onResume();
@@ -67,59 +115,293 @@ public class CameraManager implements SurfaceTexture.OnFrameAvailableListener,
 
     public void pause() {
         Log.i(TAG, "pause");
+        stopRecording();
         GLSurfaceView glSurfaceView = mGLSurfaceView.get();
         if (glSurfaceView != null) {
+            // queued before onPause, so it runs on the GL thread while the context is still current
+            glSurfaceView.queueEvent(new Runnable() {
+                @Override
+                public void run() {
+                    mVideoRender.releaseGL();
+                    mFilterChain.release();
+                }
+            });
             glSurfaceView.onPause();
         }
-        CameraDevice.getInstance().stopPreview();
-        CameraDevice.getInstance().releaseCamera();
+        // the camera must be released when the activity pauses, wait for it
+        waitFor(runOnCameraThread(new Callable<Boolean>() {
+            @Override
+            public Boolean call() {
+                closeCamera();
+                return true;
+            }
+        }));
+        if (mVideoRender != null) {
+            Log.i(TAG, "frame pacing: " + mFramePacer);
+            Log.i(TAG, "frame stats:\n" + mVideoRender.getFrameStats().dump()
+                    + "\n" + GLStateCache.getInstance().getStats());
+        }
     }
 
     public void destroy() {
         Log.i(TAG, "destroy");
         mVideoRender.destroy();
+        mCameraThread.quitSafely();
+    }
+
+    /**
+     * open and set up the camera on the camera thread, called by {@link #resume()}
+     *
+     * @return the result of {@link #setupCamera()}
+     */
+    public Future<Boolean> openCamera() {
+        mOpenFuture = runOnCameraThread(new Callable<Boolean>() {
+            @Override
+            public Boolean call() {
+                long start = System.nanoTime();
+                mCameraOpened = setupCamera();
+                Log.i(TAG, "setup camera " + mCameraOpened + " in "
+                        + (System.nanoTime() - start) / 1000000 + "ms");
+                return mCameraOpened;
+            }
+        });
+        return mOpenFuture;
+    }
+
+    /**
+     * @return the open started by the last {@link #resume()}, null before
+     */
+    public Future<Boolean> getOpenFuture() {
+        return mOpenFuture;
+    }
+
+    /**
+     * get the time from {@link #resume()} to the first preview frame
+     *
+     * @return the latency in milliseconds, -1 until the first frame arrives
+     */
+    public long getFirstFrameLatencyMs() {
+        return mFirstFrameLatency;
+    }
+
+    private <T> Future<T> runOnCameraThread(Callable<T> callable) {
+        FutureTask<T> task = new FutureTask<>(callable);
+        mCameraHandler.post(task);
+        return task;
+    }
+
+    private static <T> T waitFor(Future<T> future) {
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    return future.get();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        } catch (ExecutionException e) {
+            Log.e(TAG, "camera task failed: " + e.getCause());
+            return null;
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * attach the preview texture and start the preview, runs on the camera thread
+     * after the open, whichever of the two becomes ready first
+     */
+    private void startPreview(SurfaceTexture surfaceTexture) {
+        if (!mCameraOpened) {
+            Log.w(TAG, "camera not opened, no preview");
+            return;
+        }
+        if (mCameraSource != null) {
+            mCameraSource.setPreviewTexture(surfaceTexture);
+            mCameraSource.startPreview();
+            return;
+        }
+        CameraDevice.getInstance().setPreviewTexture(surfaceTexture);
+        if (mFramePipeline != null) {
+            mFramePipeline.start(CameraDevice.getInstance().getPreviewWidth(),
+                    CameraDevice.getInstance().getPreviewHeight());
+        }
+        CameraDevice.getInstance().startPreview();
+    }
+
+    private void closeCamera() {
+        if (mCameraSource != null) {
+            if (mCameraOpened) {
+                mCameraSource.stopPreview();
+            }
+            mCameraSource.releaseCamera();
+            mCameraOpened = false;
+            return;
+        }
+        if (mFramePipeline != null) {
+            mFramePipeline.stop();
+        }
+        if (mCameraOpened) {
+            CameraDevice.getInstance().stopPreview();
+        }
+        CameraDevice.getInstance().releaseCamera();
+        mCameraOpened = false;
+    }
+
+    /**
+     * append a filter pass to the preview, call before the surface is created
+     * or on the GL thread
+     *
+     * @param filter the filter
+     */
+    public void addFilter(GLFilter filter) {
+        mFilterChain.addFilter(filter);
+    }
+
+    /**
+     * drive the preview through another camera backend, e.g. {@link Camera2Source},
+     * instead of android.hardware.Camera, call before {@link #resume()}
+     *
+     * The preview frame listener only works with android.hardware.Camera, the YUV frames
+     * of a source go to its {@link CameraSource.FrameListener}.
+     *
+     * @param source the camera, null for {@link CameraDevice}
+     */
+    public void setCameraSource(CameraSource source) {
+        mCameraSource = source;
     }
 
     public void setCameraParamSelectCallback(CameraParamSelectCallback callback) {
         mCameraParamSelectCallback = callback;
     }
 
+    /**
+     * receive the NV21 preview bytes through a pooled ring of callback buffers,
+     * takes effect on the next camera open
+     *
+     * @param listener the frame consumer, null to disable the frame pipeline
+     */
+    public void setPreviewFrameListener(PreviewFramePipeline.FrameListener listener) {
+        if (mFramePipeline != null) {
+            mFramePipeline.stop();
+        }
+        mFramePipeline = listener == null ? null : new PreviewFramePipeline(listener);
+    }
+
+    /**
+     * choose between drawing each camera frame as soon as it arrives and presenting
+     * the frames on vsync with a regular cadence
+     *
+     * @param mode {@link FramePacer#MODE_LATENCY} or {@link FramePacer#MODE_SMOOTHNESS}, the default
+     */
+    public void setFramePacingMode(int mode) {
+        if (mFramePacer != null) {
+            mFramePacer.setMode(mode);
+        }
+    }
+
+    /**
+     * @return the frame pacer of the preview, null without a GLSurfaceView
+     */
+    public FramePacer getFramePacer() {
+        return mFramePacer;
+    }
+
+    /**
+     * per-stage timings of the preview renderer, safe to read from any thread
+     *
+     * @return the frame stats, null without a GLSurfaceView
+     */
+    public FrameStats getFrameStats() {
+        return mVideoRender == null ? null : mVideoRender.getFrameStats();
+    }
+
+    /**
+     * read the rendered preview, filters included, back to the CPU
+     *
+     * @param listener the frame consumer, null to stop
+     */
+    public void setFrameReaderListener(FrameReader.FrameListener listener) {
+        if (mVideoRender != null) {
+            mVideoRender.setFrameReaderListener(listener);
+        }
+    }
+
+    /**
+     * record the rendered preview, filters included, from the same camera stream,
+     * call after the preview has started
+     *
+     * @param sink the frame consumer, e.g. a {@link learnopengl.xiaobole.com.recorder.MediaCodecEncoderSink}
+     */
+    public void startRecording(EncoderSink sink) {
+        if (mVideoRender != null) {
+            mVideoRender.startRecording(sink);
+        }
+    }
+
+    public void stopRecording() {
+        if (mVideoRender != null) {
+            mVideoRender.stopRecording();
+        }
+    }
+
+    public PreviewFramePipeline getPreviewFramePipeline() {
+        return mFramePipeline;
+    }
+
     @Override
     public void onFrameAvailable(SurfaceTexture surfaceTexture) {
-        Log.i(TAG, "onFrameAvailable");
-        GLSurfaceView glSurfaceView = mGLSurfaceView.get();
-        if (glSurfaceView != null) {
-            glSurfaceView.requestRender();
+        Tracer.getInstance().instant(TRACE_FRAME_AVAILABLE, mFramePacer.getReceivedCount());
+        if (mFirstFrameLatency < 0) {
+            mFirstFrameLatency = (System.nanoTime() - mResumeTime) / 1000000;
+            Log.i(TAG, "first preview frame " + mFirstFrameLatency + "ms after resume");
         }
+        mFramePacer.onFrameAvailable();
     }
 
     @Override
     public void onSurfaceCreated() {
         Log.i(TAG, "onSurfaceCreated");
-        if (!setupCamera()) {
-            return;
-        }
-        CameraDevice.getInstance().setPreviewTexture(mVideoRender.getSurfaceTexture());
-        CameraDevice.getInstance().startPreview();
+        mFilterChain.init();
+        final SurfaceTexture surfaceTexture = mVideoRender.getSurfaceTexture();
+        // queued behind the open, the GL thread does not wait for the camera
+        mCameraHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                startPreview(surfaceTexture);
+            }
+        });
     }
 
     @Override
     public void onSurfaceChanged(int width, int height) {
         Log.i(TAG, "onSurfaceChanged width = " + width + " height = " + height);
-
+        mFilterChain.setViewport(width, height);
     }
 
     @Override
     public int onDrawFrame(int texId, int texWidth, int texHeight, float[] matrix, long timestamp) {
-        Log.i(TAG, "onDrawFrame timestamp = " + timestamp);
-        return texId;
+        Tracer.getInstance().begin(TRACE_FILTER, timestamp);
+        int result = mFilterChain.process(texId, matrix, texWidth, texHeight);
+        Tracer.getInstance().end(TRACE_FILTER);
+        return result;
     }
 
+    /**
+     * open and configure the camera, blocks for the camera HAL, call on the camera thread
+     * through {@link #openCamera()}
+     */
     public boolean setupCamera() {
         if (!Utils.checkCameraDevice(mContext)) {
             Log.i(TAG, "Fatal error. No camera hardware !");
             return false;
         }
+        if (mCameraSource != null) {
+            return setupCameraSource(mCameraSource);
+        }
         /**
          * open camera
          */
@@ -131,14 +413,157 @@ public class CameraManager implements SurfaceTexture.OnFrameAvailableListener,
             return false;
         }
 
+        /**
+         * apply the configuration chosen on an earlier launch, or select and remember it
+         */
+        CameraCapabilityCache.Config cachedConfig = mCameraParamSelectCallback == null
+                ? mCapabilityCache.get(mCurrentFacingId, mCameraSetting) : null;
+        if (cachedConfig != null) {
+            Log.i(TAG, "use cached camera config: " + cachedConfig);
+            applyConfig(parameters, cachedConfig);
+        } else {
+            CameraCapabilityCache.Config config = selectConfig(parameters);
+            if (config != null && mCameraParamSelectCallback == null) {
+                mCapabilityCache.put(mCurrentFacingId, mCameraSetting, config);
+            }
+        }
+
+        /**
+         * select camera preview fps
+         */
+        List<int[]> fpsRange = mCameraParamSelectCallback == null
+                ? null : CameraDevice.getInstance().getSupportFpsRange();
+        int[] selectedFps = null;
+        if (fpsRange != null && !fpsRange.isEmpty()) {
+            selectedFps = mCameraParamSelectCallback.onPreviewFpsSelected(fpsRange);
+            if (selectedFps != null && selectedFps.length == 2) {
+                parameters.setPreviewFpsRange(selectedFps[0], selectedFps[1]);
+                Log.i(TAG, "set camera preview fps: " + selectedFps[0] + "~" + selectedFps[1]);
+            }
+        }
+
+        /**
+         * select camera display orientation
+         */
+        int degree = Utils.getDeviceRotationDegree(mContext);
+        Camera.CameraInfo cameraInfo = CameraDevice.getInstance().getCameraInfo();
+        int orientation;
+        if (mCurrentFacingId == Camera.CameraInfo.CAMERA_FACING_FRONT) {
+            orientation = (cameraInfo.orientation + degree) % 360;
+            orientation = (360 - orientation) % 360;    // compensate the mirror
+        } else {    // back-facing
+            orientation = (cameraInfo.orientation - degree + 360) % 360;
+        }
+        CameraDevice.getInstance().setDisplayOrientation(orientation);
+        Log.i(TAG, "set camera display orientation: " + orientation);
+        try {
+            CameraDevice.getInstance().setParameters(parameters);
+        } catch (RuntimeException e) {
+            if (cachedConfig == null) {
+                throw e;
+            }
+            // the camera rejects what it accepted before, select again from scratch
+            Log.w(TAG, "cached camera config rejected: " + e.getMessage());
+            mCapabilityCache.clear();
+            return setupCamera();
+        }
+
+        /**
+         * set video size for render
+         */
+        if (orientation == 90 || orientation == 270) {
+            mVideoRender.setVideoSize(CameraDevice.getInstance().getPreviewHeight(),
+                    CameraDevice.getInstance().getPreviewWidth());
+        } else {
+            mVideoRender.setVideoSize(CameraDevice.getInstance().getPreviewWidth(),
+                    CameraDevice.getInstance().getPreviewHeight());
+        }
+        Log.i(TAG, "camera parameter ipc count: " + CameraDevice.getInstance().getParameterIpcCount());
+
+        return true;
+    }
+
+    /**
+     * open and configure a {@link CameraSource}, the size is selected like for CameraDevice
+     */
+    private boolean setupCameraSource(CameraSource source) {
+        if (!source.openCamera(mCurrentFacingId)) {
+            return false;
+        }
+
+        int[] selectedSize = selectPreviewSize(source.getSupportedPreviewSizeList());
+        if (selectedSize != null && source.setPreviewSize(selectedSize[0], selectedSize[1])) {
+            Log.i(TAG, "set camera preview size: " + selectedSize[0] + "x" + selectedSize[1]);
+        }
+
+        List<int[]> fpsRange = mCameraParamSelectCallback == null ? null : source.getSupportFpsRange();
+        if (fpsRange != null && !fpsRange.isEmpty()) {
+            int[] selectedFps = mCameraParamSelectCallback.onPreviewFpsSelected(fpsRange);
+            if (selectedFps != null && selectedFps.length == 2) {
+                source.setPreviewFpsRange(selectedFps[0], selectedFps[1]);
+                Log.i(TAG, "set camera preview fps: " + selectedFps[0] + "~" + selectedFps[1]);
+            }
+        }
+
+        int degree = Utils.getDeviceRotationDegree(mContext);
+        int orientation = source.isFrontCamera()
+                ? (360 - (source.getSensorOrientation() + degree) % 360) % 360
+                : (source.getSensorOrientation() - degree + 360) % 360;
+        if (orientation == 90 || orientation == 270) {
+            mVideoRender.setVideoSize(source.getPreviewHeight(), source.getPreviewWidth());
+        } else {
+            mVideoRender.setVideoSize(source.getPreviewWidth(), source.getPreviewHeight());
+        }
+        return true;
+    }
+
+    /**
+     * select among {width, height} sizes by the ratio and level of the setting
+     *
+     * @return the middle size of the matching ones, null if none matches the ratio
+     */
+    private int[] selectPreviewSize(List<int[]> sizes) {
+        double targetRatio = CameraSetting.calcCameraPreviewSizeRatio(mCameraSetting.getPreviewSizeRatio());
+        int targetLevel = CameraSetting.calcCameraPreviewSizeLevel(mCameraSetting.getPreviewSizeLevel());
+        List<int[]> ratioSizes = new ArrayList<>();
+        List<int[]> levelSizes = new ArrayList<>();
+        for (int[] size : sizes) {
+            if (Math.abs((double) size[0] / size[1] - targetRatio) <= ASPECT_TOLERANCE) {
+                ratioSizes.add(size);
+                if (size[1] == targetLevel) {
+                    levelSizes.add(size);
+                }
+            }
+        }
+        List<int[]> candidates = levelSizes.isEmpty() ? ratioSizes : levelSizes;
+        if (candidates.isEmpty()) {
+            return null;
+        }
+        Collections.sort(candidates, new Comparator<int[]>() {
+            @Override
+            public int compare(int[] size1, int[] size2) {
+                return size1[0] * size1[1] - size2[0] * size2[1];
+            }
+        });
+        return candidates.get(candidates.size() / 2);
+    }
+
+    /**
+     * select the preview format, focus mode and size from the supported values
+     *
+     * @return the selected configuration, null if there is no preview size to select
+     */
+    private CameraCapabilityCache.Config selectConfig(Camera.Parameters parameters) {
         /**
          * select camera preview format
          */
+        int previewFormat = 0;
         List<Integer> supportedFormat = parameters.getSupportedPreviewFormats();
         for(Integer format : supportedFormat) {
             if (format == NV21) {
                 Log.i(TAG, "set camera preview format NV21");
                 parameters.setPreviewFormat(NV21);
+                previewFormat = NV21;
                 break;
             }
         }
@@ -180,49 +605,20 @@ public class CameraManager implements SurfaceTexture.OnFrameAvailableListener,
             Log.i(TAG, "set camera preview size: " + selectedSize.width + "x" + selectedSize.height);
         }
 
-        /**
-         * select camera preview fps
-         */
-        List<int[]> fpsRange = CameraDevice.getInstance().getSupportFpsRange();
-        int[] selectedFps = null;
-        if (fpsRange != null && !fpsRange.isEmpty()) {
-            if (mCameraParamSelectCallback != null) {
-                selectedFps = mCameraParamSelectCallback.onPreviewFpsSelected(fpsRange);
-            }
-            if (selectedFps != null && selectedFps.length == 2) {
-                parameters.setPreviewFpsRange(selectedFps[0], selectedFps[1]);
-                Log.i(TAG, "set camera preview fps: " + selectedFps[0] + "~" + selectedFps[1]);
-            }
+        if (selectedSize == null) {
+            return null;
         }
+        return new CameraCapabilityCache.Config(selectedSize.width, selectedSize.height, previewFormat, focusMode);
+    }
 
-        /**
-         * select camera display orientation
-         */
-        int degree = Utils.getDeviceRotationDegree(mContext);
-        Camera.CameraInfo cameraInfo = CameraDevice.getInstance().getCameraInfo();
-        int orientation;
-        if (mCurrentFacingId == Camera.CameraInfo.CAMERA_FACING_FRONT) {
-            orientation = (cameraInfo.orientation + degree) % 360;
-            orientation = (360 - orientation) % 360;    // compensate the mirror
-        } else {    // back-facing
-            orientation = (cameraInfo.orientation - degree + 360) % 360;
+    private void applyConfig(Camera.Parameters parameters, CameraCapabilityCache.Config config) {
+        if (config.getPreviewFormat() != 0) {
+            parameters.setPreviewFormat(config.getPreviewFormat());
         }
-        CameraDevice.getInstance().setDisplayOrientation(orientation);
-        Log.i(TAG, "set camera display orientation: " + orientation);
-        CameraDevice.getInstance().setParameters(parameters);
-
-        /**
-         * set video size for render
-         */
-        if (orientation == 90 || orientation == 270) {
-            mVideoRender.setVideoSize(CameraDevice.getInstance().getPreviewHeight(),
-                    CameraDevice.getInstance().getPreviewWidth());
-        } else {
-            mVideoRender.setVideoSize(CameraDevice.getInstance().getPreviewWidth(),
-                    CameraDevice.getInstance().getPreviewHeight());
+        if (config.getFocusMode() != null) {
+            parameters.setFocusMode(config.getFocusMode());
         }
-
-        return true;
+        parameters.setPreviewSize(config.getPreviewWidth(), config.getPreviewHeight());
     }
 
     private List<Camera.Size> filterCameraPreviewSize(List<Camera.Size> sizes, CameraSetting.CAMERA_PREVIEW_RATIO ratio,
@@ -235,35 +631,28 @@ public class CameraManager implements SurfaceTexture.OnFrameAvailableListener,
          * filter by ratio
          */
         double targetRatio = CameraSetting.calcCameraPreviewSizeRatio(ratio);
-        Iterator<Camera.Size> iterator = sizes.iterator();
-        while (iterator.hasNext()) {
-            Camera.Size size = iterator.next();
-            Log.i(TAG, "size.width:" + size.width + ",size.height:" + size.height);
+        List<Camera.Size> ratioSizes = new ArrayList<>();
+        for (Camera.Size size : sizes) {
             double r = (double) size.width / size.height;
-            if (Math.abs(r - targetRatio) > ASPECT_TOLERANCE) {
-                iterator.remove();
+            if (Math.abs(r - targetRatio) <= ASPECT_TOLERANCE) {
+                ratioSizes.add(size);
             }
         }
 
         /**
-         * filter by size level
+         * filter by size level, keep all sizes of the ratio if none matches
          */
-        List<Camera.Size> discards = new ArrayList<>();
+        List<Camera.Size> levelSizes = new ArrayList<>();
         int targetLevel = CameraSetting.calcCameraPreviewSizeLevel(level);
-        iterator = sizes.iterator();
-        while (iterator.hasNext()) {
-            Camera.Size size = iterator.next();
-            if (size.height != targetLevel) {
-                discards.add(size);
-                iterator.remove();
+        for (Camera.Size size : ratioSizes) {
+            if (size.height == targetLevel) {
+                levelSizes.add(size);
             }
         }
 
-        for (Camera.Size size : sizes) {
-            Log.i(TAG, "after filter size.w:" + size.width + ", size.h:" + size.height);
-        }
-
-        return sizes.isEmpty() ? discards : sizes;
+        Log.i(TAG, "filter preview sizes: " + sizes.size() + " supported, " + ratioSizes.size()
+                + " of the ratio, " + levelSizes.size() + " of the level");
+        return levelSizes.isEmpty() ? ratioSizes : levelSizes;
     }
 
     private List<Camera.Size> sortCameraPreviewSize(List<Camera.Size> sizes) {
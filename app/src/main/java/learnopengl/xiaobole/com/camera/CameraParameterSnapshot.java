@@ -0,0 +1,94 @@
+package learnopengl.xiaobole.com.camera;
+
+import android.hardware.Camera;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * An immutable copy of the values read from Camera.Parameters.
+ *
+ * Camera#getParameters is a binder call which returns the whole flattened parameter
+ * string to parse, so {@link CameraDevice} takes one snapshot and answers the typed
+ * getters from it until the parameters change.
+ */
+public class CameraParameterSnapshot {
+
+    private final int mPreviewWidth;
+    private final int mPreviewHeight;
+    private final int mPreviewFormat;
+    private final int[] mPreviewFpsRange = new int[2];
+    private final String mFocusMode;
+    private final List<int[]> mSupportedPreviewFpsRange;
+    private final List<Camera.Size> mSupportedPreviewSizes;
+    private final List<Integer> mSupportedPreviewFormats;
+    private final List<String> mSupportedFocusModes;
+
+    CameraParameterSnapshot(Camera.Parameters parameters) {
+        Camera.Size previewSize = parameters.getPreviewSize();
+        mPreviewWidth = previewSize == null ? 0 : previewSize.width;
+        mPreviewHeight = previewSize == null ? 0 : previewSize.height;
+        mPreviewFormat = parameters.getPreviewFormat();
+        parameters.getPreviewFpsRange(mPreviewFpsRange);
+        mFocusMode = parameters.getFocusMode();
+
+        // the lists are parsed into new objects on every Camera.Parameters call, nobody else holds them
+        mSupportedPreviewFpsRange = unmodifiableCopy(parameters.getSupportedPreviewFpsRange());
+        mSupportedPreviewSizes = unmodifiableCopy(parameters.getSupportedPreviewSizes());
+        mSupportedPreviewFormats = unmodifiableCopy(parameters.getSupportedPreviewFormats());
+        mSupportedFocusModes = unmodifiableCopy(parameters.getSupportedFocusModes());
+    }
+
+    public int getPreviewWidth() {
+        return mPreviewWidth;
+    }
+
+    public int getPreviewHeight() {
+        return mPreviewHeight;
+    }
+
+    public int getPreviewFormat() {
+        return mPreviewFormat;
+    }
+
+    /**
+     * @return a copy of the current {min, max} fps range, scaled by 1000
+     */
+    public int[] getPreviewFpsRange() {
+        return mPreviewFpsRange.clone();
+    }
+
+    public String getFocusMode() {
+        return mFocusMode;
+    }
+
+    /**
+     * @return the supported {min, max} fps ranges, the arrays must not be modified
+     */
+    public List<int[]> getSupportedPreviewFpsRange() {
+        return mSupportedPreviewFpsRange;
+    }
+
+    /**
+     * @return the supported preview sizes, the sizes must not be modified
+     */
+    public List<Camera.Size> getSupportedPreviewSizes() {
+        return mSupportedPreviewSizes;
+    }
+
+    public List<Integer> getSupportedPreviewFormats() {
+        return mSupportedPreviewFormats;
+    }
+
+    public List<String> getSupportedFocusModes() {
+        return mSupportedFocusModes;
+    }
+
+    private static <T> List<T> unmodifiableCopy(List<T> list) {
+        if (list == null) {
+            return Collections.emptyList();
+        }
+        return Collections.unmodifiableList(new ArrayList<>(list));
+    }
+}
@@ -0,0 +1,83 @@
+package learnopengl.xiaobole.com.camera;
+
+import android.graphics.SurfaceTexture;
+
+import java.util.List;
+
+/**
+ * A camera, whatever API drives it: {@link CameraDevice} for android.hardware.Camera,
+ * {@link Camera2Source} for camera2 and {@link FakeCameraSource} for synthetic frames.
+ *
+ * The preview goes to a SurfaceTexture for the GL renderer, and optionally the YUV frames
+ * go to a {@link FrameListener} at the same time. Calls are expected on one thread,
+ * e.g. the camera thread of {@link CameraManager}.
+ */
+public interface CameraSource {
+
+    interface FrameListener {
+        /**
+         * called on the source's thread, call {@link CameraFrame#release()} when done
+         *
+         * @param frame the YUV frame
+         */
+        void onFrame(CameraFrame frame);
+    }
+
+    int getNumbersOfCameras();
+
+    /**
+     * open the camera, blocks until it is ready
+     *
+     * @param cameraId the index of the camera, 0 ~ getNumbersOfCameras() - 1
+     * @return true if opened
+     */
+    boolean openCamera(int cameraId);
+
+    void releaseCamera();
+
+    boolean isFrontCamera();
+
+    /**
+     * @return the clockwise rotation of the sensor image to the natural device orientation
+     */
+    int getSensorOrientation();
+
+    /**
+     * @return the supported preview sizes as {width, height}
+     */
+    List<int[]> getSupportedPreviewSizeList();
+
+    /**
+     * set the preview size, takes effect on the next {@link #startPreview()}
+     *
+     * @return false if the size is not supported
+     */
+    boolean setPreviewSize(int width, int height);
+
+    int getPreviewWidth();
+
+    int getPreviewHeight();
+
+    /**
+     * @return the supported {min, max} fps ranges, scaled by 1000
+     */
+    List<int[]> getSupportFpsRange();
+
+    /**
+     * set the preview fps range, scaled by 1000, takes effect on the next {@link #startPreview()}
+     */
+    void setPreviewFpsRange(int min, int max);
+
+    void setPreviewTexture(SurfaceTexture surfaceTexture);
+
+    /**
+     * receive the YUV frames next to the preview, takes effect on the next {@link #startPreview()}
+     *
+     * @param listener the frame consumer, null to stop
+     */
+    void setFrameListener(FrameListener listener);
+
+    void startPreview();
+
+    void stopPreview();
+}
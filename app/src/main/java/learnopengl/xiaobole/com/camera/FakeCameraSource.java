@@ -0,0 +1,282 @@
+package learnopengl.xiaobole.com.camera;
+
+import android.graphics.SurfaceTexture;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A {@link CameraSource} producing synthetic I420 frames on its own thread, for running
+ * the frame consumers without a camera, e.g. on the JVM.
+ *
+ * Each frame is a diagonal luma ramp moving one pixel per frame over constant chroma,
+ * so a consumer can tell frames apart and check its plane handling. There is no preview,
+ * the SurfaceTexture is ignored. Frames are dropped when the consumer holds all buffers.
+ * It calls no android API, so it runs on the plain JVM.
+ */
+public class FakeCameraSource implements CameraSource {
+    private static final String TAG = "FakeCameraSource";
+
+    private static final int BUFFER_COUNT = 3;
+    private static final int CAMERA_COUNT = 2;
+
+    private final List<int[]> mSizes = new ArrayList<>();
+    private int mCameraId = -1;
+    private int mPreviewWidth;
+    private int mPreviewHeight;
+    private int mFps = 30;
+
+    private volatile FrameListener mFrameListener;
+    private final Object mLock = new Object();
+    private final ArrayDeque<CameraFrame> mFreeFrames = new ArrayDeque<>();
+    private Thread mThread;
+    private volatile boolean mRunning;
+    private long mFrameCount;
+    private long mDroppedCount;
+
+    public FakeCameraSource() {
+        this(640, 480);
+    }
+
+    /**
+     * @param width the default preview width
+     * @param height the default preview height
+     */
+    public FakeCameraSource(int width, int height) {
+        mSizes.add(new int[]{width, height});
+        mPreviewWidth = width;
+        mPreviewHeight = height;
+    }
+
+    /**
+     * add a supported preview size
+     *
+     * @return the FakeCameraSource object
+     */
+    public FakeCameraSource addPreviewSize(int width, int height) {
+        mSizes.add(new int[]{width, height});
+        return this;
+    }
+
+    @Override
+    public int getNumbersOfCameras() {
+        return CAMERA_COUNT;
+    }
+
+    @Override
+    public boolean openCamera(int cameraId) {
+        releaseCamera();
+        if (cameraId < 0 || cameraId >= CAMERA_COUNT) {
+            return false;
+        }
+        mCameraId = cameraId;
+        return true;
+    }
+
+    @Override
+    public void releaseCamera() {
+        stopPreview();
+        mCameraId = -1;
+    }
+
+    @Override
+    public boolean isFrontCamera() {
+        return mCameraId == 1;
+    }
+
+    @Override
+    public int getSensorOrientation() {
+        return 90;
+    }
+
+    @Override
+    public List<int[]> getSupportedPreviewSizeList() {
+        return Collections.unmodifiableList(mSizes);
+    }
+
+    @Override
+    public boolean setPreviewSize(int width, int height) {
+        for (int[] size : mSizes) {
+            if (size[0] == width && size[1] == height) {
+                mPreviewWidth = width;
+                mPreviewHeight = height;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public int getPreviewWidth() {
+        return mPreviewWidth;
+    }
+
+    @Override
+    public int getPreviewHeight() {
+        return mPreviewHeight;
+    }
+
+    @Override
+    public List<int[]> getSupportFpsRange() {
+        List<int[]> list = new ArrayList<>();
+        list.add(new int[]{15000, 30000});
+        list.add(new int[]{30000, 30000});
+        list.add(new int[]{60000, 60000});
+        return list;
+    }
+
+    @Override
+    public void setPreviewFpsRange(int min, int max) {
+        mFps = Math.max(1, max / 1000);
+    }
+
+    @Override
+    public void setPreviewTexture(SurfaceTexture surfaceTexture) {
+        // no GL behind the fake camera
+    }
+
+    @Override
+    public void setFrameListener(FrameListener listener) {
+        mFrameListener = listener;
+    }
+
+    public long getFrameCount() {
+        synchronized (mLock) {
+            return mFrameCount;
+        }
+    }
+
+    public long getDroppedCount() {
+        synchronized (mLock) {
+            return mDroppedCount;
+        }
+    }
+
+    @Override
+    public void startPreview() {
+        if (mCameraId < 0) {
+            // like a real camera, no preview before open
+            return;
+        }
+        stopPreview();
+        synchronized (mLock) {
+            mFreeFrames.clear();
+            for (int i = 0; i < BUFFER_COUNT; i++) {
+                mFreeFrames.offerLast(createFrame(mPreviewWidth, mPreviewHeight));
+            }
+        }
+        mRunning = true;
+        final long intervalNs = 1000000000L / mFps;
+        mThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                produce(intervalNs);
+            }
+        }, TAG);
+        mThread.start();
+    }
+
+    @Override
+    public void stopPreview() {
+        if (mThread == null) {
+            return;
+        }
+        mRunning = false;
+        mThread.interrupt();
+        try {
+            mThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        mThread = null;
+    }
+
+    private void produce(long intervalNs) {
+        long next = System.nanoTime();
+        int index = 0;
+        while (mRunning) {
+            long now = System.nanoTime();
+            if (now < next) {
+                try {
+                    Thread.sleep((next - now) / 1000000, (int) ((next - now) % 1000000));
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+            next += intervalNs;
+
+            CameraFrame frame;
+            synchronized (mLock) {
+                frame = mFreeFrames.pollFirst();
+                if (frame == null) {
+                    mDroppedCount++;
+                } else {
+                    mFrameCount++;
+                }
+            }
+            if (frame == null) {
+                continue;
+            }
+            fill(frame, index++);
+            frame.setTimestamp(System.nanoTime());
+            frame.markInUse();
+            FrameListener listener = mFrameListener;
+            if (listener != null) {
+                listener.onFrame(frame);
+            } else {
+                frame.release();
+            }
+        }
+    }
+
+    private CameraFrame createFrame(int width, int height) {
+        int chromaWidth = (width + 1) / 2;
+        int chromaSize = chromaWidth * ((height + 1) / 2);
+        ByteBuffer data = ByteBuffer.allocateDirect(width * height + 2 * chromaSize);
+        CameraFrame frame = new CameraFrame(mFrameRecycler);
+        frame.setSize(width, height);
+        frame.setPlane(CameraFrame.PLANE_Y, slice(data, 0, width * height), width, 1);
+        frame.setPlane(CameraFrame.PLANE_U, slice(data, width * height, chromaSize), chromaWidth, 1);
+        frame.setPlane(CameraFrame.PLANE_V, slice(data, width * height + chromaSize, chromaSize), chromaWidth, 1);
+        return frame;
+    }
+
+    private static ByteBuffer slice(ByteBuffer data, int offset, int size) {
+        ByteBuffer duplicate = data.duplicate();
+        duplicate.position(offset);
+        duplicate.limit(offset + size);
+        return duplicate.slice();
+    }
+
+    private static void fill(CameraFrame frame, int index) {
+        int width = frame.getWidth();
+        int height = frame.getHeight();
+        ByteBuffer y = frame.getPlane(CameraFrame.PLANE_Y);
+        for (int row = 0; row < height; row++) {
+            for (int col = 0; col < width; col++) {
+                y.put(row * width + col, (byte) (row + col + index));
+            }
+        }
+        ByteBuffer u = frame.getPlane(CameraFrame.PLANE_U);
+        ByteBuffer v = frame.getPlane(CameraFrame.PLANE_V);
+        for (int i = 0; i < u.capacity(); i++) {
+            u.put(i, (byte) 96);
+            v.put(i, (byte) 160);
+        }
+    }
+
+    private final CameraFrame.Recycler mFrameRecycler = new CameraFrame.Recycler() {
+        @Override
+        public void recycle(CameraFrame frame) {
+            synchronized (mLock) {
+                if (frame.getWidth() == mPreviewWidth && frame.getHeight() == mPreviewHeight
+                        && mFreeFrames.size() < BUFFER_COUNT) {
+                    mFreeFrames.offerLast(frame);
+                }
+            }
+        }
+    };
+}
@@ -0,0 +1,58 @@
+package learnopengl.xiaobole.com.camera;
+
+/**
+ * A NV21 preview frame borrowed from the {@link PreviewFramePipeline} buffer ring.
+ *
+ * The data is only valid until {@link #release()} is called, after which the
+ * buffer is handed back to the camera.
+ */
+public class PreviewFrame {
+
+    private final PreviewFramePipeline mPipeline;
+    private final byte[] mData;
+    private final int mWidth;
+    private final int mHeight;
+    private long mTimestamp;
+    // delivered by the camera and not released yet, guarded by the pipeline lock
+    boolean mInFlight;
+
+    PreviewFrame(PreviewFramePipeline pipeline, byte[] data, int width, int height) {
+        mPipeline = pipeline;
+        mData = data;
+        mWidth = width;
+        mHeight = height;
+    }
+
+    public byte[] getData() {
+        return mData;
+    }
+
+    public int getWidth() {
+        return mWidth;
+    }
+
+    public int getHeight() {
+        return mHeight;
+    }
+
+    /**
+     * get the time the frame arrived
+     *
+     * @return the timestamp in nanoseconds, based on SystemClock.elapsedRealtimeNanos
+     */
+    public long getTimestamp() {
+        return mTimestamp;
+    }
+
+    void setTimestamp(long timestamp) {
+        mTimestamp = timestamp;
+    }
+
+    /**
+     * give the buffer back to the camera, the frame must not be used afterwards,
+     * releasing it again does nothing
+     */
+    public void release() {
+        mPipeline.recycle(this);
+    }
+}
@@ -0,0 +1,214 @@
+package learnopengl.xiaobole.com.camera;
+
+import android.graphics.ImageFormat;
+import android.hardware.Camera;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.util.ArrayDeque;
+
+/**
+ * Delivers NV21 preview bytes to a consumer without allocating per frame.
+ *
+ * A fixed ring of callback buffers is allocated for the preview size and handed to
+ * the camera. Filled buffers are queued for a dispatch thread and go back to the
+ * camera when the consumer releases them. If the consumer falls behind, the oldest
+ * queued frame is dropped and recycled so the camera never runs out of buffers.
+ */
+public class PreviewFramePipeline implements Camera.PreviewCallback {
+    private static final String TAG = "PreviewFramePipeline";
+
+    public static final int DEFAULT_BUFFER_COUNT = 4;
+    public static final int DEFAULT_MAX_PENDING = 2;
+
+    public interface FrameListener {
+        /**
+         * called on the dispatch thread, call {@link PreviewFrame#release()} when done
+         *
+         * @param frame the preview frame
+         */
+        void onPreviewFrame(PreviewFrame frame);
+    }
+
+    private final int mBufferCount;
+    private final int mMaxPending;
+    private final FrameListener mListener;
+
+    private final Object mLock = new Object();
+    private final ArrayDeque<PreviewFrame> mPendingFrames;
+    private PreviewFrame[] mFrames;
+    private boolean mRunning;
+    private Thread mDispatchThread;
+
+    private long mReceivedCount;
+    private long mDroppedCount;
+
+    public PreviewFramePipeline(FrameListener listener) {
+        this(listener, DEFAULT_BUFFER_COUNT, DEFAULT_MAX_PENDING);
+    }
+
+    /**
+     * @param listener the frame consumer
+     * @param bufferCount the number of callback buffers in the ring
+     * @param maxPending the max frames queued for the consumer before dropping the oldest,
+     *                   must be less than bufferCount so the camera keeps a buffer to fill
+     */
+    public PreviewFramePipeline(FrameListener listener, int bufferCount, int maxPending) {
+        if (maxPending <= 0 || maxPending >= bufferCount) {
+            throw new IllegalArgumentException("maxPending must be in [1, bufferCount)");
+        }
+        mListener = listener;
+        mBufferCount = bufferCount;
+        mMaxPending = maxPending;
+        mPendingFrames = new ArrayDeque<>(bufferCount);
+    }
+
+    /**
+     * allocate the buffer ring and register it with the opened camera,
+     * must be called before CameraDevice#startPreview
+     *
+     * @param width the preview width
+     * @param height the preview height
+     */
+    public void start(int width, int height) {
+        stop();
+        if (width <= 0 || height <= 0) {
+            Log.w(TAG, "invalid preview size " + width + "x" + height);
+            return;
+        }
+
+        // a fresh ring per camera session, frames still held by the consumer belong to the old one
+        int size = width * height * ImageFormat.getBitsPerPixel(ImageFormat.NV21) / 8;
+        PreviewFrame[] frames = new PreviewFrame[mBufferCount];
+        for (int i = 0; i < mBufferCount; i++) {
+            frames[i] = new PreviewFrame(this, new byte[size], width, height);
+        }
+        Log.i(TAG, "allocate " + mBufferCount + " buffers of " + size + " bytes");
+        synchronized (mLock) {
+            mFrames = frames;
+            mRunning = true;
+        }
+
+        CameraDevice.getInstance().setPreviewCallbackWithBuffer(this);
+        for (PreviewFrame frame : frames) {
+            CameraDevice.getInstance().addCallbackBuffer(frame.getData());
+        }
+
+        mDispatchThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                dispatchLoop();
+            }
+        }, TAG);
+        mDispatchThread.start();
+    }
+
+    public void stop() {
+        synchronized (mLock) {
+            if (!mRunning) {
+                return;
+            }
+            mRunning = false;
+            mPendingFrames.clear();
+            mLock.notifyAll();
+        }
+        CameraDevice.getInstance().setPreviewCallbackWithBuffer(null);
+        // a listener stopping the pipeline runs on the dispatch thread, which exits once it returns
+        if (Thread.currentThread() != mDispatchThread) {
+            try {
+                mDispatchThread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        mDispatchThread = null;
+        Log.i(TAG, "stopped, received = " + mReceivedCount + ", dropped = " + mDroppedCount);
+    }
+
+    public long getReceivedCount() {
+        synchronized (mLock) {
+            return mReceivedCount;
+        }
+    }
+
+    public long getDroppedCount() {
+        synchronized (mLock) {
+            return mDroppedCount;
+        }
+    }
+
+    @Override
+    public void onPreviewFrame(byte[] data, Camera camera) {
+        PreviewFrame dropped = null;
+        synchronized (mLock) {
+            PreviewFrame frame = findFrame(data);
+            if (!mRunning || frame == null) {
+                return;
+            }
+            frame.setTimestamp(SystemClock.elapsedRealtimeNanos());
+            frame.mInFlight = true;
+            mReceivedCount++;
+            if (mPendingFrames.size() >= mMaxPending) {
+                dropped = mPendingFrames.pollFirst();
+                mDroppedCount++;
+            }
+            mPendingFrames.offerLast(frame);
+            mLock.notifyAll();
+        }
+        if (dropped != null) {
+            recycle(dropped);
+        }
+    }
+
+    void recycle(PreviewFrame frame) {
+        synchronized (mLock) {
+            if (!frame.mInFlight) {
+                // released twice, the camera already has the buffer
+                Log.w(TAG, "frame released twice");
+                return;
+            }
+            frame.mInFlight = false;
+            if (!mRunning || findFrame(frame.getData()) != frame) {
+                // the ring was stopped or replaced, the camera no longer expects this buffer
+                return;
+            }
+        }
+        CameraDevice.getInstance().addCallbackBuffer(frame.getData());
+    }
+
+    private PreviewFrame findFrame(byte[] data) {
+        if (mFrames == null) {
+            return null;
+        }
+        for (PreviewFrame frame : mFrames) {
+            if (frame.getData() == data) {
+                return frame;
+            }
+        }
+        return null;
+    }
+
+    private void dispatchLoop() {
+        while (true) {
+            PreviewFrame frame;
+            synchronized (mLock) {
+                while (mRunning && mPendingFrames.isEmpty()) {
+                    try {
+                        mLock.wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                if (!mRunning) {
+                    return;
+                }
+                frame = mPendingFrames.pollFirst();
+            }
+            if (mListener != null) {
+                mListener.onPreviewFrame(frame);
+            } else {
+                frame.release();
+            }
+        }
+    }
+}
@@ -4,15 +4,18 @@ import android.graphics.Bitmap;
 import android.opengl.GLES20;
 import android.util.Log;
 
-import learnopengl.xiaobole.com.utils.GLUtils;
 import learnopengl.xiaobole.com.utils.ImageMatrix;
+import learnopengl.xiaobole.com.utils.ProgramCache;
+import learnopengl.xiaobole.com.utils.TextureAtlas;
+import learnopengl.xiaobole.com.utils.TextureCache;
 
 public class BitmapDrawer extends TextureDrawer {
     private static final String TAG = "BitmapDrawer";
 
     private Bitmap mBitmap;
+    private TextureAtlas mAtlas;
+    private TextureAtlas.Region mRegion;
 
-    private int mTexId = -1;
     private ImageMatrix mImageMatrix = new ImageMatrix();
 
     private static final String VERTEX_SHADER =
@@ -43,13 +46,26 @@ public class BitmapDrawer extends TextureDrawer {
 
     public BitmapDrawer setBitmap(Bitmap bitmap) {
         mBitmap = bitmap;
+        removeRegion();
+        return this;
+    }
+
+    /**
+     * draw the bitmap from a shared atlas page instead of its own texture
+     *
+     * @param atlas the atlas, null to use a texture of its own
+     * @return the BitmapDrawer object
+     */
+    public BitmapDrawer setAtlas(TextureAtlas atlas) {
+        removeRegion();
+        mAtlas = atlas;
         return this;
     }
 
     @Override
-    public void init() {
-        super.init();
-        mTexId = GLUtils.createTexture();
+    public void release() {
+        removeRegion();
+        super.release();
     }
 
     @Override
@@ -68,15 +84,32 @@ public class BitmapDrawer extends TextureDrawer {
             Log.e(TAG, "must setBitmap first !");
             return;
         }
-        GLUtils.drawBitmap(mTexId, mBitmap);
-        super.draw(mTexId, mImageMatrix.getMVPMatrix());
+        if (mAtlas != null) {
+            if (mRegion == null || !mRegion.isValid()) {
+                mRegion = mAtlas.add(mBitmap);
+            }
+            if (mRegion != null) {
+                // the region may move when the atlas is defragmented, read it every frame
+                super.draw(mRegion.getTexId(), mImageMatrix.getMVPMatrix(), mRegion.getTexMatrix());
+                return;
+            }
+        }
+        // uploaded on the first frame only, unless the bitmap changes or is evicted
+        int texId = TextureCache.getInstance().getTexture(mBitmap);
+        super.draw(texId, mImageMatrix.getMVPMatrix());
+    }
+
+    private void removeRegion() {
+        if (mRegion != null) {
+            mAtlas.remove(mRegion);
+            mRegion = null;
+        }
     }
 
     @Override
     boolean setupShaders() {
-        int vertexShaderId = GLUtils.compileVertexShader(VERTEX_SHADER);
-        int fragmentShaderId = GLUtils.compileFragmentShader(FRAGMENT_SHADER);
-        mProgramId = GLUtils.linkProgram(vertexShaderId, fragmentShaderId);
+        mProgramId = ProgramCache.getInstance().acquire(VERTEX_SHADER, FRAGMENT_SHADER);
+        mProgramGeneration = ProgramCache.getInstance().getGeneration();
         return mProgramId != 0;
     }
 
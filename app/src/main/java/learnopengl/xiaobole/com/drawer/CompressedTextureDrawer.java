@@ -0,0 +1,114 @@
+package learnopengl.xiaobole.com.drawer;
+
+import android.content.Context;
+import android.opengl.GLES20;
+import android.util.Log;
+
+import learnopengl.xiaobole.com.utils.CompressedTextureLoader;
+import learnopengl.xiaobole.com.utils.GLStateCache;
+import learnopengl.xiaobole.com.utils.ImageMatrix;
+import learnopengl.xiaobole.com.utils.ProgramCache;
+
+/**
+ * Draws an image loaded by {@link CompressedTextureLoader}, an ETC2 or ASTC texture when the
+ * asset has a variant the device supports, the decoded drawable otherwise.
+ */
+public class CompressedTextureDrawer extends TextureDrawer {
+    private static final String TAG = "CompressedTextureDrawer";
+
+    private static final String VERTEX_SHADER =
+            "attribute vec4 aPosition;\n" +
+                    "attribute vec4 aTexCoord;\n" +
+                    "varying vec2 vTexCoord;\n" +
+                    "uniform mat4 uMVPMatrix;\n" +
+                    "uniform mat4 uTexMatrix;" +
+                    "void main() {\n" +
+                    "   gl_Position = uMVPMatrix * aPosition;\n" +
+                    "   vTexCoord = (uTexMatrix * aTexCoord).xy;\n" +
+                    "}";
+
+    private static final String FRAGMENT_SHADER =
+            "precision mediump float;\n" +
+                    "varying vec2 vTexCoord;\n" +
+                    "uniform sampler2D sTexture;\n" +
+                    "void main() {\n" +
+                    "   gl_FragColor = texture2D(sTexture, vTexCoord);\n" +
+                    "}";
+
+    // ktx images are stored top row first, like bitmaps
+    private static final float[] VERTICES = {
+            -1.0f, -1.0f, 0.0f, 0.0f, 1.0f, // bottom, left
+            1.0f, 1.0f, 0.0f, 1.0f, 0.0f,   // top, right
+            -1.0f, 1.0f, 0.0f, 0.0f, 0.0f,  // top, left
+            1.0f, -1.0f, 0.0f, 1.0f, 1.0f   // bottom, right
+    };
+
+    private final CompressedTextureLoader mLoader;
+    private final String mAssetName;
+    private final int mFallbackResId;
+    private CompressedTextureLoader.Texture mTexture;
+    private ImageMatrix mImageMatrix = new ImageMatrix();
+
+    /**
+     * @param assetName the asset path without the variant suffix
+     * @param fallbackResId the drawable used without a compressed variant
+     */
+    public CompressedTextureDrawer(Context context, String assetName, int fallbackResId) {
+        mLoader = new CompressedTextureLoader(context);
+        mAssetName = assetName;
+        mFallbackResId = fallbackResId;
+    }
+
+    @Override
+    public void init() {
+        super.init();
+        mTexture = mLoader.load(mAssetName, mFallbackResId);
+    }
+
+    @Override
+    public void release() {
+        if (mTexture != null) {
+            GLStateCache.getInstance().deleteTextures(1, new int[]{mTexture.getTexId()}, 0);
+            mTexture = null;
+        }
+        super.release();
+    }
+
+    @Override
+    public void setViewPort(int x, int y, int width, int height) {
+        super.setViewPort(x, y, width, height);
+        if (mTexture != null) {
+            mImageMatrix.setViewport(mTexture.getWidth(), mTexture.getHeight(), width, height);
+        }
+    }
+
+    @Override
+    public void draw() {
+        if (mTexture == null) {
+            Log.e(TAG, "no texture loaded !");
+            return;
+        }
+        super.draw(mTexture.getTexId(), mImageMatrix.getMVPMatrix());
+    }
+
+    @Override
+    boolean setupShaders() {
+        mProgramId = ProgramCache.getInstance().acquire(VERTEX_SHADER, FRAGMENT_SHADER);
+        mProgramGeneration = ProgramCache.getInstance().getGeneration();
+        return mProgramId != 0;
+    }
+
+    @Override
+    void setupLocations() {
+        mPositionLocation = GLES20.glGetAttribLocation(mProgramId, "aPosition");
+        mTexCoordLocation = GLES20.glGetAttribLocation(mProgramId, "aTexCoord");
+        mMVPMatrixLocation = GLES20.glGetUniformLocation(mProgramId, "uMVPMatrix");
+        mTexMatrixLocation = GLES20.glGetUniformLocation(mProgramId, "uTexMatrix");
+        mSamplerLocation = GLES20.glGetUniformLocation(mProgramId, "sTexture");
+    }
+
+    @Override
+    float[] getVertices() {
+        return VERTICES;
+    }
+}
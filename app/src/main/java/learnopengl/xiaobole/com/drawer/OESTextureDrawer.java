@@ -1,8 +1,9 @@
 package learnopengl.xiaobole.com.drawer;
 
+import android.opengl.GLES11Ext;
 import android.opengl.GLES20;
 
-import learnopengl.xiaobole.com.utils.GLUtils;
+import learnopengl.xiaobole.com.utils.ProgramCache;
 
 public class OESTextureDrawer extends TextureDrawer {
 
@@ -40,9 +41,8 @@ public class OESTextureDrawer extends TextureDrawer {
 
     @Override
     boolean setupShaders() {
-        int vertexShader = GLUtils.compileVertexShader(VERTEX_SHADER);
-        int fragmentShader = GLUtils.compileFragmentShader(FRAGMENT_SHADER);
-        mProgramId = GLUtils.linkProgram(vertexShader, fragmentShader);
+        mProgramId = ProgramCache.getInstance().acquire(VERTEX_SHADER, FRAGMENT_SHADER);
+        mProgramGeneration = ProgramCache.getInstance().getGeneration();
         return mProgramId != 0;
     }
 
@@ -59,4 +59,9 @@ public class OESTextureDrawer extends TextureDrawer {
     float[] getVertices() {
         return VERTICES;
     }
+
+    @Override
+    int getTextureTarget() {
+        return GLES11Ext.GL_TEXTURE_EXTERNAL_OES;
+    }
 }
@@ -0,0 +1,249 @@
+package learnopengl.xiaobole.com.drawer;
+
+import android.opengl.GLES20;
+import android.opengl.GLES30;
+import android.util.Log;
+
+import java.nio.ByteBuffer;
+
+import learnopengl.xiaobole.com.utils.GLUtils;
+import learnopengl.xiaobole.com.utils.GLStateCache;
+import learnopengl.xiaobole.com.utils.GeometryCache;
+import learnopengl.xiaobole.com.utils.ImageMatrix;
+import learnopengl.xiaobole.com.utils.PlaneTextureUploader;
+import learnopengl.xiaobole.com.utils.ProgramCache;
+
+/**
+ * Draws NV21 / NV12 frames by sampling the Y plane and the interleaved chroma plane directly,
+ * so camera data needs no de-interleave pass on the CPU.
+ */
+public class SemiPlanarYUVDrawer implements IDrawer {
+    private static final String TAG = "SemiPlanarYUVDrawer";
+
+    private static final int POSITION_COMPONENT_COUNT = 3;
+    private static final int TEXCOORD_COMPONENT_COUNT = 2;
+
+    private int mPositionLocation;
+    private int mTexCoordinateLocation;
+    private int mMVPMatrixLocation;
+    private int mProgramId;
+    private int mProgramGeneration;
+
+    private GeometryCache.Mesh mMesh;
+    private ImageMatrix mImageMatrix = new ImageMatrix();
+
+    private final PlaneTextureUploader mUploader = new PlaneTextureUploader(2);
+    private boolean mUsePBO = true;
+    private boolean mFrameDirty;
+
+    private final boolean mVFirst;
+    private final ByteBuffer[] mFrame = new ByteBuffer[2];
+    private boolean mMatrixDirty;
+    private int mViewWidth;
+    private int mViewHeight;
+
+    private int mFrameWidth;
+    private int mFrameHeight;
+
+    private static final String VERTEX_SHADER =
+            "attribute vec4 aPosition;\n" +
+                    "attribute vec2 aTexCoordinate;\n" +
+                    "varying vec2 vTexCoordinate;\n" +
+                    "uniform mat4 uMVPMatrix;\n" +
+                    "void main() {\n" +
+                    "   vTexCoordinate = aTexCoordinate;\n" +
+                    "   gl_Position = uMVPMatrix * aPosition;\n" +
+                    "}";
+
+    /**
+     * 色度平面每个像素两个字节，GL_LUMINANCE_ALPHA 纹理中分别位于 .r 和 .a，
+     * GL_RG8 纹理中分别位于 .r 和 .g，NV21 为 VU 顺序，NV12 为 UV 顺序
+     */
+    private static String getFragmentShader(String uChannel, String vChannel) {
+        return "precision mediump float;\n" +
+                "varying vec2 vTexCoordinate;\n" +
+                "uniform sampler2D yTexture;\n" +
+                "uniform sampler2D uvTexture;\n" +
+                "void main() {\n" +
+                "   float y = texture2D(yTexture, vTexCoordinate).r;\n" +
+                "   vec4 uv = texture2D(uvTexture, vTexCoordinate);\n" +
+                "   float u = uv." + uChannel + " - 0.5;\n" +
+                "   float v = uv." + vChannel + " - 0.5;\n" +
+                "   gl_FragColor = vec4(y + 1.403 * v, " +
+                "                       y - 0.344 * u - 0.714 * v, " +
+                "                       y + 1.77 * u, 1);\n" +
+                "}";
+    }
+
+    private static final float[] VERTICES = {
+            -1.0f, -1.0f, 0.0f, 0.0f, 1.0f, // bottom, left
+            1.0f, 1.0f, 0.0f, 1.0f, 0.0f,   // top, right
+            -1.0f, 1.0f, 0.0f, 0.0f, 0.0f,  // top, left
+            1.0f, -1.0f, 0.0f, 1.0f, 1.0f   // bottom, right
+    };
+
+    private static final short[] INDICES = {
+            0, 1, 2,
+            0, 3, 1
+    };
+
+    /**
+     * @param vFirst true for NV21 (VUVU...), false for NV12 (UVUV...)
+     */
+    public SemiPlanarYUVDrawer(boolean vFirst) {
+        mVFirst = vFirst;
+    }
+
+    /**
+     * set a tightly packed frame, the array is read when the frame is drawn
+     * so it must not be modified before that
+     *
+     * @param data the NV21 or NV12 frame
+     * @param width the frame width
+     * @param height the frame height
+     * @return the SemiPlanarYUVDrawer object
+     */
+    public SemiPlanarYUVDrawer setFrame(byte[] data, int width, int height) {
+        if (data == null) {
+            return null;
+        }
+        return setFrame(ByteBuffer.wrap(data), width, height);
+    }
+
+    /**
+     * set a tightly packed frame held in a buffer, e.g. a camera callback buffer. Nothing is
+     * copied, the planes are sliced from it and read when the frame is drawn, so the buffer
+     * must stay valid and unchanged until then; call it on the GL thread.
+     *
+     * @param data the NV21 or NV12 frame, read from its position
+     * @param width the frame width
+     * @param height the frame height
+     * @return the SemiPlanarYUVDrawer object
+     */
+    public SemiPlanarYUVDrawer setFrame(ByteBuffer data, int width, int height) {
+        int ySize = width * height;
+        int uvSize = 2 * ((width + 1) / 2) * ((height + 1) / 2);
+        if (data == null || width <= 0 || height <= 0 || data.remaining() < ySize + uvSize) {
+            Log.e(TAG, "invalid frame " + width + "x" + height);
+            return null;
+        }
+        mFrame[0] = slice(data, 0, ySize);
+        mFrame[1] = slice(data, ySize, uvSize);
+        if (width != mFrameWidth || height != mFrameHeight) {
+            mFrameWidth = width;
+            mFrameHeight = height;
+            mMatrixDirty = true;
+        }
+        mFrameDirty = true;
+        return this;
+    }
+
+    private static ByteBuffer slice(ByteBuffer buffer, int offset, int length) {
+        ByteBuffer slice = buffer.duplicate();
+        int start = buffer.position() + offset;
+        slice.limit(start + length).position(start);
+        return slice.slice();
+    }
+
+    /**
+     * stream frames through GLES3 pixel unpack buffers, takes effect on init; the copy of a
+     * frame overlaps the transfer of the previous one, so the drawn frame lags one behind
+     *
+     * @param enabled true to use PBO when the context supports it
+     * @return the SemiPlanarYUVDrawer object
+     */
+    public SemiPlanarYUVDrawer setPBOEnabled(boolean enabled) {
+        mUsePBO = enabled;
+        return this;
+    }
+
+    @Override
+    public void init() {
+        boolean useRG = GLUtils.isGLES30Supported();
+        mUploader.setPlaneFormat(0, GLES20.GL_LUMINANCE, GLES20.GL_LUMINANCE, 1, 1);
+        if (useRG) {
+            mUploader.setPlaneFormat(1, GLES30.GL_RG8, GLES30.GL_RG, 2, 2);
+        } else {
+            mUploader.setPlaneFormat(1, GLES20.GL_LUMINANCE_ALPHA, GLES20.GL_LUMINANCE_ALPHA, 2, 2);
+        }
+        String secondChannel = useRG ? "g" : "a";
+        setupShaders(mVFirst ? secondChannel : "r", mVFirst ? "r" : secondChannel);
+        setupLocations();
+        setupBuffers();
+        generateTextures();
+    }
+
+    @Override
+    public void release() {
+        if (mMesh != null) {
+            GeometryCache.getInstance().release(mMesh);
+            mMesh = null;
+        }
+        mUploader.release();
+        if (mProgramId != 0) {
+            ProgramCache.getInstance().release(mProgramId, mProgramGeneration);
+            mProgramId = 0;
+        }
+    }
+
+    @Override
+    public void setViewPort(int x, int y, int width, int height) {
+        GLES20.glViewport(x, y, width, height);
+        mViewWidth = width;
+        mViewHeight = height;
+        mMatrixDirty = true;
+    }
+
+    @Override
+    public void draw() {
+        if (mProgramId == 0 || mFrame[0] == null) {
+            return;
+        }
+        GLStateCache.getInstance().useProgram(mProgramId);
+        GLES20.glClear(GLES20.GL_COLOR_BUFFER_BIT);
+
+        // the frame size may change at any frame, e.g. a camera resolution switch
+        if (mMatrixDirty && mViewWidth > 0 && mViewHeight > 0) {
+            mImageMatrix.setViewport(mFrameWidth, mFrameHeight, mViewWidth, mViewHeight);
+            mMatrixDirty = false;
+        }
+        GLES20.glUniformMatrix4fv(mMVPMatrixLocation, 1, false, mImageMatrix.getMVPMatrix(), 0);
+
+        if (mFrameDirty) {
+            mUploader.upload(mFrame, mFrameWidth, mFrameHeight);
+            mFrameDirty = false;
+        }
+        mUploader.bind(GLES20.GL_TEXTURE0);
+
+        GLStateCache.getInstance().bindVertexArray(mMesh.getVAOId());
+        GLES20.glDrawElements(GLES20.GL_TRIANGLES, mMesh.getIndexCount(), GLES20.GL_UNSIGNED_SHORT, 0);
+    }
+
+    private boolean setupShaders(String uChannel, String vChannel) {
+        mProgramId = ProgramCache.getInstance().acquire(VERTEX_SHADER, getFragmentShader(uChannel, vChannel));
+        mProgramGeneration = ProgramCache.getInstance().getGeneration();
+        return mProgramId != 0;
+    }
+
+    private void setupLocations() {
+        mPositionLocation = GLES20.glGetAttribLocation(mProgramId, "aPosition");
+        mTexCoordinateLocation = GLES20.glGetAttribLocation(mProgramId, "aTexCoordinate");
+        mMVPMatrixLocation = GLES20.glGetUniformLocation(mProgramId, "uMVPMatrix");
+    }
+
+    private void setupBuffers() {
+        GeometryCache.VertexLayout layout = new GeometryCache.VertexLayout()
+                .addAttribute(mPositionLocation, POSITION_COMPONENT_COUNT)
+                .addAttribute(mTexCoordinateLocation, TEXCOORD_COMPONENT_COUNT);
+        mMesh = GeometryCache.getInstance().acquire(layout, VERTICES, INDICES);
+    }
+
+    private void generateTextures() {
+        mUploader.init(mUsePBO);
+
+        GLStateCache.getInstance().useProgram(mProgramId);
+        GLES20.glUniform1i(GLES20.glGetUniformLocation(mProgramId, "yTexture"), 0);
+        GLES20.glUniform1i(GLES20.glGetUniformLocation(mProgramId, "uvTexture"), 1);
+        mFrameDirty = true;
+    }
+}
@@ -0,0 +1,588 @@
+package learnopengl.xiaobole.com.drawer;
+
+import android.opengl.GLES20;
+import android.opengl.GLES30;
+import android.opengl.Matrix;
+import android.util.Log;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+
+import learnopengl.xiaobole.com.utils.GLStateCache;
+import learnopengl.xiaobole.com.utils.GLUtils;
+import learnopengl.xiaobole.com.utils.ProgramCache;
+import learnopengl.xiaobole.com.utils.TextureAtlas;
+
+/**
+ * Draws many textured quads, e.g. stickers, markers and labels, with one draw call per texture.
+ *
+ * Sprites are queued with add() and drawn by {@link #draw()}, sorted by texture so each
+ * texture is one run. The sprites of a draw are written to a dynamic vertex buffer in one
+ * go: on GLES3 into a ring buffer mapped unsynchronized, orphaned when it wraps, on GLES2
+ * by orphaning the whole buffer every draw. Quads share one static index buffer.
+ *
+ * On GLES3 the instanced mode uploads one record per quad instead of four vertices, the
+ * corners come from a static buffer and each run is one glDrawArraysInstanced.
+ *
+ * Coordinates are in pixels with the origin at the top left of the viewport, unless
+ * {@link #setMVPMatrix(float[])} is used. Textures are expected premultiplied, as uploaded
+ * from a Bitmap. Must be used on the GL thread.
+ */
+public class SpriteBatch implements IDrawer {
+    private static final String TAG = "SpriteBatch";
+
+    // the shared index buffer holds unsigned short indices
+    public static final int MAX_CAPACITY = 65536 / 4;
+
+    private static final int VERTICES_PER_SPRITE = 4;
+    private static final int INDICES_PER_SPRITE = 6;
+    // x, y, u, v, rgba
+    private static final int VERTEX_WORDS = 5;
+    private static final int SPRITE_WORDS = VERTICES_PER_SPRITE * VERTEX_WORDS;
+    // x, y, width, height, u0, v0, u1, v1, rgba
+    private static final int INSTANCE_WORDS = 9;
+    private static final int RECT_FLOATS = 8;
+    private static final int BYTES_PER_WORD = 4;
+    // the GLES3 ring holds this many full batches before it is orphaned
+    private static final int RING_BATCHES = 3;
+
+    private static final float[] CORNERS = {
+            0.0f, 0.0f,
+            1.0f, 0.0f,
+            0.0f, 1.0f,
+            1.0f, 1.0f
+    };
+
+    private static final String VERTEX_SHADER =
+            "attribute vec4 aPosition;\n" +
+                    "attribute vec2 aTexCoord;\n" +
+                    "attribute vec4 aColor;\n" +
+                    "uniform mat4 uMVPMatrix;\n" +
+                    "varying vec2 vTexCoord;\n" +
+                    "varying vec4 vColor;\n" +
+                    "void main() {\n" +
+                    "   gl_Position = uMVPMatrix * aPosition;\n" +
+                    "   vTexCoord = aTexCoord;\n" +
+                    "   vColor = aColor;\n" +
+                    "}";
+
+    private static final String INSTANCED_VERTEX_SHADER =
+            "attribute vec2 aCorner;\n" +
+                    "attribute vec4 aRect;\n" +
+                    "attribute vec4 aTexRect;\n" +
+                    "attribute vec4 aColor;\n" +
+                    "uniform mat4 uMVPMatrix;\n" +
+                    "varying vec2 vTexCoord;\n" +
+                    "varying vec4 vColor;\n" +
+                    "void main() {\n" +
+                    "   gl_Position = uMVPMatrix * vec4(aRect.xy + aCorner * aRect.zw, 0.0, 1.0);\n" +
+                    "   vTexCoord = mix(aTexRect.xy, aTexRect.zw, aCorner);\n" +
+                    "   vColor = aColor;\n" +
+                    "}";
+
+    private static final String FRAGMENT_SHADER =
+            "precision mediump float;\n" +
+                    "varying vec2 vTexCoord;\n" +
+                    "varying vec4 vColor;\n" +
+                    "uniform sampler2D sTexture;\n" +
+                    "void main() {\n" +
+                    "   gl_FragColor = texture2D(sTexture, vTexCoord) * vColor;\n" +
+                    "}";
+
+    private final GLStateCache mStateCache = GLStateCache.getInstance();
+    private final int mCapacity;
+    private boolean mInstancedEnabled = true;
+    private boolean mSortByTexture = true;
+
+    // the queued sprites
+    private final int[] mTextures;
+    private final float[] mRects;
+    private final int[] mColors;
+    private final long[] mOrder;
+    private final int[] mStaging;
+    private int mCount;
+
+    private boolean mGLES3;
+    private boolean mInstanced;
+    private int mProgramId;
+    private int mProgramGeneration;
+    private int mPositionLocation;
+    private int mTexCoordLocation;
+    private int mCornerLocation;
+    private int mRectLocation;
+    private int mTexRectLocation;
+    private int mColorLocation;
+    private int mMVPMatrixLocation;
+
+    private int mVAOId;
+    private int mVertexBufferId;
+    private int mIndexBufferId;
+    private int mCornerBufferId;
+    private int mBufferSize;
+    private int mRingOffset;
+    private IntBuffer mClientBuffer;
+
+    private final float[] mMVPMatrix = new float[16];
+
+    private int mDrawCallCount;
+    private int mSpriteCount;
+    private long mOrphanCount;
+
+    public SpriteBatch() {
+        this(1024);
+    }
+
+    /**
+     * @param capacity the sprites drawn at once, the queue is drawn early when it is full
+     */
+    public SpriteBatch(int capacity) {
+        if (capacity <= 0 || capacity > MAX_CAPACITY) {
+            throw new IllegalArgumentException("capacity must be in 1 ~ " + MAX_CAPACITY);
+        }
+        mCapacity = capacity;
+        mTextures = new int[capacity];
+        mRects = new float[capacity * RECT_FLOATS];
+        mColors = new int[capacity];
+        mOrder = new long[capacity];
+        mStaging = new int[capacity * SPRITE_WORDS];
+        Matrix.setIdentityM(mMVPMatrix, 0);
+    }
+
+    /**
+     * use the instanced mode when GLES3 is available, takes effect on the next {@link #init()}
+     *
+     * @return the SpriteBatch object
+     */
+    public SpriteBatch setInstancedEnabled(boolean enabled) {
+        mInstancedEnabled = enabled;
+        return this;
+    }
+
+    /**
+     * sort the sprites by texture before drawing, fewer draw calls but sprites of
+     * different textures no longer overlap in the order they were added
+     *
+     * @return the SpriteBatch object
+     */
+    public SpriteBatch setSortByTexture(boolean sort) {
+        mSortByTexture = sort;
+        return this;
+    }
+
+    /**
+     * set the matrix from sprite coordinates to clip space, replaces the pixel projection
+     * set by {@link #setViewPort(int, int, int, int)}
+     *
+     * @return the SpriteBatch object
+     */
+    public SpriteBatch setMVPMatrix(float[] mvpMatrix) {
+        System.arraycopy(mvpMatrix, 0, mMVPMatrix, 0, 16);
+        return this;
+    }
+
+    public boolean isInstanced() {
+        return mInstanced;
+    }
+
+    @Override
+    public void init() {
+        mGLES3 = GLUtils.isGLES30Supported();
+        mInstanced = mInstancedEnabled && mGLES3;
+        mCount = 0;
+        mRingOffset = 0;
+        if (!setupShaders()) {
+            Log.e(TAG, "setup shaders failed");
+            return;
+        }
+        setupLocations();
+        setupBuffers();
+        Log.i(TAG, "init capacity = " + mCapacity + ", gles3 = " + mGLES3 + ", instanced = " + mInstanced);
+    }
+
+    @Override
+    public void release() {
+        int[] buffers = {mVertexBufferId, mIndexBufferId, mCornerBufferId};
+        for (int buffer : buffers) {
+            if (buffer != 0) {
+                mStateCache.deleteBuffers(1, new int[]{buffer}, 0);
+            }
+        }
+        mVertexBufferId = 0;
+        mIndexBufferId = 0;
+        mCornerBufferId = 0;
+        if (mVAOId != 0) {
+            mStateCache.deleteVertexArrays(1, new int[]{mVAOId}, 0);
+            mVAOId = 0;
+        }
+        if (mProgramId != 0) {
+            ProgramCache.getInstance().release(mProgramId, mProgramGeneration);
+            mProgramId = 0;
+        }
+        mClientBuffer = null;
+        mCount = 0;
+    }
+
+    /**
+     * set the viewport and a projection in pixels, origin at the top left
+     */
+    @Override
+    public void setViewPort(int x, int y, int width, int height) {
+        GLES20.glViewport(x, y, width, height);
+        Matrix.orthoM(mMVPMatrix, 0, 0, width, height, 0, -1, 1);
+    }
+
+    /**
+     * queue a sprite showing the whole texture
+     */
+    public void add(int texId, float x, float y, float width, float height) {
+        add(texId, x, y, width, height, 0.0f, 0.0f, 1.0f, 1.0f, 0xffffffff);
+    }
+
+    /**
+     * queue a sprite showing an atlas region, sprites of one atlas page are one run
+     */
+    public void add(TextureAtlas.Region region, float x, float y, float width, float height, int color) {
+        add(region.getTexId(), x, y, width, height,
+                region.getU0(), region.getV0(), region.getU1(), region.getV1(), color);
+    }
+
+    /**
+     * queue a sprite
+     *
+     * @param texId the GL_TEXTURE_2D texture
+     * @param x the left
+     * @param y the top
+     * @param width the width
+     * @param height the height
+     * @param u0 the texture coordinate of the left
+     * @param v0 the texture coordinate of the top
+     * @param u1 the texture coordinate of the right
+     * @param v1 the texture coordinate of the bottom
+     * @param color the ARGB color multiplied with the texture, e.g. 0xffffffff
+     */
+    public void add(int texId, float x, float y, float width, float height,
+                    float u0, float v0, float u1, float v1, int color) {
+        if (mCount == mCapacity) {
+            draw();
+        }
+        int index = mCount++;
+        mTextures[index] = texId;
+        int offset = index * RECT_FLOATS;
+        mRects[offset] = x;
+        mRects[offset + 1] = y;
+        mRects[offset + 2] = width;
+        mRects[offset + 3] = height;
+        mRects[offset + 4] = u0;
+        mRects[offset + 5] = v0;
+        mRects[offset + 6] = u1;
+        mRects[offset + 7] = v1;
+        mColors[index] = packColor(color);
+    }
+
+    public int getQueuedCount() {
+        return mCount;
+    }
+
+    /**
+     * @return the draw calls issued by the last {@link #draw()}
+     */
+    public int getDrawCallCount() {
+        return mDrawCallCount;
+    }
+
+    /**
+     * @return the sprites drawn by the last {@link #draw()}
+     */
+    public int getSpriteCount() {
+        return mSpriteCount;
+    }
+
+    /**
+     * @return the times the GLES3 ring wrapped and was orphaned
+     */
+    public long getOrphanCount() {
+        return mOrphanCount;
+    }
+
+    /**
+     * draw and clear the queued sprites, blended over the current framebuffer
+     */
+    @Override
+    public void draw() {
+        int count = mCount;
+        mCount = 0;
+        mDrawCallCount = 0;
+        mSpriteCount = 0;
+        if (mProgramId == 0 || count == 0) {
+            return;
+        }
+
+        // the index lives in the low bits, so equal textures keep their order
+        for (int i = 0; i < count; i++) {
+            mOrder[i] = mSortByTexture ? ((long) mTextures[i] << 32) | i : i;
+        }
+        if (mSortByTexture) {
+            Arrays.sort(mOrder, 0, count);
+        }
+
+        int words = mInstanced ? fillInstances(count) : fillVertices(count);
+        int offset = upload(words);
+        if (offset < 0) {
+            Log.e(TAG, "map vertex buffer failed");
+            return;
+        }
+
+        mStateCache.useProgram(mProgramId);
+        GLES20.glUniformMatrix4fv(mMVPMatrixLocation, 1, false, mMVPMatrix, 0);
+        mStateCache.activeTexture(GLES20.GL_TEXTURE0);
+        GLES20.glEnable(GLES20.GL_BLEND);
+        GLES20.glBlendFunc(GLES20.GL_ONE, GLES20.GL_ONE_MINUS_SRC_ALPHA);
+
+        if (mInstanced) {
+            drawInstanced(count, offset);
+        } else {
+            drawElements(count, offset);
+        }
+
+        GLES20.glDisable(GLES20.GL_BLEND);
+        mSpriteCount = count;
+    }
+
+    private void drawElements(int count, int offset) {
+        int stride = VERTEX_WORDS * BYTES_PER_WORD;
+        if (mGLES3) {
+            mStateCache.bindVertexArray(mVAOId);
+        } else {
+            mStateCache.bindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, mIndexBufferId);
+            GLES20.glEnableVertexAttribArray(mPositionLocation);
+            GLES20.glEnableVertexAttribArray(mTexCoordLocation);
+            GLES20.glEnableVertexAttribArray(mColorLocation);
+        }
+        // the indices of a run are relative to the first sprite of the draw
+        mStateCache.bindBuffer(GLES20.GL_ARRAY_BUFFER, mVertexBufferId);
+        GLES20.glVertexAttribPointer(mPositionLocation, 2, GLES20.GL_FLOAT, false, stride, offset);
+        GLES20.glVertexAttribPointer(mTexCoordLocation, 2, GLES20.GL_FLOAT, false, stride, offset + 8);
+        GLES20.glVertexAttribPointer(mColorLocation, 4, GLES20.GL_UNSIGNED_BYTE, true, stride, offset + 16);
+
+        int start = 0;
+        while (start < count) {
+            int end = findRunEnd(start, count);
+            mStateCache.bindTexture(GLES20.GL_TEXTURE_2D, mTextures[(int) mOrder[start]]);
+            GLES20.glDrawElements(GLES20.GL_TRIANGLES, (end - start) * INDICES_PER_SPRITE,
+                    GLES20.GL_UNSIGNED_SHORT, start * INDICES_PER_SPRITE * 2);
+            mDrawCallCount++;
+            start = end;
+        }
+
+        if (!mGLES3) {
+            GLES20.glDisableVertexAttribArray(mPositionLocation);
+            GLES20.glDisableVertexAttribArray(mTexCoordLocation);
+            GLES20.glDisableVertexAttribArray(mColorLocation);
+        }
+    }
+
+    private void drawInstanced(int count, int offset) {
+        int stride = INSTANCE_WORDS * BYTES_PER_WORD;
+        mStateCache.bindVertexArray(mVAOId);
+        mStateCache.bindBuffer(GLES20.GL_ARRAY_BUFFER, mVertexBufferId);
+        int start = 0;
+        while (start < count) {
+            int end = findRunEnd(start, count);
+            // GLES 3.0 has no base instance, move the instance attributes to the run instead
+            int base = offset + start * stride;
+            GLES20.glVertexAttribPointer(mRectLocation, 4, GLES20.GL_FLOAT, false, stride, base);
+            GLES20.glVertexAttribPointer(mTexRectLocation, 4, GLES20.GL_FLOAT, false, stride, base + 16);
+            GLES20.glVertexAttribPointer(mColorLocation, 4, GLES20.GL_UNSIGNED_BYTE, true, stride, base + 32);
+            mStateCache.bindTexture(GLES20.GL_TEXTURE_2D, mTextures[(int) mOrder[start]]);
+            GLES30.glDrawArraysInstanced(GLES20.GL_TRIANGLE_STRIP, 0, VERTICES_PER_SPRITE, end - start);
+            mDrawCallCount++;
+            start = end;
+        }
+    }
+
+    private int findRunEnd(int start, int count) {
+        int texId = mTextures[(int) mOrder[start]];
+        int end = start + 1;
+        while (end < count && mTextures[(int) mOrder[end]] == texId) {
+            end++;
+        }
+        return end;
+    }
+
+    private int fillVertices(int count) {
+        int[] out = mStaging;
+        int position = 0;
+        for (int i = 0; i < count; i++) {
+            int index = (int) mOrder[i];
+            int offset = index * RECT_FLOATS;
+            float left = mRects[offset];
+            float top = mRects[offset + 1];
+            float right = left + mRects[offset + 2];
+            float bottom = top + mRects[offset + 3];
+            int u0 = Float.floatToRawIntBits(mRects[offset + 4]);
+            int v0 = Float.floatToRawIntBits(mRects[offset + 5]);
+            int u1 = Float.floatToRawIntBits(mRects[offset + 6]);
+            int v1 = Float.floatToRawIntBits(mRects[offset + 7]);
+            int color = mColors[index];
+            position = putVertex(out, position, left, top, u0, v0, color);
+            position = putVertex(out, position, right, top, u1, v0, color);
+            position = putVertex(out, position, left, bottom, u0, v1, color);
+            position = putVertex(out, position, right, bottom, u1, v1, color);
+        }
+        return position;
+    }
+
+    private static int putVertex(int[] out, int position, float x, float y, int u, int v, int color) {
+        out[position] = Float.floatToRawIntBits(x);
+        out[position + 1] = Float.floatToRawIntBits(y);
+        out[position + 2] = u;
+        out[position + 3] = v;
+        out[position + 4] = color;
+        return position + VERTEX_WORDS;
+    }
+
+    private int fillInstances(int count) {
+        int[] out = mStaging;
+        int position = 0;
+        for (int i = 0; i < count; i++) {
+            int index = (int) mOrder[i];
+            int offset = index * RECT_FLOATS;
+            for (int j = 0; j < RECT_FLOATS; j++) {
+                out[position + j] = Float.floatToRawIntBits(mRects[offset + j]);
+            }
+            out[position + RECT_FLOATS] = mColors[index];
+            position += INSTANCE_WORDS;
+        }
+        return position;
+    }
+
+    /**
+     * @return the byte offset of the data in the vertex buffer, -1 if failed
+     */
+    private int upload(int words) {
+        int size = words * BYTES_PER_WORD;
+        mStateCache.bindBuffer(GLES20.GL_ARRAY_BUFFER, mVertexBufferId);
+        if (!mGLES3) {
+            mClientBuffer.clear();
+            mClientBuffer.put(mStaging, 0, words);
+            mClientBuffer.position(0);
+            // orphan the old storage so the driver does not wait for the previous draw
+            GLES20.glBufferData(GLES20.GL_ARRAY_BUFFER, mBufferSize, null, GLES20.GL_STREAM_DRAW);
+            GLES20.glBufferSubData(GLES20.GL_ARRAY_BUFFER, 0, size, mClientBuffer);
+            return 0;
+        }
+
+        if (mRingOffset + size > mBufferSize) {
+            // the draws still reading the old storage keep it, the ring starts over in new storage
+            GLES20.glBufferData(GLES20.GL_ARRAY_BUFFER, mBufferSize, null, GLES20.GL_STREAM_DRAW);
+            mRingOffset = 0;
+            mOrphanCount++;
+        }
+        // nothing in flight uses this range, so there is no need to synchronize
+        ByteBuffer mapped = (ByteBuffer) GLES30.glMapBufferRange(GLES20.GL_ARRAY_BUFFER, mRingOffset, size,
+                GLES30.GL_MAP_WRITE_BIT | GLES30.GL_MAP_INVALIDATE_RANGE_BIT | GLES30.GL_MAP_UNSYNCHRONIZED_BIT);
+        if (mapped == null) {
+            return -1;
+        }
+        mapped.order(ByteOrder.nativeOrder()).asIntBuffer().put(mStaging, 0, words);
+        GLES30.glUnmapBuffer(GLES20.GL_ARRAY_BUFFER);
+        int offset = mRingOffset;
+        mRingOffset += size;
+        return offset;
+    }
+
+    private boolean setupShaders() {
+        mProgramId = ProgramCache.getInstance().acquire(
+                mInstanced ? INSTANCED_VERTEX_SHADER : VERTEX_SHADER, FRAGMENT_SHADER);
+        mProgramGeneration = ProgramCache.getInstance().getGeneration();
+        return mProgramId != 0;
+    }
+
+    private void setupLocations() {
+        mPositionLocation = GLES20.glGetAttribLocation(mProgramId, "aPosition");
+        mTexCoordLocation = GLES20.glGetAttribLocation(mProgramId, "aTexCoord");
+        mCornerLocation = GLES20.glGetAttribLocation(mProgramId, "aCorner");
+        mRectLocation = GLES20.glGetAttribLocation(mProgramId, "aRect");
+        mTexRectLocation = GLES20.glGetAttribLocation(mProgramId, "aTexRect");
+        mColorLocation = GLES20.glGetAttribLocation(mProgramId, "aColor");
+        mMVPMatrixLocation = GLES20.glGetUniformLocation(mProgramId, "uMVPMatrix");
+        mStateCache.useProgram(mProgramId);
+        GLES20.glUniform1i(GLES20.glGetUniformLocation(mProgramId, "sTexture"), 0);
+    }
+
+    private void setupBuffers() {
+        int recordSize = (mInstanced ? INSTANCE_WORDS : SPRITE_WORDS) * BYTES_PER_WORD;
+        mBufferSize = mCapacity * recordSize * (mGLES3 ? RING_BATCHES : 1);
+        if (!mGLES3) {
+            mClientBuffer = ByteBuffer.allocateDirect(mCapacity * recordSize)
+                    .order(ByteOrder.nativeOrder()).asIntBuffer();
+        }
+
+        if (mGLES3) {
+            mVAOId = GLUtils.createVAO();
+            mStateCache.bindVertexArray(mVAOId);
+        }
+
+        mVertexBufferId = GLUtils.createVBO();
+        mStateCache.bindBuffer(GLES20.GL_ARRAY_BUFFER, mVertexBufferId);
+        GLES20.glBufferData(GLES20.GL_ARRAY_BUFFER, mBufferSize, null, GLES20.GL_STREAM_DRAW);
+
+        if (mInstanced) {
+            GLES20.glEnableVertexAttribArray(mRectLocation);
+            GLES20.glEnableVertexAttribArray(mTexRectLocation);
+            GLES20.glEnableVertexAttribArray(mColorLocation);
+            GLES30.glVertexAttribDivisor(mRectLocation, 1);
+            GLES30.glVertexAttribDivisor(mTexRectLocation, 1);
+            GLES30.glVertexAttribDivisor(mColorLocation, 1);
+
+            mCornerBufferId = GLUtils.createVBO();
+            mStateCache.bindBuffer(GLES20.GL_ARRAY_BUFFER, mCornerBufferId);
+            GLES20.glBufferData(GLES20.GL_ARRAY_BUFFER, CORNERS.length * BYTES_PER_WORD,
+                    GLUtils.createFloatBuffer(CORNERS), GLES20.GL_STATIC_DRAW);
+            GLES20.glVertexAttribPointer(mCornerLocation, 2, GLES20.GL_FLOAT, false, 0, 0);
+            GLES20.glEnableVertexAttribArray(mCornerLocation);
+        } else {
+            if (mGLES3) {
+                GLES20.glEnableVertexAttribArray(mPositionLocation);
+                GLES20.glEnableVertexAttribArray(mTexCoordLocation);
+                GLES20.glEnableVertexAttribArray(mColorLocation);
+            }
+            short[] indices = new short[mCapacity * INDICES_PER_SPRITE];
+            for (int i = 0; i < mCapacity; i++) {
+                int vertex = i * VERTICES_PER_SPRITE;
+                int offset = i * INDICES_PER_SPRITE;
+                indices[offset] = (short) vertex;
+                indices[offset + 1] = (short) (vertex + 1);
+                indices[offset + 2] = (short) (vertex + 2);
+                indices[offset + 3] = (short) (vertex + 2);
+                indices[offset + 4] = (short) (vertex + 1);
+                indices[offset + 5] = (short) (vertex + 3);
+            }
+            mIndexBufferId = GLUtils.createEBO();
+            mStateCache.bindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, mIndexBufferId);
+            GLES20.glBufferData(GLES20.GL_ELEMENT_ARRAY_BUFFER, indices.length * 2,
+                    GLUtils.createShortBuffer(indices), GLES20.GL_STATIC_DRAW);
+        }
+
+        if (mGLES3) {
+            mStateCache.bindVertexArray(0);
+        }
+        mStateCache.bindBuffer(GLES20.GL_ARRAY_BUFFER, 0);
+    }
+
+    /**
+     * convert an ARGB color to premultiplied RGBA bytes in memory order
+     */
+    private static int packColor(int color) {
+        int a = color >>> 24;
+        int r = ((color >> 16) & 0xff) * a / 255;
+        int g = ((color >> 8) & 0xff) * a / 255;
+        int b = (color & 0xff) * a / 255;
+        if (ByteOrder.nativeOrder() == ByteOrder.LITTLE_ENDIAN) {
+            return (a << 24) | (b << 16) | (g << 8) | r;
+        }
+        return (r << 24) | (g << 16) | (b << 8) | a;
+    }
+}
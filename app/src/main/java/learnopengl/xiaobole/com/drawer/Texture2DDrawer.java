@@ -0,0 +1,59 @@
+package learnopengl.xiaobole.com.drawer;
+
+import android.opengl.GLES20;
+
+import learnopengl.xiaobole.com.utils.ProgramCache;
+
+/**
+ * Draws a GL_TEXTURE_2D rendered by GL, e.g. the output of a framebuffer,
+ * whose origin is bottom left like the camera OES texture.
+ */
+public class Texture2DDrawer extends TextureDrawer {
+
+    private static final String VERTEX_SHADER =
+            "attribute vec4 aPosition;\n" +
+                    "attribute vec4 aTexCoord;\n" +
+                    "uniform mat4 uMVPMatrix;\n" +
+                    "uniform mat4 uTexMatrix;\n" +
+                    "varying vec2 vTexCoord;\n" +
+                    "void main() {\n" +
+                    "   gl_Position = uMVPMatrix * aPosition;\n" +
+                    "   vTexCoord = (uTexMatrix * aTexCoord).xy;\n" +
+                    "}";
+
+    private static final String FRAGMENT_SHADER =
+            "precision mediump float;\n" +
+                    "varying vec2 vTexCoord;\n" +
+                    "uniform sampler2D sTexture;\n" +
+                    "void main() {\n" +
+                    "   gl_FragColor = texture2D(sTexture, vTexCoord);\n" +
+                    "}";
+
+    private static final float[] VERTICES = {
+            -1.0f, -1.0f, 0.0f, 0.0f, 0.0f, // bottom, left
+            1.0f, 1.0f, 0.0f, 1.0f, 1.0f,   // top, right
+            -1.0f, 1.0f, 0.0f, 0.0f, 1.0f,  // top, left
+            1.0f, -1.0f, 0.0f, 1.0f, 0.0f   // bottom, right
+    };
+
+    @Override
+    boolean setupShaders() {
+        mProgramId = ProgramCache.getInstance().acquire(VERTEX_SHADER, FRAGMENT_SHADER);
+        mProgramGeneration = ProgramCache.getInstance().getGeneration();
+        return mProgramId != 0;
+    }
+
+    @Override
+    void setupLocations() {
+        mPositionLocation = GLES20.glGetAttribLocation(mProgramId, "aPosition");
+        mTexCoordLocation = GLES20.glGetAttribLocation(mProgramId, "aTexCoord");
+        mMVPMatrixLocation = GLES20.glGetUniformLocation(mProgramId, "uMVPMatrix");
+        mTexMatrixLocation = GLES20.glGetUniformLocation(mProgramId, "uTexMatrix");
+        mSamplerLocation = GLES20.glGetUniformLocation(mProgramId, "sTexture");
+    }
+
+    @Override
+    float[] getVertices() {
+        return VERTICES;
+    }
+}
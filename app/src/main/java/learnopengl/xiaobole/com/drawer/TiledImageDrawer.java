@@ -0,0 +1,482 @@
+package learnopengl.xiaobole.com.drawer;
+
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.BitmapRegionDecoder;
+import android.graphics.Rect;
+import android.opengl.GLES20;
+import android.util.Log;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import learnopengl.xiaobole.com.render.FramePacer;
+import learnopengl.xiaobole.com.utils.GLStateCache;
+import learnopengl.xiaobole.com.utils.GLUtils;
+import learnopengl.xiaobole.com.utils.TileCache;
+import learnopengl.xiaobole.com.utils.TileGrid;
+
+/**
+ * Shows an image larger than GL_MAX_TEXTURE_SIZE, e.g. a 50+ megapixel photo, by streaming
+ * the visible tiles of a {@link TileGrid} instead of decoding the whole image.
+ *
+ * Each frame the level matching the zoom is picked and its visible tiles are looked up in
+ * a {@link TileCache} of textures. Missing tiles are decoded with BitmapRegionDecoder on a
+ * small worker pool, one decoder per worker as a decoder serializes its calls, newest
+ * requests first, and the tiles scrolled away before their turn are skipped. Until a tile
+ * arrives, the part of its closest cached coarser tile is drawn in its place. Decoded tiles
+ * are uploaded on the GL thread, a few per frame, and drawn with a {@link SpriteBatch}.
+ *
+ * Only the cached tiles and the ones in flight are in memory, whatever the image size.
+ * The transform may be changed from any thread, the rest must be used on the GL thread.
+ */
+public class TiledImageDrawer implements IDrawer {
+    private static final String TAG = "TiledImageDrawer";
+
+    public static final int DEFAULT_TILE_SIZE = 256;
+    public static final int DEFAULT_MAX_TILES = 96;
+    private static final int DEFAULT_DECODER_THREADS = 2;
+    // 256KB each, so the upload never stalls a frame
+    private static final int MAX_UPLOADS_PER_FRAME = 4;
+    private static final float MAX_SCALE = 4.0f;
+
+    private final String mPath;
+    private final Resources mResources;
+    private final int mResId;
+    private final TileGrid mGrid;
+    private final TileCache<Integer> mCache;
+    private final SpriteBatch mSpriteBatch = new SpriteBatch();
+    private FramePacer.RenderRequester mRequester;
+    private int mDecoderThreads = DEFAULT_DECODER_THREADS;
+    private int mMaxTiles = DEFAULT_MAX_TILES;
+
+    private ThreadPoolExecutor mExecutor;
+    private final List<BitmapRegionDecoder> mDecoders = Collections.synchronizedList(new ArrayList<BitmapRegionDecoder>());
+    private final ThreadLocal<BitmapRegionDecoder> mThreadDecoder = new ThreadLocal<>();
+
+    // tiles the workers should still decode, written by the GL thread
+    private final Set<Long> mWanted = Collections.newSetFromMap(new ConcurrentHashMap<Long, Boolean>());
+    private final ConcurrentLinkedQueue<Tile> mDecoded = new ConcurrentLinkedQueue<>();
+    // GL thread only
+    private final Set<Long> mPending = new HashSet<>();
+    private final Set<Long> mFrameWanted = new HashSet<>();
+    private final long[] mVisible;
+    private final int[] mTileRect = new int[4];
+    private final int[] mFallbackRect = new int[4];
+
+    private final Object mTransformLock = new Object();
+    private float mScale;
+    private float mCenterX;
+    private float mCenterY;
+    private int mViewWidth;
+    private int mViewHeight;
+
+    private static class Tile {
+        final long key;
+        final Bitmap bitmap;
+
+        Tile(long key, Bitmap bitmap) {
+            this.key = key;
+            this.bitmap = bitmap;
+        }
+    }
+
+    /**
+     * @param path the JPEG, PNG or WebP file
+     */
+    public TiledImageDrawer(String path) {
+        this(path, null, 0, DEFAULT_TILE_SIZE);
+    }
+
+    /**
+     * @param resources the resources of the image
+     * @param resId the drawable or raw resource, decoded from its stream
+     */
+    public TiledImageDrawer(Resources resources, int resId) {
+        this(null, resources, resId, DEFAULT_TILE_SIZE);
+    }
+
+    private TiledImageDrawer(String path, Resources resources, int resId, int tileSize) {
+        mPath = path;
+        mResources = resources;
+        mResId = resId;
+        // the bounds only, the pixels are never decoded at once
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        if (path != null) {
+            BitmapFactory.decodeFile(path, options);
+        } else {
+            options.inScaled = false;
+            BitmapFactory.decodeResource(resources, resId, options);
+        }
+        mGrid = new TileGrid(Math.max(1, options.outWidth), Math.max(1, options.outHeight), tileSize);
+        mVisible = new long[mGrid.getColumns(0) * mGrid.getRows(0)];
+        mCache = new TileCache<>(mMaxTiles, new TileCache.EvictionListener<Integer>() {
+            @Override
+            public void onEvicted(long key, Integer texId) {
+                GLStateCache.getInstance().deleteTextures(1, new int[]{texId}, 0);
+            }
+        });
+        Log.i(TAG, "image " + mGrid.getImageWidth() + "x" + mGrid.getImageHeight() + ", "
+                + mGrid.getLevelCount() + " levels of " + tileSize + " tiles");
+    }
+
+    /**
+     * set who draws the next frame when a tile is decoded, e.g. GLSurfaceView#requestRender
+     *
+     * @return the TiledImageDrawer object
+     */
+    public TiledImageDrawer setRenderRequester(FramePacer.RenderRequester requester) {
+        mRequester = requester;
+        return this;
+    }
+
+    /**
+     * set the number of decoding threads, before init
+     *
+     * @return the TiledImageDrawer object
+     */
+    public TiledImageDrawer setDecoderThreads(int threads) {
+        mDecoderThreads = Math.max(1, threads);
+        return this;
+    }
+
+    /**
+     * set the number of tile textures kept, raised to what the viewport shows at once
+     *
+     * @return the TiledImageDrawer object
+     */
+    public TiledImageDrawer setMaxTiles(int maxTiles) {
+        mMaxTiles = maxTiles;
+        return this;
+    }
+
+    public TileGrid getGrid() {
+        return mGrid;
+    }
+
+    /**
+     * set the transform, may be called from any thread
+     *
+     * @param scale the screen pixels per image pixel
+     * @param centerX the image x at the center of the view
+     * @param centerY the image y at the center of the view
+     */
+    public void setTransform(float scale, float centerX, float centerY) {
+        synchronized (mTransformLock) {
+            mScale = scale;
+            mCenterX = centerX;
+            mCenterY = centerY;
+            clampTransform();
+        }
+    }
+
+    /**
+     * zoom around a point of the view, may be called from any thread
+     *
+     * @param factor the scale multiplier
+     * @param focusX the view x that stays in place
+     * @param focusY the view y that stays in place
+     */
+    public void zoomBy(float factor, float focusX, float focusY) {
+        synchronized (mTransformLock) {
+            if (mScale == 0) {
+                return;
+            }
+            float dx = focusX - mViewWidth / 2.0f;
+            float dy = focusY - mViewHeight / 2.0f;
+            float oldScale = mScale;
+            mScale *= factor;
+            clampTransform();
+            mCenterX += dx / oldScale - dx / mScale;
+            mCenterY += dy / oldScale - dy / mScale;
+            clampTransform();
+        }
+    }
+
+    /**
+     * move the image with a finger, may be called from any thread
+     *
+     * @param dx the view pixels moved to the right
+     * @param dy the view pixels moved down
+     */
+    public void panBy(float dx, float dy) {
+        synchronized (mTransformLock) {
+            if (mScale == 0) {
+                return;
+            }
+            mCenterX -= dx / mScale;
+            mCenterY -= dy / mScale;
+            clampTransform();
+        }
+    }
+
+    public String getStats() {
+        return mCache.getStats() + ", pending = " + mPending.size();
+    }
+
+    @Override
+    public void init() {
+        // the textures of a previous context are gone, requests in flight still arrive
+        mCache.reset();
+        mSpriteBatch.init();
+        if (mExecutor == null) {
+            // newest first, the latest viewport matters more than the tiles requested before
+            mExecutor = new ThreadPoolExecutor(mDecoderThreads, mDecoderThreads, 0, TimeUnit.MILLISECONDS,
+                    new LinkedBlockingDeque<Runnable>() {
+                        @Override
+                        public boolean offer(Runnable runnable) {
+                            return offerFirst(runnable);
+                        }
+                    }, new ThreadFactory() {
+                private final AtomicInteger mCount = new AtomicInteger();
+
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, TAG + "-" + mCount.getAndIncrement());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+    }
+
+    @Override
+    public void release() {
+        if (mExecutor != null) {
+            mExecutor.shutdownNow();
+            mExecutor = null;
+        }
+        synchronized (mDecoders) {
+            for (BitmapRegionDecoder decoder : mDecoders) {
+                decoder.recycle();
+            }
+            mDecoders.clear();
+        }
+        Tile tile;
+        while ((tile = mDecoded.poll()) != null) {
+            if (tile.bitmap != null) {
+                tile.bitmap.recycle();
+            }
+        }
+        mWanted.clear();
+        mPending.clear();
+        mCache.clear();
+        mSpriteBatch.release();
+    }
+
+    @Override
+    public void setViewPort(int x, int y, int width, int height) {
+        mSpriteBatch.setViewPort(x, y, width, height);
+        synchronized (mTransformLock) {
+            mViewWidth = width;
+            mViewHeight = height;
+            if (mScale == 0) {
+                // fit the whole image the first time
+                mScale = Math.min((float) width / mGrid.getImageWidth(), (float) height / mGrid.getImageHeight());
+                mCenterX = mGrid.getImageWidth() / 2.0f;
+                mCenterY = mGrid.getImageHeight() / 2.0f;
+            }
+            clampTransform();
+        }
+        // every visible tile, and their parents to fall back on while zooming in
+        int tileSize = mGrid.getTileSize();
+        int visibleTiles = (width / tileSize + 2) * (height / tileSize + 2);
+        int maxTiles = Math.max(mMaxTiles, visibleTiles + visibleTiles / 2 + mGrid.getLevelCount());
+        mCache.setMaxTiles(maxTiles);
+        Log.i(TAG, "view " + width + "x" + height + ", keep " + maxTiles + " tiles");
+    }
+
+    @Override
+    public void draw() {
+        GLES20.glClear(GLES20.GL_COLOR_BUFFER_BIT);
+        uploadDecodedTiles();
+
+        float scale;
+        float left;
+        float top;
+        float right;
+        float bottom;
+        synchronized (mTransformLock) {
+            if (mScale == 0) {
+                return;
+            }
+            scale = mScale;
+            left = mCenterX - mViewWidth / 2.0f / mScale;
+            top = mCenterY - mViewHeight / 2.0f / mScale;
+            right = left + mViewWidth / mScale;
+            bottom = top + mViewHeight / mScale;
+        }
+        int level = mGrid.selectLevel(scale);
+        int count = mGrid.getVisibleTiles(level, left, top, right, bottom, mVisible);
+
+        // the coarsest level is the fallback of every tile, request it first
+        mFrameWanted.clear();
+        long root = TileGrid.getKey(mGrid.getLevelCount() - 1, 0, 0);
+        if (!mCache.contains(root)) {
+            mFrameWanted.add(root);
+        }
+        for (int i = 0; i < count; i++) {
+            long key = mVisible[i];
+            mGrid.getTileRect(key, mTileRect);
+            Integer texId = mCache.get(key);
+            if (texId != null) {
+                mSpriteBatch.add(texId, (mTileRect[0] - left) * scale, (mTileRect[1] - top) * scale,
+                        (mTileRect[2] - mTileRect[0]) * scale, (mTileRect[3] - mTileRect[1]) * scale);
+                continue;
+            }
+            mFrameWanted.add(key);
+            long fallback = mCache.getFallback(mGrid, key);
+            if (fallback != -1) {
+                // the part of the coarser tile under this one
+                mGrid.getTileRect(fallback, mFallbackRect);
+                float width = mFallbackRect[2] - mFallbackRect[0];
+                float height = mFallbackRect[3] - mFallbackRect[1];
+                mSpriteBatch.add(mCache.get(fallback),
+                        (mTileRect[0] - left) * scale, (mTileRect[1] - top) * scale,
+                        (mTileRect[2] - mTileRect[0]) * scale, (mTileRect[3] - mTileRect[1]) * scale,
+                        (mTileRect[0] - mFallbackRect[0]) / width, (mTileRect[1] - mFallbackRect[1]) / height,
+                        (mTileRect[2] - mFallbackRect[0]) / width, (mTileRect[3] - mFallbackRect[1]) / height,
+                        0xffffffff);
+            }
+        }
+        mSpriteBatch.draw();
+        requestTiles();
+    }
+
+    /**
+     * upload a few decoded tiles, the rest on the next frames
+     */
+    private void uploadDecodedTiles() {
+        int uploads = 0;
+        Tile tile;
+        while (uploads < MAX_UPLOADS_PER_FRAME && (tile = mDecoded.poll()) != null) {
+            mPending.remove(tile.key);
+            if (tile.bitmap == null) {
+                // skipped or failed, requested again if still visible
+                continue;
+            }
+            int texId = GLUtils.createTexture();
+            GLStateCache stateCache = GLStateCache.getInstance();
+            stateCache.bindTexture(GLES20.GL_TEXTURE_2D, texId);
+            // tiles must not wrap, the opposite edge would bleed into the seams
+            stateCache.texParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MIN_FILTER, GLES20.GL_LINEAR);
+            stateCache.texParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MAG_FILTER, GLES20.GL_LINEAR);
+            stateCache.texParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_S, GLES20.GL_CLAMP_TO_EDGE);
+            stateCache.texParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_T, GLES20.GL_CLAMP_TO_EDGE);
+            android.opengl.GLUtils.texImage2D(GLES20.GL_TEXTURE_2D, 0, tile.bitmap, 0);
+            tile.bitmap.recycle();
+            mCache.put(tile.key, texId);
+            uploads++;
+        }
+        if (!mDecoded.isEmpty()) {
+            requestRender();
+        }
+    }
+
+    /**
+     * queue the missing tiles of this frame and drop the requests no longer visible
+     */
+    private void requestTiles() {
+        Iterator<Long> iterator = mWanted.iterator();
+        while (iterator.hasNext()) {
+            if (!mFrameWanted.contains(iterator.next())) {
+                iterator.remove();
+            }
+        }
+        if (mExecutor == null) {
+            return;
+        }
+        for (final Long key : mFrameWanted) {
+            mWanted.add(key);
+            if (!mPending.add(key)) {
+                continue;
+            }
+            mExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    mDecoded.offer(new Tile(key, mWanted.contains(key) ? decodeTile(key) : null));
+                    requestRender();
+                }
+            });
+        }
+    }
+
+    /**
+     * decode a tile on a worker thread
+     *
+     * @return the bitmap, null on failure
+     */
+    private Bitmap decodeTile(long key) {
+        int[] rect = new int[4];
+        mGrid.getTileRect(key, rect);
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inSampleSize = 1 << TileGrid.getLevel(key);
+        options.inPreferredConfig = Bitmap.Config.ARGB_8888;
+        try {
+            Bitmap bitmap = getDecoder().decodeRegion(new Rect(rect[0], rect[1], rect[2], rect[3]), options);
+            if (bitmap == null) {
+                Log.e(TAG, "decode " + TileGrid.toString(key) + " failed");
+            }
+            return bitmap;
+        } catch (IOException | IllegalStateException | IllegalArgumentException e) {
+            // IllegalStateException once released
+            Log.e(TAG, "decode " + TileGrid.toString(key) + " failed: " + e.getMessage());
+            return null;
+        }
+    }
+
+    private BitmapRegionDecoder getDecoder() throws IOException {
+        BitmapRegionDecoder decoder = mThreadDecoder.get();
+        if (decoder == null) {
+            if (mPath != null) {
+                decoder = BitmapRegionDecoder.newInstance(mPath, false);
+            } else {
+                InputStream stream = mResources.openRawResource(mResId);
+                try {
+                    decoder = BitmapRegionDecoder.newInstance(stream, false);
+                } finally {
+                    stream.close();
+                }
+            }
+            if (decoder == null) {
+                throw new IOException("unsupported image format");
+            }
+            mThreadDecoder.set(decoder);
+            mDecoders.add(decoder);
+        }
+        return decoder;
+    }
+
+    private void requestRender() {
+        FramePacer.RenderRequester requester = mRequester;
+        if (requester != null) {
+            requester.requestRender();
+        }
+    }
+
+    private void clampTransform() {
+        if (mScale == 0 || mViewWidth == 0) {
+            return;
+        }
+        float fitScale = Math.min((float) mViewWidth / mGrid.getImageWidth(),
+                (float) mViewHeight / mGrid.getImageHeight());
+        mScale = Math.max(fitScale, Math.min(mScale, MAX_SCALE));
+        mCenterX = Math.max(0, Math.min(mCenterX, mGrid.getImageWidth()));
+        mCenterY = Math.max(0, Math.min(mCenterY, mGrid.getImageHeight()));
+    }
+}
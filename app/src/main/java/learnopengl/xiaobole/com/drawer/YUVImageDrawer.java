@@ -1,18 +1,20 @@
 package learnopengl.xiaobole.com.drawer;
 
 import android.opengl.GLES20;
-import android.opengl.GLES30;
-import android.opengl.Matrix;
+import android.util.Log;
 
 import java.nio.ByteBuffer;
-import java.nio.FloatBuffer;
-import java.nio.ShortBuffer;
 
 import javax.microedition.khronos.opengles.GL10;
 
-import learnopengl.xiaobole.com.utils.GLUtils;
+import learnopengl.xiaobole.com.utils.GLStateCache;
+import learnopengl.xiaobole.com.utils.GeometryCache;
+import learnopengl.xiaobole.com.utils.ImageMatrix;
+import learnopengl.xiaobole.com.utils.PlaneTextureUploader;
+import learnopengl.xiaobole.com.utils.ProgramCache;
 
 public class YUVImageDrawer implements IDrawer {
+    private static final String TAG = "YUVImageDrawer";
 
     private static final int POSITION_COMPONENT_COUNT = 3;
     private static final int TEXCOORD_COMPONENT_COUNT = 2;
@@ -21,21 +23,23 @@ public class YUVImageDrawer implements IDrawer {
     private int mTexCoordinateLocation;
     private int mMVPMatrixLocation;
     private int mProgramId;
+    private int mProgramGeneration;
 
-    private int mVAOId;
-    private int mVBOId;
-    private int mEBOId;
+    private GeometryCache.Mesh mMesh;
 
-    private FloatBuffer mVertexBuffer;
-    private ShortBuffer mIndexBuffer;
+    private ImageMatrix mImageMatrix = new ImageMatrix();
 
-    private final float[] mProjectionMatrix = new float[16];
-    private final float[] mCameraMatrix = new float[16];
-    private final float[] mMVPMatrix = new float[16];
+    private final PlaneTextureUploader mUploader = new PlaneTextureUploader(3)
+            .setPlaneFormat(1, GLES20.GL_LUMINANCE, GLES20.GL_LUMINANCE, 1, 2)
+            .setPlaneFormat(2, GLES20.GL_LUMINANCE, GLES20.GL_LUMINANCE, 1, 2);
+    private boolean mUsePBO = true;
+    private boolean mFrameDirty;
 
-    private int[] mTextures = {-1, -1, -1};
-
-    private ByteBuffer[] mYUVFrame;
+    private final ByteBuffer[] mPlanes = new ByteBuffer[3];
+    private final int[] mStrides = new int[3];
+    private boolean mMatrixDirty;
+    private int mViewWidth;
+    private int mViewHeight;
 
     private int mFrameWidth;
     private int mFrameHeight;
@@ -92,29 +96,111 @@ public class YUVImageDrawer implements IDrawer {
 
     public YUVImageDrawer() {}
 
+    /**
+     * set a tightly packed I420 frame, the array is read when the frame is drawn
+     * so it must not be modified before that
+     *
+     * @param i420 the frame
+     * @param width the frame width
+     * @param height the frame height
+     * @return the YUVImageDrawer object
+     */
     public YUVImageDrawer setI420Frame(byte[] i420, int width, int height) {
-        if (i420 == null || i420.length < 3 || width < 0 || height < 0) {
+        if (i420 == null) {
             return null;
         }
+        return setI420Frame(ByteBuffer.wrap(i420), width, height);
+    }
+
+    /**
+     * set a tightly packed I420 frame held in a buffer, e.g. a memory mapped file,
+     * the planes are sliced from it without copying
+     *
+     * @param i420 the frame, read from its position
+     * @param width the frame width
+     * @param height the frame height
+     * @return the YUVImageDrawer object
+     */
+    public YUVImageDrawer setI420Frame(ByteBuffer i420, int width, int height) {
+        if (i420 == null || width <= 0 || height <= 0) {
+            return null;
+        }
+        int chromaWidth = (width + 1) / 2;
         int ySize = width * height;
-        if (mYUVFrame == null) {
-            mYUVFrame = new ByteBuffer[3];
-            mYUVFrame[0] = ByteBuffer.allocateDirect(ySize);
-            mYUVFrame[1] = ByteBuffer.allocateDirect(ySize / 4);
-            mYUVFrame[2] = ByteBuffer.allocateDirect(ySize / 4);
+        int chromaSize = chromaWidth * ((height + 1) / 2);
+        return setI420Planes(slice(i420, 0, ySize), width,
+                slice(i420, ySize, chromaSize), chromaWidth,
+                slice(i420, ySize + chromaSize, chromaSize), chromaWidth,
+                width, height);
+    }
+
+    /**
+     * set an I420 frame as separate planes with padded rows, as produced by decoders and
+     * camera HALs. Nothing is copied, the buffers are read when the frame is drawn,
+     * so they must stay valid and unchanged until then; call it on the GL thread.
+     *
+     * @param y the Y plane, read from its position
+     * @param yStride the Y row stride in bytes
+     * @param u the U plane
+     * @param uStride the U row stride in bytes
+     * @param v the V plane
+     * @param vStride the V row stride in bytes
+     * @param width the frame width
+     * @param height the frame height
+     * @return the YUVImageDrawer object
+     */
+    public YUVImageDrawer setI420Planes(ByteBuffer y, int yStride, ByteBuffer u, int uStride,
+                                        ByteBuffer v, int vStride, int width, int height) {
+        if (y == null || u == null || v == null || width <= 0 || height <= 0) {
+            return null;
+        }
+        if (!checkPlane(0, y, yStride, width, height) || !checkPlane(1, u, uStride, width, height)
+                || !checkPlane(2, v, vStride, width, height)) {
+            return null;
         }
+        mPlanes[0] = y;
+        mPlanes[1] = u;
+        mPlanes[2] = v;
+        mStrides[0] = yStride;
+        mStrides[1] = uStride;
+        mStrides[2] = vStride;
+        if (width != mFrameWidth || height != mFrameHeight) {
+            mFrameWidth = width;
+            mFrameHeight = height;
+            mMatrixDirty = true;
+        }
+        mFrameDirty = true;
+        return this;
+    }
 
-        int offset = 0;
-        mYUVFrame[0].put(i420, offset, ySize);
-        offset += ySize;
-        mYUVFrame[1].put(i420, offset, ySize / 4);
-        offset += ySize / 4;
-        mYUVFrame[2].put(i420, offset, ySize / 4);
-        for (int i = 0; i < 3; i++) {
-            mYUVFrame[i].position(0);
+    private boolean checkPlane(int plane, ByteBuffer data, int stride, int width, int height) {
+        int rowSize = plane == 0 ? width : (width + 1) / 2;
+        if (stride < rowSize || data.remaining() < mUploader.getRequiredSize(plane, width, height, stride)) {
+            Log.e(TAG, "invalid plane " + plane + " for frame " + width + "x" + height + ", stride = " + stride);
+            return false;
         }
-        mFrameWidth = width;
-        mFrameHeight = height;
+        return true;
+    }
+
+    private static ByteBuffer slice(ByteBuffer buffer, int offset, int length) {
+        ByteBuffer slice = buffer.duplicate();
+        int start = buffer.position() + offset;
+        if (start + length > buffer.limit()) {
+            return null;
+        }
+        slice.limit(start + length).position(start);
+        return slice.slice();
+    }
+
+    /**
+     * stream frames through GLES3 pixel unpack buffers, takes effect on init; the copy of a
+     * frame overlaps the transfer of the previous one, so the drawn frame lags one behind
+     *
+     * @param enabled true to use PBO when the context supports it
+     * @return the YUVImageDrawer object
+     */
+    public YUVImageDrawer setPBOEnabled(boolean enabled) {
+        mUsePBO = enabled;
         return this;
     }
 
@@ -122,25 +208,19 @@ public class YUVImageDrawer implements IDrawer {
     public void init() {
         setupShaders();
         setupLocations();
+        setupBuffers();
         generateTextures();
     }
 
     @Override
     public void release() {
-        if (mVBOId != 0) {
-            GLES20.glDeleteBuffers(1, new int[]{mVBOId}, 0);
-            mVBOId = 0;
-        }
-        if (mEBOId != 0) {
-            GLES20.glDeleteBuffers(1, new int[]{mEBOId}, 0);
-            mEBOId = 0;
-        }
-        if (mVAOId != 0) {
-            GLES20.glDeleteBuffers(1, new int[]{mVAOId}, 0);
-            mVAOId = 0;
+        if (mMesh != null) {
+            GeometryCache.getInstance().release(mMesh);
+            mMesh = null;
         }
+        mUploader.release();
         if (mProgramId != 0) {
-            GLES20.glDeleteProgram(mProgramId);
+            ProgramCache.getInstance().release(mProgramId, mProgramGeneration);
             mProgramId = 0;
         }
     }
@@ -149,92 +229,46 @@ public class YUVImageDrawer implements IDrawer {
     public void setViewPort(int x, int y, int width, int height) {
         GLES20.glClearColor(0.0f, 0.0f, 0.0f, 0.0f);
         GLES20.glViewport(0, 0, width, height);
-        float imageRatio = mFrameWidth / (float) mFrameHeight;
-        float screenRatio = width / (float) height;
-        if (width > height) {
-            if (imageRatio > screenRatio) {
-                Matrix.orthoM(mProjectionMatrix, 0, -screenRatio * imageRatio, screenRatio * imageRatio, -1, 1, 3, 7);
-            } else {
-                Matrix.orthoM(mProjectionMatrix, 0, -screenRatio / imageRatio, screenRatio / imageRatio, -1, 1, 3, 7);
-            }
-        } else {
-            if (imageRatio > screenRatio) {
-                Matrix.orthoM(mProjectionMatrix, 0, -1, 1, -1 / screenRatio * imageRatio, 1 / screenRatio * imageRatio, 3, 7);
-            } else {
-                Matrix.orthoM(mProjectionMatrix, 0, -1, 1, -imageRatio / screenRatio, imageRatio / screenRatio, 3, 7);
-            }
-        }
-        Matrix.setLookAtM(mCameraMatrix, 0, 0, 0, 3, 0, 0, 0, 0, 1, 0);
-        Matrix.multiplyMM(mMVPMatrix, 0, mProjectionMatrix, 0, mCameraMatrix, 0);
+        mViewWidth = width;
+        mViewHeight = height;
+        mMatrixDirty = true;
     }
 
     @Override
     public void draw() {
-        if (mProgramId == 0) {
+        if (mProgramId == 0 || mPlanes[0] == null) {
             return;
         }
-        GLES20.glUseProgram(mProgramId);
+        GLStateCache.getInstance().useProgram(mProgramId);
         GLES20.glClear(GLES20.GL_DEPTH_BUFFER_BIT | GLES20.GL_COLOR_BUFFER_BIT);
 
-        GLES20.glUniformMatrix4fv(mMVPMatrixLocation, 1, false, mMVPMatrix, 0);
+        // the frame size may change at any frame, e.g. a decoder reconfiguration
+        if (mMatrixDirty && mViewWidth > 0 && mViewHeight > 0) {
+            mImageMatrix.setViewport(mFrameWidth, mFrameHeight, mViewWidth, mViewHeight);
+            mMatrixDirty = false;
+        }
+        GLES20.glUniformMatrix4fv(mMVPMatrixLocation, 1, false, mImageMatrix.getMVPMatrix(), 0);
 
         /**
-         * 启用 2D 纹理功能
+         * 纹理存储只在帧尺寸变化时重新分配，之后每帧通过 glTexSubImage2D 直接从平面数据更新
          */
-        GLES20.glEnable(GLES20.GL_TEXTURE_2D);
-
-        for (int i = 0; i < 3; i++)  {
-            /**
-             * 决定 YUV 分量的宽高
-             */
-            int w = (i == 0) ? mFrameWidth : mFrameWidth / 2;
-            int h = (i == 0) ? mFrameHeight : mFrameHeight / 2;
-
-            /**
-             * 设置当前操作的纹理对象
-             */
-            GLES20.glActiveTexture(GLES20.GL_TEXTURE0 + i);
-            GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, mTextures[i]);
-
-            /**
-             * 设置如何把纹理像素映射成像素
-             * @param GL_TEXTURE_2D 操作 2D 的纹理
-             * @param GL_TEXTURE_MIN_FILTER 设置缩小的过滤方式
-             * @param GL_TEXTURE_MAG_FILTER 设置放大的过滤方式
-             * @param GL_TEXTURE_WRAP_S S 方向上的贴图模式
-             * @param GL_TEXTURE_WRAP_T T 方向上的贴图模式
-             */
-            GLES20.glTexParameterf(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MIN_FILTER, GLES20.GL_LINEAR);
-            GLES20.glTexParameterf(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MAG_FILTER, GLES20.GL_LINEAR);
-            GLES20.glTexParameterf(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_S, GLES20.GL_CLAMP_TO_EDGE);
-            GLES20.glTexParameterf(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_T, GLES20.GL_CLAMP_TO_EDGE);
-
-            /**
-             * 纹理贴图
-             * @param target 纹理类型, GLES20.GL_TEXTURE_2D 代表 2D 的纹理
-             * @param level  代表图像的详细程度, 默认为 0 即可
-             * @param internalformat 指定了纹理存储在显存中的内部格式，GL_LUMINANCE 代表灰度值
-             * @param width 纹理的宽度，必须是 2 的整数次幂
-             * @param height 纹理的高度，必须是 2 的整数次幂
-             * @param border 无边框取值为 0，有边框取值为 1，边框的颜色由 GL_TEXTURE_BORDER_COLOR 选项设置
-             * @param format 图像数组中的像素格式，GL_RGB 代表 RGB，GL_LUMINANCE 代表 YUV
-             * @param type 图像数组中的数据类型，GL_UNSIGNED_BYTE 代表无符号整型
-             * @param pixels 图像数组
-             */
-            GLES20.glTexImage2D(GLES20.GL_TEXTURE_2D, 0, GLES20.GL_LUMINANCE,
-                    w, h, 0, GLES20.GL_LUMINANCE, GLES20.GL_UNSIGNED_BYTE, mYUVFrame[i]);
+        if (mFrameDirty) {
+            mUploader.upload(mPlanes, mStrides, mFrameWidth, mFrameHeight);
+            mFrameDirty = false;
         }
 
-        setupBuffers();
-        GLES30.glBindVertexArray(mVAOId);
-        GLES20.glDrawElements(GLES20.GL_TRIANGLES, 6, GLES20.GL_UNSIGNED_SHORT, 0);
-        GLES20.glDisable(GLES20.GL_TEXTURE_2D);
+        /**
+         * 设置当前操作的纹理对象，YUV 分别绑定到 GL_TEXTURE0 ~ GL_TEXTURE2
+         */
+        mUploader.bind(GLES20.GL_TEXTURE0);
+
+        GLStateCache.getInstance().bindVertexArray(mMesh.getVAOId());
+        GLES20.glDrawElements(GLES20.GL_TRIANGLES, mMesh.getIndexCount(), GLES20.GL_UNSIGNED_SHORT, 0);
     }
 
     private boolean setupShaders() {
-        int vertexShader = GLUtils.compileVertexShader(VERTEX_SHADER);
-        int fragmentShader = GLUtils.compileFragmentShader(FRAGMENT_SHADER);
-        mProgramId = GLUtils.linkProgram(vertexShader, fragmentShader);
+        mProgramId = ProgramCache.getInstance().acquire(VERTEX_SHADER, FRAGMENT_SHADER);
+        mProgramGeneration = ProgramCache.getInstance().getGeneration();
         return mProgramId != 0;
     }
 
@@ -245,51 +279,26 @@ public class YUVImageDrawer implements IDrawer {
     }
 
     private void setupBuffers() {
-        mVAOId = GLUtils.createVAO();
-        GLES30.glBindVertexArray(mVAOId);
-        setupVBOBuffers();
-        setupEBOBuffers();
-        GLES30.glBindVertexArray(0);
-    }
-
-    private void setupVBOBuffers() {
-        if (mVertexBuffer == null) {
-            mVertexBuffer = GLUtils.createFloatBuffer(VERTICES);
-        }
-        mVBOId = GLUtils.createVBO();
-        GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, mVBOId);
-        GLES20.glBufferData(GLES20.GL_ARRAY_BUFFER, mVertexBuffer.capacity() * 4, mVertexBuffer, GLES20.GL_STATIC_DRAW);
-
-        GLES20.glVertexAttribPointer(mPositionLocation, POSITION_COMPONENT_COUNT, GLES20.GL_FLOAT, false, 5 * 4, 0);
-        GLES20.glEnableVertexAttribArray(mPositionLocation);
-
-        GLES20.glVertexAttribPointer(mTexCoordinateLocation, TEXCOORD_COMPONENT_COUNT, GLES20.GL_FLOAT, false, 5 * 4, 3 * 4);
-        GLES20.glEnableVertexAttribArray(mTexCoordinateLocation);
-
-        GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, 0);
-    }
-
-    private void setupEBOBuffers() {
-        if (mIndexBuffer == null) {
-            mIndexBuffer = GLUtils.createShortBuffer(INDICES);
-        }
-        mEBOId = GLUtils.createEBO();
-        GLES20.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, mEBOId);
-        GLES20.glBufferData(GLES20.GL_ELEMENT_ARRAY_BUFFER, mIndexBuffer.capacity() * 2, mIndexBuffer, GLES20.GL_STATIC_DRAW);
+        GeometryCache.VertexLayout layout = new GeometryCache.VertexLayout()
+                .addAttribute(mPositionLocation, POSITION_COMPONENT_COUNT)
+                .addAttribute(mTexCoordinateLocation, TEXCOORD_COMPONENT_COUNT);
+        mMesh = GeometryCache.getInstance().acquire(layout, VERTICES, INDICES);
     }
 
     private void generateTextures() {
         /**
-         * 创建 3 个纹理对象
+         * 创建 3 个纹理对象，纹理参数只在创建时设置一次
          */
-        mTextures = GLUtils.createTextures(3);
+        mUploader.init(mUsePBO);
 
         /**
          * 设置 shader 中的 sampler2D 变量从哪个纹理单元采样，
          * 即对应 GLES20.GL_TEXTURE0 + x
          */
+        GLStateCache.getInstance().useProgram(mProgramId);
         GLES20.glUniform1i(GLES20.glGetUniformLocation(mProgramId, "yTexture"), 0);
         GLES20.glUniform1i(GLES20.glGetUniformLocation(mProgramId, "uTexture"), 1);
         GLES20.glUniform1i(GLES20.glGetUniformLocation(mProgramId, "vTexture"), 2);
+        mFrameDirty = true;
     }
 }
@@ -0,0 +1,130 @@
+package learnopengl.xiaobole.com.filter;
+
+import android.opengl.GLES20;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import learnopengl.xiaobole.com.drawer.OESTextureDrawer;
+import learnopengl.xiaobole.com.utils.GLStateCache;
+
+/**
+ * Runs an ordered list of {@link GLFilter} passes over the camera OES texture.
+ *
+ * The OES frame is first drawn into a pooled framebuffer with the SurfaceTexture transform,
+ * then every pass renders into another pooled framebuffer, ping-ponging between them.
+ * The output texture stays valid until the next {@link #process} call. Must be used on the GL thread.
+ */
+public class FilterChain {
+
+    private final List<GLFilter> mFilters = new ArrayList<>();
+    private final FrameBufferPool mFrameBufferPool = new FrameBufferPool();
+    private final OESTextureDrawer mInputDrawer = new OESTextureDrawer();
+
+    private FrameBuffer mOutput;
+    private boolean mInitialized;
+
+    private int mViewportWidth;
+    private int mViewportHeight;
+
+    /**
+     * append a filter pass, filters added after {@link #init()} must be added on the GL thread
+     *
+     * @param filter the filter
+     * @return the FilterChain object
+     */
+    public FilterChain addFilter(GLFilter filter) {
+        mFilters.add(filter);
+        if (mInitialized) {
+            filter.init();
+        }
+        return this;
+    }
+
+    public void removeFilter(GLFilter filter) {
+        if (mFilters.remove(filter) && mInitialized) {
+            filter.release();
+        }
+    }
+
+    public boolean isEmpty() {
+        return mFilters.isEmpty();
+    }
+
+    /**
+     * create the GL resources, call from GLSurfaceView.Renderer#onSurfaceCreated
+     */
+    public void init() {
+        // a new context, the pooled framebuffers of the previous one are gone
+        mFrameBufferPool.clear();
+        mOutput = null;
+        mInputDrawer.init();
+        for (GLFilter filter : mFilters) {
+            filter.init();
+        }
+        mInitialized = true;
+    }
+
+    public void release() {
+        mInputDrawer.release();
+        for (GLFilter filter : mFilters) {
+            filter.release();
+        }
+        mFrameBufferPool.release();
+        mOutput = null;
+        mInitialized = false;
+    }
+
+    /**
+     * set the viewport to restore after the passes
+     *
+     * @param width the surface width
+     * @param height the surface height
+     */
+    public void setViewport(int width, int height) {
+        mViewportWidth = width;
+        mViewportHeight = height;
+    }
+
+    /**
+     * run all passes
+     *
+     * @param oesTexId the camera OES texture
+     * @param texMatrix the SurfaceTexture transform matrix
+     * @param width the frame width
+     * @param height the frame height
+     * @return the filtered GL_TEXTURE_2D, or oesTexId if there is nothing to do
+     */
+    public int process(int oesTexId, float[] texMatrix, int width, int height) {
+        if (!mInitialized || mFilters.isEmpty() || width <= 0 || height <= 0) {
+            return oesTexId;
+        }
+
+        // the last output has been composited, it's free for this frame
+        mFrameBufferPool.recycle(mOutput);
+        mOutput = null;
+
+        FrameBuffer input = mFrameBufferPool.obtain(width, height, GLES20.GL_RGBA);
+        if (input == null) {
+            return oesTexId;
+        }
+        input.bind();
+        mInputDrawer.draw(oesTexId, null, texMatrix);
+
+        for (GLFilter filter : mFilters) {
+            FrameBuffer output = mFrameBufferPool.obtain(width, height, GLES20.GL_RGBA);
+            if (output == null) {
+                break;
+            }
+            output.bind();
+            filter.draw(input.getTextureId());
+            mFrameBufferPool.recycle(input);
+            input = output;
+        }
+
+        GLStateCache.getInstance().bindFramebuffer(0);
+        GLES20.glViewport(0, 0, mViewportWidth, mViewportHeight);
+        mOutput = input;
+        return mOutput.getTextureId();
+    }
+}
@@ -0,0 +1,93 @@
+package learnopengl.xiaobole.com.filter;
+
+import android.opengl.GLES20;
+import android.util.Log;
+
+import learnopengl.xiaobole.com.utils.GLStateCache;
+import learnopengl.xiaobole.com.utils.GLUtils;
+
+/**
+ * A framebuffer object with a texture color attachment, used as a render target.
+ */
+public class FrameBuffer {
+    private static final String TAG = "FrameBuffer";
+
+    private final int mWidth;
+    private final int mHeight;
+    private final int mFormat;
+    private int mFrameBufferId;
+    private int mTextureId;
+
+    FrameBuffer(int width, int height, int format) {
+        mWidth = width;
+        mHeight = height;
+        mFormat = format;
+    }
+
+    boolean create() {
+        mTextureId = GLUtils.createTexture();
+        GLStateCache stateCache = GLStateCache.getInstance();
+        stateCache.bindTexture(GLES20.GL_TEXTURE_2D, mTextureId);
+        stateCache.texParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MIN_FILTER, GLES20.GL_LINEAR);
+        stateCache.texParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MAG_FILTER, GLES20.GL_LINEAR);
+        stateCache.texParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_S, GLES20.GL_CLAMP_TO_EDGE);
+        stateCache.texParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_T, GLES20.GL_CLAMP_TO_EDGE);
+        GLES20.glTexImage2D(GLES20.GL_TEXTURE_2D, 0, mFormat, mWidth, mHeight, 0,
+                mFormat, GLES20.GL_UNSIGNED_BYTE, null);
+        stateCache.bindTexture(GLES20.GL_TEXTURE_2D, 0);
+
+        int[] frameBuffers = new int[1];
+        GLES20.glGenFramebuffers(1, frameBuffers, 0);
+        mFrameBufferId = frameBuffers[0];
+        stateCache.bindFramebuffer(mFrameBufferId);
+        GLES20.glFramebufferTexture2D(GLES20.GL_FRAMEBUFFER, GLES20.GL_COLOR_ATTACHMENT0,
+                GLES20.GL_TEXTURE_2D, mTextureId, 0);
+        int status = GLES20.glCheckFramebufferStatus(GLES20.GL_FRAMEBUFFER);
+        stateCache.bindFramebuffer(0);
+        if (status != GLES20.GL_FRAMEBUFFER_COMPLETE) {
+            Log.e(TAG, "framebuffer " + mWidth + "x" + mHeight + " incomplete: " + status);
+            delete();
+            return false;
+        }
+        return true;
+    }
+
+    void delete() {
+        if (mFrameBufferId != 0) {
+            GLStateCache.getInstance().deleteFramebuffers(1, new int[]{mFrameBufferId}, 0);
+            mFrameBufferId = 0;
+        }
+        if (mTextureId != 0) {
+            GLStateCache.getInstance().deleteTextures(1, new int[]{mTextureId}, 0);
+            mTextureId = 0;
+        }
+    }
+
+    /**
+     * render into this framebuffer, the viewport covers the whole texture
+     */
+    public void bind() {
+        GLStateCache.getInstance().bindFramebuffer(mFrameBufferId);
+        GLES20.glViewport(0, 0, mWidth, mHeight);
+    }
+
+    public int getFrameBufferId() {
+        return mFrameBufferId;
+    }
+
+    public int getTextureId() {
+        return mTextureId;
+    }
+
+    public int getWidth() {
+        return mWidth;
+    }
+
+    public int getHeight() {
+        return mHeight;
+    }
+
+    public int getFormat() {
+        return mFormat;
+    }
+}
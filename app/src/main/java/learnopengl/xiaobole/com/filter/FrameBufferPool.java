@@ -0,0 +1,77 @@
+package learnopengl.xiaobole.com.filter;
+
+import android.util.Log;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reuses framebuffer / texture pairs keyed by size and format, so render passes
+ * don't create GL objects per frame. Must be used on the GL thread.
+ */
+public class FrameBufferPool {
+    private static final String TAG = "FrameBufferPool";
+
+    private final Map<Long, ArrayDeque<FrameBuffer>> mFreeBuffers = new HashMap<>();
+    private final List<FrameBuffer> mAllBuffers = new ArrayList<>();
+
+    /**
+     * get a framebuffer, creating one only if none of this size and format is free
+     *
+     * @param width the width
+     * @param height the height
+     * @param format the texture format, e.g. GLES20.GL_RGBA
+     * @return the framebuffer, null if failed, give it back with {@link #recycle(FrameBuffer)}
+     */
+    public FrameBuffer obtain(int width, int height, int format) {
+        ArrayDeque<FrameBuffer> free = mFreeBuffers.get(key(width, height, format));
+        if (free != null && !free.isEmpty()) {
+            return free.pollLast();
+        }
+        FrameBuffer frameBuffer = new FrameBuffer(width, height, format);
+        if (!frameBuffer.create()) {
+            return null;
+        }
+        mAllBuffers.add(frameBuffer);
+        Log.i(TAG, "create framebuffer " + width + "x" + height + ", total = " + mAllBuffers.size());
+        return frameBuffer;
+    }
+
+    public void recycle(FrameBuffer frameBuffer) {
+        if (frameBuffer == null || !mAllBuffers.contains(frameBuffer)) {
+            return;
+        }
+        long key = key(frameBuffer.getWidth(), frameBuffer.getHeight(), frameBuffer.getFormat());
+        ArrayDeque<FrameBuffer> free = mFreeBuffers.get(key);
+        if (free == null) {
+            free = new ArrayDeque<>();
+            mFreeBuffers.put(key, free);
+        }
+        free.offerLast(frameBuffer);
+    }
+
+    /**
+     * delete all framebuffers, including the ones still obtained
+     */
+    public void release() {
+        for (FrameBuffer frameBuffer : mAllBuffers) {
+            frameBuffer.delete();
+        }
+        clear();
+    }
+
+    /**
+     * Forget all framebuffers without deleting, they died with the previous context.
+     */
+    public void clear() {
+        mAllBuffers.clear();
+        mFreeBuffers.clear();
+    }
+
+    private static long key(int width, int height, int format) {
+        return ((long) width << 48) | ((long) height << 32) | (format & 0xffffffffL);
+    }
+}
@@ -0,0 +1,108 @@
+package learnopengl.xiaobole.com.filter;
+
+import android.opengl.GLES20;
+
+import learnopengl.xiaobole.com.utils.GLStateCache;
+import learnopengl.xiaobole.com.utils.GeometryCache;
+import learnopengl.xiaobole.com.utils.ProgramCache;
+
+/**
+ * One pass of a {@link FilterChain}, samples a GL_TEXTURE_2D and draws a full screen quad.
+ *
+ * Subclasses override {@link #getFragmentShader()}, which samples "sTexture" at "vTexCoord",
+ * and {@link #onSetupUniforms()} to feed their own uniforms.
+ */
+public class GLFilter {
+
+    private static final int POSITION_COMPONENT_COUNT = 3;
+    private static final int TEXCOORD_COMPONENT_COUNT = 2;
+
+    private static final String VERTEX_SHADER =
+            "attribute vec4 aPosition;\n" +
+                    "attribute vec4 aTexCoord;\n" +
+                    "varying vec2 vTexCoord;\n" +
+                    "void main() {\n" +
+                    "   gl_Position = aPosition;\n" +
+                    "   vTexCoord = aTexCoord.xy;\n" +
+                    "}";
+
+    private static final String FRAGMENT_SHADER =
+            "precision mediump float;\n" +
+                    "varying vec2 vTexCoord;\n" +
+                    "uniform sampler2D sTexture;\n" +
+                    "void main() {\n" +
+                    "   gl_FragColor = texture2D(sTexture, vTexCoord);\n" +
+                    "}";
+
+    private static final float[] VERTICES = {
+            -1.0f, -1.0f, 0.0f, 0.0f, 0.0f, // bottom, left
+            1.0f, 1.0f, 0.0f, 1.0f, 1.0f,   // top, right
+            -1.0f, 1.0f, 0.0f, 0.0f, 1.0f,  // top, left
+            1.0f, -1.0f, 0.0f, 1.0f, 0.0f   // bottom, right
+    };
+
+    private static final short[] INDICES = {
+            0, 1, 2,
+            0, 3, 1
+    };
+
+    protected int mProgramId;
+    private int mProgramGeneration;
+    private GeometryCache.Mesh mMesh;
+
+    protected String getFragmentShader() {
+        return FRAGMENT_SHADER;
+    }
+
+    /**
+     * called with the program in use before each draw
+     */
+    protected void onSetupUniforms() {
+    }
+
+    public void init() {
+        mProgramId = ProgramCache.getInstance().acquire(VERTEX_SHADER, getFragmentShader());
+        mProgramGeneration = ProgramCache.getInstance().getGeneration();
+        if (mProgramId == 0) {
+            return;
+        }
+        GeometryCache.VertexLayout layout = new GeometryCache.VertexLayout()
+                .addAttribute(GLES20.glGetAttribLocation(mProgramId, "aPosition"), POSITION_COMPONENT_COUNT)
+                .addAttribute(GLES20.glGetAttribLocation(mProgramId, "aTexCoord"), TEXCOORD_COMPONENT_COUNT);
+        mMesh = GeometryCache.getInstance().acquire(layout, VERTICES, INDICES);
+
+        GLStateCache.getInstance().useProgram(mProgramId);
+        GLES20.glUniform1i(GLES20.glGetUniformLocation(mProgramId, "sTexture"), 0);
+    }
+
+    public void release() {
+        if (mMesh != null) {
+            GeometryCache.getInstance().release(mMesh);
+            mMesh = null;
+        }
+        if (mProgramId != 0) {
+            ProgramCache.getInstance().release(mProgramId, mProgramGeneration);
+            mProgramId = 0;
+        }
+    }
+
+    /**
+     * draw the input texture into the currently bound framebuffer
+     *
+     * @param texId the GL_TEXTURE_2D input
+     */
+    public void draw(int texId) {
+        if (mProgramId == 0) {
+            return;
+        }
+        GLStateCache stateCache = GLStateCache.getInstance();
+        stateCache.useProgram(mProgramId);
+        onSetupUniforms();
+
+        stateCache.activeTexture(GLES20.GL_TEXTURE0);
+        stateCache.bindTexture(GLES20.GL_TEXTURE_2D, texId);
+
+        stateCache.bindVertexArray(mMesh.getVAOId());
+        GLES20.glDrawElements(GLES20.GL_TRIANGLES, mMesh.getIndexCount(), GLES20.GL_UNSIGNED_SHORT, 0);
+    }
+}
@@ -0,0 +1,19 @@
+package learnopengl.xiaobole.com.filter;
+
+public class GrayscaleFilter extends GLFilter {
+
+    private static final String FRAGMENT_SHADER =
+            "precision mediump float;\n" +
+                    "varying vec2 vTexCoord;\n" +
+                    "uniform sampler2D sTexture;\n" +
+                    "void main() {\n" +
+                    "   vec4 tc = texture2D(sTexture, vTexCoord);\n" +
+                    "   float color = tc.r * 0.3 + tc.g * 0.59 + tc.b * 0.11;\n" +
+                    "   gl_FragColor = vec4(color, color, color, 1.0);\n" +
+                    "}";
+
+    @Override
+    protected String getFragmentShader() {
+        return FRAGMENT_SHADER;
+    }
+}
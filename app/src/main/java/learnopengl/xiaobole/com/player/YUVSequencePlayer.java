@@ -0,0 +1,208 @@
+package learnopengl.xiaobole.com.player;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Plays a {@link YUVSequenceReader} at a target frame rate with seek and loop.
+ *
+ * A pacing thread delivers the frames on time, while a prefetch thread reads the pages
+ * of the next frames ahead, so storage latency does not stall the delivery.
+ */
+public class YUVSequencePlayer {
+    private static final String TAG = "YUVSequencePlayer";
+
+    private static final float DEFAULT_FRAME_RATE = 25.0f;
+    private static final int PREFETCH_FRAMES = 3;
+
+    public interface FrameListener {
+        /**
+         * called on the pacing thread
+         *
+         * @param frame the I420 frame, backed by the file mapping
+         * @param width the frame width
+         * @param height the frame height
+         * @param index the frame index
+         */
+        void onFrame(ByteBuffer frame, int width, int height, int index);
+    }
+
+    private final YUVSequenceReader mReader;
+    private final FrameListener mListener;
+    private final Object mLock = new Object();
+
+    private float mFrameRate;
+    private boolean mLooping = true;
+    private boolean mRunning;
+    private int mNextIndex;
+    private int mPrefetchIndex = -1;
+
+    private Thread mPacingThread;
+    private Thread mPrefetchThread;
+
+    public YUVSequencePlayer(YUVSequenceReader reader, FrameListener listener) {
+        mReader = reader;
+        mListener = listener;
+        mFrameRate = reader.getFrameRate() > 0 ? reader.getFrameRate() : DEFAULT_FRAME_RATE;
+    }
+
+    public YUVSequencePlayer setFrameRate(float frameRate) {
+        if (frameRate > 0) {
+            mFrameRate = frameRate;
+        }
+        return this;
+    }
+
+    public YUVSequencePlayer setLooping(boolean looping) {
+        mLooping = looping;
+        return this;
+    }
+
+    /**
+     * jump to a frame, the frame is delivered on the next tick
+     *
+     * @param index the frame index
+     */
+    public void seekTo(int index) {
+        synchronized (mLock) {
+            mNextIndex = Math.max(0, Math.min(index, mReader.getFrameCount() - 1));
+            mPrefetchIndex = mNextIndex;
+            mLock.notifyAll();
+        }
+    }
+
+    public void start() {
+        synchronized (mLock) {
+            if (mRunning || mReader.getFrameCount() == 0) {
+                return;
+            }
+            mRunning = true;
+            mPrefetchIndex = mNextIndex;
+        }
+        mPrefetchThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                prefetchLoop();
+            }
+        }, TAG + "-prefetch");
+        mPacingThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                pacingLoop();
+            }
+        }, TAG);
+        mPrefetchThread.start();
+        mPacingThread.start();
+    }
+
+    public void stop() {
+        synchronized (mLock) {
+            if (!mRunning) {
+                return;
+            }
+            mRunning = false;
+            mLock.notifyAll();
+        }
+        try {
+            mPacingThread.join();
+            mPrefetchThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        mPacingThread = null;
+        mPrefetchThread = null;
+    }
+
+    public void release() {
+        stop();
+        try {
+            mReader.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private void pacingLoop() {
+        long frameIntervalNs = (long) (1000000000L / mFrameRate);
+        long nextFrameTime = SystemClock.elapsedRealtimeNanos();
+        while (true) {
+            int index;
+            synchronized (mLock) {
+                long wait = nextFrameTime - SystemClock.elapsedRealtimeNanos();
+                while (mRunning && wait > 0) {
+                    try {
+                        mLock.wait(wait / 1000000, (int) (wait % 1000000));
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    wait = nextFrameTime - SystemClock.elapsedRealtimeNanos();
+                }
+                if (!mRunning) {
+                    return;
+                }
+                index = mNextIndex;
+                mNextIndex = index + 1;
+                if (mNextIndex >= mReader.getFrameCount()) {
+                    if (!mLooping) {
+                        mRunning = false;
+                    }
+                    mNextIndex = 0;
+                }
+                mPrefetchIndex = mNextIndex;
+                mLock.notifyAll();
+            }
+
+            try {
+                mListener.onFrame(mReader.getFrame(index), mReader.getWidth(), mReader.getHeight(), index);
+            } catch (IOException e) {
+                Log.e(TAG, "failed to read frame " + index + ": " + e.getMessage());
+            }
+
+            nextFrameTime += frameIntervalNs;
+            long now = SystemClock.elapsedRealtimeNanos();
+            if (now - nextFrameTime > frameIntervalNs) {
+                // fell behind by more than a frame, don't try to catch up in a burst
+                nextFrameTime = now;
+            }
+        }
+    }
+
+    private void prefetchLoop() {
+        int prefetched = -1;
+        while (true) {
+            int start;
+            synchronized (mLock) {
+                while (mRunning && mPrefetchIndex == prefetched) {
+                    try {
+                        mLock.wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                if (!mRunning) {
+                    return;
+                }
+                start = mPrefetchIndex;
+            }
+            int count = mReader.getFrameCount();
+            try {
+                for (int i = 0; i < PREFETCH_FRAMES; i++) {
+                    int index = start + i;
+                    if (index >= count) {
+                        if (!mLooping) {
+                            break;
+                        }
+                        index -= count;
+                    }
+                    mReader.prefetch(index);
+                }
+            } catch (IOException e) {
+                Log.w(TAG, "prefetch failed: " + e.getMessage());
+            }
+            prefetched = start;
+        }
+    }
+}
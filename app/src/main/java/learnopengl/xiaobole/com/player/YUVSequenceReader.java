@@ -0,0 +1,267 @@
+package learnopengl.xiaobole.com.player;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+
+/**
+ * Random access to the frames of a raw I420 or Y4M (4:2:0) file through memory mapping.
+ *
+ * Frame offsets are indexed when the reader is created. The file is mapped in segments
+ * of whole frames, and only the segments around the last accessed frame stay referenced,
+ * so sequences larger than the heap or the address space can be played.
+ */
+public class YUVSequenceReader implements Closeable {
+
+    private static final String Y4M_MAGIC = "YUV4MPEG2";
+    private static final String Y4M_FRAME = "FRAME";
+    private static final int MAX_HEADER_LENGTH = 1024;
+    private static final long MAX_SEGMENT_SIZE = 64 * 1024 * 1024;
+    private static final int PAGE_SIZE = 4096;
+
+    private final FileChannel mChannel;
+    private final int mWidth;
+    private final int mHeight;
+    private final int mFrameSize;
+    private final float mFrameRate;
+
+    private long[] mFrameOffsets;
+    private int mFrameCount;
+
+    private long[] mSegmentOffsets;
+    private long[] mSegmentSizes;
+    private int[] mFrameSegments;
+    private int mSegmentCount;
+    private final MappedByteBuffer[] mMappedSegments = new MappedByteBuffer[2];
+    private final int[] mMappedSegmentIds = {-1, -1};
+    private volatile int mPrefetchSink;
+
+    /**
+     * open a raw I420 sequence
+     *
+     * @param channel the file channel
+     * @param offset the start of the sequence in the file
+     * @param length the length of the sequence in bytes
+     * @param width the frame width
+     * @param height the frame height
+     */
+    public static YUVSequenceReader openI420(FileChannel channel, long offset, long length,
+                                             int width, int height) throws IOException {
+        YUVSequenceReader reader = new YUVSequenceReader(channel, width, height, 0);
+        reader.indexI420(offset, length);
+        return reader;
+    }
+
+    /**
+     * open a Y4M sequence, the frame size and rate come from the stream header
+     *
+     * @param channel the file channel
+     * @param offset the start of the sequence in the file
+     * @param length the length of the sequence in bytes
+     */
+    public static YUVSequenceReader openY4M(FileChannel channel, long offset, long length) throws IOException {
+        String header = readLine(channel, offset, offset + length);
+        if (header == null || !header.startsWith(Y4M_MAGIC)) {
+            throw new IOException("not a y4m stream");
+        }
+        int width = 0;
+        int height = 0;
+        float frameRate = 0;
+        for (String param : header.split(" ")) {
+            if (param.length() < 2) {
+                continue;
+            }
+            String value = param.substring(1);
+            switch (param.charAt(0)) {
+                case 'W':
+                    width = Integer.parseInt(value);
+                    break;
+                case 'H':
+                    height = Integer.parseInt(value);
+                    break;
+                case 'F':
+                    String[] rate = value.split(":");
+                    if (rate.length == 2 && Integer.parseInt(rate[1]) != 0) {
+                        frameRate = Integer.parseInt(rate[0]) / (float) Integer.parseInt(rate[1]);
+                    }
+                    break;
+                case 'C':
+                    if (!value.startsWith("420")) {
+                        throw new IOException("unsupported y4m colorspace: " + value);
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+        if (width <= 0 || height <= 0) {
+            throw new IOException("invalid y4m header: " + header);
+        }
+        YUVSequenceReader reader = new YUVSequenceReader(channel, width, height, frameRate);
+        reader.indexY4M(offset + header.length() + 1, offset + length);
+        return reader;
+    }
+
+    private YUVSequenceReader(FileChannel channel, int width, int height, float frameRate) {
+        mChannel = channel;
+        mWidth = width;
+        mHeight = height;
+        mFrameRate = frameRate;
+        mFrameSize = width * height + 2 * ((width + 1) / 2) * ((height + 1) / 2);
+    }
+
+    public int getWidth() {
+        return mWidth;
+    }
+
+    public int getHeight() {
+        return mHeight;
+    }
+
+    public int getFrameCount() {
+        return mFrameCount;
+    }
+
+    public int getFrameSize() {
+        return mFrameSize;
+    }
+
+    /**
+     * get the frame rate of the stream header
+     *
+     * @return the frame rate, 0 if unknown
+     */
+    public float getFrameRate() {
+        return mFrameRate;
+    }
+
+    /**
+     * get a frame without copying
+     *
+     * @param index the frame index
+     * @return a read only I420 buffer backed by the mapping
+     */
+    public synchronized ByteBuffer getFrame(int index) throws IOException {
+        if (index < 0 || index >= mFrameCount) {
+            throw new IndexOutOfBoundsException("frame " + index + " of " + mFrameCount);
+        }
+        int segment = mFrameSegments[index];
+        MappedByteBuffer mapped = mapSegment(segment);
+        int position = (int) (mFrameOffsets[index] - mSegmentOffsets[segment]);
+        ByteBuffer frame = mapped.duplicate();
+        frame.position(position).limit(position + mFrameSize);
+        return frame.slice();
+    }
+
+    /**
+     * touch every page of a frame so it is read from storage before it is needed,
+     * meant to be called off the render thread
+     *
+     * @param index the frame index
+     */
+    public void prefetch(int index) throws IOException {
+        if (index < 0 || index >= mFrameCount) {
+            return;
+        }
+        ByteBuffer frame = getFrame(index);
+        int sum = 0;
+        for (int i = 0; i < mFrameSize; i += PAGE_SIZE) {
+            sum += frame.get(i);
+        }
+        // keep the reads from being optimized away
+        mPrefetchSink = sum;
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            mMappedSegments[0] = null;
+            mMappedSegments[1] = null;
+            mMappedSegmentIds[0] = -1;
+            mMappedSegmentIds[1] = -1;
+        }
+        mChannel.close();
+    }
+
+    private MappedByteBuffer mapSegment(int segment) throws IOException {
+        // consecutive segments go to different slots, so the current and the next one stay mapped
+        int slot = segment % mMappedSegments.length;
+        if (mMappedSegmentIds[slot] != segment) {
+            mMappedSegments[slot] = mChannel.map(FileChannel.MapMode.READ_ONLY,
+                    mSegmentOffsets[segment], mSegmentSizes[segment]);
+            mMappedSegmentIds[slot] = segment;
+        }
+        return mMappedSegments[slot];
+    }
+
+    private void indexI420(long offset, long length) {
+        int count = (int) (length / mFrameSize);
+        mFrameOffsets = new long[count];
+        for (int i = 0; i < count; i++) {
+            mFrameOffsets[i] = offset + (long) i * mFrameSize;
+        }
+        mFrameCount = count;
+        buildSegments();
+    }
+
+    private void indexY4M(long position, long end) throws IOException {
+        long[] offsets = new long[64];
+        int count = 0;
+        while (position < end) {
+            String frameHeader = readLine(mChannel, position, end);
+            if (frameHeader == null || !frameHeader.startsWith(Y4M_FRAME)) {
+                break;
+            }
+            long data = position + frameHeader.length() + 1;
+            if (data + mFrameSize > end) {
+                break;
+            }
+            if (count == offsets.length) {
+                long[] grown = new long[count * 2];
+                System.arraycopy(offsets, 0, grown, 0, count);
+                offsets = grown;
+            }
+            offsets[count++] = data;
+            position = data + mFrameSize;
+        }
+        mFrameOffsets = offsets;
+        mFrameCount = count;
+        buildSegments();
+    }
+
+    private void buildSegments() {
+        mFrameSegments = new int[mFrameCount];
+        mSegmentOffsets = new long[mFrameCount];
+        mSegmentSizes = new long[mFrameCount];
+        mSegmentCount = 0;
+        for (int i = 0; i < mFrameCount; i++) {
+            long frameEnd = mFrameOffsets[i] + mFrameSize;
+            int current = mSegmentCount - 1;
+            if (current < 0 || frameEnd - mSegmentOffsets[current] > MAX_SEGMENT_SIZE) {
+                current = mSegmentCount++;
+                mSegmentOffsets[current] = mFrameOffsets[i];
+            }
+            mSegmentSizes[current] = frameEnd - mSegmentOffsets[current];
+            mFrameSegments[i] = current;
+        }
+    }
+
+    private static String readLine(FileChannel channel, long position, long end) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(MAX_HEADER_LENGTH, end - position));
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                break;
+            }
+        }
+        byte[] bytes = buffer.array();
+        for (int i = 0; i < buffer.position(); i++) {
+            if (bytes[i] == '\n') {
+                return new String(bytes, 0, i, Charset.forName("US-ASCII"));
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,41 @@
+package learnopengl.xiaobole.com.recorder;
+
+import android.view.Surface;
+
+import java.io.IOException;
+
+/**
+ * The consumer of the frames rendered by a {@link VideoRecorder}, e.g. a video encoder.
+ *
+ * Frames are rendered into the input surface on the GL thread with their presentation
+ * time set; the sink reports how many of them it has not consumed yet, so the recorder
+ * can drop frames instead of blocking the GL thread when the sink falls behind.
+ */
+public interface EncoderSink {
+
+    /**
+     * prepare for frames of the given size, called on the GL thread
+     *
+     * @param width the frame width
+     * @param height the frame height
+     * @return the surface to render the frames into
+     */
+    Surface prepare(int width, int height) throws IOException;
+
+    /**
+     * a frame has been swapped into the input surface, called on the GL thread
+     *
+     * @param timestampNs the presentation time of the frame in nanoseconds
+     */
+    void onFrameSubmitted(long timestampNs);
+
+    /**
+     * @return the frames submitted but not consumed yet, may be called from any thread
+     */
+    int getPendingFrameCount();
+
+    /**
+     * finish the stream and free the resources, must not block on the consumer
+     */
+    void release();
+}
@@ -0,0 +1,158 @@
+package learnopengl.xiaobole.com.recorder;
+
+import android.media.MediaCodec;
+import android.media.MediaCodecInfo;
+import android.media.MediaFormat;
+import android.media.MediaMuxer;
+import android.util.Log;
+import android.view.Surface;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Encodes the frames to H.264 with a MediaCodec input surface and writes them to an mp4 file.
+ *
+ * The encoder output is drained on its own thread. {@link #release()} only signals the end
+ * of the stream, the drain thread finishes the file and releases the codec.
+ *
+ * The pending frames are tracked by presentation time with a {@link PendingFrameTracker},
+ * so frames the encoder skips or merges don't hold back the recorder; the encoder keeps
+ * 2-3 frames in flight on its own, see {@link VideoRecorder#DEFAULT_MAX_PENDING_FRAMES}.
+ */
+public class MediaCodecEncoderSink implements EncoderSink {
+    private static final String TAG = "MediaCodecEncoderSink";
+
+    private static final String MIME_TYPE = "video/avc";
+    private static final int FRAME_RATE = 30;
+    private static final int I_FRAME_INTERVAL = 1;
+    private static final int DRAIN_TIMEOUT_US = 10000;
+    // a frame without output for this long was skipped by the encoder
+    private static final long PENDING_TIMEOUT_NS = 250000000L;
+
+    private final File mOutputFile;
+    private final int mBitRate;
+
+    private MediaCodec mCodec;
+    private MediaMuxer mMuxer;
+    private Thread mDrainThread;
+    private final PendingFrameTracker mPendingFrames = new PendingFrameTracker(PENDING_TIMEOUT_NS);
+    private volatile long mSubmittedCount;
+    private volatile long mEncodedCount;
+    private boolean mReleased;
+
+    /**
+     * @param outputFile the mp4 file to write
+     * @param bitRate the target bit rate in bits per second
+     */
+    public MediaCodecEncoderSink(File outputFile, int bitRate) {
+        mOutputFile = outputFile;
+        mBitRate = bitRate;
+    }
+
+    @Override
+    public synchronized Surface prepare(int width, int height) throws IOException {
+        MediaFormat format = MediaFormat.createVideoFormat(MIME_TYPE, width, height);
+        format.setInteger(MediaFormat.KEY_COLOR_FORMAT, MediaCodecInfo.CodecCapabilities.COLOR_FormatSurface);
+        format.setInteger(MediaFormat.KEY_BIT_RATE, mBitRate);
+        format.setInteger(MediaFormat.KEY_FRAME_RATE, FRAME_RATE);
+        format.setInteger(MediaFormat.KEY_I_FRAME_INTERVAL, I_FRAME_INTERVAL);
+
+        mCodec = MediaCodec.createEncoderByType(MIME_TYPE);
+        mCodec.configure(format, null, null, MediaCodec.CONFIGURE_FLAG_ENCODE);
+        Surface surface = mCodec.createInputSurface();
+        mCodec.start();
+        mMuxer = new MediaMuxer(mOutputFile.getAbsolutePath(), MediaMuxer.OutputFormat.MUXER_OUTPUT_MPEG_4);
+        Log.i(TAG, "prepare " + width + "x" + height + " @ " + mBitRate + "bps -> " + mOutputFile);
+
+        mDrainThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                drainLoop();
+            }
+        }, TAG);
+        mDrainThread.start();
+        return surface;
+    }
+
+    @Override
+    public void onFrameSubmitted(long timestampNs) {
+        mSubmittedCount++;
+        // the encoder reports the presentation time in microseconds
+        mPendingFrames.onSubmitted(timestampNs / 1000, System.nanoTime());
+    }
+
+    @Override
+    public int getPendingFrameCount() {
+        return mPendingFrames.getPendingCount(System.nanoTime());
+    }
+
+    @Override
+    public synchronized void release() {
+        if (mReleased) {
+            return;
+        }
+        mReleased = true;
+        if (mCodec != null) {
+            mCodec.signalEndOfInputStream();
+        }
+    }
+
+    private void drainLoop() {
+        MediaCodec.BufferInfo info = new MediaCodec.BufferInfo();
+        ByteBuffer[] outputBuffers = mCodec.getOutputBuffers();
+        int track = -1;
+        try {
+            while (true) {
+                int index = mCodec.dequeueOutputBuffer(info, DRAIN_TIMEOUT_US);
+                if (index == MediaCodec.INFO_TRY_AGAIN_LATER) {
+                    continue;
+                } else if (index == MediaCodec.INFO_OUTPUT_BUFFERS_CHANGED) {
+                    outputBuffers = mCodec.getOutputBuffers();
+                    continue;
+                } else if (index == MediaCodec.INFO_OUTPUT_FORMAT_CHANGED) {
+                    track = mMuxer.addTrack(mCodec.getOutputFormat());
+                    mMuxer.start();
+                    continue;
+                } else if (index < 0) {
+                    continue;
+                }
+
+                boolean config = (info.flags & MediaCodec.BUFFER_FLAG_CODEC_CONFIG) != 0;
+                if (!config && info.size > 0 && track >= 0) {
+                    ByteBuffer data = outputBuffers[index];
+                    data.position(info.offset).limit(info.offset + info.size);
+                    mMuxer.writeSampleData(track, data, info);
+                    mEncodedCount++;
+                }
+                if (!config) {
+                    mPendingFrames.onOutput(info.presentationTimeUs);
+                }
+                mCodec.releaseOutputBuffer(index, false);
+                if ((info.flags & MediaCodec.BUFFER_FLAG_END_OF_STREAM) != 0) {
+                    break;
+                }
+            }
+        } catch (IllegalStateException e) {
+            Log.e(TAG, "encoder failed: " + e.getMessage());
+        } finally {
+            finish(track >= 0);
+        }
+    }
+
+    private void finish(boolean muxerStarted) {
+        try {
+            mCodec.stop();
+        } catch (IllegalStateException e) {
+            Log.w(TAG, "stop encoder: " + e.getMessage());
+        }
+        mCodec.release();
+        if (muxerStarted) {
+            mMuxer.stop();
+        }
+        mMuxer.release();
+        Log.i(TAG, "finished, submitted = " + mSubmittedCount + ", encoded = " + mEncodedCount
+                + ", timed out = " + mPendingFrames.getExpiredCount());
+    }
+}
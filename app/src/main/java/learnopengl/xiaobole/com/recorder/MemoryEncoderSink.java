@@ -0,0 +1,177 @@
+package learnopengl.xiaobole.com.recorder;
+
+import android.annotation.TargetApi;
+import android.graphics.PixelFormat;
+import android.media.Image;
+import android.media.ImageReader;
+import android.os.Build;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.view.Surface;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Keeps the last recorded frames in memory as RGBA pixels, a stand-in for the encoder
+ * to check what the recording pipeline produces, e.g. timestamps and content, without
+ * going through a codec.
+ */
+@TargetApi(Build.VERSION_CODES.KITKAT)
+public class MemoryEncoderSink implements EncoderSink {
+    private static final String TAG = "MemoryEncoderSink";
+
+    private static final int MAX_IMAGES = 2;
+
+    public static class Frame {
+        private final byte[] mData;
+        private final int mWidth;
+        private final int mHeight;
+        private long mTimestamp;
+
+        private Frame(int width, int height) {
+            mData = new byte[width * height * 4];
+            mWidth = width;
+            mHeight = height;
+        }
+
+        /**
+         * @return the RGBA pixels, rows top to bottom without padding
+         */
+        public byte[] getData() {
+            return mData;
+        }
+
+        public int getWidth() {
+            return mWidth;
+        }
+
+        public int getHeight() {
+            return mHeight;
+        }
+
+        /**
+         * @return the presentation time in nanoseconds
+         */
+        public long getTimestamp() {
+            return mTimestamp;
+        }
+    }
+
+    private final int mMaxFrames;
+    private final Object mLock = new Object();
+    private final ArrayDeque<Frame> mFrames = new ArrayDeque<>();
+    private Frame mSpareFrame;
+
+    private HandlerThread mThread;
+    private ImageReader mImageReader;
+    private volatile long mSubmittedCount;
+    private volatile long mReceivedCount;
+
+    /**
+     * @param maxFrames the number of most recent frames to keep
+     */
+    public MemoryEncoderSink(int maxFrames) {
+        mMaxFrames = Math.max(1, maxFrames);
+    }
+
+    @Override
+    public Surface prepare(int width, int height) {
+        mThread = new HandlerThread(TAG);
+        mThread.start();
+        mImageReader = ImageReader.newInstance(width, height, PixelFormat.RGBA_8888, MAX_IMAGES);
+        mImageReader.setOnImageAvailableListener(new ImageReader.OnImageAvailableListener() {
+            @Override
+            public void onImageAvailable(ImageReader reader) {
+                Image image = reader.acquireNextImage();
+                if (image == null) {
+                    mReceivedCount++;
+                    return;
+                }
+                Image.Plane plane = image.getPlanes()[0];
+                receive(plane.getBuffer(), plane.getRowStride(), image.getWidth(), image.getHeight(),
+                        image.getTimestamp());
+                image.close();
+            }
+        }, new Handler(mThread.getLooper()));
+        return mImageReader.getSurface();
+    }
+
+    @Override
+    public void onFrameSubmitted(long timestampNs) {
+        mSubmittedCount++;
+    }
+
+    @Override
+    public int getPendingFrameCount() {
+        return (int) (mSubmittedCount - mReceivedCount);
+    }
+
+    @Override
+    public void release() {
+        if (mThread != null) {
+            final ImageReader imageReader = mImageReader;
+            // close on the reader thread so no callback runs on a closed reader
+            new Handler(mThread.getLooper()).post(new Runnable() {
+                @Override
+                public void run() {
+                    imageReader.close();
+                }
+            });
+            mThread.quitSafely();
+            mThread = null;
+            mImageReader = null;
+        }
+    }
+
+    /**
+     * @return the kept frames, oldest first
+     */
+    public List<Frame> getFrames() {
+        synchronized (mLock) {
+            return new ArrayList<>(mFrames);
+        }
+    }
+
+    public long getReceivedCount() {
+        return mReceivedCount;
+    }
+
+    /**
+     * keep a consumed frame, called on the reader thread
+     *
+     * @param pixels the RGBA rows
+     * @param rowStride the row stride in bytes
+     * @param width the frame width
+     * @param height the frame height
+     * @param timestamp the presentation time in nanoseconds
+     */
+    void receive(ByteBuffer pixels, int rowStride, int width, int height, long timestamp) {
+        Frame frame;
+        synchronized (mLock) {
+            frame = mSpareFrame;
+            mSpareFrame = null;
+        }
+        if (frame == null || frame.mWidth != width || frame.mHeight != height) {
+            frame = new Frame(width, height);
+        }
+
+        int rowSize = width * 4;
+        for (int row = 0; row < height; row++) {
+            pixels.position(row * rowStride);
+            pixels.get(frame.mData, row * rowSize, rowSize);
+        }
+        frame.mTimestamp = timestamp;
+
+        synchronized (mLock) {
+            mFrames.offerLast(frame);
+            if (mFrames.size() > mMaxFrames) {
+                // reuse the array of the oldest frame for the next one
+                mSpareFrame = mFrames.pollFirst();
+            }
+        }
+        mReceivedCount++;
+    }
+}
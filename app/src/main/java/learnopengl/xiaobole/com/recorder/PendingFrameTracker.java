@@ -0,0 +1,98 @@
+package learnopengl.xiaobole.com.recorder;
+
+/**
+ * Tracks the frames submitted to an encoder that have not come out of it yet, by their
+ * presentation time.
+ *
+ * Encoders don't return every frame: rate control skips some and merges others, so counting
+ * outputs against inputs leaks a pending frame per skip until the recorder drops everything.
+ * Instead an output retires every frame submitted up to its timestamp, and a frame still
+ * pending after the timeout is retired too, e.g. a skipped frame with nothing behind it yet.
+ *
+ * Pure Java, thread safe.
+ */
+public class PendingFrameTracker {
+
+    private final long mTimeoutNs;
+    // a ring of the pending frames, oldest first
+    private long[] mTimestamps = new long[16];
+    private long[] mSubmitTimes = new long[16];
+    private int mHead;
+    private int mCount;
+    private long mExpiredCount;
+
+    /**
+     * @param timeoutNs how long a frame may stay pending, in nanoseconds
+     */
+    public PendingFrameTracker(long timeoutNs) {
+        mTimeoutNs = timeoutNs;
+    }
+
+    /**
+     * @param timestamp the presentation time, in the unit the encoder reports it
+     * @param nowNs the current time, e.g. System.nanoTime()
+     */
+    public synchronized void onSubmitted(long timestamp, long nowNs) {
+        if (mCount == mTimestamps.length) {
+            grow();
+        }
+        int index = (mHead + mCount) % mTimestamps.length;
+        mTimestamps[index] = timestamp;
+        mSubmitTimes[index] = nowNs;
+        mCount++;
+    }
+
+    /**
+     * an encoded frame came out, retires the frames submitted up to it
+     *
+     * @param timestamp the presentation time of the output
+     */
+    public synchronized void onOutput(long timestamp) {
+        while (mCount > 0 && mTimestamps[mHead] <= timestamp) {
+            pop();
+        }
+    }
+
+    /**
+     * @param nowNs the current time, e.g. System.nanoTime()
+     * @return the frames submitted and neither output nor timed out
+     */
+    public synchronized int getPendingCount(long nowNs) {
+        while (mCount > 0 && nowNs - mSubmitTimes[mHead] > mTimeoutNs) {
+            pop();
+            mExpiredCount++;
+        }
+        return mCount;
+    }
+
+    /**
+     * @return the frames retired by the timeout, skipped by the encoder or very late
+     */
+    public synchronized long getExpiredCount() {
+        return mExpiredCount;
+    }
+
+    public synchronized void reset() {
+        mHead = 0;
+        mCount = 0;
+        mExpiredCount = 0;
+    }
+
+    private void pop() {
+        mHead = (mHead + 1) % mTimestamps.length;
+        mCount--;
+    }
+
+    private void grow() {
+        long[] timestamps = new long[mTimestamps.length * 2];
+        long[] submitTimes = new long[timestamps.length];
+        for (int i = 0; i < mCount; i++) {
+            int index = (mHead + i) % mTimestamps.length;
+            timestamps[i] = mTimestamps[index];
+            submitTimes[i] = mSubmitTimes[index];
+        }
+        mTimestamps = timestamps;
+        mSubmitTimes = submitTimes;
+        mHead = 0;
+    }
+}
@@ -0,0 +1,72 @@
+package learnopengl.xiaobole.com.recorder;
+
+/**
+ * Admits frames into an {@link EncoderSink} while it has fewer than the maximum frames
+ * pending, so a slow consumer loses frames instead of blocking the GL thread, and counts
+ * the submitted and dropped frames.
+ *
+ * Pure Java. Frames are admitted on the GL thread, the counts may be read from any thread.
+ */
+public class SinkThrottle {
+
+    private volatile int mMaxPendingFrames;
+    private volatile long mSubmittedCount;
+    private volatile long mDroppedCount;
+
+    /**
+     * @param maxPendingFrames the frames the sink may have pending before frames are dropped
+     */
+    public SinkThrottle(int maxPendingFrames) {
+        setMaxPendingFrames(maxPendingFrames);
+    }
+
+    public SinkThrottle setMaxPendingFrames(int maxPendingFrames) {
+        mMaxPendingFrames = Math.max(1, maxPendingFrames);
+        return this;
+    }
+
+    public int getMaxPendingFrames() {
+        return mMaxPendingFrames;
+    }
+
+    /**
+     * decide whether the next frame goes to the sink, counts it as dropped if not
+     *
+     * @return true if the sink can take the frame
+     */
+    public boolean admit(EncoderSink sink) {
+        if (sink.getPendingFrameCount() >= mMaxPendingFrames) {
+            mDroppedCount++;
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * an admitted frame was rendered into the sink
+     */
+    public void onSubmitted(EncoderSink sink, long timestampNs) {
+        mSubmittedCount++;
+        sink.onFrameSubmitted(timestampNs);
+    }
+
+    /**
+     * an admitted frame could not be rendered
+     */
+    public void onFailed() {
+        mDroppedCount++;
+    }
+
+    public void reset() {
+        mSubmittedCount = 0;
+        mDroppedCount = 0;
+    }
+
+    public long getSubmittedCount() {
+        return mSubmittedCount;
+    }
+
+    public long getDroppedCount() {
+        return mDroppedCount;
+    }
+}
@@ -0,0 +1,235 @@
+package learnopengl.xiaobole.com.recorder;
+
+import android.opengl.EGL14;
+import android.opengl.EGLConfig;
+import android.opengl.EGLContext;
+import android.opengl.EGLDisplay;
+import android.opengl.EGLExt;
+import android.opengl.EGLSurface;
+import android.opengl.GLES20;
+import android.util.Log;
+import android.view.Surface;
+
+import java.io.IOException;
+
+/**
+ * Tees the rendered frames of the GL thread into an {@link EncoderSink}.
+ *
+ * The sink's input surface is wrapped in an EGL window surface of the renderer's own
+ * context, so every frame is drawn a second time from the same texture, after the same
+ * updateTexImage, and swapped with its SurfaceTexture timestamp as the presentation time.
+ * When the sink has {@link #setMaxPendingFrames(int)} frames it has not consumed yet,
+ * the frame is dropped instead of blocking the GL thread, see {@link SinkThrottle}.
+ */
+public class VideoRecorder {
+    private static final String TAG = "VideoRecorder";
+
+    /**
+     * above the 2-3 frames a hardware encoder keeps in flight on its own, so frames are
+     * only dropped when the encoder really falls behind
+     */
+    public static final int DEFAULT_MAX_PENDING_FRAMES = 6;
+
+    public interface FrameDrawer {
+        /**
+         * draw the current frame, called on the GL thread with the encoder surface
+         * current and the viewport set to the recording size
+         */
+        void drawFrame();
+    }
+
+    private final Object mLock = new Object();
+    private EncoderSink mSink;
+    private int mWidth;
+    private int mHeight;
+    private boolean mSinkPrepared;
+    private final SinkThrottle mThrottle = new SinkThrottle(DEFAULT_MAX_PENDING_FRAMES);
+
+    // GL thread only
+    private EGLSurface mEGLSurface = EGL14.EGL_NO_SURFACE;
+    private EGLDisplay mEGLDisplay = EGL14.EGL_NO_DISPLAY;
+
+    /**
+     * start recording from the next frame, may be called from any thread
+     *
+     * @param sink the frame consumer, prepared on the GL thread
+     * @param width the recording width
+     * @param height the recording height
+     */
+    public void start(EncoderSink sink, int width, int height) {
+        if (width <= 0 || height <= 0) {
+            throw new IllegalArgumentException("invalid size " + width + "x" + height);
+        }
+        synchronized (mLock) {
+            releaseSinkLocked();
+            mSink = sink;
+            mWidth = width;
+            mHeight = height;
+            mSinkPrepared = false;
+            mThrottle.reset();
+        }
+        Log.i(TAG, "start " + width + "x" + height);
+    }
+
+    /**
+     * stop recording and release the sink, may be called from any thread
+     */
+    public void stop() {
+        synchronized (mLock) {
+            if (mSink == null) {
+                return;
+            }
+            releaseSinkLocked();
+        }
+        Log.i(TAG, "stop, submitted = " + mThrottle.getSubmittedCount() + ", dropped = " + mThrottle.getDroppedCount());
+    }
+
+    public boolean isRecording() {
+        synchronized (mLock) {
+            return mSink != null;
+        }
+    }
+
+    /**
+     * set the maximum frames the sink may have pending before frames are dropped
+     */
+    public VideoRecorder setMaxPendingFrames(int maxPendingFrames) {
+        mThrottle.setMaxPendingFrames(maxPendingFrames);
+        return this;
+    }
+
+    public long getSubmittedCount() {
+        return mThrottle.getSubmittedCount();
+    }
+
+    public long getDroppedCount() {
+        return mThrottle.getDroppedCount();
+    }
+
+    /**
+     * call on the GL thread when the context is created, the surfaces of the old
+     * context are gone with it and the recording is stopped
+     */
+    public void onContextCreated() {
+        mEGLSurface = EGL14.EGL_NO_SURFACE;
+        mEGLDisplay = EGL14.EGL_NO_DISPLAY;
+        stop();
+    }
+
+    /**
+     * destroy the encoder surface, call on the GL thread before its context goes away
+     */
+    public void releaseGL() {
+        synchronized (mLock) {
+            releaseSinkLocked();
+            destroySurface();
+        }
+    }
+
+    /**
+     * render the current frame into the sink, call on the GL thread after the frame is
+     * drawn to the screen and before it is swapped, also when not recording, so the
+     * encoder surface of a stopped recording is destroyed
+     *
+     * @param timestamp the presentation time in nanoseconds, e.g. SurfaceTexture#getTimestamp
+     * @param drawer draws the frame again into the encoder surface
+     * @return true if the frame was rendered into the sink, the viewport is changed then
+     */
+    public boolean drawFrame(long timestamp, FrameDrawer drawer) {
+        synchronized (mLock) {
+            if (mSink == null) {
+                destroySurface();
+                return false;
+            }
+            if (!mSinkPrepared && !prepareLocked()) {
+                return false;
+            }
+            if (!mThrottle.admit(mSink)) {
+                // the consumer is behind, drop this frame
+                return false;
+            }
+
+            EGLDisplay display = EGL14.eglGetCurrentDisplay();
+            EGLContext context = EGL14.eglGetCurrentContext();
+            EGLSurface drawSurface = EGL14.eglGetCurrentSurface(EGL14.EGL_DRAW);
+            EGLSurface readSurface = EGL14.eglGetCurrentSurface(EGL14.EGL_READ);
+            if (!EGL14.eglMakeCurrent(display, mEGLSurface, mEGLSurface, context)) {
+                Log.e(TAG, "eglMakeCurrent failed: " + EGL14.eglGetError());
+                mThrottle.onFailed();
+                return false;
+            }
+            GLES20.glViewport(0, 0, mWidth, mHeight);
+            drawer.drawFrame();
+            EGLExt.eglPresentationTimeANDROID(display, mEGLSurface, timestamp);
+            if (EGL14.eglSwapBuffers(display, mEGLSurface)) {
+                mThrottle.onSubmitted(mSink, timestamp);
+            } else {
+                Log.e(TAG, "eglSwapBuffers failed: " + EGL14.eglGetError());
+                mThrottle.onFailed();
+            }
+            EGL14.eglMakeCurrent(display, drawSurface, readSurface, context);
+            return true;
+        }
+    }
+
+    private boolean prepareLocked() {
+        mSinkPrepared = true;
+        Surface surface;
+        try {
+            surface = mSink.prepare(mWidth, mHeight);
+        } catch (IOException e) {
+            Log.e(TAG, "prepare sink failed: " + e.getMessage());
+            releaseSinkLocked();
+            return false;
+        }
+
+        destroySurface();
+        EGLDisplay display = EGL14.eglGetCurrentDisplay();
+        EGLConfig config = getCurrentConfig(display);
+        if (config != null) {
+            mEGLSurface = EGL14.eglCreateWindowSurface(display, config, surface,
+                    new int[]{EGL14.EGL_NONE}, 0);
+        }
+        if (mEGLSurface == null || mEGLSurface == EGL14.EGL_NO_SURFACE) {
+            Log.e(TAG, "create encoder surface failed: " + EGL14.eglGetError());
+            mEGLSurface = EGL14.EGL_NO_SURFACE;
+            releaseSinkLocked();
+            return false;
+        }
+        mEGLDisplay = display;
+        return true;
+    }
+
+    /**
+     * the window surface must share the config of the current context to be made
+     * current with it
+     */
+    private static EGLConfig getCurrentConfig(EGLDisplay display) {
+        int[] configId = new int[1];
+        EGL14.eglQueryContext(display, EGL14.eglGetCurrentContext(), EGL14.EGL_CONFIG_ID, configId, 0);
+        int[] attribs = {EGL14.EGL_CONFIG_ID, configId[0], EGL14.EGL_NONE};
+        EGLConfig[] configs = new EGLConfig[1];
+        int[] numConfigs = new int[1];
+        if (!EGL14.eglChooseConfig(display, attribs, 0, configs, 0, 1, numConfigs, 0) || numConfigs[0] == 0) {
+            return null;
+        }
+        return configs[0];
+    }
+
+    private void destroySurface() {
+        if (mEGLSurface != EGL14.EGL_NO_SURFACE) {
+            EGL14.eglDestroySurface(mEGLDisplay, mEGLSurface);
+            mEGLSurface = EGL14.EGL_NO_SURFACE;
+            mEGLDisplay = EGL14.EGL_NO_DISPLAY;
+        }
+    }
+
+    private void releaseSinkLocked() {
+        if (mSink != null) {
+            // the EGL surface is destroyed on the GL thread by the next drawFrame or releaseGL
+            mSink.release();
+            mSink = null;
+        }
+        mSinkPrepared = false;
+    }
+}
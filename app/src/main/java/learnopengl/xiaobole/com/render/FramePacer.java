@@ -0,0 +1,188 @@
+package learnopengl.xiaobole.com.render;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.view.Choreographer;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Paces the redraws of a camera preview to the display.
+ *
+ * Frame-available signals are counted instead of turned into one render request each.
+ * Only one render is in flight at a time; when it runs, the renderer latches all the
+ * frames that arrived since the last draw and shows only the newest, so a slow GL thread
+ * drops frames instead of building up latency.
+ *
+ * {@link #MODE_LATENCY} requests the render as soon as a frame arrives,
+ * {@link #MODE_SMOOTHNESS} requests it on the next Choreographer vsync, so frames are
+ * always presented on a vsync boundary with a regular cadence.
+ */
+public class FramePacer {
+
+    public static final int MODE_LATENCY = 0;
+    public static final int MODE_SMOOTHNESS = 1;
+
+    public interface RenderRequester {
+        /**
+         * ask the GL thread to draw, e.g. GLSurfaceView#requestRender
+         */
+        void requestRender();
+    }
+
+    private final RenderRequester mRequester;
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    private volatile int mMode = MODE_SMOOTHNESS;
+
+    private final AtomicInteger mAvailableFrames = new AtomicInteger();
+    private final AtomicBoolean mRenderPending = new AtomicBoolean();
+
+    // main thread only
+    private Choreographer mChoreographer;
+    private boolean mCallbackPosted;
+
+    private final AtomicLong mReceivedCount = new AtomicLong();
+    private final AtomicLong mDrawnCount = new AtomicLong();
+    private final AtomicLong mDroppedCount = new AtomicLong();
+    private final AtomicLong mLateCount = new AtomicLong();
+
+    public FramePacer(RenderRequester requester) {
+        mRequester = requester;
+    }
+
+    /**
+     * set the pacing mode, may be called from any thread
+     *
+     * @param mode {@link #MODE_LATENCY} or {@link #MODE_SMOOTHNESS}
+     */
+    public FramePacer setMode(int mode) {
+        mMode = mode;
+        return this;
+    }
+
+    public int getMode() {
+        return mMode;
+    }
+
+    /**
+     * a new frame is available, e.g. from SurfaceTexture.OnFrameAvailableListener,
+     * may be called from any thread
+     */
+    public void onFrameAvailable() {
+        mReceivedCount.incrementAndGet();
+        mAvailableFrames.incrementAndGet();
+        if (mMode == MODE_LATENCY) {
+            requestIfIdle();
+        } else if (Looper.myLooper() == Looper.getMainLooper()) {
+            scheduleVsync();
+        } else {
+            mMainHandler.post(mScheduleRunnable);
+        }
+    }
+
+    /**
+     * call on the GL thread before latching the frame
+     *
+     * @return the frames to latch with updateTexImage, all but the last one are dropped
+     */
+    public int beginFrame() {
+        int frames = mAvailableFrames.getAndSet(0);
+        if (frames > 1) {
+            mDroppedCount.addAndGet(frames - 1);
+        }
+        return frames;
+    }
+
+    /**
+     * call on the GL thread when the frame is drawn
+     */
+    public void endFrame() {
+        mDrawnCount.incrementAndGet();
+        mRenderPending.set(false);
+        if (mAvailableFrames.get() > 0) {
+            // frames arrived while drawing
+            if (mMode == MODE_LATENCY) {
+                requestIfIdle();
+            } else {
+                mMainHandler.post(mScheduleRunnable);
+            }
+        }
+    }
+
+    /**
+     * forget the pending render, call on the GL thread when the surface is created,
+     * render requests of a paused GLSurfaceView are lost
+     */
+    public void reset() {
+        mAvailableFrames.set(0);
+        mRenderPending.set(false);
+    }
+
+    public long getReceivedCount() {
+        return mReceivedCount.get();
+    }
+
+    public long getDrawnCount() {
+        return mDrawnCount.get();
+    }
+
+    /**
+     * @return the frames latched but replaced by a newer one before they were shown
+     */
+    public long getDroppedCount() {
+        return mDroppedCount.get();
+    }
+
+    /**
+     * @return the vsyncs at which a frame was due but the previous draw was still running
+     */
+    public long getLateCount() {
+        return mLateCount.get();
+    }
+
+    @Override
+    public String toString() {
+        return "received = " + mReceivedCount.get() + ", drawn = " + mDrawnCount.get()
+                + ", dropped = " + mDroppedCount.get() + ", late = " + mLateCount.get();
+    }
+
+    private boolean requestIfIdle() {
+        if (!mRenderPending.compareAndSet(false, true)) {
+            // the pending draw latches this frame too
+            return false;
+        }
+        mRequester.requestRender();
+        return true;
+    }
+
+    private void scheduleVsync() {
+        if (mCallbackPosted) {
+            return;
+        }
+        if (mChoreographer == null) {
+            mChoreographer = Choreographer.getInstance();
+        }
+        mCallbackPosted = true;
+        mChoreographer.postFrameCallback(mFrameCallback);
+    }
+
+    private final Runnable mScheduleRunnable = new Runnable() {
+        @Override
+        public void run() {
+            scheduleVsync();
+        }
+    };
+
+    private final Choreographer.FrameCallback mFrameCallback = new Choreographer.FrameCallback() {
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            mCallbackPosted = false;
+            if (mAvailableFrames.get() > 0 && !requestIfIdle()) {
+                // the GL thread missed this vsync, endFrame schedules the next one
+                mLateCount.incrementAndGet();
+            }
+        }
+    };
+}
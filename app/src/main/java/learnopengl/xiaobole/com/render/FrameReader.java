@@ -0,0 +1,398 @@
+package learnopengl.xiaobole.com.render;
+
+import android.opengl.GLES20;
+import android.opengl.GLES30;
+import android.util.Log;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+
+import learnopengl.xiaobole.com.filter.FrameBuffer;
+import learnopengl.xiaobole.com.filter.FrameBufferPool;
+import learnopengl.xiaobole.com.utils.GLStateCache;
+import learnopengl.xiaobole.com.utils.GLUtils;
+
+/**
+ * Reads rendered frames back to the CPU without stalling the GL thread.
+ *
+ * While a listener is set, the renderer draws into an offscreen framebuffer which is
+ * blitted to the screen. Each frame is read with glReadPixels into a ring of pixel pack
+ * buffers guarded by fences; a buffer is only mapped once its fence has signaled, one or
+ * two frames later. The pixels are copied into pooled direct buffers and delivered on a
+ * dispatch thread. If the GPU or the consumer falls behind, frames are skipped instead
+ * of waiting. Without GLES3 it falls back to a synchronous glReadPixels of the screen.
+ */
+public class FrameReader {
+    private static final String TAG = "FrameReader";
+
+    public static final int DEFAULT_RING_SIZE = 3;
+    private static final int MAX_PENDING = 2;
+
+    public interface FrameListener {
+        /**
+         * called on the dispatch thread, call {@link ReadbackFrame#release()} when done
+         *
+         * @param frame the rendered frame
+         */
+        void onFrame(ReadbackFrame frame);
+    }
+
+    private final int mRingSize;
+    private volatile FrameListener mListener;
+
+    // GL thread only
+    private final FrameBufferPool mFrameBufferPool = new FrameBufferPool();
+    private FrameBuffer mFrameBuffer;
+    private boolean mUsePBO;
+    private int[] mPBOIds;
+    private final long[] mFences;
+    private final long[] mTimestamps;
+    private int mWriteIndex;
+    private int mReadIndex;
+    private int mInFlight;
+    private int mWidth;
+    private int mHeight;
+    private boolean mReading;
+
+    private final Object mLock = new Object();
+    private final ArrayDeque<ReadbackFrame> mFreeFrames = new ArrayDeque<>();
+    private final ArrayDeque<ReadbackFrame> mPendingFrames = new ArrayDeque<>();
+    private int mFrameWidth;
+    private int mFrameHeight;
+    private boolean mRunning;
+    private Thread mDispatchThread;
+
+    private long mReadCount;
+    private long mDroppedCount;
+
+    public FrameReader() {
+        this(DEFAULT_RING_SIZE);
+    }
+
+    /**
+     * @param ringSize the number of pixel pack buffers, 2 or 3 are usually enough
+     */
+    public FrameReader(int ringSize) {
+        if (ringSize < 2) {
+            throw new IllegalArgumentException("ringSize must be at least 2");
+        }
+        mRingSize = ringSize;
+        mFences = new long[ringSize];
+        mTimestamps = new long[ringSize];
+    }
+
+    /**
+     * start or stop reading frames back, may be called from any thread
+     *
+     * @param listener the frame consumer, null to render straight to the screen again
+     */
+    public void setListener(FrameListener listener) {
+        mListener = listener;
+    }
+
+    public boolean isEnabled() {
+        return mListener != null;
+    }
+
+    /**
+     * call on the GL thread when the context is created
+     */
+    public void init() {
+        mUsePBO = GLUtils.isGLES30Supported();
+        mPBOIds = null;
+        mFrameBuffer = null;
+        mFrameBufferPool.clear();
+        // the fences and ring positions of the previous context, its objects are gone
+        Arrays.fill(mFences, 0);
+        mWriteIndex = 0;
+        mReadIndex = 0;
+        mInFlight = 0;
+        mWidth = 0;
+        mHeight = 0;
+        startDispatch();
+        Log.i(TAG, "init pbo = " + mUsePBO);
+    }
+
+    /**
+     * delete the GL objects, must be called on the GL thread while the context is current,
+     * e.g. queued before GLSurfaceView#onPause
+     */
+    public void releaseGL() {
+        deleteTargets();
+    }
+
+    /**
+     * call on the GL thread when the surface size changes
+     */
+    public void setSize(int width, int height) {
+        if (width == mWidth && height == mHeight) {
+            return;
+        }
+        deleteTargets();
+        mWidth = width;
+        mHeight = height;
+        synchronized (mLock) {
+            // frames of the old size are dropped when they come back
+            mFreeFrames.clear();
+            mFrameWidth = width;
+            mFrameHeight = height;
+        }
+    }
+
+    public long getReadCount() {
+        synchronized (mLock) {
+            return mReadCount;
+        }
+    }
+
+    public long getDroppedCount() {
+        synchronized (mLock) {
+            return mDroppedCount;
+        }
+    }
+
+    /**
+     * redirect the rendering into the offscreen framebuffer, call before the final draw
+     *
+     * @return false if disabled, the rendering goes to the screen as usual
+     */
+    public boolean beginFrame() {
+        mReading = isEnabled() && mWidth > 0 && mHeight > 0;
+        if (!mReading) {
+            if (mFrameBuffer != null) {
+                // disabled meanwhile, give the targets back
+                deleteTargets();
+            }
+            return false;
+        }
+        if (!mUsePBO) {
+            // read the screen synchronously in endFrame
+            return true;
+        }
+        if (mFrameBuffer == null) {
+            mFrameBuffer = mFrameBufferPool.obtain(mWidth, mHeight, GLES20.GL_RGBA);
+            if (mFrameBuffer == null) {
+                mReading = false;
+                return false;
+            }
+        }
+        mFrameBuffer.bind();
+        return true;
+    }
+
+    /**
+     * queue the readback of the frame, show it on the screen and deliver the older
+     * frames that are ready, call after the final draw
+     *
+     * @param timestamp the timestamp of the frame
+     */
+    public void endFrame(long timestamp) {
+        if (!mReading) {
+            return;
+        }
+        mReading = false;
+        if (!mUsePBO) {
+            // GLES2 has no pack buffers, read the back buffer before it is swapped
+            readSync(timestamp);
+            return;
+        }
+        collect(false);
+        readAsync(timestamp);
+
+        // the offscreen framebuffer is still bound for reading
+        GLES30.glBindFramebuffer(GLES30.GL_DRAW_FRAMEBUFFER, 0);
+        GLES30.glBlitFramebuffer(0, 0, mWidth, mHeight, 0, 0, mWidth, mHeight,
+                GLES20.GL_COLOR_BUFFER_BIT, GLES20.GL_NEAREST);
+        GLStateCache.getInstance().bindFramebuffer(0);
+    }
+
+    void recycle(ReadbackFrame frame) {
+        synchronized (mLock) {
+            if (frame.getWidth() == mFrameWidth && frame.getHeight() == mFrameHeight) {
+                mFreeFrames.offerLast(frame);
+            }
+        }
+    }
+
+    private void readAsync(long timestamp) {
+        if (mInFlight == mRingSize) {
+            // the GPU is behind, skip rather than wait on the oldest fence
+            synchronized (mLock) {
+                mDroppedCount++;
+            }
+            return;
+        }
+        GLStateCache stateCache = GLStateCache.getInstance();
+        if (mPBOIds == null) {
+            mPBOIds = GLUtils.createBuffers(mRingSize);
+            for (int id : mPBOIds) {
+                stateCache.bindBuffer(GLES30.GL_PIXEL_PACK_BUFFER, id);
+                GLES20.glBufferData(GLES30.GL_PIXEL_PACK_BUFFER, mWidth * mHeight * 4, null, GLES30.GL_STREAM_READ);
+            }
+        }
+        stateCache.bindBuffer(GLES30.GL_PIXEL_PACK_BUFFER, mPBOIds[mWriteIndex]);
+        GLES20.glPixelStorei(GLES20.GL_PACK_ALIGNMENT, 4);
+        // with a pixel pack buffer bound, the last argument is the offset in the buffer
+        GLES30.glReadPixels(0, 0, mWidth, mHeight, GLES20.GL_RGBA, GLES20.GL_UNSIGNED_BYTE, 0);
+        stateCache.bindBuffer(GLES30.GL_PIXEL_PACK_BUFFER, 0);
+        mFences[mWriteIndex] = GLES30.glFenceSync(GLES30.GL_SYNC_GPU_COMMANDS_COMPLETE, 0);
+        mTimestamps[mWriteIndex] = timestamp;
+        mWriteIndex = (mWriteIndex + 1) % mRingSize;
+        mInFlight++;
+    }
+
+    /**
+     * deliver the readbacks whose fences have signaled, oldest first
+     *
+     * @param discard true to drop them instead, e.g. before the buffers are deleted
+     */
+    private void collect(boolean discard) {
+        GLStateCache stateCache = GLStateCache.getInstance();
+        int size = mWidth * mHeight * 4;
+        while (mInFlight > 0) {
+            long fence = mFences[mReadIndex];
+            if (!discard) {
+                int status = GLES30.glClientWaitSync(fence, GLES30.GL_SYNC_FLUSH_COMMANDS_BIT, 0);
+                if (status != GLES30.GL_ALREADY_SIGNALED && status != GLES30.GL_CONDITION_SATISFIED) {
+                    break;
+                }
+                ReadbackFrame frame = obtainFrame();
+                if (frame != null) {
+                    stateCache.bindBuffer(GLES30.GL_PIXEL_PACK_BUFFER, mPBOIds[mReadIndex]);
+                    ByteBuffer mapped = (ByteBuffer) GLES30.glMapBufferRange(GLES30.GL_PIXEL_PACK_BUFFER,
+                            0, size, GLES30.GL_MAP_READ_BIT);
+                    if (mapped != null) {
+                        frame.getData().clear();
+                        frame.getData().put(mapped).flip();
+                        GLES30.glUnmapBuffer(GLES30.GL_PIXEL_PACK_BUFFER);
+                        frame.setTimestamp(mTimestamps[mReadIndex]);
+                        deliver(frame);
+                    } else {
+                        recycle(frame);
+                    }
+                    stateCache.bindBuffer(GLES30.GL_PIXEL_PACK_BUFFER, 0);
+                }
+            }
+            GLES30.glDeleteSync(fence);
+            mReadIndex = (mReadIndex + 1) % mRingSize;
+            mInFlight--;
+        }
+    }
+
+    private void readSync(long timestamp) {
+        ReadbackFrame frame = obtainFrame();
+        if (frame == null) {
+            return;
+        }
+        GLES20.glPixelStorei(GLES20.GL_PACK_ALIGNMENT, 4);
+        frame.getData().clear();
+        GLES20.glReadPixels(0, 0, mWidth, mHeight, GLES20.GL_RGBA, GLES20.GL_UNSIGNED_BYTE, frame.getData());
+        frame.setTimestamp(timestamp);
+        deliver(frame);
+    }
+
+    private ReadbackFrame obtainFrame() {
+        synchronized (mLock) {
+            ReadbackFrame frame = mFreeFrames.pollFirst();
+            if (frame != null) {
+                return frame;
+            }
+            if (mPendingFrames.size() >= MAX_PENDING) {
+                // the consumer is behind and holds the pool, drop this frame
+                mDroppedCount++;
+                return null;
+            }
+        }
+        return new ReadbackFrame(this, mWidth, mHeight);
+    }
+
+    private void deliver(ReadbackFrame frame) {
+        synchronized (mLock) {
+            if (!mRunning) {
+                return;
+            }
+            mReadCount++;
+            mPendingFrames.offerLast(frame);
+            mLock.notifyAll();
+        }
+    }
+
+    private void deleteTargets() {
+        if (mInFlight > 0) {
+            collect(true);
+        }
+        if (mPBOIds != null) {
+            GLStateCache.getInstance().deleteBuffers(mPBOIds.length, mPBOIds, 0);
+            mPBOIds = null;
+        }
+        if (mFrameBuffer != null) {
+            mFrameBufferPool.release();
+            mFrameBuffer = null;
+        }
+        mWriteIndex = 0;
+        mReadIndex = 0;
+    }
+
+    private void startDispatch() {
+        synchronized (mLock) {
+            if (mRunning) {
+                return;
+            }
+            mRunning = true;
+        }
+        mDispatchThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                dispatchLoop();
+            }
+        }, TAG);
+        mDispatchThread.start();
+    }
+
+    /**
+     * stop the dispatch thread, the frames not delivered yet are dropped, may be called from any thread
+     */
+    public void stopDispatch() {
+        synchronized (mLock) {
+            if (!mRunning) {
+                return;
+            }
+            mRunning = false;
+            mPendingFrames.clear();
+            mLock.notifyAll();
+        }
+        try {
+            mDispatchThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        mDispatchThread = null;
+        Log.i(TAG, "stopped, read = " + mReadCount + ", dropped = " + mDroppedCount);
+    }
+
+    private void dispatchLoop() {
+        while (true) {
+            ReadbackFrame frame;
+            synchronized (mLock) {
+                while (mRunning && mPendingFrames.isEmpty()) {
+                    try {
+                        mLock.wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                if (!mRunning) {
+                    return;
+                }
+                frame = mPendingFrames.pollFirst();
+            }
+            FrameListener listener = mListener;
+            if (listener != null) {
+                listener.onFrame(frame);
+            } else {
+                frame.release();
+            }
+        }
+    }
+}
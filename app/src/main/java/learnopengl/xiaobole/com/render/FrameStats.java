@@ -0,0 +1,95 @@
+package learnopengl.xiaobole.com.render;
+
+import learnopengl.xiaobole.com.utils.GpuTimer;
+import learnopengl.xiaobole.com.utils.LatencyHistogram;
+
+/**
+ * Per-stage frame timings of a renderer.
+ *
+ * The CPU stages are recorded on the GL thread without allocation; GL stages only measure
+ * the command submission, the real GPU cost goes to {@link #STAGE_GPU} when the timer query
+ * extension is present. {@link #dump()} may be called from any thread.
+ */
+public class FrameStats {
+
+    public static final int STAGE_UPDATE_TEX_IMAGE = 0;
+    public static final int STAGE_FILTER = 1;
+    public static final int STAGE_DRAW = 2;
+    public static final int STAGE_FRAME = 3;
+    public static final int STAGE_GPU = 4;
+
+    private static final String[] STAGE_NAMES = {
+            "updateTexImage", "filter", "draw", "frame", "gpu"
+    };
+
+    private final LatencyHistogram[] mHistograms = new LatencyHistogram[STAGE_NAMES.length];
+    private final GpuTimer mGpuTimer;
+
+    public FrameStats() {
+        for (int i = 0; i < mHistograms.length; i++) {
+            mHistograms[i] = new LatencyHistogram(STAGE_NAMES[i]);
+        }
+        mGpuTimer = new GpuTimer(mHistograms[STAGE_GPU]);
+    }
+
+    /**
+     * call on the GL thread when the context is created, enables the GPU timer if supported
+     */
+    public void onContextCreated() {
+        mGpuTimer.reset();
+        mGpuTimer.init();
+    }
+
+    public void release() {
+        mGpuTimer.release();
+    }
+
+    public void beginGpu() {
+        mGpuTimer.begin();
+    }
+
+    public void endGpu() {
+        mGpuTimer.end();
+    }
+
+    /**
+     * record the time since start for a stage
+     *
+     * @param stage one of the STAGE_ constants
+     * @param startNanos the {@link System#nanoTime()} at the start of the stage
+     * @return the current time, to be used as the start of the next stage
+     */
+    public long record(int stage, long startNanos) {
+        long now = System.nanoTime();
+        mHistograms[stage].recordNanos(now - startNanos);
+        return now;
+    }
+
+    public LatencyHistogram getHistogram(int stage) {
+        return mHistograms[stage];
+    }
+
+    public void reset() {
+        for (LatencyHistogram histogram : mHistograms) {
+            histogram.reset();
+        }
+    }
+
+    /**
+     * @return one line of percentiles per recorded stage
+     */
+    public String dump() {
+        StringBuilder builder = new StringBuilder();
+        for (LatencyHistogram histogram : mHistograms) {
+            LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+            if (snapshot.getCount() == 0) {
+                continue;
+            }
+            if (builder.length() > 0) {
+                builder.append('\n');
+            }
+            builder.append(snapshot);
+        }
+        return builder.toString();
+    }
+}
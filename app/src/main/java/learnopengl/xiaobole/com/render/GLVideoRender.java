@@ -1,6 +1,7 @@
 package learnopengl.xiaobole.com.render;
 
 import android.graphics.SurfaceTexture;
+import android.opengl.GLES20;
 import android.opengl.GLSurfaceView;
 import android.util.Log;
 import android.view.Surface;
@@ -9,30 +10,62 @@ import javax.microedition.khronos.egl.EGLConfig;
 import javax.microedition.khronos.opengles.GL10;
 
 import learnopengl.xiaobole.com.drawer.OESTextureDrawer;
+import learnopengl.xiaobole.com.drawer.Texture2DDrawer;
+import learnopengl.xiaobole.com.recorder.EncoderSink;
+import learnopengl.xiaobole.com.recorder.VideoRecorder;
 import learnopengl.xiaobole.com.utils.GLUtils;
+import learnopengl.xiaobole.com.utils.GLStateCache;
+import learnopengl.xiaobole.com.utils.GeometryCache;
 import learnopengl.xiaobole.com.utils.ImageMatrix;
+import learnopengl.xiaobole.com.utils.ProgramCache;
+import learnopengl.xiaobole.com.utils.TextureCache;
+import learnopengl.xiaobole.com.utils.Tracer;
 
 public class GLVideoRender implements GLSurfaceView.Renderer {
 
     private static final String TAG = "GLVideoRender";
 
+    private static final int TRACE_DRAW_FRAME = Tracer.getInstance().registerEvent("DrawFrame");
+    private static final int TRACE_LATCHED_FRAMES = Tracer.getInstance().registerEvent("LatchedFrames");
+    private static final int TRACE_RECORD = Tracer.getInstance().registerEvent("RecordFrame");
+
     private Surface mSurface;
     private SurfaceTexture mSurfaceTexture;
     private SurfaceTexture.OnFrameAvailableListener mOnFrameAvailableListener;
     private VideoFilterListener mVideoFilterListener;
 
     private OESTextureDrawer mOESTextureDrawer = new OESTextureDrawer();
+    private Texture2DDrawer mTexture2DDrawer = new Texture2DDrawer();
     private ImageMatrix mImageMatrix = new ImageMatrix();
+    private FrameStats mFrameStats = new FrameStats();
+    private FrameReader mFrameReader = new FrameReader();
+    private VideoRecorder mVideoRecorder = new VideoRecorder();
+    private FramePacer mFramePacer;
 
     private int mTexId;
+    private int mDrawTexId;
     private float[] mTexMatrix = new float[16];
+    private int mSurfaceWidth;
+    private int mSurfaceHeight;
+
+    private final VideoRecorder.FrameDrawer mRecordDrawer = new VideoRecorder.FrameDrawer() {
+        @Override
+        public void drawFrame() {
+            drawTexture(mDrawTexId);
+        }
+    };
 
-    private int mVideoWidth = -1;
-    private int mVideoHeight = -1;
+    // set by the camera thread
+    private volatile int mVideoWidth = -1;
+    private volatile int mVideoHeight = -1;
 
     public interface VideoFilterListener {
         void onSurfaceCreated();
         void onSurfaceChanged(int width, int height);
+
+        /**
+         * @return the OES input texId, or a GL_TEXTURE_2D with the transform matrix applied
+         */
         int onDrawFrame(int texId, int texWidth, int texHeight, float[] matrix, long timestamp);
     }
 
@@ -52,11 +85,65 @@ public class GLVideoRender implements GLSurfaceView.Renderer {
         mVideoHeight = height;
     }
 
+    /**
+     * latch all the frames the pacer counted on each draw, set before the surface is created
+     *
+     * @param framePacer the pacer fed with the frame-available signals, null to latch one frame per draw
+     */
+    public void setFramePacer(FramePacer framePacer) {
+        mFramePacer = framePacer;
+    }
+
     public SurfaceTexture getSurfaceTexture() {
         return mSurfaceTexture;
     }
 
+    public FrameStats getFrameStats() {
+        return mFrameStats;
+    }
+
+    /**
+     * read the rendered frames back to the CPU, may be called from any thread
+     *
+     * @param listener the frame consumer, null to stop
+     */
+    public void setFrameReaderListener(FrameReader.FrameListener listener) {
+        mFrameReader.setListener(listener);
+    }
+
+    /**
+     * render every frame into the sink as well, may be called from any thread
+     *
+     * @param sink the frame consumer, e.g. a video encoder
+     * @param width the recording width
+     * @param height the recording height
+     */
+    public void startRecording(EncoderSink sink, int width, int height) {
+        mVideoRecorder.start(sink, width, height);
+    }
+
+    /**
+     * record at the video size, the preview must have been started
+     *
+     * @param sink the frame consumer, e.g. a video encoder
+     */
+    public void startRecording(EncoderSink sink) {
+        if (mVideoWidth <= 0 || mVideoHeight <= 0) {
+            throw new IllegalStateException("video size unknown, start the preview first");
+        }
+        mVideoRecorder.start(sink, mVideoWidth, mVideoHeight);
+    }
+
+    public void stopRecording() {
+        mVideoRecorder.stop();
+    }
+
+    public VideoRecorder getVideoRecorder() {
+        return mVideoRecorder;
+    }
+
     public void destroy() {
+        mVideoRecorder.stop();
         if (mSurfaceTexture != null) {
             mSurfaceTexture.release();
             mSurfaceTexture = null;
@@ -64,12 +151,35 @@ public class GLVideoRender implements GLSurfaceView.Renderer {
         mVideoWidth = -1;
         mVideoHeight = -1;
         mOESTextureDrawer.release();
+        mTexture2DDrawer.release();
+        mFrameReader.stopDispatch();
+    }
+
+    /**
+     * delete the readback targets, the timer queries and the encoder surface, must be called
+     * on the GL thread while the context is current, e.g. queued before GLSurfaceView#onPause
+     */
+    public void releaseGL() {
+        mVideoRecorder.releaseGL();
+        mFrameReader.releaseGL();
+        mFrameStats.release();
     }
 
     @Override
     public void onSurfaceCreated(GL10 gl, EGLConfig config) {
         Log.i(TAG, "onSurfaceCreated");
+        GeometryCache.getInstance().onContextCreated();
+        ProgramCache.getInstance().onContextCreated();
+        GLStateCache.getInstance().onContextCreated();
+        TextureCache.getInstance().onContextCreated();
+        mFrameStats.onContextCreated();
+        mFrameReader.init();
+        mVideoRecorder.onContextCreated();
+        if (mFramePacer != null) {
+            mFramePacer.reset();
+        }
         mOESTextureDrawer.init();
+        mTexture2DDrawer.init();
         mTexId = GLUtils.createTexture();
         mSurfaceTexture = new SurfaceTexture(mTexId);
         if (mSurfaceTexture != null) {
@@ -87,20 +197,59 @@ public class GLVideoRender implements GLSurfaceView.Renderer {
             mVideoFilterListener.onSurfaceChanged(width, height);
         }
         mOESTextureDrawer.setViewPort(0, 0, width, height);
+        mTexture2DDrawer.setViewPort(0, 0, width, height);
+        mFrameReader.setSize(width, height);
+        mSurfaceWidth = width;
+        mSurfaceHeight = height;
         mImageMatrix.setViewport(mVideoWidth, mVideoHeight, width, height);
     }
 
     @Override
     public void onDrawFrame(GL10 gl) {
-        mSurfaceTexture.updateTexImage();
+        long frameStart = System.nanoTime();
+        Tracer tracer = Tracer.getInstance();
+        tracer.begin(TRACE_DRAW_FRAME);
+        mFrameStats.beginGpu();
+        // updateTexImage latches the oldest queued frame, skip to the newest
+        int frames = mFramePacer == null ? 1 : Math.max(1, mFramePacer.beginFrame());
+        for (int i = 0; i < frames; i++) {
+            mSurfaceTexture.updateTexImage();
+        }
+        tracer.counter(TRACE_LATCHED_FRAMES, frames);
+        // updateTexImage binds the OES texture itself
+        GLStateCache.getInstance().invalidateTextureBindings();
         mSurfaceTexture.getTransformMatrix(mTexMatrix);
+        long start = mFrameStats.record(FrameStats.STAGE_UPDATE_TEX_IMAGE, frameStart);
         int texId = mTexId;
         if (mVideoFilterListener != null) {
             texId = mVideoFilterListener.onDrawFrame(mTexId, mVideoWidth, mVideoHeight, mTexMatrix, mSurfaceTexture.getTimestamp());
+            start = mFrameStats.record(FrameStats.STAGE_FILTER, start);
+        }
+        mDrawTexId = texId;
+        mFrameReader.beginFrame();
+        drawTexture(texId);
+        mFrameReader.endFrame(mSurfaceTexture.getTimestamp());
+        // also when not recording, it destroys the encoder surface of a stopped recording
+        tracer.begin(TRACE_RECORD);
+        if (mVideoRecorder.drawFrame(mSurfaceTexture.getTimestamp(), mRecordDrawer)) {
+            GLES20.glViewport(0, 0, mSurfaceWidth, mSurfaceHeight);
         }
-        if (texId <= 0) {
-            texId = mTexId;
+        tracer.end(TRACE_RECORD);
+        mFrameStats.endGpu();
+        mFrameStats.record(FrameStats.STAGE_DRAW, start);
+        mFrameStats.record(FrameStats.STAGE_FRAME, frameStart);
+        if (mFramePacer != null) {
+            mFramePacer.endFrame();
+        }
+        tracer.end(TRACE_DRAW_FRAME);
+    }
+
+    private void drawTexture(int texId) {
+        if (texId <= 0 || texId == mTexId) {
+            mOESTextureDrawer.draw(mTexId, null, mTexMatrix);
+        } else {
+            // a filtered GL_TEXTURE_2D, the transform matrix was applied by the filter
+            mTexture2DDrawer.draw(texId);
         }
-        mOESTextureDrawer.draw(texId, null, mTexMatrix);
     }
 }
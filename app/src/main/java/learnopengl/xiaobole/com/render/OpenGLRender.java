@@ -6,31 +6,78 @@ import javax.microedition.khronos.egl.EGLConfig;
 import javax.microedition.khronos.opengles.GL10;
 
 import learnopengl.xiaobole.com.drawer.IDrawer;
-import learnopengl.xiaobole.com.drawer.TextureDrawer;
+import learnopengl.xiaobole.com.utils.GLStateCache;
+import learnopengl.xiaobole.com.utils.GeometryCache;
+import learnopengl.xiaobole.com.utils.ProgramCache;
+import learnopengl.xiaobole.com.utils.TextureCache;
 
 import static android.opengl.GLES20.glClearColor;
 
 public class OpenGLRender implements GLSurfaceView.Renderer {
 
     private IDrawer mDrawer;
+    private FrameStats mFrameStats = new FrameStats();
+    private FrameReader mFrameReader = new FrameReader();
 
     public OpenGLRender(IDrawer drawer) {
         mDrawer = drawer;
     }
 
+    public FrameStats getFrameStats() {
+        return mFrameStats;
+    }
+
+    /**
+     * read the rendered frames back to the CPU, may be called from any thread
+     *
+     * @param listener the frame consumer, null to stop
+     */
+    public void setFrameReaderListener(FrameReader.FrameListener listener) {
+        mFrameReader.setListener(listener);
+    }
+
+    /**
+     * delete the readback targets and the timer queries, must be called on the GL thread
+     * while the context is current, e.g. queued before GLSurfaceView#onPause
+     */
+    public void releaseGL() {
+        mFrameReader.releaseGL();
+        mFrameStats.release();
+    }
+
+    /**
+     * stop the readback thread, may be called from the UI thread
+     */
+    public void release() {
+        mFrameReader.stopDispatch();
+    }
+
     @Override
     public void onSurfaceCreated(GL10 gl, EGLConfig config) {
         glClearColor(0.0f, 0.0f, 0.0f, 1.0f);
+        GeometryCache.getInstance().onContextCreated();
+        ProgramCache.getInstance().onContextCreated();
+        GLStateCache.getInstance().onContextCreated();
+        TextureCache.getInstance().onContextCreated();
+        mFrameStats.onContextCreated();
+        mFrameReader.init();
         mDrawer.init();
     }
 
     @Override
     public void onSurfaceChanged(GL10 gl, int width, int height) {
         mDrawer.setViewPort(0, 0, width, height);
+        mFrameReader.setSize(width, height);
     }
 
     @Override
     public void onDrawFrame(GL10 gl) {
+        long start = System.nanoTime();
+        mFrameStats.beginGpu();
+        mFrameReader.beginFrame();
         mDrawer.draw();
+        mFrameReader.endFrame(System.nanoTime());
+        mFrameStats.endGpu();
+        mFrameStats.record(FrameStats.STAGE_DRAW, start);
     }
 }
@@ -0,0 +1,60 @@
+package learnopengl.xiaobole.com.render;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A rendered RGBA frame borrowed from the {@link FrameReader} buffer pool.
+ *
+ * Rows are stored bottom to top, as returned by glReadPixels. The data is only valid
+ * until {@link #release()} is called, after which the buffer is reused.
+ */
+public class ReadbackFrame {
+
+    private final FrameReader mReader;
+    private final ByteBuffer mData;
+    private final int mWidth;
+    private final int mHeight;
+    private long mTimestamp;
+
+    ReadbackFrame(FrameReader reader, int width, int height) {
+        mReader = reader;
+        mData = ByteBuffer.allocateDirect(width * height * 4);
+        mWidth = width;
+        mHeight = height;
+    }
+
+    /**
+     * @return the RGBA pixels, 4 bytes per pixel without row padding
+     */
+    public ByteBuffer getData() {
+        return mData;
+    }
+
+    public int getWidth() {
+        return mWidth;
+    }
+
+    public int getHeight() {
+        return mHeight;
+    }
+
+    /**
+     * get the timestamp of the rendered frame
+     *
+     * @return the timestamp in nanoseconds, e.g. SurfaceTexture#getTimestamp for the camera preview
+     */
+    public long getTimestamp() {
+        return mTimestamp;
+    }
+
+    void setTimestamp(long timestamp) {
+        mTimestamp = timestamp;
+    }
+
+    /**
+     * give the buffer back to the pool, the frame must not be used afterwards
+     */
+    public void release() {
+        mReader.recycle(this);
+    }
+}
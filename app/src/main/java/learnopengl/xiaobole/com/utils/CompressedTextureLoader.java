@@ -0,0 +1,291 @@
+package learnopengl.xiaobole.com.utils;
+
+import android.content.Context;
+import android.content.res.AssetFileDescriptor;
+import android.content.res.AssetManager;
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.opengl.GLES20;
+import android.util.Log;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * Loads textures from compressed KTX / KTX2 containers, 4 ~ 8 times smaller in memory and
+ * upload bandwidth than decoded RGBA.
+ *
+ * An asset is looked up in the variants the device can sample, in the order
+ * name.astc.ktx2, name.astc.ktx, name.etc2.ktx2, name.etc2.ktx: ASTC when the driver reports
+ * GL_KHR_texture_compression_astc_ldr, ETC2 on GLES3 or when listed in
+ * GL_COMPRESSED_TEXTURE_FORMATS. Without a usable variant the fallback image is decoded and
+ * uploaded as RGBA. Assets and files are memory mapped, ktx assets are stored uncompressed
+ * in the apk (see aaptOptions). Must be used on the GL thread.
+ */
+public class CompressedTextureLoader {
+    private static final String TAG = "CompressedTextureLoader";
+
+    private static final String EXTENSION_ASTC = "GL_KHR_texture_compression_astc_ldr";
+    private static final String[] ASTC_SUFFIXES = {".astc.ktx2", ".astc.ktx"};
+    private static final String[] ETC2_SUFFIXES = {".etc2.ktx2", ".etc2.ktx"};
+
+    private final AssetManager mAssets;
+    private final Resources mResources;
+
+    private boolean mCapabilitiesQueried;
+    private boolean mASTCSupported;
+    private boolean mETC2Supported;
+    private int[] mCompressedFormats;
+
+    public static class Texture {
+        private final int mTexId;
+        private final int mWidth;
+        private final int mHeight;
+        private final int mInternalFormat;
+        private final long mDataSize;
+
+        private Texture(int texId, int width, int height, int internalFormat, long dataSize) {
+            mTexId = texId;
+            mWidth = width;
+            mHeight = height;
+            mInternalFormat = internalFormat;
+            mDataSize = dataSize;
+        }
+
+        public int getTexId() {
+            return mTexId;
+        }
+
+        public int getWidth() {
+            return mWidth;
+        }
+
+        public int getHeight() {
+            return mHeight;
+        }
+
+        /**
+         * @return the GL internal format, GL_RGBA for a decoded fallback
+         */
+        public int getInternalFormat() {
+            return mInternalFormat;
+        }
+
+        public boolean isCompressed() {
+            return mInternalFormat != GLES20.GL_RGBA;
+        }
+
+        /**
+         * @return the bytes uploaded, all mip levels included
+         */
+        public long getDataSize() {
+            return mDataSize;
+        }
+
+        @Override
+        public String toString() {
+            return mWidth + "x" + mHeight + " format 0x" + Integer.toHexString(mInternalFormat)
+                    + ", " + mDataSize / 1024 + "KB";
+        }
+    }
+
+    public CompressedTextureLoader(Context context) {
+        mAssets = context.getAssets();
+        mResources = context.getResources();
+    }
+
+    /**
+     * load the best compressed variant of an asset, or decode the fallback
+     *
+     * @param name the asset path without the variant suffix, e.g. "textures/test"
+     * @param fallbackResId the drawable decoded when no variant can be used
+     * @return the texture, null if nothing could be loaded
+     */
+    public Texture load(String name, int fallbackResId) {
+        queryCapabilities();
+        if (mASTCSupported) {
+            Texture texture = loadAsset(name, ASTC_SUFFIXES);
+            if (texture != null) {
+                return texture;
+            }
+        }
+        if (mETC2Supported) {
+            Texture texture = loadAsset(name, ETC2_SUFFIXES);
+            if (texture != null) {
+                return texture;
+            }
+        }
+        return loadBitmap(fallbackResId);
+    }
+
+    /**
+     * memory map and upload a ktx file
+     *
+     * @return the texture, null if its format is not supported
+     */
+    public Texture load(File file) throws IOException {
+        FileInputStream stream = new FileInputStream(file);
+        try {
+            FileChannel channel = stream.getChannel();
+            return upload(KTXTexture.open(channel, 0, channel.size()));
+        } finally {
+            stream.close();
+        }
+    }
+
+    /**
+     * upload every mip level of a parsed container
+     *
+     * @return the texture, null if its format is not supported
+     */
+    public Texture upload(KTXTexture ktx) {
+        int format = ktx.getInternalFormat();
+        if (!isFormatSupported(format)) {
+            Log.w(TAG, "compressed format 0x" + Integer.toHexString(format) + " is not supported");
+            return null;
+        }
+        GLStateCache stateCache = GLStateCache.getInstance();
+        int texId = GLUtils.createTexture();
+        stateCache.bindTexture(GLES20.GL_TEXTURE_2D, texId);
+        // compressed mipmaps can't be generated, sample them only when the chain is complete
+        int fullLevels = 32 - Integer.numberOfLeadingZeros(Math.max(ktx.getWidth(), ktx.getHeight()));
+        boolean mipmapped = ktx.getLevelCount() >= fullLevels;
+        stateCache.texParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MIN_FILTER,
+                mipmapped ? GLES20.GL_LINEAR_MIPMAP_LINEAR : GLES20.GL_LINEAR);
+        stateCache.texParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MAG_FILTER, GLES20.GL_LINEAR);
+        stateCache.texParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_S, GLES20.GL_CLAMP_TO_EDGE);
+        stateCache.texParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_T, GLES20.GL_CLAMP_TO_EDGE);
+
+        int levels = mipmapped ? fullLevels : 1;
+        for (int level = 0; level < levels; level++) {
+            ByteBuffer data = ktx.getLevel(level);
+            GLES20.glCompressedTexImage2D(GLES20.GL_TEXTURE_2D, level, format,
+                    Math.max(1, ktx.getWidth() >> level), Math.max(1, ktx.getHeight() >> level), 0,
+                    data.remaining(), data);
+        }
+        int error = GLES20.glGetError();
+        if (error != GLES20.GL_NO_ERROR) {
+            Log.e(TAG, "glCompressedTexImage2D failed: 0x" + Integer.toHexString(error));
+            stateCache.deleteTextures(1, new int[]{texId}, 0);
+            return null;
+        }
+        return new Texture(texId, ktx.getWidth(), ktx.getHeight(), format, ktx.getDataSize());
+    }
+
+    public boolean isFormatSupported(int internalFormat) {
+        queryCapabilities();
+        if (KTXTexture.isASTC(internalFormat) && mASTCSupported) {
+            return true;
+        }
+        if (KTXTexture.isETC2(internalFormat) && mETC2Supported) {
+            return true;
+        }
+        for (int format : mCompressedFormats) {
+            if (format == internalFormat) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void queryCapabilities() {
+        if (mCapabilitiesQueried) {
+            return;
+        }
+        int[] count = new int[1];
+        GLES20.glGetIntegerv(GLES20.GL_NUM_COMPRESSED_TEXTURE_FORMATS, count, 0);
+        mCompressedFormats = new int[count[0]];
+        if (count[0] > 0) {
+            GLES20.glGetIntegerv(GLES20.GL_COMPRESSED_TEXTURE_FORMATS, mCompressedFormats, 0);
+        }
+        String extensions = GLES20.glGetString(GLES20.GL_EXTENSIONS);
+        mASTCSupported = extensions != null && extensions.contains(EXTENSION_ASTC);
+        mETC2Supported = GLUtils.isGLES30Supported();
+        for (int format : mCompressedFormats) {
+            mETC2Supported |= format == KTXTexture.GL_COMPRESSED_RGB8_ETC2;
+        }
+        mCapabilitiesQueried = true;
+        Log.i(TAG, "astc = " + mASTCSupported + ", etc2 = " + mETC2Supported
+                + ", compressed formats = " + Arrays.toString(mCompressedFormats));
+    }
+
+    private Texture loadAsset(String name, String[] suffixes) {
+        for (String suffix : suffixes) {
+            ByteBuffer data;
+            try {
+                data = mapAsset(name + suffix);
+            } catch (FileNotFoundException e) {
+                continue;
+            } catch (IOException e) {
+                Log.e(TAG, "failed to read " + name + suffix + ": " + e.getMessage());
+                continue;
+            }
+            try {
+                Texture texture = upload(KTXTexture.parse(data));
+                if (texture != null) {
+                    Log.i(TAG, "load " + name + suffix + ": " + texture);
+                    return texture;
+                }
+            } catch (IOException e) {
+                Log.e(TAG, "invalid ktx " + name + suffix + ": " + e.getMessage());
+            }
+        }
+        return null;
+    }
+
+    /**
+     * map an uncompressed asset in place, or read it if aapt compressed it anyway
+     */
+    private ByteBuffer mapAsset(String path) throws IOException {
+        try {
+            AssetFileDescriptor afd = mAssets.openFd(path);
+            FileInputStream stream = afd.createInputStream();
+            try {
+                return stream.getChannel().map(FileChannel.MapMode.READ_ONLY, afd.getStartOffset(), afd.getLength());
+            } finally {
+                stream.close();
+            }
+        } catch (FileNotFoundException e) {
+            // openFd fails for compressed assets too, tell them apart by opening the stream
+            InputStream stream = mAssets.open(path);
+            try {
+                byte[] bytes = new byte[8192];
+                ByteArrayOutputStream output = new ByteArrayOutputStream();
+                int read;
+                while ((read = stream.read(bytes)) > 0) {
+                    output.write(bytes, 0, read);
+                }
+                byte[] content = output.toByteArray();
+                ByteBuffer data = ByteBuffer.allocateDirect(content.length);
+                data.put(content).position(0);
+                return data;
+            } finally {
+                stream.close();
+            }
+        }
+    }
+
+    private Texture loadBitmap(int resId) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inScaled = false;
+        Bitmap bitmap = BitmapFactory.decodeResource(mResources, resId, options);
+        if (bitmap == null) {
+            Log.e(TAG, "decode fallback failed");
+            return null;
+        }
+        int texId = GLUtils.drawBitmap(GLUtils.createTexture(), bitmap);
+        Texture texture = new Texture(texId, bitmap.getWidth(), bitmap.getHeight(), GLES20.GL_RGBA,
+                (long) bitmap.getRowBytes() * bitmap.getHeight());
+        bitmap.recycle();
+        Log.i(TAG, "load fallback: " + texture);
+        return texture;
+    }
+}
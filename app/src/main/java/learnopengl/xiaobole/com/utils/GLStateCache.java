@@ -0,0 +1,326 @@
+package learnopengl.xiaobole.com.utils;
+
+import android.opengl.GLES11Ext;
+import android.opengl.GLES20;
+import android.opengl.GLES30;
+import android.util.SparseArray;
+
+/**
+ * Mirrors the GL state touched by the drawers and skips calls that would not change it:
+ * the program, the VAO, buffer and framebuffer bindings, the active texture unit,
+ * the texture bound to each unit and the sampling parameters of each texture.
+ *
+ * Vertex array objects need a GLES3 context; GLSurfaceView asked for version 2 still gets
+ * one on GLES3 devices, binding one on a GLES2 context throws IllegalStateException.
+ *
+ * Must be used on the GL thread. Code that changes the state behind its back,
+ * e.g. SurfaceTexture#updateTexImage, must be followed by {@link #invalidate()}
+ * or {@link #invalidateTextureBindings()}.
+ */
+public class GLStateCache {
+
+    private static final int UNKNOWN = -1;
+    private static final int MAX_TEXTURE_UNITS = 16;
+
+    // texture targets
+    private static final int TARGET_2D = 0;
+    private static final int TARGET_EXTERNAL = 1;
+    private static final int TARGET_COUNT = 2;
+
+    // buffer targets
+    private static final int BUFFER_ARRAY = 0;
+    private static final int BUFFER_ELEMENT_ARRAY = 1;
+    private static final int BUFFER_PIXEL_PACK = 2;
+    private static final int BUFFER_PIXEL_UNPACK = 3;
+    private static final int BUFFER_COUNT = 4;
+
+    // texture parameters
+    private static final int[] TEXTURE_PARAMETERS = {
+            GLES20.GL_TEXTURE_MIN_FILTER, GLES20.GL_TEXTURE_MAG_FILTER,
+            GLES20.GL_TEXTURE_WRAP_S, GLES20.GL_TEXTURE_WRAP_T
+    };
+
+    private int mProgram;
+    private int mVertexArray;
+    private int mFrameBuffer;
+    private int mActiveUnit;
+    private final int[] mBuffers = new int[BUFFER_COUNT];
+    private final int[][] mTextures = new int[MAX_TEXTURE_UNITS][TARGET_COUNT];
+    private final SparseArray<int[]> mTextureParameters = new SparseArray<>();
+    // queried on the first vertex array bind of each context
+    private Boolean mVertexArraySupported;
+
+    private long mIssuedCount;
+    private long mElidedCount;
+
+    private GLStateCache() {
+        invalidate();
+    }
+
+    private static class GLStateCacheHolder {
+        private static final GLStateCache sInstance = new GLStateCache();
+    }
+
+    public static GLStateCache getInstance() {
+        return GLStateCacheHolder.sInstance;
+    }
+
+    /**
+     * Forget everything, the new context starts with unknown state and its own objects.
+     * Call from GLSurfaceView.Renderer#onSurfaceCreated.
+     */
+    public void onContextCreated() {
+        invalidate();
+        mTextureParameters.clear();
+        mVertexArraySupported = null;
+    }
+
+    /**
+     * forget the bindings, the next call of each kind is issued
+     */
+    public void invalidate() {
+        mProgram = UNKNOWN;
+        mVertexArray = UNKNOWN;
+        mFrameBuffer = UNKNOWN;
+        for (int i = 0; i < BUFFER_COUNT; i++) {
+            mBuffers[i] = UNKNOWN;
+        }
+        invalidateTextureBindings();
+    }
+
+    /**
+     * forget the active unit and the texture bindings, e.g. after SurfaceTexture#updateTexImage
+     */
+    public void invalidateTextureBindings() {
+        mActiveUnit = UNKNOWN;
+        for (int[] unit : mTextures) {
+            for (int i = 0; i < TARGET_COUNT; i++) {
+                unit[i] = UNKNOWN;
+            }
+        }
+    }
+
+    public void useProgram(int program) {
+        if (mProgram == program) {
+            mElidedCount++;
+            return;
+        }
+        GLES20.glUseProgram(program);
+        mProgram = program;
+        mIssuedCount++;
+    }
+
+    public void bindVertexArray(int vertexArray) {
+        if (mVertexArray == vertexArray) {
+            mElidedCount++;
+            return;
+        }
+        if (mVertexArraySupported == null) {
+            mVertexArraySupported = GLUtils.isGLES30Supported();
+        }
+        if (!mVertexArraySupported) {
+            // GLES30 entry points are not loaded for a GLES2 context
+            throw new IllegalStateException("vertex array objects need a GLES3 context");
+        }
+        GLES30.glBindVertexArray(vertexArray);
+        mVertexArray = vertexArray;
+        // the element array binding is part of the VAO
+        mBuffers[BUFFER_ELEMENT_ARRAY] = UNKNOWN;
+        mIssuedCount++;
+    }
+
+    public void bindBuffer(int target, int buffer) {
+        int index = getBufferIndex(target);
+        if (index >= 0 && mBuffers[index] == buffer) {
+            mElidedCount++;
+            return;
+        }
+        GLES20.glBindBuffer(target, buffer);
+        if (index >= 0) {
+            mBuffers[index] = buffer;
+        }
+        mIssuedCount++;
+    }
+
+    public void bindFramebuffer(int frameBuffer) {
+        if (mFrameBuffer == frameBuffer) {
+            mElidedCount++;
+            return;
+        }
+        GLES20.glBindFramebuffer(GLES20.GL_FRAMEBUFFER, frameBuffer);
+        mFrameBuffer = frameBuffer;
+        mIssuedCount++;
+    }
+
+    /**
+     * @param unit the texture unit, e.g. GLES20.GL_TEXTURE0
+     */
+    public void activeTexture(int unit) {
+        int index = unit - GLES20.GL_TEXTURE0;
+        if (mActiveUnit == index) {
+            mElidedCount++;
+            return;
+        }
+        GLES20.glActiveTexture(unit);
+        mActiveUnit = index >= 0 && index < MAX_TEXTURE_UNITS ? index : UNKNOWN;
+        mIssuedCount++;
+    }
+
+    /**
+     * bind a texture to the active unit
+     *
+     * @param target GL_TEXTURE_2D or GL_TEXTURE_EXTERNAL_OES, other targets are not tracked
+     * @param texture the texture id
+     */
+    public void bindTexture(int target, int texture) {
+        int index = getTextureIndex(target);
+        if (mActiveUnit != UNKNOWN && index >= 0 && mTextures[mActiveUnit][index] == texture) {
+            mElidedCount++;
+            return;
+        }
+        GLES20.glBindTexture(target, texture);
+        if (mActiveUnit != UNKNOWN && index >= 0) {
+            mTextures[mActiveUnit][index] = texture;
+        }
+        mIssuedCount++;
+    }
+
+    /**
+     * set a parameter of the texture bound to the active unit
+     *
+     * @param target the texture target
+     * @param name the filter and wrap parameters are tracked per texture
+     * @param value the value
+     */
+    public void texParameteri(int target, int name, int value) {
+        int[] parameters = null;
+        int slot = getParameterIndex(name);
+        int index = getTextureIndex(target);
+        if (slot >= 0 && index >= 0 && mActiveUnit != UNKNOWN) {
+            int texture = mTextures[mActiveUnit][index];
+            if (texture > 0) {
+                parameters = mTextureParameters.get(texture);
+                if (parameters == null) {
+                    parameters = new int[]{UNKNOWN, UNKNOWN, UNKNOWN, UNKNOWN};
+                    mTextureParameters.put(texture, parameters);
+                }
+            }
+        }
+        if (parameters != null && parameters[slot] == value) {
+            mElidedCount++;
+            return;
+        }
+        GLES20.glTexParameteri(target, name, value);
+        if (parameters != null) {
+            parameters[slot] = value;
+        }
+        mIssuedCount++;
+    }
+
+    public void deleteTextures(int n, int[] textures, int offset) {
+        GLES20.glDeleteTextures(n, textures, offset);
+        for (int i = offset; i < offset + n; i++) {
+            mTextureParameters.remove(textures[i]);
+            // deleted textures are unbound from every unit
+            for (int[] unit : mTextures) {
+                for (int j = 0; j < TARGET_COUNT; j++) {
+                    if (unit[j] == textures[i]) {
+                        unit[j] = 0;
+                    }
+                }
+            }
+        }
+    }
+
+    public void deleteBuffers(int n, int[] buffers, int offset) {
+        GLES20.glDeleteBuffers(n, buffers, offset);
+        for (int i = offset; i < offset + n; i++) {
+            for (int j = 0; j < BUFFER_COUNT; j++) {
+                if (mBuffers[j] == buffers[i]) {
+                    mBuffers[j] = 0;
+                }
+            }
+        }
+    }
+
+    public void deleteVertexArrays(int n, int[] vertexArrays, int offset) {
+        GLES30.glDeleteVertexArrays(n, vertexArrays, offset);
+        for (int i = offset; i < offset + n; i++) {
+            if (mVertexArray == vertexArrays[i]) {
+                mVertexArray = 0;
+                mBuffers[BUFFER_ELEMENT_ARRAY] = UNKNOWN;
+            }
+        }
+    }
+
+    public void deleteFramebuffers(int n, int[] frameBuffers, int offset) {
+        GLES20.glDeleteFramebuffers(n, frameBuffers, offset);
+        for (int i = offset; i < offset + n; i++) {
+            if (mFrameBuffer == frameBuffers[i]) {
+                mFrameBuffer = 0;
+            }
+        }
+    }
+
+    public void deleteProgram(int program) {
+        GLES20.glDeleteProgram(program);
+        if (mProgram == program) {
+            // a program in use is only flagged for deletion, its name may come back later
+            mProgram = UNKNOWN;
+        }
+    }
+
+    public long getIssuedCount() {
+        return mIssuedCount;
+    }
+
+    public long getElidedCount() {
+        return mElidedCount;
+    }
+
+    public void resetStats() {
+        mIssuedCount = 0;
+        mElidedCount = 0;
+    }
+
+    public String getStats() {
+        long total = mIssuedCount + mElidedCount;
+        return "state calls issued = " + mIssuedCount + ", elided = " + mElidedCount
+                + (total > 0 ? " (" + (mElidedCount * 100 / total) + "%)" : "");
+    }
+
+    private static int getTextureIndex(int target) {
+        switch (target) {
+            case GLES20.GL_TEXTURE_2D:
+                return TARGET_2D;
+            case GLES11Ext.GL_TEXTURE_EXTERNAL_OES:
+                return TARGET_EXTERNAL;
+            default:
+                return UNKNOWN;
+        }
+    }
+
+    private static int getBufferIndex(int target) {
+        switch (target) {
+            case GLES20.GL_ARRAY_BUFFER:
+                return BUFFER_ARRAY;
+            case GLES20.GL_ELEMENT_ARRAY_BUFFER:
+                return BUFFER_ELEMENT_ARRAY;
+            case GLES30.GL_PIXEL_PACK_BUFFER:
+                return BUFFER_PIXEL_PACK;
+            case GLES30.GL_PIXEL_UNPACK_BUFFER:
+                return BUFFER_PIXEL_UNPACK;
+            default:
+                return UNKNOWN;
+        }
+    }
+
+    private static int getParameterIndex(int name) {
+        for (int i = 0; i < TEXTURE_PARAMETERS.length; i++) {
+            if (TEXTURE_PARAMETERS[i] == name) {
+                return i;
+            }
+        }
+        return UNKNOWN;
+    }
+}
@@ -1,6 +1,8 @@
 package learnopengl.xiaobole.com.utils;
 
 import android.graphics.Bitmap;
+import android.opengl.EGL14;
+import android.opengl.EGLContext;
 import android.opengl.GLES20;
 import android.opengl.GLES30;
 import android.opengl.Matrix;
@@ -168,16 +170,39 @@ public class GLUtils {
         return texIds;
     }
 
+    // the context GL_VERSION was last queried in and its answer
+    private static EGLContext sVersionContext;
+    private static boolean sGLES30Supported;
+
+    /**
+     * check if the current context is GLES 3.0 or later, must be called on the GL thread;
+     * GL_VERSION is queried and logged once per context
+     *
+     * @return true or not
+     */
+    public static synchronized boolean isGLES30Supported() {
+        EGLContext context = EGL14.eglGetCurrentContext();
+        if (!context.equals(sVersionContext)) {
+            String version = GLES20.glGetString(GLES20.GL_VERSION);
+            Log.i(TAG, "GL_VERSION: " + version);
+            sGLES30Supported = version != null && version.startsWith("OpenGL ES ")
+                    && version.length() > 10 && version.charAt(10) >= '3';
+            sVersionContext = context;
+        }
+        return sGLES30Supported;
+    }
+
     public static int drawBitmap(int texId, Bitmap bitmap) {
-        GLES20.glBindTexture(GL_TEXTURE_2D, texId);
+        GLStateCache stateCache = GLStateCache.getInstance();
+        stateCache.bindTexture(GL_TEXTURE_2D, texId);
 
         // set the texture wrapping parameters
-        GLES20.glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_WRAP_S, GL_REPEAT);
-        GLES20.glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_WRAP_T, GL_REPEAT);
+        stateCache.texParameteri(GL_TEXTURE_2D, GL_TEXTURE_WRAP_S, GL_REPEAT);
+        stateCache.texParameteri(GL_TEXTURE_2D, GL_TEXTURE_WRAP_T, GL_REPEAT);
 
         // set texture filtering parameters
-        GLES20.glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MIN_FILTER, GL_LINEAR);
-        GLES20.glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MAG_FILTER, GL_LINEAR);
+        stateCache.texParameteri(GL_TEXTURE_2D, GL_TEXTURE_MIN_FILTER, GL_LINEAR);
+        stateCache.texParameteri(GL_TEXTURE_2D, GL_TEXTURE_MAG_FILTER, GL_LINEAR);
 
 //        glTexImage2D(GL_TEXTURE_2D, 0, GL_RGB, width, height, 0, GL_RGB, );
         android.opengl.GLUtils.texImage2D(GL_TEXTURE_2D, 0, bitmap, 0);
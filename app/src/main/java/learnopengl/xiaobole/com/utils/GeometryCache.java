@@ -0,0 +1,227 @@
+package learnopengl.xiaobole.com.utils;
+
+import android.opengl.GLES20;
+import android.util.Log;
+
+import java.nio.FloatBuffer;
+import java.nio.ShortBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Shares uploaded VAO/VBO/EBO meshes between drawers.
+ *
+ * Meshes are keyed by their vertex layout and contents, uploaded once on first
+ * acquire and deleted when the last user releases them. Must be used on the GL thread.
+ */
+public class GeometryCache {
+    private static final String TAG = "GeometryCache";
+
+    private static final int BYTES_PER_FLOAT = 4;
+    private static final int BYTES_PER_SHORT = 2;
+
+    private final Map<Key, Mesh> mMeshes = new HashMap<>();
+    private int mGeneration;
+
+    private GeometryCache() {
+    }
+
+    private static class GeometryCacheHolder {
+        private static final GeometryCache mInstance = new GeometryCache();
+    }
+
+    public static GeometryCache getInstance() {
+        return GeometryCacheHolder.mInstance;
+    }
+
+    /**
+     * Describes how interleaved float vertices map onto shader attributes.
+     *
+     * Immutable, as it keys the cached meshes: adding an attribute returns a new layout.
+     */
+    public static final class VertexLayout {
+        private final int[] mLocations;
+        private final int[] mSizes;
+        private final int mStride;
+
+        /**
+         * an empty layout, add the attributes in their interleaved order
+         */
+        public VertexLayout() {
+            this(new int[0], new int[0], 0);
+        }
+
+        private VertexLayout(int[] locations, int[] sizes, int stride) {
+            mLocations = locations;
+            mSizes = sizes;
+            mStride = stride;
+        }
+
+        /**
+         * append an attribute to the layout
+         *
+         * @param location the attribute location, -1 if the shader does not use it
+         * @param size the number of float components
+         * @return a new VertexLayout with the attribute appended, this one is unchanged
+         */
+        public VertexLayout addAttribute(int location, int size) {
+            int[] locations = Arrays.copyOf(mLocations, mLocations.length + 1);
+            int[] sizes = Arrays.copyOf(mSizes, mSizes.length + 1);
+            locations[locations.length - 1] = location;
+            sizes[sizes.length - 1] = size;
+            return new VertexLayout(locations, sizes, mStride + size * BYTES_PER_FLOAT);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof VertexLayout)) {
+                return false;
+            }
+            VertexLayout other = (VertexLayout) o;
+            return Arrays.equals(mLocations, other.mLocations) && Arrays.equals(mSizes, other.mSizes);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * Arrays.hashCode(mLocations) + Arrays.hashCode(mSizes);
+        }
+    }
+
+    public static class Mesh {
+        private final Key mKey;
+        private final int mGeneration;
+        private int mVAOId;
+        private int mVBOId;
+        private int mEBOId;
+        private int mRefCount;
+
+        private Mesh(Key key, int generation) {
+            mKey = key;
+            mGeneration = generation;
+        }
+
+        public int getVAOId() {
+            return mVAOId;
+        }
+
+        public int getIndexCount() {
+            return mKey.mIndices.length;
+        }
+    }
+
+    private static class Key {
+        private final VertexLayout mLayout;
+        private final float[] mVertices;
+        private final short[] mIndices;
+        private final int mHashCode;
+
+        private Key(VertexLayout layout, float[] vertices, short[] indices) {
+            mLayout = layout;
+            mVertices = vertices.clone();
+            mIndices = indices.clone();
+            mHashCode = 31 * (31 * layout.hashCode() + Arrays.hashCode(mVertices)) + Arrays.hashCode(mIndices);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return mHashCode == other.mHashCode
+                    && mLayout.equals(other.mLayout)
+                    && Arrays.equals(mVertices, other.mVertices)
+                    && Arrays.equals(mIndices, other.mIndices);
+        }
+
+        @Override
+        public int hashCode() {
+            return mHashCode;
+        }
+    }
+
+    /**
+     * get a mesh for the given geometry, uploading it only if no drawer holds it yet
+     *
+     * @param layout the interleaved vertex layout
+     * @param vertices the interleaved vertex data
+     * @param indices the element indices
+     * @return the shared mesh, call {@link #release(Mesh)} when done
+     */
+    public Mesh acquire(VertexLayout layout, float[] vertices, short[] indices) {
+        Key key = new Key(layout, vertices, indices);
+        Mesh mesh = mMeshes.get(key);
+        if (mesh == null) {
+            mesh = new Mesh(key, mGeneration);
+            upload(mesh);
+            mMeshes.put(key, mesh);
+            Log.i(TAG, "upload mesh vao = " + mesh.mVAOId + ", total = " + mMeshes.size());
+        }
+        mesh.mRefCount++;
+        return mesh;
+    }
+
+    public void release(Mesh mesh) {
+        if (mesh == null || mesh.mGeneration != mGeneration || mesh.mRefCount <= 0) {
+            return;
+        }
+        if (--mesh.mRefCount > 0) {
+            return;
+        }
+        mMeshes.remove(mesh.mKey);
+        GLStateCache stateCache = GLStateCache.getInstance();
+        stateCache.deleteBuffers(2, new int[]{mesh.mVBOId, mesh.mEBOId}, 0);
+        stateCache.deleteVertexArrays(1, new int[]{mesh.mVAOId}, 0);
+        mesh.mVAOId = 0;
+        mesh.mVBOId = 0;
+        mesh.mEBOId = 0;
+    }
+
+    /**
+     * Forget all meshes, their GL objects died with the previous context.
+     * Call from GLSurfaceView.Renderer#onSurfaceCreated.
+     */
+    public void onContextCreated() {
+        mMeshes.clear();
+        mGeneration++;
+    }
+
+    private void upload(Mesh mesh) {
+        Key key = mesh.mKey;
+        VertexLayout layout = key.mLayout;
+
+        GLStateCache stateCache = GLStateCache.getInstance();
+        mesh.mVAOId = GLUtils.createVAO();
+        stateCache.bindVertexArray(mesh.mVAOId);
+
+        FloatBuffer vertexData = GLUtils.createFloatBuffer(key.mVertices);
+        mesh.mVBOId = GLUtils.createVBO();
+        stateCache.bindBuffer(GLES20.GL_ARRAY_BUFFER, mesh.mVBOId);
+        GLES20.glBufferData(GLES20.GL_ARRAY_BUFFER, vertexData.capacity() * BYTES_PER_FLOAT, vertexData, GLES20.GL_STATIC_DRAW);
+
+        int offset = 0;
+        for (int i = 0; i < layout.mLocations.length; i++) {
+            int location = layout.mLocations[i];
+            if (location >= 0) {
+                GLES20.glVertexAttribPointer(location, layout.mSizes[i], GLES20.GL_FLOAT, false, layout.mStride, offset);
+                GLES20.glEnableVertexAttribArray(location);
+            }
+            offset += layout.mSizes[i] * BYTES_PER_FLOAT;
+        }
+
+        ShortBuffer indexData = GLUtils.createShortBuffer(key.mIndices);
+        mesh.mEBOId = GLUtils.createEBO();
+        stateCache.bindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, mesh.mEBOId);
+        GLES20.glBufferData(GLES20.GL_ELEMENT_ARRAY_BUFFER, indexData.capacity() * BYTES_PER_SHORT, indexData, GLES20.GL_STATIC_DRAW);
+
+        stateCache.bindVertexArray(0);
+        stateCache.bindBuffer(GLES20.GL_ARRAY_BUFFER, 0);
+    }
+}
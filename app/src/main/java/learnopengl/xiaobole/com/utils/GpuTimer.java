@@ -0,0 +1,121 @@
+package learnopengl.xiaobole.com.utils;
+
+import android.opengl.GLES20;
+import android.opengl.GLES30;
+
+/**
+ * Measures GPU time with GL_EXT_disjoint_timer_query.
+ *
+ * Queries go through a small ring and are read back a few frames later, so the render
+ * thread never waits on the GPU. Results are dropped when the driver reports a disjoint
+ * operation (frequency change, context switch) because they are not meaningful.
+ * Must be used on the GL thread.
+ */
+public class GpuTimer {
+    private static final String EXTENSION = "GL_EXT_disjoint_timer_query";
+
+    // not exposed by GLES11Ext
+    private static final int GL_TIME_ELAPSED_EXT = 0x88BF;
+    private static final int GL_GPU_DISJOINT_EXT = 0x8FBB;
+
+    private static final int QUERY_COUNT = 4;
+
+    private final LatencyHistogram mHistogram;
+    private final int[] mQueries = new int[QUERY_COUNT];
+    private final boolean[] mPending = new boolean[QUERY_COUNT];
+    private final int[] mResult = new int[1];
+    private int mIndex;
+    private boolean mActive;
+    private boolean mInitialized;
+
+    public GpuTimer(LatencyHistogram histogram) {
+        mHistogram = histogram;
+    }
+
+    /**
+     * check the current context, the queries are GLES3 entry points
+     *
+     * @return true if the timer queries are available
+     */
+    public static boolean isSupported() {
+        if (!GLUtils.isGLES30Supported()) {
+            return false;
+        }
+        String extensions = GLES20.glGetString(GLES20.GL_EXTENSIONS);
+        return extensions != null && extensions.contains(EXTENSION);
+    }
+
+    public boolean init() {
+        if (!isSupported()) {
+            return false;
+        }
+        GLES30.glGenQueries(QUERY_COUNT, mQueries, 0);
+        for (int i = 0; i < QUERY_COUNT; i++) {
+            mPending[i] = false;
+        }
+        mIndex = 0;
+        mActive = false;
+        // reading the flag clears it
+        GLES20.glGetIntegerv(GL_GPU_DISJOINT_EXT, mResult, 0);
+        mInitialized = true;
+        return true;
+    }
+
+    public void release() {
+        if (mInitialized) {
+            GLES30.glDeleteQueries(QUERY_COUNT, mQueries, 0);
+            mInitialized = false;
+        }
+    }
+
+    /**
+     * forget the queries without deleting them, for when the context was lost
+     */
+    public void reset() {
+        mInitialized = false;
+    }
+
+    public void begin() {
+        if (!mInitialized || mActive) {
+            return;
+        }
+        collect();
+        if (mPending[mIndex]) {
+            // the GPU is more than QUERY_COUNT frames behind, skip this one
+            return;
+        }
+        GLES30.glBeginQuery(GL_TIME_ELAPSED_EXT, mQueries[mIndex]);
+        mActive = true;
+    }
+
+    public void end() {
+        if (!mActive) {
+            return;
+        }
+        GLES30.glEndQuery(GL_TIME_ELAPSED_EXT);
+        mPending[mIndex] = true;
+        mIndex = (mIndex + 1) % QUERY_COUNT;
+        mActive = false;
+    }
+
+    private void collect() {
+        GLES20.glGetIntegerv(GL_GPU_DISJOINT_EXT, mResult, 0);
+        boolean disjoint = mResult[0] != 0;
+        // oldest first, stop at the first one that is not ready
+        for (int i = 0; i < QUERY_COUNT; i++) {
+            int slot = (mIndex + i) % QUERY_COUNT;
+            if (!mPending[slot]) {
+                continue;
+            }
+            if (!disjoint) {
+                GLES30.glGetQueryObjectuiv(mQueries[slot], GLES30.GL_QUERY_RESULT_AVAILABLE, mResult, 0);
+                if (mResult[0] == 0) {
+                    break;
+                }
+                GLES30.glGetQueryObjectuiv(mQueries[slot], GLES30.GL_QUERY_RESULT, mResult, 0);
+                mHistogram.recordNanos(mResult[0] & 0xffffffffL);
+            }
+            mPending[slot] = false;
+        }
+    }
+}
@@ -0,0 +1,260 @@
+package learnopengl.xiaobole.com.utils;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+/**
+ * A compressed 2D texture read from a KTX 1.1 or KTX 2.0 container.
+ *
+ * The mip levels are slices of the given buffer, nothing is copied, so a memory mapped file
+ * is uploaded straight from the page cache. Only what glCompressedTexImage2D takes is
+ * supported: one face, no array layers, no depth and no supercompression. KTX 2.0 formats
+ * are mapped from their Vulkan format to the GL one for ETC2, EAC and ASTC LDR.
+ *
+ * Pure Java without GL.
+ */
+public class KTXTexture {
+
+    private static final byte[] KTX1_IDENTIFIER = {
+            (byte) 0xAB, 'K', 'T', 'X', ' ', '1', '1', (byte) 0xBB, '\r', '\n', 0x1A, '\n'
+    };
+    private static final byte[] KTX2_IDENTIFIER = {
+            (byte) 0xAB, 'K', 'T', 'X', ' ', '2', '0', (byte) 0xBB, '\r', '\n', 0x1A, '\n'
+    };
+    private static final int KTX1_ENDIANNESS = 0x04030201;
+    private static final int KTX1_HEADER_SIZE = 64;
+    private static final int KTX2_HEADER_SIZE = 80;
+    private static final int KTX2_LEVEL_INDEX_SIZE = 24;
+    private static final int MAX_LEVELS = 32;
+
+    // compressed internal formats of GLES 3.0 and KHR_texture_compression_astc_ldr
+    public static final int GL_COMPRESSED_R11_EAC = 0x9270;
+    public static final int GL_COMPRESSED_RGB8_ETC2 = 0x9274;
+    public static final int GL_COMPRESSED_RGBA8_ETC2_EAC = 0x9278;
+    public static final int GL_COMPRESSED_SRGB8_ALPHA8_ETC2_EAC = 0x9279;
+    public static final int GL_COMPRESSED_RGBA_ASTC_4x4 = 0x93B0;
+    public static final int GL_COMPRESSED_SRGB8_ALPHA8_ASTC_4x4 = 0x93D0;
+    private static final int ASTC_FORMAT_COUNT = 14;
+
+    // VkFormat values of the same formats
+    private static final int VK_FORMAT_ETC2_R8G8B8_UNORM_BLOCK = 147;
+    private static final int VK_FORMAT_EAC_R11G11_SNORM_BLOCK = 156;
+    private static final int VK_FORMAT_ASTC_4x4_UNORM_BLOCK = 157;
+    private static final int VK_FORMAT_ASTC_12x12_SRGB_BLOCK = 184;
+    // the GL formats of VK_FORMAT_ETC2_R8G8B8_UNORM_BLOCK ~ VK_FORMAT_EAC_R11G11_SNORM_BLOCK:
+    // ETC2 RGB8, RGB8A1, RGBA8 in unorm, srgb pairs, then the four EAC formats
+    private static final int[] VK_ETC2_FORMATS = {
+            0x9274, 0x9275, 0x9276, 0x9277, 0x9278, 0x9279, 0x9270, 0x9271, 0x9272, 0x9273
+    };
+
+    private final int mInternalFormat;
+    private final int mWidth;
+    private final int mHeight;
+    private final ByteBuffer[] mLevels;
+
+    private KTXTexture(int internalFormat, int width, int height, ByteBuffer[] levels) {
+        mInternalFormat = internalFormat;
+        mWidth = width;
+        mHeight = height;
+        mLevels = levels;
+    }
+
+    /**
+     * memory map and parse a container
+     *
+     * @param channel the file channel
+     * @param offset the start of the container in the file
+     * @param length the length of the container in bytes
+     */
+    public static KTXTexture open(FileChannel channel, long offset, long length) throws IOException {
+        return parse(channel.map(FileChannel.MapMode.READ_ONLY, offset, length));
+    }
+
+    /**
+     * parse a container, the levels keep referencing the buffer
+     *
+     * @param data the container from its position to its limit
+     */
+    public static KTXTexture parse(ByteBuffer data) throws IOException {
+        ByteBuffer buffer = data.slice();
+        if (startsWith(buffer, KTX1_IDENTIFIER)) {
+            return parseKTX1(buffer);
+        }
+        if (startsWith(buffer, KTX2_IDENTIFIER)) {
+            return parseKTX2(buffer);
+        }
+        throw new IOException("not a ktx container");
+    }
+
+    /**
+     * @return the GL compressed internal format
+     */
+    public int getInternalFormat() {
+        return mInternalFormat;
+    }
+
+    public int getWidth() {
+        return mWidth;
+    }
+
+    public int getHeight() {
+        return mHeight;
+    }
+
+    public int getLevelCount() {
+        return mLevels.length;
+    }
+
+    /**
+     * @param level the mip level, 0 is the largest
+     * @return the compressed data of the level, position 0 and limit its size
+     */
+    public ByteBuffer getLevel(int level) {
+        return mLevels[level].duplicate();
+    }
+
+    /**
+     * @return the sum of the level sizes, the GPU memory taken by the texture
+     */
+    public long getDataSize() {
+        long size = 0;
+        for (ByteBuffer level : mLevels) {
+            size += level.remaining();
+        }
+        return size;
+    }
+
+    public static boolean isASTC(int internalFormat) {
+        return (internalFormat >= GL_COMPRESSED_RGBA_ASTC_4x4
+                && internalFormat < GL_COMPRESSED_RGBA_ASTC_4x4 + ASTC_FORMAT_COUNT)
+                || (internalFormat >= GL_COMPRESSED_SRGB8_ALPHA8_ASTC_4x4
+                && internalFormat < GL_COMPRESSED_SRGB8_ALPHA8_ASTC_4x4 + ASTC_FORMAT_COUNT);
+    }
+
+    /**
+     * @return true for the ETC2 and EAC formats, core in GLES 3.0
+     */
+    public static boolean isETC2(int internalFormat) {
+        return internalFormat >= GL_COMPRESSED_R11_EAC && internalFormat <= GL_COMPRESSED_SRGB8_ALPHA8_ETC2_EAC;
+    }
+
+    private static KTXTexture parseKTX1(ByteBuffer buffer) throws IOException {
+        checkSize(buffer, 0, KTX1_HEADER_SIZE);
+        // written in the byte order of the encoder, the endianness field tells which
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        if (buffer.getInt(12) != KTX1_ENDIANNESS) {
+            buffer.order(ByteOrder.BIG_ENDIAN);
+            if (buffer.getInt(12) != KTX1_ENDIANNESS) {
+                throw new IOException("invalid ktx endianness");
+            }
+        }
+        int glType = buffer.getInt(16);
+        int internalFormat = buffer.getInt(28);
+        int width = buffer.getInt(36);
+        int height = buffer.getInt(40);
+        int depth = buffer.getInt(44);
+        int arrayElements = buffer.getInt(48);
+        int faces = buffer.getInt(52);
+        int levelCount = Math.max(1, buffer.getInt(56));
+        int keyValueBytes = buffer.getInt(60);
+        if (glType != 0) {
+            throw new IOException("ktx texture is not compressed, type = " + glType);
+        }
+        checkLayout(width, height, depth, arrayElements, faces, levelCount);
+
+        ByteBuffer[] levels = new ByteBuffer[levelCount];
+        long offset = KTX1_HEADER_SIZE + (keyValueBytes & 0xffffffffL);
+        for (int i = 0; i < levelCount; i++) {
+            checkSize(buffer, offset, 4);
+            long imageSize = buffer.getInt((int) offset) & 0xffffffffL;
+            offset += 4;
+            levels[i] = slice(buffer, offset, imageSize);
+            // mip padding to 4 bytes
+            offset += (imageSize + 3) & ~3L;
+        }
+        return new KTXTexture(internalFormat, width, height, levels);
+    }
+
+    private static KTXTexture parseKTX2(ByteBuffer buffer) throws IOException {
+        checkSize(buffer, 0, KTX2_HEADER_SIZE);
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        int vkFormat = buffer.getInt(12);
+        int width = buffer.getInt(20);
+        int height = buffer.getInt(24);
+        int depth = buffer.getInt(28);
+        int layers = buffer.getInt(32);
+        int faces = buffer.getInt(36);
+        int levelCount = Math.max(1, buffer.getInt(40));
+        int supercompression = buffer.getInt(44);
+        if (supercompression != 0) {
+            throw new IOException("ktx2 supercompression " + supercompression + " is not supported");
+        }
+        int internalFormat = toGLFormat(vkFormat);
+        if (internalFormat == 0) {
+            throw new IOException("ktx2 vkFormat " + vkFormat + " is not supported");
+        }
+        checkLayout(width, height, depth, layers, faces, levelCount);
+
+        checkSize(buffer, KTX2_HEADER_SIZE, (long) levelCount * KTX2_LEVEL_INDEX_SIZE);
+        ByteBuffer[] levels = new ByteBuffer[levelCount];
+        for (int i = 0; i < levelCount; i++) {
+            int index = KTX2_HEADER_SIZE + i * KTX2_LEVEL_INDEX_SIZE;
+            levels[i] = slice(buffer, buffer.getLong(index), buffer.getLong(index + 8));
+        }
+        return new KTXTexture(internalFormat, width, height, levels);
+    }
+
+    private static int toGLFormat(int vkFormat) {
+        if (vkFormat >= VK_FORMAT_ETC2_R8G8B8_UNORM_BLOCK && vkFormat <= VK_FORMAT_EAC_R11G11_SNORM_BLOCK) {
+            return VK_ETC2_FORMATS[vkFormat - VK_FORMAT_ETC2_R8G8B8_UNORM_BLOCK];
+        }
+        if (vkFormat >= VK_FORMAT_ASTC_4x4_UNORM_BLOCK && vkFormat <= VK_FORMAT_ASTC_12x12_SRGB_BLOCK) {
+            // unorm, srgb pairs in the same block size order as the GL formats
+            int index = vkFormat - VK_FORMAT_ASTC_4x4_UNORM_BLOCK;
+            int base = index % 2 == 0 ? GL_COMPRESSED_RGBA_ASTC_4x4 : GL_COMPRESSED_SRGB8_ALPHA8_ASTC_4x4;
+            return base + index / 2;
+        }
+        return 0;
+    }
+
+    private static void checkLayout(int width, int height, int depth, int layers, int faces, int levelCount)
+            throws IOException {
+        if (width <= 0 || height <= 0) {
+            throw new IOException("invalid ktx size " + width + "x" + height);
+        }
+        if (depth > 1 || layers > 1 || faces > 1) {
+            throw new IOException("only 2d ktx textures are supported");
+        }
+        if (levelCount > MAX_LEVELS) {
+            throw new IOException("invalid ktx level count " + levelCount);
+        }
+    }
+
+    private static ByteBuffer slice(ByteBuffer buffer, long offset, long size) throws IOException {
+        checkSize(buffer, offset, size);
+        ByteBuffer duplicate = buffer.duplicate();
+        duplicate.position((int) offset);
+        duplicate.limit((int) (offset + size));
+        return duplicate.slice();
+    }
+
+    private static void checkSize(ByteBuffer buffer, long offset, long size) throws IOException {
+        if (offset < 0 || size < 0 || offset + size > buffer.capacity()) {
+            throw new IOException("truncated ktx container");
+        }
+    }
+
+    private static boolean startsWith(ByteBuffer buffer, byte[] identifier) {
+        if (buffer.capacity() < identifier.length) {
+            return false;
+        }
+        for (int i = 0; i < identifier.length; i++) {
+            if (buffer.get(i) != identifier[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
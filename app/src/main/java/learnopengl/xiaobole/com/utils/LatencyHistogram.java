@@ -0,0 +1,157 @@
+package learnopengl.xiaobole.com.utils;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A lock free, allocation free latency histogram.
+ *
+ * Values are recorded in microseconds into log-linear buckets: exact below 64us, then
+ * 32 sub-buckets per power of two, which bounds the relative error to about 3%.
+ * Recording is safe from any thread; {@link #snapshot()} can be taken from another thread.
+ */
+public class LatencyHistogram {
+
+    private static final int LINEAR_BUCKETS = 64;
+    private static final int LINEAR_BITS = 6;
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int MAX_EXPONENT = 36;
+    private static final int BUCKET_COUNT = LINEAR_BUCKETS + (MAX_EXPONENT - LINEAR_BITS + 1) * SUB_BUCKETS;
+
+    private final String mName;
+    private final AtomicLongArray mCounts = new AtomicLongArray(BUCKET_COUNT);
+    private final AtomicLong mTotalCount = new AtomicLong();
+    private final AtomicLong mTotalMicros = new AtomicLong();
+    private final AtomicLong mMaxMicros = new AtomicLong();
+
+    public LatencyHistogram(String name) {
+        mName = name;
+    }
+
+    public String getName() {
+        return mName;
+    }
+
+    public void recordNanos(long nanos) {
+        recordMicros(nanos / 1000);
+    }
+
+    public void recordMicros(long micros) {
+        if (micros < 0) {
+            micros = 0;
+        }
+        mCounts.incrementAndGet(bucketOf(micros));
+        mTotalCount.incrementAndGet();
+        mTotalMicros.addAndGet(micros);
+        long max = mMaxMicros.get();
+        while (micros > max && !mMaxMicros.compareAndSet(max, micros)) {
+            max = mMaxMicros.get();
+        }
+    }
+
+    public void reset() {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            mCounts.set(i, 0);
+        }
+        mTotalCount.set(0);
+        mTotalMicros.set(0);
+        mMaxMicros.set(0);
+    }
+
+    /**
+     * copy the current counts, concurrent records may be partially included
+     *
+     * @return the snapshot
+     */
+    public Snapshot snapshot() {
+        long[] counts = new long[BUCKET_COUNT];
+        long total = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            counts[i] = mCounts.get(i);
+            total += counts[i];
+        }
+        return new Snapshot(mName, counts, total, mTotalMicros.get(), mMaxMicros.get());
+    }
+
+    static int bucketOf(long micros) {
+        if (micros < LINEAR_BUCKETS) {
+            return (int) micros;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(micros);
+        if (exponent > MAX_EXPONENT) {
+            return BUCKET_COUNT - 1;
+        }
+        int subBucket = (int) ((micros >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1));
+        return LINEAR_BUCKETS + (exponent - LINEAR_BITS) * SUB_BUCKETS + subBucket;
+    }
+
+    static long upperBoundOf(int bucket) {
+        if (bucket < LINEAR_BUCKETS) {
+            return bucket;
+        }
+        int exponent = (bucket - LINEAR_BUCKETS) / SUB_BUCKETS + LINEAR_BITS;
+        int subBucket = (bucket - LINEAR_BUCKETS) % SUB_BUCKETS;
+        return (1L << exponent) + ((long) (subBucket + 1) << (exponent - SUB_BUCKET_BITS)) - 1;
+    }
+
+    public static class Snapshot {
+        private final String mName;
+        private final long[] mCounts;
+        private final long mCount;
+        private final long mTotalMicros;
+        private final long mMaxMicros;
+
+        private Snapshot(String name, long[] counts, long count, long totalMicros, long maxMicros) {
+            mName = name;
+            mCounts = counts;
+            mCount = count;
+            mTotalMicros = totalMicros;
+            mMaxMicros = maxMicros;
+        }
+
+        public long getCount() {
+            return mCount;
+        }
+
+        public long getMeanMicros() {
+            return mCount == 0 ? 0 : mTotalMicros / mCount;
+        }
+
+        public long getMaxMicros() {
+            return mMaxMicros;
+        }
+
+        /**
+         * get the value below which the given share of records falls
+         *
+         * @param percentile 0 ~ 100
+         * @return the upper bound of the bucket in microseconds
+         */
+        public long getPercentileMicros(double percentile) {
+            if (mCount == 0) {
+                return 0;
+            }
+            long rank = (long) Math.ceil(percentile / 100.0 * mCount);
+            rank = Math.max(1, Math.min(rank, mCount));
+            long seen = 0;
+            for (int i = 0; i < mCounts.length; i++) {
+                seen += mCounts[i];
+                if (seen >= rank) {
+                    return Math.min(upperBoundOf(i), mMaxMicros);
+                }
+            }
+            return mMaxMicros;
+        }
+
+        @Override
+        public String toString() {
+            return mName + ": count = " + mCount
+                    + ", mean = " + getMeanMicros() + "us"
+                    + ", p50 = " + getPercentileMicros(50) + "us"
+                    + ", p95 = " + getPercentileMicros(95) + "us"
+                    + ", p99 = " + getPercentileMicros(99) + "us"
+                    + ", max = " + mMaxMicros + "us";
+        }
+    }
+}
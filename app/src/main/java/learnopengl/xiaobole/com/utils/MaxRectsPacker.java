@@ -0,0 +1,229 @@
+package learnopengl.xiaobole.com.utils;
+
+import java.util.Arrays;
+
+/**
+ * Packs rectangles into a fixed-size bin with the MaxRects algorithm, best short side fit.
+ *
+ * The free space is kept as the list of maximal free rectangles, which may overlap. A placed
+ * rectangle splits every free rectangle it intersects into the up to four parts around it,
+ * and the parts contained in another free rectangle are pruned. A freed rectangle is added back as
+ * free space without merging it with its neighbours, so the bin fragments over many removals;
+ * repack it with {@link #reset()} and insertions in decreasing size to defragment.
+ *
+ * Pure Java without GL, not thread safe.
+ */
+public class MaxRectsPacker {
+
+    // x, y, width, height
+    private static final int FIELDS = 4;
+
+    private final int mWidth;
+    private final int mHeight;
+
+    private int[] mFree = new int[16 * FIELDS];
+    private int mFreeCount;
+    private int[] mScratch = new int[16 * FIELDS];
+    private int[] mSplit = new int[16 * FIELDS];
+    private long mUsedArea;
+
+    public MaxRectsPacker(int width, int height) {
+        mWidth = width;
+        mHeight = height;
+        reset();
+    }
+
+    public int getWidth() {
+        return mWidth;
+    }
+
+    public int getHeight() {
+        return mHeight;
+    }
+
+    /**
+     * forget all placed rectangles
+     */
+    public void reset() {
+        mFreeCount = 0;
+        addFree(0, 0, mWidth, mHeight);
+        mUsedArea = 0;
+    }
+
+    /**
+     * place a rectangle
+     *
+     * @param width the width
+     * @param height the height
+     * @param outPosition receives the x, y of the placed rectangle
+     * @return false if there is no room
+     */
+    public boolean insert(int width, int height, int[] outPosition) {
+        if (width <= 0 || height <= 0) {
+            return false;
+        }
+        int best = -1;
+        int bestShortSide = Integer.MAX_VALUE;
+        int bestLongSide = Integer.MAX_VALUE;
+        for (int i = 0; i < mFreeCount; i++) {
+            int offset = i * FIELDS;
+            int freeWidth = mFree[offset + 2];
+            int freeHeight = mFree[offset + 3];
+            if (freeWidth < width || freeHeight < height) {
+                continue;
+            }
+            int leftoverX = freeWidth - width;
+            int leftoverY = freeHeight - height;
+            int shortSide = Math.min(leftoverX, leftoverY);
+            int longSide = Math.max(leftoverX, leftoverY);
+            if (shortSide < bestShortSide || (shortSide == bestShortSide && longSide < bestLongSide)) {
+                best = i;
+                bestShortSide = shortSide;
+                bestLongSide = longSide;
+            }
+        }
+        if (best < 0) {
+            return false;
+        }
+        int x = mFree[best * FIELDS];
+        int y = mFree[best * FIELDS + 1];
+        place(x, y, width, height);
+        outPosition[0] = x;
+        outPosition[1] = y;
+        return true;
+    }
+
+    /**
+     * give the space of a placed rectangle back
+     */
+    public void free(int x, int y, int width, int height) {
+        // it was in use, so it neither contains nor is contained in a free rectangle
+        addFree(x, y, width, height);
+        mUsedArea -= (long) width * height;
+    }
+
+    /**
+     * @return the area of the placed rectangles
+     */
+    public long getUsedArea() {
+        return mUsedArea;
+    }
+
+    /**
+     * @return the placed area over the bin area, 0 ~ 1
+     */
+    public float getOccupancy() {
+        return (float) mUsedArea / ((long) mWidth * mHeight);
+    }
+
+    public int getFreeRectCount() {
+        return mFreeCount;
+    }
+
+    private void place(int x, int y, int width, int height) {
+        int right = x + width;
+        int bottom = y + height;
+        int[] out = mScratch;
+        int count = 0;
+        int splitCount = 0;
+        for (int i = 0; i < mFreeCount; i++) {
+            int offset = i * FIELDS;
+            int freeX = mFree[offset];
+            int freeY = mFree[offset + 1];
+            int freeRight = freeX + mFree[offset + 2];
+            int freeBottom = freeY + mFree[offset + 3];
+            if (x >= freeRight || right <= freeX || y >= freeBottom || bottom <= freeY) {
+                out = ensureScratch(count + 1);
+                System.arraycopy(mFree, offset, out, count * FIELDS, FIELDS);
+                count++;
+                continue;
+            }
+            ensureSplit(splitCount + 4);
+            if (x > freeX) {
+                splitCount = put(mSplit, splitCount, freeX, freeY, x - freeX, freeBottom - freeY);
+            }
+            if (right < freeRight) {
+                splitCount = put(mSplit, splitCount, right, freeY, freeRight - right, freeBottom - freeY);
+            }
+            if (y > freeY) {
+                splitCount = put(mSplit, splitCount, freeX, freeY, freeRight - freeX, y - freeY);
+            }
+            if (bottom < freeBottom) {
+                splitCount = put(mSplit, splitCount, freeX, bottom, freeRight - freeX, freeBottom - bottom);
+            }
+        }
+
+        // the untouched rectangles are still maximal and a part of a split one can't contain
+        // them, so only the parts need pruning
+        int untouched = count;
+        for (int i = 0; i < splitCount; i++) {
+            if (!isRedundant(i, splitCount, out, untouched)) {
+                out = ensureScratch(count + 1);
+                System.arraycopy(mSplit, i * FIELDS, out, count * FIELDS, FIELDS);
+                count++;
+            }
+        }
+        mScratch = mFree;
+        mFree = out;
+        mFreeCount = count;
+        mUsedArea += (long) width * height;
+    }
+
+    /**
+     * @return true if the split part i is contained in an untouched rectangle or another part,
+     * of two equal parts the first one is kept
+     */
+    private boolean isRedundant(int i, int splitCount, int[] untouched, int untouchedCount) {
+        int offset = i * FIELDS;
+        for (int j = 0; j < untouchedCount; j++) {
+            if (contains(untouched, j * FIELDS, mSplit, offset)) {
+                return true;
+            }
+        }
+        for (int j = 0; j < splitCount; j++) {
+            if (j != i && contains(mSplit, j * FIELDS, mSplit, offset)
+                    && (j < i || !contains(mSplit, offset, mSplit, j * FIELDS))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return true if the rectangle at outer contains the one at inner
+     */
+    private static boolean contains(int[] outerRects, int outer, int[] innerRects, int inner) {
+        return innerRects[inner] >= outerRects[outer] && innerRects[inner + 1] >= outerRects[outer + 1]
+                && innerRects[inner] + innerRects[inner + 2] <= outerRects[outer] + outerRects[outer + 2]
+                && innerRects[inner + 1] + innerRects[inner + 3] <= outerRects[outer + 1] + outerRects[outer + 3];
+    }
+
+    private static int put(int[] rects, int count, int x, int y, int width, int height) {
+        int offset = count * FIELDS;
+        rects[offset] = x;
+        rects[offset + 1] = y;
+        rects[offset + 2] = width;
+        rects[offset + 3] = height;
+        return count + 1;
+    }
+
+    private int[] ensureScratch(int count) {
+        if (mScratch.length < count * FIELDS) {
+            mScratch = Arrays.copyOf(mScratch, Math.max(count * FIELDS, mScratch.length * 2));
+        }
+        return mScratch;
+    }
+
+    private void ensureSplit(int count) {
+        if (mSplit.length < count * FIELDS) {
+            mSplit = Arrays.copyOf(mSplit, Math.max(count * FIELDS, mSplit.length * 2));
+        }
+    }
+
+    private void addFree(int x, int y, int width, int height) {
+        if (mFree.length < (mFreeCount + 1) * FIELDS) {
+            mFree = Arrays.copyOf(mFree, mFree.length * 2);
+        }
+        mFreeCount = put(mFree, mFreeCount, x, y, width, height);
+    }
+}
@@ -0,0 +1,279 @@
+package learnopengl.xiaobole.com.utils;
+
+import java.nio.IntBuffer;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * CPU conversion of YUV 4:2:0 frames to ARGB for the places without GL, e.g. thumbnails.
+ *
+ * It uses the BT.601 coefficients of the YUV fragment shaders in 16.16 fixed point, and
+ * matches {@link YUVConverter#toARGB(int, int, int)} within 1 per channel. The frame is
+ * split into row stripes converted in parallel, the calling thread converts the first one.
+ * Converts one frame at a time, calls must not overlap.
+ */
+public class ParallelYUVConverter {
+    private static final String TAG = "ParallelYUVConverter";
+
+    private static final int FORMAT_I420 = 0;
+    private static final int FORMAT_NV21 = 1;
+    private static final int FORMAT_NV12 = 2;
+
+    // the shader coefficients scaled by 2^15, applied to (2 * c - 255) = 2 * (c - 127.5)
+    private static final int COEF_RV = 45974;  // 1.403
+    private static final int COEF_GU = 11272;  // 0.344
+    private static final int COEF_GV = 23396;  // 0.714
+    private static final int COEF_BU = 57999;  // 1.77
+    private static final int ROUND = 1 << 15;
+
+    private final int mStripeCount;
+    private final Stripe[] mStripes;
+    private final ExecutorService mExecutor;
+
+    public ParallelYUVConverter() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param threads the number of threads converting a frame, the caller included
+     */
+    public ParallelYUVConverter(int threads) {
+        mStripeCount = Math.max(1, threads);
+        mStripes = new Stripe[mStripeCount];
+        for (int i = 0; i < mStripeCount; i++) {
+            mStripes[i] = new Stripe();
+        }
+        if (mStripeCount > 1) {
+            mExecutor = new ThreadPoolExecutor(mStripeCount - 1, mStripeCount - 1, 0, TimeUnit.MILLISECONDS,
+                    new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                private final AtomicInteger mCount = new AtomicInteger();
+
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, TAG + "-" + mCount.getAndIncrement());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        } else {
+            mExecutor = null;
+        }
+    }
+
+    /**
+     * stop the worker threads, the converter must not be used afterwards
+     */
+    public void release() {
+        if (mExecutor != null) {
+            mExecutor.shutdown();
+        }
+    }
+
+    /**
+     * convert a planar I420 frame
+     *
+     * @param src the I420 frame
+     * @param argb the output pixels, at least width * height
+     * @param width the frame width
+     * @param height the frame height
+     */
+    public void i420ToARGB(byte[] src, int[] argb, int width, int height) {
+        convert(FORMAT_I420, src, argb, null, width, height);
+    }
+
+    /**
+     * convert a planar I420 frame into a buffer, e.g. a direct one shared with native code
+     *
+     * @param argb the output pixels from its position on, at least width * height
+     */
+    public void i420ToARGB(byte[] src, IntBuffer argb, int width, int height) {
+        convert(FORMAT_I420, src, null, argb, width, height);
+    }
+
+    /**
+     * convert a semi-planar frame
+     *
+     * @param src the NV21 or NV12 frame
+     * @param argb the output pixels, at least width * height
+     * @param width the frame width
+     * @param height the frame height
+     * @param vFirst true for NV21 (VUVU...), false for NV12 (UVUV...)
+     */
+    public void semiPlanarToARGB(byte[] src, int[] argb, int width, int height, boolean vFirst) {
+        convert(vFirst ? FORMAT_NV21 : FORMAT_NV12, src, argb, null, width, height);
+    }
+
+    /**
+     * convert a semi-planar frame into a buffer, e.g. a direct one shared with native code
+     *
+     * @param argb the output pixels from its position on, at least width * height
+     */
+    public void semiPlanarToARGB(byte[] src, IntBuffer argb, int width, int height, boolean vFirst) {
+        convert(vFirst ? FORMAT_NV21 : FORMAT_NV12, src, null, argb, width, height);
+    }
+
+    /**
+     * convert one pixel in fixed point
+     *
+     * @param y the luma, 0 ~ 255
+     * @param u the Cb, 0 ~ 255
+     * @param v the Cr, 0 ~ 255
+     * @return the ARGB color
+     */
+    public static int toARGB(int y, int u, int v) {
+        int du = 2 * u - 255;
+        int dv = 2 * v - 255;
+        return pixel((y << 16) + ROUND, COEF_RV * dv, -COEF_GU * du - COEF_GV * dv, COEF_BU * du);
+    }
+
+    private static int pixel(int y, int rv, int guv, int bu) {
+        int r = (y + rv) >> 16;
+        int g = (y + guv) >> 16;
+        int b = (y + bu) >> 16;
+        r = r < 0 ? 0 : (r > 255 ? 255 : r);
+        g = g < 0 ? 0 : (g > 255 ? 255 : g);
+        b = b < 0 ? 0 : (b > 255 ? 255 : b);
+        return 0xff000000 | (r << 16) | (g << 8) | b;
+    }
+
+    private void convert(int format, byte[] src, int[] argb, IntBuffer buffer, int width, int height) {
+        if (width <= 0 || height <= 0) {
+            throw new IllegalArgumentException("invalid size " + width + "x" + height);
+        }
+        int pixels = width * height;
+        if (src.length < YUVConverter.getI420Size(width, height)) {
+            throw new IllegalArgumentException("frame too small for " + width + "x" + height);
+        }
+        if (argb != null ? argb.length < pixels : buffer.remaining() < pixels) {
+            throw new IllegalArgumentException("output too small for " + width + "x" + height);
+        }
+
+        // even stripe heights, so a chroma row is never split between two stripes
+        int stripeRows = ((height + mStripeCount - 1) / mStripeCount + 1) & ~1;
+        int count = 0;
+        for (int top = 0; top < height; top += stripeRows) {
+            mStripes[count++].set(format, src, argb, buffer, width, height, top, Math.min(top + stripeRows, height));
+        }
+
+        CountDownLatch latch = new CountDownLatch(count - 1);
+        for (int i = 1; i < count; i++) {
+            mStripes[i].mLatch = latch;
+            mExecutor.execute(mStripes[i]);
+        }
+        mStripes[0].mLatch = null;
+        mStripes[0].run();
+        // the stripes reference the frame, wait for all of them even when interrupted
+        boolean interrupted = false;
+        while (true) {
+            try {
+                latch.await();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        for (int i = 0; i < count; i++) {
+            mStripes[i].clear();
+        }
+    }
+
+    private static class Stripe implements Runnable {
+        private int mFormat;
+        private byte[] mSrc;
+        private int[] mARGB;
+        private IntBuffer mBuffer;
+        private int mWidth;
+        private int mHeight;
+        private int mTop;
+        private int mBottom;
+        private int[] mRow;
+        private CountDownLatch mLatch;
+
+        void set(int format, byte[] src, int[] argb, IntBuffer buffer, int width, int height, int top, int bottom) {
+            mFormat = format;
+            mSrc = src;
+            mARGB = argb;
+            mBuffer = buffer;
+            mWidth = width;
+            mHeight = height;
+            mTop = top;
+            mBottom = bottom;
+            if (buffer != null && (mRow == null || mRow.length < width)) {
+                mRow = new int[width];
+            }
+        }
+
+        void clear() {
+            mSrc = null;
+            mARGB = null;
+            mBuffer = null;
+            mLatch = null;
+        }
+
+        @Override
+        public void run() {
+            try {
+                IntBuffer out = mBuffer == null ? null : mBuffer.duplicate();
+                int base = mBuffer == null ? 0 : mBuffer.position();
+                for (int row = mTop; row < mBottom; row++) {
+                    if (out == null) {
+                        convertRow(row, mARGB, row * mWidth);
+                    } else {
+                        convertRow(row, mRow, 0);
+                        out.position(base + row * mWidth);
+                        out.put(mRow, 0, mWidth);
+                    }
+                }
+            } finally {
+                if (mLatch != null) {
+                    mLatch.countDown();
+                }
+            }
+        }
+
+        private void convertRow(int row, int[] dst, int offset) {
+            byte[] src = mSrc;
+            int width = mWidth;
+            int ySize = width * mHeight;
+            int chromaWidth = (width + 1) / 2;
+            int yIndex = row * width;
+            int uIndex;
+            int vIndex;
+            int chromaStep;
+            if (mFormat == FORMAT_I420) {
+                uIndex = ySize + (row / 2) * chromaWidth;
+                vIndex = uIndex + chromaWidth * ((mHeight + 1) / 2);
+                chromaStep = 1;
+            } else {
+                int uvRow = ySize + (row / 2) * chromaWidth * 2;
+                uIndex = mFormat == FORMAT_NV21 ? uvRow + 1 : uvRow;
+                vIndex = mFormat == FORMAT_NV21 ? uvRow : uvRow + 1;
+                chromaStep = 2;
+            }
+
+            // two pixels share the chroma terms
+            for (int col = 0; col < width; col += 2) {
+                int du = 2 * (src[uIndex] & 0xff) - 255;
+                int dv = 2 * (src[vIndex] & 0xff) - 255;
+                uIndex += chromaStep;
+                vIndex += chromaStep;
+                int rv = COEF_RV * dv;
+                int guv = -COEF_GU * du - COEF_GV * dv;
+                int bu = COEF_BU * du;
+
+                dst[offset++] = pixel(((src[yIndex++] & 0xff) << 16) + ROUND, rv, guv, bu);
+                if (col + 1 < width) {
+                    dst[offset++] = pixel(((src[yIndex++] & 0xff) << 16) + ROUND, rv, guv, bu);
+                }
+            }
+        }
+    }
+}
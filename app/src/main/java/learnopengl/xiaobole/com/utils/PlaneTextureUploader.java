@@ -0,0 +1,348 @@
+package learnopengl.xiaobole.com.utils;
+
+import android.opengl.GLES20;
+import android.opengl.GLES30;
+import android.util.Log;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Streams the planes of a video frame into textures.
+ *
+ * Texture storage is allocated once per frame size and every frame is written with
+ * glTexSubImage2D. On GLES3 the data goes through double-buffered pixel unpack buffers:
+ * the textures are updated from the buffer filled by the previous frame before the current
+ * frame is copied into the other one, so the CPU copy overlaps with the GPU transfer at the
+ * cost of one frame of latency. The first frame after an allocation is uploaded right away.
+ *
+ * Planes may have padded rows, as produced by decoders and camera HALs. On GLES3 they are
+ * never repacked row by row: the GPU skips the padding with GL_UNPACK_ROW_LENGTH, both for
+ * client memory and for the unpack buffers, which take the strided plane in one bulk copy,
+ * padding included. GLES2 has no row length, there the rows are packed on the CPU.
+ */
+public class PlaneTextureUploader {
+    private static final String TAG = "PlaneTextureUploader";
+
+    private static final int PBO_COUNT = 2;
+
+    private final GLStateCache mStateCache = GLStateCache.getInstance();
+    private final int mPlaneCount;
+    private final int[] mInternalFormats;
+    private final int[] mFormats;
+    private final int[] mBytesPerPixel;
+    private final int[] mSubsampling;
+
+    private final int[] mPlaneWidths;
+    private final int[] mPlaneHeights;
+
+    private int[] mTextures;
+    private int[] mPBOIds;
+    // per slot and plane, the allocated bytes and the row length of the data, 0 when packed
+    private int[] mPBOSizes;
+    private int[] mPBORowLengths;
+    // the slot the next frame is copied into
+    private int mPBOIndex;
+    // the slot before mPBOIndex holds the previous frame, not uploaded yet
+    private boolean mPBOPending;
+    private boolean mUsePBO;
+    private boolean mGLES3;
+    private ByteBuffer mRepackBuffer;
+
+    private int mFrameWidth;
+    private int mFrameHeight;
+
+    public PlaneTextureUploader(int planeCount) {
+        mPlaneCount = planeCount;
+        mInternalFormats = new int[planeCount];
+        mFormats = new int[planeCount];
+        mBytesPerPixel = new int[planeCount];
+        mSubsampling = new int[planeCount];
+        mPlaneWidths = new int[planeCount];
+        mPlaneHeights = new int[planeCount];
+        for (int i = 0; i < planeCount; i++) {
+            setPlaneFormat(i, GLES20.GL_LUMINANCE, GLES20.GL_LUMINANCE, 1, 1);
+        }
+    }
+
+    /**
+     * set the texture format of a plane
+     *
+     * @param plane the plane index
+     * @param internalFormat the texture internal format
+     * @param format the pixel data format
+     * @param bytesPerPixel the bytes of one pixel in the plane
+     * @param subsampling the plane is 1 / subsampling of the frame size in both directions
+     * @return the PlaneTextureUploader object
+     */
+    public PlaneTextureUploader setPlaneFormat(int plane, int internalFormat, int format,
+                                               int bytesPerPixel, int subsampling) {
+        mInternalFormats[plane] = internalFormat;
+        mFormats[plane] = format;
+        mBytesPerPixel[plane] = bytesPerPixel;
+        mSubsampling[plane] = subsampling;
+        return this;
+    }
+
+    /**
+     * create the textures, must be called on the GL thread
+     *
+     * @param usePBO stream through pixel unpack buffers when GLES3 is available
+     */
+    public void init(boolean usePBO) {
+        mTextures = GLUtils.createTextures(mPlaneCount);
+        for (int i = 0; i < mPlaneCount; i++) {
+            mStateCache.bindTexture(GLES20.GL_TEXTURE_2D, mTextures[i]);
+            mStateCache.texParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MIN_FILTER, GLES20.GL_LINEAR);
+            mStateCache.texParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MAG_FILTER, GLES20.GL_LINEAR);
+            mStateCache.texParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_S, GLES20.GL_CLAMP_TO_EDGE);
+            mStateCache.texParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_T, GLES20.GL_CLAMP_TO_EDGE);
+        }
+        mStateCache.bindTexture(GLES20.GL_TEXTURE_2D, 0);
+
+        mGLES3 = GLUtils.isGLES30Supported();
+        mUsePBO = usePBO && mGLES3;
+        if (mUsePBO) {
+            mPBOIds = GLUtils.createBuffers(PBO_COUNT * mPlaneCount);
+            mPBOSizes = new int[mPBOIds.length];
+            mPBORowLengths = new int[mPBOIds.length];
+        }
+        mFrameWidth = 0;
+        mFrameHeight = 0;
+        Log.i(TAG, "init planes = " + mPlaneCount + ", pbo = " + mUsePBO);
+    }
+
+    public void release() {
+        if (mTextures != null) {
+            mStateCache.deleteTextures(mPlaneCount, mTextures, 0);
+            mTextures = null;
+        }
+        if (mPBOIds != null) {
+            mStateCache.deleteBuffers(mPBOIds.length, mPBOIds, 0);
+            mPBOIds = null;
+            mPBOSizes = null;
+            mPBORowLengths = null;
+        }
+        mRepackBuffer = null;
+    }
+
+    public int getTextureId(int plane) {
+        return mTextures[plane];
+    }
+
+    /**
+     * get the smallest buffer a plane can be read from
+     *
+     * @param plane the plane index
+     * @param width the frame width
+     * @param height the frame height
+     * @param stride the row stride in bytes
+     * @return the bytes needed, the last row does not need the padding
+     */
+    public int getRequiredSize(int plane, int width, int height, int stride) {
+        int planeWidth = (width + mSubsampling[plane] - 1) / mSubsampling[plane];
+        int planeHeight = (height + mSubsampling[plane] - 1) / mSubsampling[plane];
+        return stride * (planeHeight - 1) + planeWidth * mBytesPerPixel[plane];
+    }
+
+    /**
+     * upload one frame of tightly packed planes
+     *
+     * @param planes the tightly packed planes
+     * @param width the frame width
+     * @param height the frame height
+     */
+    public void upload(ByteBuffer[] planes, int width, int height) {
+        upload(planes, null, width, height);
+    }
+
+    /**
+     * upload one frame, each plane buffer is read from its position and left unchanged
+     *
+     * @param planes the planes, the last row may be shorter than the stride
+     * @param strides the row stride of each plane in bytes, null for tightly packed planes
+     * @param width the frame width
+     * @param height the frame height
+     */
+    public void upload(ByteBuffer[] planes, int[] strides, int width, int height) {
+        if (mTextures == null || planes == null || width <= 0 || height <= 0) {
+            return;
+        }
+        if (width != mFrameWidth || height != mFrameHeight) {
+            allocate(width, height);
+        }
+
+        GLES20.glPixelStorei(GLES20.GL_UNPACK_ALIGNMENT, 1);
+        if (mUsePBO) {
+            uploadWithPBO(planes, strides);
+        } else {
+            for (int i = 0; i < mPlaneCount; i++) {
+                int stride = strides == null ? getRowSize(i) : strides[i];
+                mStateCache.bindTexture(GLES20.GL_TEXTURE_2D, mTextures[i]);
+                uploadPlane(i, planes[i], stride);
+            }
+        }
+        mStateCache.bindTexture(GLES20.GL_TEXTURE_2D, 0);
+    }
+
+    /**
+     * bind the plane textures to consecutive texture units
+     *
+     * @param firstUnit the texture unit of plane 0, e.g. GLES20.GL_TEXTURE0
+     */
+    public void bind(int firstUnit) {
+        for (int i = 0; i < mPlaneCount; i++) {
+            mStateCache.activeTexture(firstUnit + i);
+            mStateCache.bindTexture(GLES20.GL_TEXTURE_2D, mTextures[i]);
+        }
+    }
+
+    private void allocate(int width, int height) {
+        Log.i(TAG, "allocate texture storage " + width + "x" + height);
+        for (int i = 0; i < mPlaneCount; i++) {
+            mPlaneWidths[i] = (width + mSubsampling[i] - 1) / mSubsampling[i];
+            mPlaneHeights[i] = (height + mSubsampling[i] - 1) / mSubsampling[i];
+            mStateCache.bindTexture(GLES20.GL_TEXTURE_2D, mTextures[i]);
+            GLES20.glTexImage2D(GLES20.GL_TEXTURE_2D, 0, mInternalFormats[i], mPlaneWidths[i], mPlaneHeights[i],
+                    0, mFormats[i], GLES20.GL_UNSIGNED_BYTE, null);
+        }
+        if (mUsePBO) {
+            for (int slot = 0; slot < PBO_COUNT; slot++) {
+                for (int i = 0; i < mPlaneCount; i++) {
+                    int index = slot * mPlaneCount + i;
+                    mStateCache.bindBuffer(GLES30.GL_PIXEL_UNPACK_BUFFER, mPBOIds[index]);
+                    GLES20.glBufferData(GLES30.GL_PIXEL_UNPACK_BUFFER, getPlaneSize(i), null, GLES20.GL_STREAM_DRAW);
+                    mPBOSizes[index] = getPlaneSize(i);
+                }
+            }
+            mStateCache.bindBuffer(GLES30.GL_PIXEL_UNPACK_BUFFER, 0);
+            mPBOIndex = 0;
+            mPBOPending = false;
+        }
+        mFrameWidth = width;
+        mFrameHeight = height;
+    }
+
+    private void uploadWithPBO(ByteBuffer[] planes, int[] strides) {
+        int slot = mPBOIndex;
+        mPBOIndex = (mPBOIndex + 1) % PBO_COUNT;
+        // start the transfer of the previous frame first, it runs while this one is copied
+        if (mPBOPending) {
+            updateFromPBO((slot + PBO_COUNT - 1) % PBO_COUNT);
+        }
+        boolean filled = fillPBO(slot, planes, strides);
+        if (!mPBOPending && filled) {
+            // nothing to show yet, don't wait a frame for the first one
+            updateFromPBO(slot);
+        } else {
+            mPBOPending = filled;
+        }
+        mStateCache.bindBuffer(GLES30.GL_PIXEL_UNPACK_BUFFER, 0);
+    }
+
+    /**
+     * copy a frame into the buffers of a slot
+     *
+     * @return false if a buffer could not be mapped
+     */
+    private boolean fillPBO(int slot, ByteBuffer[] planes, int[] strides) {
+        for (int i = 0; i < mPlaneCount; i++) {
+            int index = slot * mPlaneCount + i;
+            int rowSize = getRowSize(i);
+            int stride = strides == null ? rowSize : strides[i];
+            // a padded plane is copied as is, the GPU skips the padding
+            boolean strided = stride != rowSize && stride % mBytesPerPixel[i] == 0;
+            int size = strided ? stride * (mPlaneHeights[i] - 1) + rowSize : getPlaneSize(i);
+            mStateCache.bindBuffer(GLES30.GL_PIXEL_UNPACK_BUFFER, mPBOIds[index]);
+            if (mPBOSizes[index] < size) {
+                GLES20.glBufferData(GLES30.GL_PIXEL_UNPACK_BUFFER, size, null, GLES20.GL_STREAM_DRAW);
+                mPBOSizes[index] = size;
+            }
+            ByteBuffer mapped = (ByteBuffer) GLES30.glMapBufferRange(GLES30.GL_PIXEL_UNPACK_BUFFER, 0, size,
+                    GLES30.GL_MAP_WRITE_BIT | GLES30.GL_MAP_INVALIDATE_BUFFER_BIT);
+            if (mapped == null) {
+                return false;
+            }
+            if (strided) {
+                copyRows(planes[i], size, size, 1, mapped);
+                mPBORowLengths[index] = stride / mBytesPerPixel[i];
+            } else {
+                // an odd stride can't be a row length, pack the rows
+                copyRows(planes[i], stride, rowSize, mPlaneHeights[i], mapped);
+                mPBORowLengths[index] = 0;
+            }
+            GLES30.glUnmapBuffer(GLES30.GL_PIXEL_UNPACK_BUFFER);
+        }
+        return true;
+    }
+
+    private void updateFromPBO(int slot) {
+        for (int i = 0; i < mPlaneCount; i++) {
+            int index = slot * mPlaneCount + i;
+            mStateCache.bindBuffer(GLES30.GL_PIXEL_UNPACK_BUFFER, mPBOIds[index]);
+            if (mPBORowLengths[index] != 0) {
+                GLES20.glPixelStorei(GLES30.GL_UNPACK_ROW_LENGTH, mPBORowLengths[index]);
+            }
+            // with a pixel unpack buffer bound, the null pixels pointer means offset 0 in the buffer
+            mStateCache.bindTexture(GLES20.GL_TEXTURE_2D, mTextures[i]);
+            GLES20.glTexSubImage2D(GLES20.GL_TEXTURE_2D, 0, 0, 0, mPlaneWidths[i], mPlaneHeights[i],
+                    mFormats[i], GLES20.GL_UNSIGNED_BYTE, null);
+            if (mPBORowLengths[index] != 0) {
+                GLES20.glPixelStorei(GLES30.GL_UNPACK_ROW_LENGTH, 0);
+            }
+        }
+    }
+
+    /**
+     * upload a plane straight from the client buffer, padded rows are read in place with
+     * GL_UNPACK_ROW_LENGTH on GLES3 and packed into a scratch buffer on GLES2
+     */
+    private void uploadPlane(int plane, ByteBuffer data, int stride) {
+        int rowSize = getRowSize(plane);
+        ByteBuffer pixels = data;
+        boolean rowLength = false;
+        if (stride != rowSize) {
+            if (mGLES3 && stride % mBytesPerPixel[plane] == 0) {
+                GLES20.glPixelStorei(GLES30.GL_UNPACK_ROW_LENGTH, stride / mBytesPerPixel[plane]);
+                rowLength = true;
+            } else {
+                int size = getPlaneSize(plane);
+                if (mRepackBuffer == null || mRepackBuffer.capacity() < size) {
+                    mRepackBuffer = ByteBuffer.allocateDirect(size);
+                }
+                mRepackBuffer.clear();
+                copyRows(data, stride, rowSize, mPlaneHeights[plane], mRepackBuffer);
+                mRepackBuffer.flip();
+                pixels = mRepackBuffer;
+            }
+        }
+        GLES20.glTexSubImage2D(GLES20.GL_TEXTURE_2D, 0, 0, 0, mPlaneWidths[plane], mPlaneHeights[plane],
+                mFormats[plane], GLES20.GL_UNSIGNED_BYTE, pixels);
+        if (rowLength) {
+            GLES20.glPixelStorei(GLES30.GL_UNPACK_ROW_LENGTH, 0);
+        }
+    }
+
+    private static void copyRows(ByteBuffer src, int stride, int rowSize, int rows, ByteBuffer dst) {
+        int position = src.position();
+        int limit = src.limit();
+        if (stride == rowSize) {
+            src.limit(Math.min(limit, position + rowSize * rows));
+            dst.put(src);
+        } else {
+            for (int row = 0; row < rows; row++) {
+                int start = position + row * stride;
+                src.limit(start + rowSize).position(start);
+                dst.put(src);
+            }
+        }
+        src.limit(limit).position(position);
+    }
+
+    private int getRowSize(int plane) {
+        return mPlaneWidths[plane] * mBytesPerPixel[plane];
+    }
+
+    private int getPlaneSize(int plane) {
+        return mPlaneWidths[plane] * mPlaneHeights[plane] * mBytesPerPixel[plane];
+    }
+}
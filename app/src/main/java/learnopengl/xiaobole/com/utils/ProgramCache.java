@@ -0,0 +1,350 @@
+package learnopengl.xiaobole.com.utils;
+
+import android.opengl.GLES20;
+import android.opengl.GLES30;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Process wide cache of linked shader programs.
+ *
+ * Programs are keyed by a hash of their shader sources and shared between drawers
+ * with a reference count. On GLES3 the linked binary is also saved to the cache dir,
+ * so the next launch can skip compiling; binaries from another driver are discarded.
+ * Program ids are reused by a new context, so a program is released together with the
+ * {@link #getGeneration() context generation} it was acquired in; releases of a previous
+ * context are ignored. Must be used on the GL thread.
+ */
+public class ProgramCache {
+    private static final String TAG = "ProgramCache";
+
+    private static final int BINARY_MAGIC = 0x50524f47; // "PROG"
+    private static final String BINARY_SUFFIX = ".bin";
+
+    private final Map<String, Entry> mEntries = new HashMap<>();
+    private final Map<Integer, Entry> mEntriesById = new HashMap<>();
+
+    private File mCacheDir;
+    private String mDriverVersion;
+    private Boolean mBinarySupported;
+    private int mGeneration;
+
+    private int mHitCount;
+    private int mMissCount;
+    private int mBinaryHitCount;
+    private long mCompileTimeNanos;
+
+    private static class Entry {
+        String key;
+        int programId;
+        int refCount;
+        int generation;
+    }
+
+    private ProgramCache() {
+    }
+
+    private static class ProgramCacheHolder {
+        private static final ProgramCache mInstance = new ProgramCache();
+    }
+
+    public static ProgramCache getInstance() {
+        return ProgramCacheHolder.mInstance;
+    }
+
+    /**
+     * set the directory for program binaries, binaries are not persisted without it
+     *
+     * @param dir the cache dir
+     */
+    public void setCacheDir(File dir) {
+        mCacheDir = dir;
+    }
+
+    /**
+     * get a linked program for the given sources
+     *
+     * @param vertexShader the vertex shader source
+     * @param fragmentShader the fragment shader source
+     * @return the program id, 0 if failed, call {@link #release(int, int)} when done
+     */
+    public int acquire(String vertexShader, String fragmentShader) {
+        String key = hash(vertexShader, fragmentShader);
+        Entry entry = mEntries.get(key);
+        if (entry != null) {
+            mHitCount++;
+            entry.refCount++;
+            return entry.programId;
+        }
+
+        mMissCount++;
+        long start = SystemClock.elapsedRealtimeNanos();
+        int programId = loadBinary(key);
+        if (programId != 0) {
+            mBinaryHitCount++;
+        } else {
+            programId = compile(key, vertexShader, fragmentShader);
+        }
+        long cost = SystemClock.elapsedRealtimeNanos() - start;
+        mCompileTimeNanos += cost;
+        Log.i(TAG, "program " + programId + " ready in " + cost / 1000 + "us, " + getStats());
+
+        if (programId == 0) {
+            return 0;
+        }
+        entry = new Entry();
+        entry.key = key;
+        entry.programId = programId;
+        entry.refCount = 1;
+        entry.generation = mGeneration;
+        mEntries.put(key, entry);
+        mEntriesById.put(programId, entry);
+        return programId;
+    }
+
+    /**
+     * @return the generation of the current context, keep it with the program ids acquired
+     */
+    public int getGeneration() {
+        return mGeneration;
+    }
+
+    /**
+     * @param programId the program id returned by {@link #acquire(String, String)}
+     * @param generation the {@link #getGeneration()} when it was acquired
+     */
+    public void release(int programId, int generation) {
+        if (generation != mGeneration) {
+            // died with its context, the id may now name another program
+            return;
+        }
+        Entry entry = mEntriesById.get(programId);
+        if (entry == null || entry.generation != generation || --entry.refCount > 0) {
+            return;
+        }
+        mEntries.remove(entry.key);
+        mEntriesById.remove(programId);
+        GLStateCache.getInstance().deleteProgram(programId);
+    }
+
+    /**
+     * Forget all programs, they died with the previous context.
+     * Call from GLSurfaceView.Renderer#onSurfaceCreated.
+     */
+    public void onContextCreated() {
+        mEntries.clear();
+        mEntriesById.clear();
+        mDriverVersion = null;
+        mBinarySupported = null;
+        mGeneration++;
+    }
+
+    public int getHitCount() {
+        return mHitCount;
+    }
+
+    public int getMissCount() {
+        return mMissCount;
+    }
+
+    public int getBinaryHitCount() {
+        return mBinaryHitCount;
+    }
+
+    public long getCompileTimeNanos() {
+        return mCompileTimeNanos;
+    }
+
+    public String getStats() {
+        return "hits = " + mHitCount + ", misses = " + mMissCount + ", binary hits = " + mBinaryHitCount
+                + ", compile time = " + mCompileTimeNanos / 1000 + "us";
+    }
+
+    private int compile(String key, String vertexShader, String fragmentShader) {
+        int vertexShaderId = GLUtils.compileVertexShader(vertexShader);
+        int fragmentShaderId = GLUtils.compileFragmentShader(fragmentShader);
+        if (vertexShaderId == 0 || fragmentShaderId == 0) {
+            GLES20.glDeleteShader(vertexShaderId);
+            GLES20.glDeleteShader(fragmentShaderId);
+            return 0;
+        }
+
+        int programId = GLES20.glCreateProgram();
+        if (programId == 0) {
+            Log.i(TAG, "Could not create new program !");
+            return 0;
+        }
+        GLES20.glAttachShader(programId, vertexShaderId);
+        GLES20.glAttachShader(programId, fragmentShaderId);
+        if (isBinarySupported()) {
+            GLES30.glProgramParameteri(programId, GLES30.GL_PROGRAM_BINARY_RETRIEVABLE_HINT, GLES20.GL_TRUE);
+        }
+        GLES20.glLinkProgram(programId);
+        // the shaders are only flagged for deletion while attached
+        GLES20.glDeleteShader(vertexShaderId);
+        GLES20.glDeleteShader(fragmentShaderId);
+
+        if (!isLinked(programId)) {
+            Log.i(TAG, "Linking of program failed: " + GLES20.glGetProgramInfoLog(programId));
+            GLES20.glDeleteProgram(programId);
+            return 0;
+        }
+        saveBinary(key, programId);
+        return programId;
+    }
+
+    private int loadBinary(String key) {
+        File file = getBinaryFile(key);
+        if (file == null || !file.exists()) {
+            return 0;
+        }
+
+        ByteBuffer binary;
+        int format;
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new FileInputStream(file));
+            if (in.readInt() != BINARY_MAGIC || !getDriverVersion().equals(in.readUTF())) {
+                Log.i(TAG, "discard binary of another driver: " + file.getName());
+                in.close();
+                in = null;
+                file.delete();
+                return 0;
+            }
+            format = in.readInt();
+            byte[] data = new byte[in.readInt()];
+            in.readFully(data);
+            binary = ByteBuffer.allocateDirect(data.length).order(ByteOrder.nativeOrder());
+            binary.put(data).position(0);
+        } catch (IOException e) {
+            Log.w(TAG, "failed to read program binary: " + e.getMessage());
+            file.delete();
+            return 0;
+        } finally {
+            closeQuietly(in);
+        }
+
+        int programId = GLES20.glCreateProgram();
+        GLES30.glProgramBinary(programId, format, binary, binary.capacity());
+        if (!isLinked(programId)) {
+            // the driver may reject binaries after an update even if the version string is the same
+            GLES20.glDeleteProgram(programId);
+            file.delete();
+            return 0;
+        }
+        return programId;
+    }
+
+    private void saveBinary(String key, int programId) {
+        File file = getBinaryFile(key);
+        if (file == null) {
+            return;
+        }
+
+        int[] length = new int[1];
+        GLES20.glGetProgramiv(programId, GLES30.GL_PROGRAM_BINARY_LENGTH, length, 0);
+        if (length[0] <= 0) {
+            return;
+        }
+        int[] format = new int[1];
+        ByteBuffer binary = ByteBuffer.allocateDirect(length[0]).order(ByteOrder.nativeOrder());
+        GLES30.glGetProgramBinary(programId, length[0], length, 0, format, 0, binary);
+        byte[] data = new byte[length[0]];
+        binary.get(data);
+
+        DataOutputStream out = null;
+        try {
+            File dir = file.getParentFile();
+            if (!dir.exists() && !dir.mkdirs()) {
+                return;
+            }
+            out = new DataOutputStream(new FileOutputStream(file));
+            out.writeInt(BINARY_MAGIC);
+            out.writeUTF(getDriverVersion());
+            out.writeInt(format[0]);
+            out.writeInt(data.length);
+            out.write(data);
+        } catch (IOException e) {
+            Log.w(TAG, "failed to write program binary: " + e.getMessage());
+            file.delete();
+        } finally {
+            closeQuietly(out);
+        }
+    }
+
+    private File getBinaryFile(String key) {
+        if (mCacheDir == null || !isBinarySupported()) {
+            return null;
+        }
+        return new File(mCacheDir, key + BINARY_SUFFIX);
+    }
+
+    private boolean isBinarySupported() {
+        if (mBinarySupported == null) {
+            boolean supported = false;
+            if (GLUtils.isGLES30Supported()) {
+                int[] formats = new int[1];
+                GLES20.glGetIntegerv(GLES30.GL_NUM_PROGRAM_BINARY_FORMATS, formats, 0);
+                supported = formats[0] > 0;
+            }
+            mBinarySupported = supported;
+        }
+        return mBinarySupported;
+    }
+
+    private String getDriverVersion() {
+        if (mDriverVersion == null) {
+            mDriverVersion = GLES20.glGetString(GLES20.GL_VENDOR) + "|"
+                    + GLES20.glGetString(GLES20.GL_RENDERER) + "|"
+                    + GLES20.glGetString(GLES20.GL_VERSION);
+        }
+        return mDriverVersion;
+    }
+
+    private static boolean isLinked(int programId) {
+        final int[] linkStatus = new int[1];
+        GLES20.glGetProgramiv(programId, GLES20.GL_LINK_STATUS, linkStatus, 0);
+        return linkStatus[0] != 0;
+    }
+
+    private static String hash(String vertexShader, String fragmentShader) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            digest.update(vertexShader.getBytes());
+            digest.update((byte) 0);
+            digest.update(fragmentShader.getBytes());
+            StringBuilder sb = new StringBuilder();
+            for (byte b : digest.digest()) {
+                sb.append(String.format("%02x", b));
+            }
+            return sb.toString();
+        } catch (NoSuchAlgorithmException e) {
+            return Integer.toHexString(vertexShader.hashCode()) + Integer.toHexString(fragmentShader.hashCode());
+        }
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable == null) {
+            return;
+        }
+        try {
+            closeable.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,396 @@
+package learnopengl.xiaobole.com.utils;
+
+import android.graphics.Bitmap;
+import android.opengl.GLES20;
+import android.opengl.Matrix;
+import android.util.Log;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Packs small bitmaps into shared RGBA pages, so drawing many of them binds few textures.
+ *
+ * Each page is a square texture laid out by a {@link MaxRectsPacker}; a bitmap goes to the
+ * first page with room, a new page is created when none has. The returned {@link Region}
+ * gives the page texture and the texture matrix mapping the 0 ~ 1 texture coordinates of a
+ * quad onto the bitmap, as taken by the uTexMatrix uniform of the drawers. Regions are
+ * padded with transparent pixels so linear filtering does not bleed between neighbours;
+ * the space of a removed region is cleared, so the padding of a later one is transparent too.
+ *
+ * {@link #defragment()} repacks the regions of all pages together on the GPU, merging pages
+ * emptied by removals; regions are updated in place, so read their texture and matrix when
+ * drawing instead of keeping them.
+ * Must be used on the GL thread.
+ */
+public class TextureAtlas {
+    private static final String TAG = "TextureAtlas";
+
+    public static final int DEFAULT_PAGE_SIZE = 1024;
+
+    private final int mPageSize;
+    private int mPadding = 1;
+    private final List<Page> mPages = new ArrayList<>();
+    private final int[] mPosition = new int[2];
+    // never written, uploaded to clear the space of removed regions
+    private ByteBuffer mZeros;
+
+    public static class Region {
+        private Page mPage;
+        private int mX;
+        private int mY;
+        private final int mWidth;
+        private final int mHeight;
+        private final float[] mTexMatrix = new float[16];
+
+        private Region(int width, int height) {
+            mWidth = width;
+            mHeight = height;
+        }
+
+        /**
+         * @return false once removed or lost with the context
+         */
+        public boolean isValid() {
+            return mPage != null && mPage.mTexId != 0;
+        }
+
+        public int getTexId() {
+            return mPage == null ? 0 : mPage.mTexId;
+        }
+
+        /**
+         * @return the texture matrix from quad to page texture coordinates, do not modify
+         */
+        public float[] getTexMatrix() {
+            return mTexMatrix;
+        }
+
+        public float getU0() {
+            return mTexMatrix[12];
+        }
+
+        public float getV0() {
+            return mTexMatrix[13];
+        }
+
+        public float getU1() {
+            return mTexMatrix[12] + mTexMatrix[0];
+        }
+
+        public float getV1() {
+            return mTexMatrix[13] + mTexMatrix[5];
+        }
+
+        public int getWidth() {
+            return mWidth;
+        }
+
+        public int getHeight() {
+            return mHeight;
+        }
+
+        private void moveTo(Page page, int x, int y) {
+            mPage = page;
+            mX = x;
+            mY = y;
+            float size = page.mPacker.getWidth();
+            Matrix.setIdentityM(mTexMatrix, 0);
+            mTexMatrix[0] = mWidth / size;
+            mTexMatrix[5] = mHeight / size;
+            mTexMatrix[12] = x / size;
+            mTexMatrix[13] = y / size;
+        }
+    }
+
+    private static class Page {
+        private int mTexId;
+        private MaxRectsPacker mPacker;
+        private final List<Region> mRegions = new ArrayList<>();
+    }
+
+    public TextureAtlas() {
+        this(DEFAULT_PAGE_SIZE);
+    }
+
+    /**
+     * @param pageSize the width and height of each page texture
+     */
+    public TextureAtlas(int pageSize) {
+        mPageSize = pageSize;
+    }
+
+    /**
+     * set the transparent border around each region, call before adding any
+     *
+     * @return the TextureAtlas object
+     */
+    public TextureAtlas setPadding(int padding) {
+        mPadding = padding;
+        return this;
+    }
+
+    /**
+     * upload a bitmap into the atlas
+     *
+     * @param bitmap the bitmap, not referenced afterwards
+     * @return the region, null if the bitmap does not fit in a page
+     */
+    public Region add(Bitmap bitmap) {
+        int width = bitmap.getWidth();
+        int height = bitmap.getHeight();
+        int paddedWidth = width + 2 * mPadding;
+        int paddedHeight = height + 2 * mPadding;
+        if (paddedWidth > mPageSize || paddedHeight > mPageSize) {
+            Log.w(TAG, "bitmap " + width + "x" + height + " is larger than a page");
+            return null;
+        }
+
+        Page page = null;
+        for (Page candidate : mPages) {
+            if (candidate.mPacker.insert(paddedWidth, paddedHeight, mPosition)) {
+                page = candidate;
+                break;
+            }
+        }
+        if (page == null) {
+            page = createPage();
+            if (!page.mPacker.insert(paddedWidth, paddedHeight, mPosition)) {
+                return null;
+            }
+        }
+
+        Region region = new Region(width, height);
+        region.moveTo(page, mPosition[0] + mPadding, mPosition[1] + mPadding);
+        page.mRegions.add(region);
+
+        // the page is RGBA, texSubImage2D needs the same format
+        Bitmap upload = bitmap.getConfig() == Bitmap.Config.ARGB_8888
+                ? bitmap : bitmap.copy(Bitmap.Config.ARGB_8888, false);
+        GLStateCache.getInstance().bindTexture(GLES20.GL_TEXTURE_2D, page.mTexId);
+        android.opengl.GLUtils.texSubImage2D(GLES20.GL_TEXTURE_2D, 0, region.mX, region.mY, upload);
+        if (upload != bitmap) {
+            upload.recycle();
+        }
+        return region;
+    }
+
+    /**
+     * give the space of a region back and clear it, deletes its page when it is the last region
+     */
+    public void remove(Region region) {
+        Page page = region.mPage;
+        if (page == null || !page.mRegions.remove(region)) {
+            return;
+        }
+        int x = region.mX - mPadding;
+        int y = region.mY - mPadding;
+        int width = region.mWidth + 2 * mPadding;
+        int height = region.mHeight + 2 * mPadding;
+        page.mPacker.free(x, y, width, height);
+        region.mPage = null;
+        if (page.mRegions.isEmpty()) {
+            GLStateCache.getInstance().deleteTextures(1, new int[]{page.mTexId}, 0);
+            page.mTexId = 0;
+            mPages.remove(page);
+        } else {
+            // add() uploads only the bitmap, its padding must not keep the old pixels
+            clear(page, x, y, width, height);
+        }
+    }
+
+    /**
+     * Repack the regions of all pages from scratch, largest first, into as few pages as they
+     * fit, and copy the pixels to new page textures on the GPU. The old layout is kept when
+     * the repacked one would need more pages. The old and new pages exist together during
+     * the copy. Call between frames, the default framebuffer is bound afterwards.
+     */
+    public void defragment() {
+        List<Region> regions = new ArrayList<>();
+        for (Page page : mPages) {
+            regions.addAll(page.mRegions);
+        }
+        Collections.sort(regions, LARGEST_FIRST);
+
+        // lay out first, nothing is touched if the regions do not fit in the pages there are
+        List<MaxRectsPacker> packers = new ArrayList<>();
+        int[] pageIndices = new int[regions.size()];
+        int[] positions = new int[regions.size() * 2];
+        for (int i = 0; i < regions.size(); i++) {
+            Region region = regions.get(i);
+            int paddedWidth = region.mWidth + 2 * mPadding;
+            int paddedHeight = region.mHeight + 2 * mPadding;
+            int index = 0;
+            while (index < packers.size() && !packers.get(index).insert(paddedWidth, paddedHeight, mPosition)) {
+                index++;
+            }
+            if (index == packers.size()) {
+                if (packers.size() == mPages.size()) {
+                    // the greedy order does not always do better
+                    Log.i(TAG, "defragment kept the layout, " + getStats());
+                    return;
+                }
+                MaxRectsPacker packer = new MaxRectsPacker(mPageSize, mPageSize);
+                // fits, the region fitted a page before
+                packer.insert(paddedWidth, paddedHeight, mPosition);
+                packers.add(packer);
+            }
+            pageIndices[i] = index;
+            positions[2 * i] = mPosition[0] + mPadding;
+            positions[2 * i + 1] = mPosition[1] + mPadding;
+        }
+
+        List<Page> pages = new ArrayList<>(packers.size());
+        for (MaxRectsPacker packer : packers) {
+            Page page = new Page();
+            page.mTexId = createPageTexture();
+            page.mPacker = packer;
+            pages.add(page);
+        }
+
+        GLStateCache stateCache = GLStateCache.getInstance();
+        int[] frameBuffers = new int[1];
+        GLES20.glGenFramebuffers(1, frameBuffers, 0);
+        stateCache.bindFramebuffer(frameBuffers[0]);
+        // each old page is attached once and read into the new pages its regions went to
+        for (Page source : mPages) {
+            GLES20.glFramebufferTexture2D(GLES20.GL_FRAMEBUFFER, GLES20.GL_COLOR_ATTACHMENT0,
+                    GLES20.GL_TEXTURE_2D, source.mTexId, 0);
+            for (int i = 0; i < regions.size(); i++) {
+                Region region = regions.get(i);
+                if (region.mPage != source) {
+                    continue;
+                }
+                stateCache.bindTexture(GLES20.GL_TEXTURE_2D, pages.get(pageIndices[i]).mTexId);
+                GLES20.glCopyTexSubImage2D(GLES20.GL_TEXTURE_2D, 0, positions[2 * i], positions[2 * i + 1],
+                        region.mX, region.mY, region.mWidth, region.mHeight);
+            }
+        }
+        stateCache.bindFramebuffer(0);
+        stateCache.deleteFramebuffers(1, frameBuffers, 0);
+
+        for (int i = 0; i < regions.size(); i++) {
+            Page page = pages.get(pageIndices[i]);
+            regions.get(i).moveTo(page, positions[2 * i], positions[2 * i + 1]);
+            page.mRegions.add(regions.get(i));
+        }
+        for (Page page : mPages) {
+            stateCache.deleteTextures(1, new int[]{page.mTexId}, 0);
+            page.mTexId = 0;
+            page.mRegions.clear();
+        }
+        int merged = mPages.size() - pages.size();
+        mPages.clear();
+        mPages.addAll(pages);
+        Log.i(TAG, "defragment moved " + regions.size() + " regions, merged " + merged + " pages, " + getStats());
+    }
+
+    /**
+     * delete all pages, their regions become invalid
+     */
+    public void release() {
+        for (Page page : mPages) {
+            if (page.mTexId != 0) {
+                GLStateCache.getInstance().deleteTextures(1, new int[]{page.mTexId}, 0);
+            }
+            invalidate(page);
+        }
+        mPages.clear();
+    }
+
+    /**
+     * Forget all pages, they died with the previous context.
+     * Call from GLSurfaceView.Renderer#onSurfaceCreated.
+     */
+    public void onContextCreated() {
+        for (Page page : mPages) {
+            invalidate(page);
+        }
+        mPages.clear();
+    }
+
+    public int getPageCount() {
+        return mPages.size();
+    }
+
+    /**
+     * @return the area used by regions over the area of all pages, 0 ~ 1
+     */
+    public float getOccupancy() {
+        if (mPages.isEmpty()) {
+            return 0;
+        }
+        long used = 0;
+        for (Page page : mPages) {
+            used += page.mPacker.getUsedArea();
+        }
+        return (float) used / ((long) mPageSize * mPageSize * mPages.size());
+    }
+
+    public String getStats() {
+        int regions = 0;
+        for (Page page : mPages) {
+            regions += page.mRegions.size();
+        }
+        return "pages = " + mPages.size() + ", regions = " + regions
+                + ", occupancy = " + (int) (getOccupancy() * 100) + "%";
+    }
+
+    private static void invalidate(Page page) {
+        page.mTexId = 0;
+        for (Region region : page.mRegions) {
+            region.mPage = null;
+        }
+        page.mRegions.clear();
+    }
+
+    private Page createPage() {
+        Page page = new Page();
+        page.mTexId = createPageTexture();
+        page.mPacker = new MaxRectsPacker(mPageSize, mPageSize);
+        mPages.add(page);
+        Log.i(TAG, "create page " + mPageSize + "x" + mPageSize + ", total = " + mPages.size());
+        return page;
+    }
+
+    private void clear(Page page, int x, int y, int width, int height) {
+        int size = width * height * 4;
+        if (mZeros == null || mZeros.capacity() < size) {
+            mZeros = ByteBuffer.allocateDirect(size);
+        }
+        mZeros.position(0);
+        GLStateCache.getInstance().bindTexture(GLES20.GL_TEXTURE_2D, page.mTexId);
+        GLES20.glTexSubImage2D(GLES20.GL_TEXTURE_2D, 0, x, y, width, height,
+                GLES20.GL_RGBA, GLES20.GL_UNSIGNED_BYTE, mZeros);
+    }
+
+    private int createPageTexture() {
+        int texId = GLUtils.createTexture();
+        GLStateCache stateCache = GLStateCache.getInstance();
+        stateCache.bindTexture(GLES20.GL_TEXTURE_2D, texId);
+        stateCache.texParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MIN_FILTER, GLES20.GL_LINEAR);
+        stateCache.texParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MAG_FILTER, GLES20.GL_LINEAR);
+        stateCache.texParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_S, GLES20.GL_CLAMP_TO_EDGE);
+        stateCache.texParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_T, GLES20.GL_CLAMP_TO_EDGE);
+        // zeroed, so the padding around the regions is transparent
+        ByteBuffer pixels = ByteBuffer.allocateDirect(mPageSize * mPageSize * 4);
+        GLES20.glTexImage2D(GLES20.GL_TEXTURE_2D, 0, GLES20.GL_RGBA, mPageSize, mPageSize, 0,
+                GLES20.GL_RGBA, GLES20.GL_UNSIGNED_BYTE, pixels);
+        return texId;
+    }
+
+    private static final Comparator<Region> LARGEST_FIRST = new Comparator<Region>() {
+        @Override
+        public int compare(Region a, Region b) {
+            int maxA = Math.max(a.mWidth, a.mHeight);
+            int maxB = Math.max(b.mWidth, b.mHeight);
+            if (maxA != maxB) {
+                return maxB - maxA;
+            }
+            return b.mWidth * b.mHeight - a.mWidth * a.mHeight;
+        }
+    };
+}
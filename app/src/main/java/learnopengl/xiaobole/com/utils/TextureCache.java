@@ -0,0 +1,234 @@
+package learnopengl.xiaobole.com.utils;
+
+import android.graphics.Bitmap;
+import android.util.Log;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Keeps bitmaps uploaded as GL_TEXTURE_2D textures, so a static image is uploaded once
+ * instead of every frame.
+ *
+ * Textures are keyed by content: a Bitmap by its identity, re-uploaded when its generation
+ * id changes because its pixels were modified, or by a key chosen by the caller, e.g. a
+ * file path. A key keeps one texture, the texture of an older generation is deleted when
+ * the new one is uploaded. The approximate GPU size of each texture is tracked and the
+ * least recently used textures are deleted when the total exceeds the budget. Look the
+ * texture up every frame instead of holding its id, it may be evicted in between. Must be
+ * used on the GL thread.
+ */
+public class TextureCache {
+    private static final String TAG = "TextureCache";
+
+    public static final long DEFAULT_MAX_BYTES = 32 * 1024 * 1024;
+
+    /**
+     * uploads and deletes the textures, replaced in unit tests
+     */
+    interface TextureLoader {
+        /**
+         * @return the approximate GPU bytes of the texture of a bitmap
+         */
+        int getByteCount(Bitmap bitmap);
+
+        /**
+         * @return the texture id, 0 if the bitmap is recycled
+         */
+        int upload(Bitmap bitmap);
+
+        void delete(int texId);
+    }
+
+    private static final TextureLoader GL_LOADER = new TextureLoader() {
+        @Override
+        public int getByteCount(Bitmap bitmap) {
+            // texImage2D keeps the bitmap's pixel format, no mipmaps
+            return bitmap.getRowBytes() * bitmap.getHeight();
+        }
+
+        @Override
+        public int upload(Bitmap bitmap) {
+            if (bitmap.isRecycled()) {
+                Log.e(TAG, "bitmap is recycled !");
+                return 0;
+            }
+            return GLUtils.drawBitmap(GLUtils.createTexture(), bitmap);
+        }
+
+        @Override
+        public void delete(int texId) {
+            GLStateCache.getInstance().deleteTextures(1, new int[]{texId}, 0);
+        }
+    };
+
+    private final TextureLoader mLoader;
+    // access order, the eldest is the least recently used
+    private final LinkedHashMap<Object, Entry> mEntries = new LinkedHashMap<>(16, 0.75f, true);
+    private long mMaxBytes = DEFAULT_MAX_BYTES;
+    private long mSizeBytes;
+
+    private long mHitCount;
+    private long mMissCount;
+    private long mEvictionCount;
+
+    private TextureCache() {
+        this(GL_LOADER);
+    }
+
+    TextureCache(TextureLoader loader) {
+        mLoader = loader;
+    }
+
+    private static class TextureCacheHolder {
+        private static final TextureCache mInstance = new TextureCache();
+    }
+
+    public static TextureCache getInstance() {
+        return TextureCacheHolder.mInstance;
+    }
+
+    private static class Entry {
+        int texId;
+        int bytes;
+        int generation;
+    }
+
+    /**
+     * set the memory budget, evicts right away if it is exceeded
+     *
+     * @param maxBytes the approximate GPU bytes of all cached textures
+     * @return the TextureCache object
+     */
+    public TextureCache setMaxBytes(long maxBytes) {
+        mMaxBytes = maxBytes;
+        trimToSize(maxBytes);
+        return this;
+    }
+
+    /**
+     * get the texture of a bitmap, uploading it if not cached or modified since
+     *
+     * @param bitmap the bitmap, kept referenced while cached
+     * @return the texture id, 0 if the bitmap is recycled
+     */
+    public int getTexture(Bitmap bitmap) {
+        return getTexture(bitmap, bitmap.getGenerationId(), bitmap);
+    }
+
+    /**
+     * get the texture cached for a key, uploading the bitmap on a miss
+     *
+     * @param key the content identity, e.g. a file path or resource id
+     * @param bitmap the content of the key
+     * @return the texture id, 0 if the bitmap is recycled
+     */
+    public int getTexture(Object key, Bitmap bitmap) {
+        return getTexture(key, 0, bitmap);
+    }
+
+    /**
+     * delete the texture of a bitmap or a key, e.g. before recycling the bitmap
+     */
+    public void remove(Object key) {
+        Entry entry = mEntries.remove(key);
+        if (entry != null) {
+            delete(entry);
+        }
+    }
+
+    /**
+     * delete all textures
+     */
+    public void clear() {
+        for (Entry entry : mEntries.values()) {
+            delete(entry);
+        }
+        mEntries.clear();
+    }
+
+    /**
+     * Forget all textures, they died with the previous context.
+     * Call from GLSurfaceView.Renderer#onSurfaceCreated.
+     */
+    public void onContextCreated() {
+        mEntries.clear();
+        mSizeBytes = 0;
+    }
+
+    public long getSizeBytes() {
+        return mSizeBytes;
+    }
+
+    public int getCount() {
+        return mEntries.size();
+    }
+
+    public long getHitCount() {
+        return mHitCount;
+    }
+
+    public long getMissCount() {
+        return mMissCount;
+    }
+
+    public long getEvictionCount() {
+        return mEvictionCount;
+    }
+
+    public String getStats() {
+        return "textures = " + mEntries.size() + ", size = " + mSizeBytes / 1024 + "KB / " + mMaxBytes / 1024
+                + "KB, hits = " + mHitCount + ", misses = " + mMissCount + ", evictions = " + mEvictionCount;
+    }
+
+    /**
+     * get the texture of a generation of the content, replacing the texture of another one
+     */
+    int getTexture(Object content, int generation, Bitmap bitmap) {
+        Entry entry = mEntries.get(content);
+        if (entry != null) {
+            if (entry.generation == generation) {
+                mHitCount++;
+                return entry.texId;
+            }
+            // modified since, the old pixels are never drawn again
+            mEntries.remove(content);
+            delete(entry);
+        }
+
+        int bytes = mLoader.getByteCount(bitmap);
+        if (bytes > mMaxBytes) {
+            Log.w(TAG, "texture of " + bytes + " bytes exceeds the budget of " + mMaxBytes);
+        }
+        trimToSize(mMaxBytes - bytes);
+        int texId = mLoader.upload(bitmap);
+        if (texId == 0) {
+            return 0;
+        }
+
+        mMissCount++;
+        entry = new Entry();
+        entry.texId = texId;
+        entry.bytes = bytes;
+        entry.generation = generation;
+        mEntries.put(content, entry);
+        mSizeBytes += bytes;
+        return texId;
+    }
+
+    private void trimToSize(long maxBytes) {
+        Iterator<Map.Entry<Object, Entry>> iterator = mEntries.entrySet().iterator();
+        while (mSizeBytes > maxBytes && iterator.hasNext()) {
+            Entry entry = iterator.next().getValue();
+            iterator.remove();
+            delete(entry);
+            mEvictionCount++;
+        }
+    }
+
+    private void delete(Entry entry) {
+        mLoader.delete(entry.texId);
+        mSizeBytes -= entry.bytes;
+    }
+}
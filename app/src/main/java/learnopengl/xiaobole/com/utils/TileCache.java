@@ -0,0 +1,162 @@
+package learnopengl.xiaobole.com.utils;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A bounded LRU of tiles keyed by their {@link TileGrid} key.
+ *
+ * Looking a tile up makes it the most recently used, so the tiles drawn every frame stay
+ * and the ones scrolled away are evicted first. Evicted tiles are handed to the listener,
+ * e.g. to delete their texture. When a tile is missing, {@link #getFallback(TileGrid, long)}
+ * finds the closest coarser tile covering it to draw in the meantime.
+ *
+ * Pure Java, not thread safe.
+ */
+public class TileCache<T> {
+
+    public interface EvictionListener<T> {
+        /**
+         * a tile left the cache, evicted or removed
+         */
+        void onEvicted(long key, T tile);
+    }
+
+    // access order, the eldest is the least recently used
+    private final LinkedHashMap<Long, T> mTiles = new LinkedHashMap<>(64, 0.75f, true);
+    private final EvictionListener<T> mListener;
+    private int mMaxTiles;
+
+    private long mHitCount;
+    private long mMissCount;
+    private long mEvictionCount;
+
+    /**
+     * @param maxTiles the number of tiles kept
+     * @param listener notified of the tiles leaving the cache, may be null
+     */
+    public TileCache(int maxTiles, EvictionListener<T> listener) {
+        mMaxTiles = maxTiles;
+        mListener = listener;
+    }
+
+    /**
+     * set the number of tiles kept, evicts right away if it is exceeded
+     *
+     * @return the TileCache object
+     */
+    public TileCache<T> setMaxTiles(int maxTiles) {
+        mMaxTiles = maxTiles;
+        trimToSize(maxTiles);
+        return this;
+    }
+
+    public int getMaxTiles() {
+        return mMaxTiles;
+    }
+
+    /**
+     * @return the tile, null if not cached
+     */
+    public T get(long key) {
+        T tile = mTiles.get(key);
+        if (tile != null) {
+            mHitCount++;
+        } else {
+            mMissCount++;
+        }
+        return tile;
+    }
+
+    public boolean contains(long key) {
+        return mTiles.containsKey(key);
+    }
+
+    /**
+     * add a tile as the most recently used, evicting the least recently used ones
+     */
+    public void put(long key, T tile) {
+        T previous = mTiles.put(key, tile);
+        if (previous != null && previous != tile && mListener != null) {
+            mListener.onEvicted(key, previous);
+        }
+        trimToSize(mMaxTiles);
+    }
+
+    /**
+     * find the closest coarser tile to draw in place of a missing one
+     *
+     * @param grid the grid of the keys
+     * @param key the missing tile
+     * @return the key of a cached ancestor, -1 if none is cached
+     */
+    public long getFallback(TileGrid grid, long key) {
+        for (long parent = grid.getParent(key); parent != -1; parent = grid.getParent(parent)) {
+            if (mTiles.get(parent) != null) {
+                return parent;
+            }
+        }
+        return -1;
+    }
+
+    public void remove(long key) {
+        T tile = mTiles.remove(key);
+        if (tile != null && mListener != null) {
+            mListener.onEvicted(key, tile);
+        }
+    }
+
+    /**
+     * remove all tiles, notifying the listener
+     */
+    public void clear() {
+        if (mListener != null) {
+            for (Map.Entry<Long, T> entry : mTiles.entrySet()) {
+                mListener.onEvicted(entry.getKey(), entry.getValue());
+            }
+        }
+        mTiles.clear();
+    }
+
+    /**
+     * Forget all tiles without notifying the listener, e.g. when their textures died with
+     * the previous context.
+     */
+    public void reset() {
+        mTiles.clear();
+    }
+
+    public int getCount() {
+        return mTiles.size();
+    }
+
+    public long getHitCount() {
+        return mHitCount;
+    }
+
+    public long getMissCount() {
+        return mMissCount;
+    }
+
+    public long getEvictionCount() {
+        return mEvictionCount;
+    }
+
+    public String getStats() {
+        return "tiles = " + mTiles.size() + " / " + mMaxTiles + ", hits = " + mHitCount
+                + ", misses = " + mMissCount + ", evictions = " + mEvictionCount;
+    }
+
+    private void trimToSize(int maxTiles) {
+        Iterator<Map.Entry<Long, T>> iterator = mTiles.entrySet().iterator();
+        while (mTiles.size() > maxTiles && iterator.hasNext()) {
+            Map.Entry<Long, T> entry = iterator.next();
+            iterator.remove();
+            mEvictionCount++;
+            if (mListener != null) {
+                mListener.onEvicted(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+}
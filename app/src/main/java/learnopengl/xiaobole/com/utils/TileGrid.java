@@ -0,0 +1,171 @@
+package learnopengl.xiaobole.com.utils;
+
+/**
+ * The tiles of an image too large to be one texture, at several resolution levels.
+ *
+ * Level 0 is the full resolution, each level halves the previous one, down to the level
+ * where the whole image fits one tile. A tile of level L is tileSize pixels square once
+ * decoded with inSampleSize 2^L and covers tileSize << L pixels of the source, clipped at
+ * the right and bottom edges. Tiles are identified by a long key packing the level, the
+ * column and the row, the parent of a tile is the tile of the next level covering it.
+ *
+ * Pure Java without GL.
+ */
+public class TileGrid {
+
+    private static final int COORD_BITS = 24;
+    private static final long COORD_MASK = (1L << COORD_BITS) - 1;
+
+    private final int mImageWidth;
+    private final int mImageHeight;
+    private final int mTileSize;
+    private final int mLevelCount;
+
+    /**
+     * @param imageWidth the width of the source image
+     * @param imageHeight the height of the source image
+     * @param tileSize the size of a decoded tile, e.g. 256
+     */
+    public TileGrid(int imageWidth, int imageHeight, int tileSize) {
+        if (imageWidth <= 0 || imageHeight <= 0 || tileSize <= 0) {
+            throw new IllegalArgumentException("invalid image " + imageWidth + "x" + imageHeight
+                    + " or tile size " + tileSize);
+        }
+        mImageWidth = imageWidth;
+        mImageHeight = imageHeight;
+        mTileSize = tileSize;
+        int levels = 1;
+        while ((long) tileSize << (levels - 1) < Math.max(imageWidth, imageHeight)) {
+            levels++;
+        }
+        mLevelCount = levels;
+    }
+
+    public int getImageWidth() {
+        return mImageWidth;
+    }
+
+    public int getImageHeight() {
+        return mImageHeight;
+    }
+
+    public int getTileSize() {
+        return mTileSize;
+    }
+
+    /**
+     * @return the number of levels, the last one is a single tile
+     */
+    public int getLevelCount() {
+        return mLevelCount;
+    }
+
+    public int getColumns(int level) {
+        return (int) ((mImageWidth + getSpan(level) - 1) / getSpan(level));
+    }
+
+    public int getRows(int level) {
+        return (int) ((mImageHeight + getSpan(level) - 1) / getSpan(level));
+    }
+
+    /**
+     * @return the source pixels covered by a tile side at a level
+     */
+    public long getSpan(int level) {
+        return (long) mTileSize << level;
+    }
+
+    /**
+     * pick the coarsest level still as sharp as the screen
+     *
+     * @param scale the screen pixels per source pixel
+     * @return the level, 0 when zoomed in past the full resolution
+     */
+    public int selectLevel(float scale) {
+        int level = 0;
+        // level L holds 1 / 2^L pixels per source pixel
+        while (level + 1 < mLevelCount && (1L << (level + 1)) * scale <= 1.0f) {
+            level++;
+        }
+        return level;
+    }
+
+    /**
+     * get the tiles of a level intersecting a rectangle of the source image
+     *
+     * @param level the level
+     * @param left the left in source pixels
+     * @param top the top in source pixels
+     * @param right the right in source pixels
+     * @param bottom the bottom in source pixels
+     * @param outKeys the tile keys in row order, holds at least getColumns(level) * getRows(level)
+     * @return the number of tiles written
+     */
+    public int getVisibleTiles(int level, float left, float top, float right, float bottom, long[] outKeys) {
+        // clip to the image, the spans of the edge tiles reach past it
+        left = Math.max(left, 0);
+        top = Math.max(top, 0);
+        right = Math.min(right, mImageWidth);
+        bottom = Math.min(bottom, mImageHeight);
+        if (left >= right || top >= bottom) {
+            return 0;
+        }
+        long span = getSpan(level);
+        int firstColumn = Math.max(0, (int) Math.floor(left / span));
+        int firstRow = Math.max(0, (int) Math.floor(top / span));
+        int lastColumn = Math.min(getColumns(level), (int) Math.ceil(right / span));
+        int lastRow = Math.min(getRows(level), (int) Math.ceil(bottom / span));
+        int count = 0;
+        for (int row = firstRow; row < lastRow; row++) {
+            for (int column = firstColumn; column < lastColumn; column++) {
+                outKeys[count++] = getKey(level, column, row);
+            }
+        }
+        return count;
+    }
+
+    /**
+     * get the source rectangle of a tile, clipped to the image
+     *
+     * @param key the tile key
+     * @param outRect the left, top, right and bottom in source pixels
+     */
+    public void getTileRect(long key, int[] outRect) {
+        long span = getSpan(getLevel(key));
+        outRect[0] = (int) (getColumn(key) * span);
+        outRect[1] = (int) (getRow(key) * span);
+        outRect[2] = (int) Math.min(mImageWidth, outRect[0] + span);
+        outRect[3] = (int) Math.min(mImageHeight, outRect[1] + span);
+    }
+
+    /**
+     * @return the key of the tile one level coarser covering a tile, -1 for the last level
+     */
+    public long getParent(long key) {
+        int level = getLevel(key);
+        if (level + 1 >= mLevelCount) {
+            return -1;
+        }
+        return getKey(level + 1, getColumn(key) >> 1, getRow(key) >> 1);
+    }
+
+    public static long getKey(int level, int column, int row) {
+        return ((long) level << (2 * COORD_BITS)) | ((long) row << COORD_BITS) | column;
+    }
+
+    public static int getLevel(long key) {
+        return (int) (key >>> (2 * COORD_BITS));
+    }
+
+    public static int getColumn(long key) {
+        return (int) (key & COORD_MASK);
+    }
+
+    public static int getRow(long key) {
+        return (int) ((key >>> COORD_BITS) & COORD_MASK);
+    }
+
+    public static String toString(long key) {
+        return "tile " + getLevel(key) + "/" + getColumn(key) + "/" + getRow(key);
+    }
+}
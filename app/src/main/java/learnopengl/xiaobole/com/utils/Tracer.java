@@ -0,0 +1,278 @@
+package learnopengl.xiaobole.com.utils;
+
+import android.os.Process;
+import android.os.Trace;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Low overhead tracing for the per-frame paths, instead of string building Log calls.
+ *
+ * Events are registered once by name and recorded by id with primitive arguments into a
+ * fixed-size direct ring buffer, so recording neither allocates nor does I/O; when disabled
+ * a record costs one volatile read. Sections are also forwarded to android.os.Trace for
+ * systrace. The ring can be exported as Chrome trace-event JSON, for chrome://tracing or
+ * Perfetto. The oldest events are overwritten when the ring is full.
+ *
+ * Each thread keeps the stack of its sections and whether each one was opened, so
+ * enabling or disabling in the middle of a section never ends a section it did not begin,
+ * neither in the ring nor in android.os.Trace.
+ */
+public class Tracer {
+
+    public static final int DEFAULT_CAPACITY = 16384;
+    private static final int MAX_EVENTS = 256;
+
+    private static final int PHASE_BEGIN = 0;
+    private static final int PHASE_END = 1;
+    private static final int PHASE_INSTANT = 2;
+    private static final int PHASE_COUNTER = 3;
+    private static final char[] PHASE_NAMES = {'B', 'E', 'i', 'C'};
+
+    // timestamp 8, id and phase 4, tid 4, argument 8
+    private static final int RECORD_SIZE = 24;
+
+    private final String[] mEventNames = new String[MAX_EVENTS];
+    private int mEventCount;
+
+    private volatile boolean mEnabled;
+    private ByteBuffer mRing;
+    private int mCapacity;
+    private final AtomicLong mWriteIndex = new AtomicLong();
+
+    /**
+     * the sections begun and not ended yet on a thread, oldest first
+     */
+    private static class SectionStack {
+        boolean[] mOpened = new boolean[16];
+        int mDepth;
+
+        void push(boolean opened) {
+            if (mDepth == mOpened.length) {
+                mOpened = Arrays.copyOf(mOpened, mDepth * 2);
+            }
+            mOpened[mDepth++] = opened;
+        }
+    }
+
+    private final ThreadLocal<SectionStack> mSections = new ThreadLocal<SectionStack>() {
+        @Override
+        protected SectionStack initialValue() {
+            return new SectionStack();
+        }
+    };
+    // the sections on the stacks of all threads, while 0 a disabled tracer skips the stacks
+    private final AtomicInteger mSectionCount = new AtomicInteger();
+
+    private Tracer() {
+        setCapacity(DEFAULT_CAPACITY);
+    }
+
+    private static class TracerHolder {
+        private static final Tracer mInstance = new Tracer();
+    }
+
+    public static Tracer getInstance() {
+        return TracerHolder.mInstance;
+    }
+
+    /**
+     * register an event name, call once, e.g. in a static initializer
+     *
+     * @param name the event name shown in the trace, written to the JSON as is
+     * @return the event id to record with
+     */
+    public synchronized int registerEvent(String name) {
+        for (int i = 0; i < mEventCount; i++) {
+            if (mEventNames[i].equals(name)) {
+                return i;
+            }
+        }
+        if (mEventCount == MAX_EVENTS) {
+            throw new IllegalStateException("too many trace events, max " + MAX_EVENTS);
+        }
+        mEventNames[mEventCount] = name;
+        return mEventCount++;
+    }
+
+    /**
+     * set the ring size and clear it, call while disabled
+     *
+     * @param capacity the number of events kept
+     */
+    public synchronized Tracer setCapacity(int capacity) {
+        if (mEnabled) {
+            throw new IllegalStateException("disable the tracer first");
+        }
+        mCapacity = capacity;
+        mRing = ByteBuffer.allocateDirect(capacity * RECORD_SIZE).order(ByteOrder.nativeOrder());
+        mWriteIndex.set(0);
+        return this;
+    }
+
+    public Tracer setEnabled(boolean enabled) {
+        mEnabled = enabled;
+        return this;
+    }
+
+    public boolean isEnabled() {
+        return mEnabled;
+    }
+
+    /**
+     * begin a section on the calling thread, sections must nest per thread
+     */
+    public void begin(int eventId) {
+        begin(eventId, 0);
+    }
+
+    /**
+     * begin a section with an argument, e.g. a frame timestamp
+     */
+    public void begin(int eventId, long arg) {
+        boolean enabled = mEnabled;
+        if (!enabled && mSectionCount.get() == 0) {
+            // no thread is inside a section, the matching end has nothing to close either
+            return;
+        }
+        mSections.get().push(enabled);
+        mSectionCount.incrementAndGet();
+        if (enabled) {
+            Trace.beginSection(mEventNames[eventId]);
+            record(eventId, PHASE_BEGIN, arg);
+        }
+    }
+
+    /**
+     * end the section begun last on the calling thread, only closed if it was opened
+     */
+    public void end(int eventId) {
+        if (mSectionCount.get() == 0) {
+            return;
+        }
+        SectionStack sections = mSections.get();
+        if (sections.mDepth == 0) {
+            // begun before any section was open and while disabled
+            return;
+        }
+        mSectionCount.decrementAndGet();
+        if (sections.mOpened[--sections.mDepth]) {
+            record(eventId, PHASE_END, 0);
+            Trace.endSection();
+        }
+    }
+
+    /**
+     * record a point in time with an argument
+     */
+    public void instant(int eventId, long arg) {
+        if (!mEnabled) {
+            return;
+        }
+        record(eventId, PHASE_INSTANT, arg);
+    }
+
+    /**
+     * record the value of a counter, e.g. queued frames
+     */
+    public void counter(int eventId, long value) {
+        if (!mEnabled) {
+            return;
+        }
+        record(eventId, PHASE_COUNTER, value);
+    }
+
+    private void record(int eventId, int phase, long arg) {
+        ByteBuffer ring = mRing;
+        int offset = (int) (mWriteIndex.getAndIncrement() % mCapacity) * RECORD_SIZE;
+        ring.putLong(offset, System.nanoTime());
+        ring.putInt(offset + 8, (eventId << 8) | phase);
+        ring.putInt(offset + 12, Process.myTid());
+        ring.putLong(offset + 16, arg);
+    }
+
+    /**
+     * write the recorded events as Chrome trace-event JSON, best called while disabled,
+     * events recorded meanwhile may be torn
+     *
+     * @param writer the output, not closed
+     */
+    public synchronized void exportChromeTrace(Writer writer) throws IOException {
+        long end = mWriteIndex.get();
+        long start = Math.max(0, end - mCapacity);
+        int pid = Process.myPid();
+        StringBuilder builder = new StringBuilder(128);
+        writer.write("{\"traceEvents\":[");
+        for (long i = start; i < end; i++) {
+            int offset = (int) (i % mCapacity) * RECORD_SIZE;
+            long timestamp = mRing.getLong(offset);
+            int idPhase = mRing.getInt(offset + 8);
+            int tid = mRing.getInt(offset + 12);
+            long arg = mRing.getLong(offset + 16);
+            int phase = idPhase & 0xff;
+            String name = mEventNames[idPhase >>> 8];
+
+            builder.setLength(0);
+            if (i > start) {
+                builder.append(',');
+            }
+            builder.append("\n{\"name\":\"").append(name)
+                    .append("\",\"ph\":\"").append(PHASE_NAMES[phase])
+                    .append("\",\"ts\":").append(timestamp / 1000).append('.');
+            // trace-event timestamps are in microseconds
+            long nanos = timestamp % 1000;
+            builder.append(nanos < 100 ? (nanos < 10 ? "00" : "0") : "").append(nanos)
+                    .append(",\"pid\":").append(pid)
+                    .append(",\"tid\":").append(tid);
+            if (phase == PHASE_INSTANT) {
+                builder.append(",\"s\":\"t\"");
+            }
+            if (phase == PHASE_COUNTER) {
+                builder.append(",\"args\":{\"value\":").append(arg).append('}');
+            } else if (phase != PHASE_END) {
+                builder.append(",\"args\":{\"arg\":").append(arg).append('}');
+            }
+            builder.append('}');
+            writer.write(builder.toString());
+        }
+        writer.write("\n]}\n");
+        writer.flush();
+    }
+
+    /**
+     * write the recorded events as Chrome trace-event JSON to a file
+     *
+     * @param file the output, replaced
+     */
+    public void exportChromeTrace(File file) throws IOException {
+        Writer writer = new BufferedWriter(new FileWriter(file));
+        try {
+            exportChromeTrace(writer);
+        } finally {
+            writer.close();
+        }
+    }
+
+    /**
+     * @return the number of events recorded since the ring was cleared, including overwritten ones
+     */
+    public long getRecordedCount() {
+        return mWriteIndex.get();
+    }
+
+    /**
+     * drop the recorded events
+     */
+    public synchronized void clear() {
+        mWriteIndex.set(0);
+    }
+}
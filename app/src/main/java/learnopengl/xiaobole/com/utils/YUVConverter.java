@@ -0,0 +1,182 @@
+package learnopengl.xiaobole.com.utils;
+
+/**
+ * Pure Java reference conversions between the YUV 4:2:0 layouts used by the drawers.
+ *
+ * The RGB conversion uses the same BT.601 coefficients as the YUV fragment shaders,
+ * so shader output can be checked against it off-device.
+ */
+public class YUVConverter {
+
+    private YUVConverter() {
+    }
+
+    public static int getI420Size(int width, int height) {
+        return width * height + 2 * ((width + 1) / 2) * ((height + 1) / 2);
+    }
+
+    /**
+     * de-interleave a tightly packed semi-planar frame into planar I420
+     *
+     * @param src the NV21 or NV12 frame
+     * @param dst the I420 frame, at least {@link #getI420Size(int, int)} bytes
+     * @param width the frame width, even
+     * @param height the frame height, even
+     * @param vFirst true for NV21 (VUVU...), false for NV12 (UVUV...)
+     */
+    public static void semiPlanarToI420(byte[] src, byte[] dst, int width, int height, boolean vFirst) {
+        semiPlanarToI420(src, width, width, dst, width, height, vFirst);
+    }
+
+    /**
+     * de-interleave a semi-planar frame with padded rows into planar I420
+     *
+     * @param src the NV21 or NV12 frame, the chroma plane right after height Y rows
+     * @param yStride the Y row stride in bytes, at least width
+     * @param uvStride the chroma row stride in bytes, at least width and even
+     * @param dst the I420 frame, at least {@link #getI420Size(int, int)} bytes
+     * @param width the frame width, even
+     * @param height the frame height, even
+     * @param vFirst true for NV21 (VUVU...), false for NV12 (UVUV...)
+     * @throws IllegalArgumentException if the size, the strides or the buffers don't fit
+     */
+    public static void semiPlanarToI420(byte[] src, int yStride, int uvStride, byte[] dst,
+                                        int width, int height, boolean vFirst) {
+        checkSemiPlanar(src.length, yStride, uvStride, width, height);
+        checkSize(dst.length, getI420Size(width, height), "i420");
+        int ySize = width * height;
+        int chromaWidth = width / 2;
+        int chromaSize = chromaWidth * (height / 2);
+        for (int row = 0; row < height; row++) {
+            System.arraycopy(src, row * yStride, dst, row * width, width);
+        }
+
+        int uvStart = yStride * height;
+        int first = vFirst ? ySize + chromaSize : ySize;
+        int second = vFirst ? ySize : ySize + chromaSize;
+        for (int row = 0; row < height / 2; row++) {
+            int uv = uvStart + row * uvStride;
+            int out = row * chromaWidth;
+            for (int col = 0; col < chromaWidth; col++) {
+                dst[first + out + col] = src[uv + 2 * col];
+                dst[second + out + col] = src[uv + 2 * col + 1];
+            }
+        }
+    }
+
+    /**
+     * interleave a planar I420 frame into semi-planar
+     *
+     * @param src the I420 frame
+     * @param dst the NV21 or NV12 frame
+     * @param width the frame width, even
+     * @param height the frame height, even
+     * @param vFirst true for NV21 (VUVU...), false for NV12 (UVUV...)
+     * @throws IllegalArgumentException if the size or the buffers don't fit
+     */
+    public static void i420ToSemiPlanar(byte[] src, byte[] dst, int width, int height, boolean vFirst) {
+        checkSemiPlanar(dst.length, width, width, width, height);
+        checkSize(src.length, getI420Size(width, height), "i420");
+        int ySize = width * height;
+        int chromaSize = (width / 2) * (height / 2);
+        System.arraycopy(src, 0, dst, 0, ySize);
+
+        int uOffset = ySize;
+        int vOffset = ySize + chromaSize;
+        int first = vFirst ? vOffset : uOffset;
+        int second = vFirst ? uOffset : vOffset;
+        for (int i = 0; i < chromaSize; i++) {
+            dst[ySize + 2 * i] = src[first + i];
+            dst[ySize + 2 * i + 1] = src[second + i];
+        }
+    }
+
+    /**
+     * convert a semi-planar frame to ARGB with the shader math
+     *
+     * @param src the NV21 or NV12 frame
+     * @param argb the output pixels, at least width * height
+     * @param width the frame width
+     * @param height the frame height
+     * @param vFirst true for NV21, false for NV12
+     */
+    public static void semiPlanarToARGB(byte[] src, int[] argb, int width, int height, boolean vFirst) {
+        int ySize = width * height;
+        int chromaWidth = (width + 1) / 2;
+        for (int row = 0; row < height; row++) {
+            int uvRow = ySize + (row / 2) * chromaWidth * 2;
+            for (int col = 0; col < width; col++) {
+                int uv = uvRow + (col / 2) * 2;
+                int first = src[uv] & 0xff;
+                int second = src[uv + 1] & 0xff;
+                argb[row * width + col] = toARGB(src[row * width + col] & 0xff,
+                        vFirst ? second : first, vFirst ? first : second);
+            }
+        }
+    }
+
+    /**
+     * convert a planar I420 frame to ARGB with the shader math
+     *
+     * @param src the I420 frame
+     * @param argb the output pixels, at least width * height
+     * @param width the frame width
+     * @param height the frame height
+     */
+    public static void i420ToARGB(byte[] src, int[] argb, int width, int height) {
+        int ySize = width * height;
+        int chromaWidth = (width + 1) / 2;
+        int chromaSize = chromaWidth * ((height + 1) / 2);
+        for (int row = 0; row < height; row++) {
+            int chromaRow = (row / 2) * chromaWidth;
+            for (int col = 0; col < width; col++) {
+                int chroma = chromaRow + col / 2;
+                argb[row * width + col] = toARGB(src[row * width + col] & 0xff,
+                        src[ySize + chroma] & 0xff, src[ySize + chromaSize + chroma] & 0xff);
+            }
+        }
+    }
+
+    /**
+     * convert one pixel exactly like the YUV fragment shaders do
+     *
+     * @param y the luma, 0 ~ 255
+     * @param u the Cb, 0 ~ 255
+     * @param v the Cr, 0 ~ 255
+     * @return the ARGB color
+     */
+    public static int toARGB(int y, int u, int v) {
+        float fy = y / 255.0f;
+        float fu = u / 255.0f - 0.5f;
+        float fv = v / 255.0f - 0.5f;
+        int r = clamp(fy + 1.403f * fv);
+        int g = clamp(fy - 0.344f * fu - 0.714f * fv);
+        int b = clamp(fy + 1.77f * fu);
+        return 0xff000000 | (r << 16) | (g << 8) | b;
+    }
+
+    /**
+     * semi-planar chroma pairs cover 2x2 pixels, an odd size or stride would split them
+     */
+    private static void checkSemiPlanar(int length, int yStride, int uvStride, int width, int height) {
+        if (width <= 0 || height <= 0 || width % 2 != 0 || height % 2 != 0) {
+            throw new IllegalArgumentException("semi-planar size must be even, got " + width + "x" + height);
+        }
+        if (yStride < width || uvStride < width || uvStride % 2 != 0) {
+            throw new IllegalArgumentException("invalid strides " + yStride + ", " + uvStride + " for width " + width);
+        }
+        // the last rows may be shorter than the stride
+        checkSize(length, yStride * height + uvStride * (height / 2 - 1) + width, "semi-planar");
+    }
+
+    private static void checkSize(int length, int required, String name) {
+        if (length < required) {
+            throw new IllegalArgumentException(name + " buffer of " + length + " bytes, " + required + " needed");
+        }
+    }
+
+    private static int clamp(float value) {
+        int c = Math.round(value * 255.0f);
+        return c < 0 ? 0 : (c > 255 ? 255 : c);
+    }
+}
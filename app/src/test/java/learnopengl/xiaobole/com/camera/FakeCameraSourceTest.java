@@ -0,0 +1,160 @@
+package learnopengl.xiaobole.com.camera;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * The {@link CameraSource} contract, open, frames and close, on the synthetic camera.
+ */
+public class FakeCameraSourceTest {
+
+    private static final int WIDTH = 64;
+    private static final int HEIGHT = 48;
+
+    private FakeCameraSource mSource;
+    private final BlockingQueue<CameraFrame> mFrames = new LinkedBlockingQueue<>();
+
+    @Before
+    public void setUp() {
+        mSource = new FakeCameraSource(WIDTH, HEIGHT).addPreviewSize(32, 24);
+        mSource.setFrameListener(new CameraSource.FrameListener() {
+            @Override
+            public void onFrame(CameraFrame frame) {
+                mFrames.offer(frame);
+            }
+        });
+    }
+
+    @After
+    public void tearDown() {
+        mSource.releaseCamera();
+    }
+
+    private CameraFrame nextFrame() throws InterruptedException {
+        CameraFrame frame = mFrames.poll(2, TimeUnit.SECONDS);
+        assertNotNull("no frame", frame);
+        return frame;
+    }
+
+    @Test
+    public void opensOnlyExistingCameras() {
+        assertEquals(2, mSource.getNumbersOfCameras());
+        assertFalse(mSource.openCamera(-1));
+        assertFalse(mSource.openCamera(2));
+        assertTrue(mSource.openCamera(0));
+        assertFalse(mSource.isFrontCamera());
+        assertTrue(mSource.openCamera(1));
+        assertTrue(mSource.isFrontCamera());
+    }
+
+    @Test
+    public void noFramesBeforeOpen() throws InterruptedException {
+        mSource.startPreview();
+        assertNull(mFrames.poll(100, TimeUnit.MILLISECONDS));
+        assertEquals(0, mSource.getFrameCount());
+    }
+
+    @Test
+    public void acceptsOnlySupportedSizes() {
+        assertEquals(2, mSource.getSupportedPreviewSizeList().size());
+        assertFalse(mSource.setPreviewSize(640, 480));
+        assertEquals(WIDTH, mSource.getPreviewWidth());
+        assertTrue(mSource.setPreviewSize(32, 24));
+        assertEquals(32, mSource.getPreviewWidth());
+        assertEquals(24, mSource.getPreviewHeight());
+    }
+
+    @Test
+    public void deliversI420Frames() throws InterruptedException {
+        assertTrue(mSource.openCamera(0));
+        mSource.setPreviewFpsRange(60000, 60000);
+        mSource.startPreview();
+
+        long lastTimestamp = 0;
+        int firstLuma = -1;
+        for (int i = 0; i < 5; i++) {
+            CameraFrame frame = nextFrame();
+            assertEquals(WIDTH, frame.getWidth());
+            assertEquals(HEIGHT, frame.getHeight());
+            assertEquals(WIDTH, frame.getRowStride(CameraFrame.PLANE_Y));
+            assertEquals(WIDTH / 2, frame.getRowStride(CameraFrame.PLANE_U));
+            assertEquals(1, frame.getPixelStride(CameraFrame.PLANE_V));
+            assertTrue(frame.getTimestamp() > lastTimestamp);
+            lastTimestamp = frame.getTimestamp();
+
+            // a diagonal ramp moving one pixel per frame
+            ByteBuffer y = frame.getPlane(CameraFrame.PLANE_Y);
+            int luma = y.get(0) & 0xff;
+            assertEquals((luma + 3 + 2) & 0xff, y.get(2 * WIDTH + 3) & 0xff);
+            if (firstLuma >= 0) {
+                assertEquals((firstLuma + i) & 0xff, luma);
+            } else {
+                firstLuma = luma;
+            }
+            ByteBuffer u = frame.getPlane(CameraFrame.PLANE_U);
+            ByteBuffer v = frame.getPlane(CameraFrame.PLANE_V);
+            assertEquals(WIDTH / 2 * HEIGHT / 2, u.capacity());
+            assertEquals(96, u.get(u.capacity() - 1) & 0xff);
+            assertEquals(160, v.get(0) & 0xff);
+            frame.release();
+        }
+    }
+
+    @Test
+    public void dropsFramesWhileTheConsumerHoldsAllBuffers() throws InterruptedException {
+        assertTrue(mSource.openCamera(0));
+        mSource.setPreviewFpsRange(60000, 60000);
+        mSource.startPreview();
+
+        // keep every frame, the source runs out of its three buffers
+        List<CameraFrame> held = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            held.add(nextFrame());
+        }
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(2);
+        while (mSource.getDroppedCount() == 0 && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertTrue(mSource.getDroppedCount() > 0);
+        assertNull(mFrames.poll(50, TimeUnit.MILLISECONDS));
+
+        // releasing a buffer resumes the frames
+        held.get(0).release();
+        nextFrame().release();
+    }
+
+    @Test
+    public void closeStopsTheFrames() throws InterruptedException {
+        assertTrue(mSource.openCamera(0));
+        mSource.setPreviewFpsRange(60000, 60000);
+        mSource.startPreview();
+        nextFrame().release();
+
+        mSource.releaseCamera();
+        long count = mSource.getFrameCount();
+        mFrames.clear();
+        assertNull(mFrames.poll(100, TimeUnit.MILLISECONDS));
+        assertEquals(count, mSource.getFrameCount());
+
+        // a released camera can't preview until opened again
+        mSource.startPreview();
+        assertNull(mFrames.poll(100, TimeUnit.MILLISECONDS));
+        assertTrue(mSource.openCamera(0));
+        mSource.startPreview();
+        nextFrame().release();
+    }
+}
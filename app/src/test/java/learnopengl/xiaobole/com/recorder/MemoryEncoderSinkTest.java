@@ -0,0 +1,106 @@
+package learnopengl.xiaobole.com.recorder;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class MemoryEncoderSinkTest {
+
+    private static final int WIDTH = 4;
+    private static final int HEIGHT = 3;
+    // the reader pads its rows
+    private static final int ROW_STRIDE = WIDTH * 4 + 8;
+    private static final long FRAME_NS = 33333333L;
+
+    /**
+     * @return a padded RGBA frame whose pixels are the frame index and padding is garbage
+     */
+    private static ByteBuffer makeFrame(int index) {
+        ByteBuffer pixels = ByteBuffer.allocate(ROW_STRIDE * HEIGHT);
+        for (int row = 0; row < HEIGHT; row++) {
+            for (int x = 0; x < ROW_STRIDE; x++) {
+                pixels.put((byte) (x < WIDTH * 4 ? index : 0xee));
+            }
+        }
+        pixels.rewind();
+        return pixels;
+    }
+
+    @Test
+    public void dropsFramesTheSinkCannotTake() {
+        MemoryEncoderSink sink = new MemoryEncoderSink(4);
+        SinkThrottle throttle = new SinkThrottle(2);
+        // the frames rendered into the surface and not consumed yet
+        ArrayDeque<Integer> inFlight = new ArrayDeque<>();
+
+        // the sink consumes one frame every third frame drawn
+        for (int i = 0; i < 30; i++) {
+            if (throttle.admit(sink)) {
+                throttle.onSubmitted(sink, i * FRAME_NS);
+                inFlight.offerLast(i);
+            }
+            if (i % 3 == 2) {
+                int index = inFlight.pollFirst();
+                sink.receive(makeFrame(index), ROW_STRIDE, WIDTH, HEIGHT, index * FRAME_NS);
+            }
+        }
+
+        // frames 0, 1, then one in three fill the two pending slots, the rest are dropped
+        assertEquals(11, throttle.getSubmittedCount());
+        assertEquals(19, throttle.getDroppedCount());
+        assertEquals(10, sink.getReceivedCount());
+        assertEquals(1, sink.getPendingFrameCount());
+
+        // the last four consumed frames are kept, oldest first
+        int[] expected = {15, 18, 21, 24};
+        List<MemoryEncoderSink.Frame> frames = sink.getFrames();
+        assertEquals(expected.length, frames.size());
+        for (int i = 0; i < expected.length; i++) {
+            MemoryEncoderSink.Frame frame = frames.get(i);
+            assertEquals(expected[i] * FRAME_NS, frame.getTimestamp());
+            assertEquals(WIDTH, frame.getWidth());
+            assertEquals(HEIGHT, frame.getHeight());
+            byte[] pixels = new byte[WIDTH * HEIGHT * 4];
+            Arrays.fill(pixels, (byte) expected[i]);
+            assertArrayEquals(pixels, frame.getData());
+        }
+    }
+
+    @Test
+    public void neverDropsWhenTheSinkKeepsUp() {
+        MemoryEncoderSink sink = new MemoryEncoderSink(2);
+        SinkThrottle throttle = new SinkThrottle(1);
+        for (int i = 0; i < 10; i++) {
+            assertTrue(throttle.admit(sink));
+            throttle.onSubmitted(sink, i * FRAME_NS);
+            sink.receive(makeFrame(i), ROW_STRIDE, WIDTH, HEIGHT, i * FRAME_NS);
+        }
+        assertEquals(10, throttle.getSubmittedCount());
+        assertEquals(0, throttle.getDroppedCount());
+        assertEquals(0, sink.getPendingFrameCount());
+        assertEquals(8 * FRAME_NS, sink.getFrames().get(0).getTimestamp());
+        assertEquals(9 * FRAME_NS, sink.getFrames().get(1).getTimestamp());
+    }
+
+    @Test
+    public void failedFramesCountAsDropped() {
+        MemoryEncoderSink sink = new MemoryEncoderSink(1);
+        SinkThrottle throttle = new SinkThrottle(0);
+        assertEquals(1, throttle.getMaxPendingFrames());
+        assertTrue(throttle.admit(sink));
+        throttle.onFailed();
+        assertEquals(0, sink.getPendingFrameCount());
+        assertEquals(0, throttle.getSubmittedCount());
+        assertEquals(1, throttle.getDroppedCount());
+
+        throttle.reset();
+        assertEquals(0, throttle.getDroppedCount());
+    }
+}
@@ -0,0 +1,163 @@
+package learnopengl.xiaobole.com.recorder;
+
+import android.view.Surface;
+
+import org.junit.Test;
+
+import java.util.ArrayDeque;
+
+import static org.junit.Assert.assertEquals;
+
+public class PendingFrameTrackerTest {
+
+    private static final long FRAME_NS = 33333333L;
+    private static final long TIMEOUT_NS = 250000000L;
+
+    @Test
+    public void outputRetiresEarlierFrames() {
+        PendingFrameTracker tracker = new PendingFrameTracker(TIMEOUT_NS);
+        for (int i = 0; i < 4; i++) {
+            tracker.onSubmitted(i * 1000, 0);
+        }
+        assertEquals(4, tracker.getPendingCount(0));
+        tracker.onOutput(0);
+        assertEquals(3, tracker.getPendingCount(0));
+        // frame 1 was skipped, the output of frame 2 retires it too
+        tracker.onOutput(2000);
+        assertEquals(1, tracker.getPendingCount(0));
+        assertEquals(0, tracker.getExpiredCount());
+    }
+
+    @Test
+    public void unansweredFramesTimeOut() {
+        PendingFrameTracker tracker = new PendingFrameTracker(TIMEOUT_NS);
+        tracker.onSubmitted(0, 0);
+        tracker.onSubmitted(1000, FRAME_NS);
+        assertEquals(2, tracker.getPendingCount(TIMEOUT_NS));
+        assertEquals(1, tracker.getPendingCount(TIMEOUT_NS + 1));
+        assertEquals(0, tracker.getPendingCount(FRAME_NS + TIMEOUT_NS + 1));
+        assertEquals(2, tracker.getExpiredCount());
+
+        tracker.reset();
+        assertEquals(0, tracker.getExpiredCount());
+    }
+
+    @Test
+    public void growsPastItsInitialCapacity() {
+        PendingFrameTracker tracker = new PendingFrameTracker(TIMEOUT_NS);
+        // wrap the ring before it grows
+        for (int i = 0; i < 10; i++) {
+            tracker.onSubmitted(i, 0);
+        }
+        tracker.onOutput(9);
+        for (int i = 10; i < 50; i++) {
+            tracker.onSubmitted(i, 0);
+        }
+        assertEquals(40, tracker.getPendingCount(0));
+        tracker.onOutput(29);
+        assertEquals(20, tracker.getPendingCount(0));
+        tracker.onOutput(49);
+        assertEquals(0, tracker.getPendingCount(0));
+    }
+
+    /**
+     * An encoder holding two frames in flight that skips every seventh frame, like rate
+     * control does. Time is simulated, one frame every FRAME_NS.
+     */
+    private static class SkippingEncoder implements EncoderSink {
+        private static final int LATENCY = 2;
+
+        final PendingFrameTracker mTracker = new PendingFrameTracker(TIMEOUT_NS);
+        final ArrayDeque<Long> mInput = new ArrayDeque<>();
+        long mNow;
+        int mInputCount;
+        int mOutputCount;
+
+        @Override
+        public Surface prepare(int width, int height) {
+            return null;
+        }
+
+        @Override
+        public void onFrameSubmitted(long timestampNs) {
+            mTracker.onSubmitted(timestampNs / 1000, mNow);
+            mInput.offerLast(timestampNs);
+        }
+
+        @Override
+        public int getPendingFrameCount() {
+            return mTracker.getPendingCount(mNow);
+        }
+
+        @Override
+        public void release() {
+        }
+
+        void encode() {
+            while (mInput.size() > LATENCY) {
+                long timestampNs = mInput.pollFirst();
+                if (mInputCount++ % 7 != 3) {
+                    mOutputCount++;
+                    mTracker.onOutput(timestampNs / 1000);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void skippedFramesDontStarveTheRecorder() {
+        SkippingEncoder encoder = new SkippingEncoder();
+        SinkThrottle throttle = new SinkThrottle(VideoRecorder.DEFAULT_MAX_PENDING_FRAMES);
+        int frames = 301;
+        for (int i = 0; i < frames; i++) {
+            encoder.mNow = i * FRAME_NS;
+            if (throttle.admit(encoder)) {
+                throttle.onSubmitted(encoder, i * FRAME_NS + 1234);
+            }
+            encoder.encode();
+        }
+        assertEquals(0, throttle.getDroppedCount());
+        assertEquals(frames, throttle.getSubmittedCount());
+        assertEquals(frames - SkippingEncoder.LATENCY, encoder.mInputCount);
+        // the skipped frames were retired by the outputs behind them, none timed out
+        assertEquals(0, encoder.mTracker.getExpiredCount());
+        assertEquals(SkippingEncoder.LATENCY, encoder.getPendingFrameCount());
+    }
+
+    @Test
+    public void stalledEncoderDropsFrames() {
+        SkippingEncoder encoder = new SkippingEncoder();
+        SinkThrottle throttle = new SinkThrottle(6);
+        // the encoder outputs nothing for the first 7 frames, then catches up
+        for (int i = 0; i < 30; i++) {
+            encoder.mNow = i * FRAME_NS;
+            if (throttle.admit(encoder)) {
+                throttle.onSubmitted(encoder, i * FRAME_NS);
+            }
+            if (i >= 7) {
+                encoder.encode();
+            }
+        }
+        // frames 0 ~ 5 fill the pending slots, 6 and 7 are dropped, none time out
+        assertEquals(2, throttle.getDroppedCount());
+        assertEquals(28, throttle.getSubmittedCount());
+        assertEquals(0, encoder.mTracker.getExpiredCount());
+    }
+
+    @Test
+    public void skippedLastFrameTimesOut() {
+        SkippingEncoder encoder = new SkippingEncoder();
+        // frame 3 is skipped and nothing comes after it
+        for (int i = 0; i < 4; i++) {
+            encoder.mNow = i * FRAME_NS;
+            encoder.onFrameSubmitted(i * FRAME_NS);
+        }
+        encoder.mInput.offerLast(0L);
+        encoder.mInput.offerLast(0L);
+        encoder.encode();
+        assertEquals(1, encoder.getPendingFrameCount());
+        encoder.mNow = 3 * FRAME_NS + TIMEOUT_NS + 1;
+        assertEquals(0, encoder.getPendingFrameCount());
+        assertEquals(1, encoder.mTracker.getExpiredCount());
+    }
+}
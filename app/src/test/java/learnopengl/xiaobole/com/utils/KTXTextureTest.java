@@ -0,0 +1,212 @@
+package learnopengl.xiaobole.com.utils;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class KTXTextureTest {
+
+    private static final int SIZE = 64;
+    private static final int LEVELS = 4;
+    private static final int GL_RGB = 0x1907;
+    private static final int VK_FORMAT_R8G8B8A8_UNORM = 37;
+    private static final int VK_FORMAT_ETC2_R8G8B8_UNORM_BLOCK = 147;
+    private static final int VK_FORMAT_ASTC_4x4_SRGB_BLOCK = 158;
+
+    /**
+     * @return the sizes of the mip levels of SIZE x SIZE in 4x4 blocks
+     */
+    private static int[] getLevelSizes(int blockBytes) {
+        int[] sizes = new int[LEVELS];
+        for (int level = 0; level < LEVELS; level++) {
+            int blocks = Math.max(1, (SIZE >> level) / 4);
+            sizes[level] = blocks * blocks * blockBytes;
+        }
+        return sizes;
+    }
+
+    /**
+     * a KTX 1.1 container, the first byte of each level is its index
+     */
+    private static ByteBuffer writeKTX1(ByteOrder order, int glType, int faces, int[] levelSizes) {
+        int keyValueBytes = 8;
+        int size = 64 + keyValueBytes;
+        for (int levelSize : levelSizes) {
+            size += 4 + ((levelSize + 3) & ~3);
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(size).order(order);
+        buffer.put(new byte[]{(byte) 0xAB, 'K', 'T', 'X', ' ', '1', '1', (byte) 0xBB, '\r', '\n', 0x1A, '\n'});
+        buffer.putInt(0x04030201);
+        // glType, glTypeSize, glFormat, glInternalFormat, glBaseInternalFormat
+        buffer.putInt(glType).putInt(1).putInt(0).putInt(KTXTexture.GL_COMPRESSED_RGB8_ETC2).putInt(GL_RGB);
+        // width, height, depth, array elements, faces, levels, key value bytes
+        buffer.putInt(SIZE).putInt(SIZE).putInt(0).putInt(0).putInt(faces).putInt(levelSizes.length)
+                .putInt(keyValueBytes);
+        buffer.putLong(0);
+        for (int level = 0; level < levelSizes.length; level++) {
+            buffer.putInt(levelSizes[level]);
+            buffer.put(buffer.position(), (byte) level);
+            buffer.position(buffer.position() + ((levelSizes[level] + 3) & ~3));
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    private static ByteBuffer writeKTX1(ByteOrder order) {
+        return writeKTX1(order, 0, 1, getLevelSizes(8));
+    }
+
+    /**
+     * a KTX 2.0 container, the smallest level first in the file like the spec says
+     */
+    private static ByteBuffer writeKTX2(int vkFormat, int supercompression, int[] levelSizes) {
+        int size = 80 + levelSizes.length * 24;
+        for (int levelSize : levelSizes) {
+            size += levelSize;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.put(new byte[]{(byte) 0xAB, 'K', 'T', 'X', ' ', '2', '0', (byte) 0xBB, '\r', '\n', 0x1A, '\n'});
+        // vkFormat, typeSize, width, height, depth, layers, faces, levels, supercompression
+        buffer.putInt(vkFormat).putInt(1).putInt(SIZE).putInt(SIZE)
+                .putInt(0).putInt(0).putInt(1).putInt(levelSizes.length).putInt(supercompression);
+        // dfd, kvd and sgd offsets and lengths
+        buffer.putInt(0).putInt(0).putInt(0).putInt(0).putLong(0).putLong(0);
+        int offset = size;
+        for (int level = 0; level < levelSizes.length; level++) {
+            offset -= levelSizes[level];
+            buffer.putLong(offset).putLong(levelSizes[level]).putLong(levelSizes[level]);
+            buffer.put(offset, (byte) level);
+        }
+        buffer.clear();
+        return buffer;
+    }
+
+    private static ByteBuffer writeKTX2() {
+        return writeKTX2(VK_FORMAT_ASTC_4x4_SRGB_BLOCK, 0, getLevelSizes(16));
+    }
+
+    private static void checkLevels(KTXTexture texture, int[] levelSizes) {
+        assertEquals(SIZE, texture.getWidth());
+        assertEquals(SIZE, texture.getHeight());
+        assertEquals(levelSizes.length, texture.getLevelCount());
+        long dataSize = 0;
+        for (int level = 0; level < levelSizes.length; level++) {
+            ByteBuffer data = texture.getLevel(level);
+            assertEquals(0, data.position());
+            assertEquals(levelSizes[level], data.remaining());
+            assertEquals(level, data.get(0));
+            dataSize += levelSizes[level];
+        }
+        assertEquals(dataSize, texture.getDataSize());
+    }
+
+    @Test
+    public void parsesLittleEndianKTX1() throws IOException {
+        KTXTexture texture = KTXTexture.parse(writeKTX1(ByteOrder.LITTLE_ENDIAN));
+        assertEquals(KTXTexture.GL_COMPRESSED_RGB8_ETC2, texture.getInternalFormat());
+        checkLevels(texture, getLevelSizes(8));
+    }
+
+    @Test
+    public void parsesBigEndianKTX1() throws IOException {
+        KTXTexture texture = KTXTexture.parse(writeKTX1(ByteOrder.BIG_ENDIAN));
+        assertEquals(KTXTexture.GL_COMPRESSED_RGB8_ETC2, texture.getInternalFormat());
+        checkLevels(texture, getLevelSizes(8));
+    }
+
+    @Test
+    public void skipsKTX1MipPadding() throws IOException {
+        int[] levelSizes = {6, 3, 1};
+        checkLevels(KTXTexture.parse(writeKTX1(ByteOrder.LITTLE_ENDIAN, 0, 1, levelSizes)), levelSizes);
+    }
+
+    @Test
+    public void parsesKTX2() throws IOException {
+        KTXTexture texture = KTXTexture.parse(writeKTX2());
+        assertEquals(KTXTexture.GL_COMPRESSED_SRGB8_ALPHA8_ASTC_4x4, texture.getInternalFormat());
+        assertTrue(KTXTexture.isASTC(texture.getInternalFormat()));
+        assertFalse(KTXTexture.isETC2(texture.getInternalFormat()));
+        checkLevels(texture, getLevelSizes(16));
+    }
+
+    @Test
+    public void mapsKTX2ETC2Format() throws IOException {
+        KTXTexture texture = KTXTexture.parse(writeKTX2(VK_FORMAT_ETC2_R8G8B8_UNORM_BLOCK, 0, getLevelSizes(8)));
+        assertEquals(KTXTexture.GL_COMPRESSED_RGB8_ETC2, texture.getInternalFormat());
+        assertTrue(KTXTexture.isETC2(texture.getInternalFormat()));
+        assertFalse(KTXTexture.isASTC(texture.getInternalFormat()));
+    }
+
+    @Test
+    public void parsesFromThePosition() throws IOException {
+        ByteBuffer ktx = writeKTX2();
+        ByteBuffer file = ByteBuffer.allocate(ktx.capacity() + 100);
+        file.position(100);
+        file.put(ktx);
+        file.position(100);
+        checkLevels(KTXTexture.parse(file), getLevelSizes(16));
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsBadIdentifier() throws IOException {
+        ByteBuffer ktx = writeKTX1(ByteOrder.LITTLE_ENDIAN);
+        ktx.put(5, (byte) '2');
+        KTXTexture.parse(ktx);
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsBadEndianness() throws IOException {
+        ByteBuffer ktx = writeKTX1(ByteOrder.LITTLE_ENDIAN);
+        ktx.putInt(12, 0x01020304 + 1);
+        KTXTexture.parse(ktx);
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsTruncatedHeader() throws IOException {
+        ByteBuffer ktx = writeKTX2();
+        ktx.limit(40);
+        KTXTexture.parse(ktx);
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsTruncatedKTX1Level() throws IOException {
+        ByteBuffer ktx = writeKTX1(ByteOrder.LITTLE_ENDIAN);
+        ktx.limit(ktx.limit() - 4);
+        KTXTexture.parse(ktx);
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsTruncatedKTX2Level() throws IOException {
+        ByteBuffer ktx = writeKTX2();
+        // the largest level is last in the file
+        ktx.limit(ktx.limit() - 1);
+        KTXTexture.parse(ktx);
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsUncompressedKTX1() throws IOException {
+        KTXTexture.parse(writeKTX1(ByteOrder.LITTLE_ENDIAN, 0x1401, 1, getLevelSizes(8)));
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsCubeMap() throws IOException {
+        KTXTexture.parse(writeKTX1(ByteOrder.LITTLE_ENDIAN, 0, 6, getLevelSizes(8)));
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsUnsupportedVkFormat() throws IOException {
+        KTXTexture.parse(writeKTX2(VK_FORMAT_R8G8B8A8_UNORM, 0, getLevelSizes(16)));
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsSupercompression() throws IOException {
+        // 2 is zstd
+        KTXTexture.parse(writeKTX2(VK_FORMAT_ASTC_4x4_SRGB_BLOCK, 2, getLevelSizes(16)));
+    }
+}
@@ -0,0 +1,137 @@
+package learnopengl.xiaobole.com.utils;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class MaxRectsPackerTest {
+
+    private static final int PAGE_SIZE = 512;
+
+    /**
+     * insert random rectangles until one does not fit
+     *
+     * @return the placed rectangles as {x, y, width, height}
+     */
+    private static List<int[]> fill(MaxRectsPacker packer, long seed, int padding) {
+        Random random = new Random(seed);
+        List<int[]> placed = new ArrayList<>();
+        int[] position = new int[2];
+        while (true) {
+            int width = 8 + random.nextInt(56);
+            int height = 8 + random.nextInt(56);
+            // padded like TextureAtlas does, the content starts padding pixels in
+            if (!packer.insert(width + 2 * padding, height + 2 * padding, position)) {
+                return placed;
+            }
+            placed.add(new int[]{position[0] + padding, position[1] + padding, width, height});
+        }
+    }
+
+    private static boolean overlap(int[] a, int[] b, int gap) {
+        return a[0] < b[0] + b[2] + gap && b[0] < a[0] + a[2] + gap
+                && a[1] < b[1] + b[3] + gap && b[1] < a[1] + a[3] + gap;
+    }
+
+    private static void checkPlacement(List<int[]> placed, int padding) {
+        for (int i = 0; i < placed.size(); i++) {
+            int[] a = placed.get(i);
+            if (a[0] < padding || a[1] < padding
+                    || a[0] + a[2] + padding > PAGE_SIZE || a[1] + a[3] + padding > PAGE_SIZE) {
+                fail("rect " + i + " at " + a[0] + ", " + a[1] + " leaves the page");
+            }
+            for (int j = i + 1; j < placed.size(); j++) {
+                // the content of two rectangles is at least two paddings apart
+                if (overlap(a, placed.get(j), 2 * padding)) {
+                    fail("rects " + i + " and " + j + " are closer than " + 2 * padding);
+                }
+            }
+        }
+    }
+
+    private static long area(List<int[]> placed, int padding) {
+        long area = 0;
+        for (int[] rect : placed) {
+            area += (long) (rect[2] + 2 * padding) * (rect[3] + 2 * padding);
+        }
+        return area;
+    }
+
+    @Test
+    public void placesWithoutOverlapInsideThePage() {
+        MaxRectsPacker packer = new MaxRectsPacker(PAGE_SIZE, PAGE_SIZE);
+        List<int[]> placed = fill(packer, 42, 0);
+        assertTrue(placed.size() > 50);
+        checkPlacement(placed, 0);
+        assertEquals(area(placed, 0), packer.getUsedArea());
+        assertTrue(packer.getOccupancy() > 0.8f);
+    }
+
+    @Test
+    public void honorsPadding() {
+        for (int padding = 1; padding <= 4; padding++) {
+            MaxRectsPacker packer = new MaxRectsPacker(PAGE_SIZE, PAGE_SIZE);
+            List<int[]> placed = fill(packer, padding, padding);
+            checkPlacement(placed, padding);
+            assertEquals(area(placed, padding), packer.getUsedArea());
+        }
+    }
+
+    @Test
+    public void insertFailsWhenFull() {
+        MaxRectsPacker packer = new MaxRectsPacker(128, 128);
+        int[] position = new int[2];
+        for (int i = 0; i < 4; i++) {
+            assertTrue(packer.insert(64, 64, position));
+        }
+        assertEquals(1.0f, packer.getOccupancy(), 0);
+        assertEquals(0, packer.getFreeRectCount());
+        assertFalse(packer.insert(1, 1, position));
+    }
+
+    @Test
+    public void rejectsEmptyAndOversizedRects() {
+        MaxRectsPacker packer = new MaxRectsPacker(128, 64);
+        int[] position = new int[2];
+        assertFalse(packer.insert(0, 8, position));
+        assertFalse(packer.insert(8, -1, position));
+        assertFalse(packer.insert(129, 8, position));
+        assertFalse(packer.insert(8, 65, position));
+        assertTrue(packer.insert(128, 64, position));
+        assertEquals(0, position[0]);
+        assertEquals(0, position[1]);
+    }
+
+    @Test
+    public void freedSpaceIsReused() {
+        MaxRectsPacker packer = new MaxRectsPacker(PAGE_SIZE, PAGE_SIZE);
+        List<int[]> placed = fill(packer, 7, 0);
+        long used = packer.getUsedArea();
+        int[] removed = placed.remove(placed.size() / 2);
+        packer.free(removed[0], removed[1], removed[2], removed[3]);
+        assertEquals(used - (long) removed[2] * removed[3], packer.getUsedArea());
+
+        int[] position = new int[2];
+        assertTrue(packer.insert(removed[2], removed[3], position));
+        placed.add(new int[]{position[0], position[1], removed[2], removed[3]});
+        checkPlacement(placed, 0);
+    }
+
+    @Test
+    public void resetEmptiesThePage() {
+        MaxRectsPacker packer = new MaxRectsPacker(PAGE_SIZE, PAGE_SIZE);
+        fill(packer, 1, 0);
+        packer.reset();
+        assertEquals(0, packer.getUsedArea());
+        assertEquals(1, packer.getFreeRectCount());
+        int[] position = new int[2];
+        assertTrue(packer.insert(PAGE_SIZE, PAGE_SIZE, position));
+    }
+}
@@ -0,0 +1,122 @@
+package learnopengl.xiaobole.com.utils;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.util.Random;
+
+import static org.junit.Assert.fail;
+
+/**
+ * The fixed point converter against the float shader math of YUVConverter, every channel
+ * may be off by 1.
+ */
+public class ParallelYUVConverterTest {
+
+    // the 181 row pairs don't split evenly between three threads
+    private static final int WIDTH = 640;
+    private static final int HEIGHT = 362;
+
+    private ParallelYUVConverter mConverter;
+    private byte[] mI420;
+    private int[] mExpected;
+    private int[] mActual;
+
+    @Before
+    public void setUp() {
+        mConverter = new ParallelYUVConverter(3);
+        mI420 = new byte[YUVConverter.getI420Size(WIDTH, HEIGHT)];
+        new Random(42).nextBytes(mI420);
+        mExpected = new int[WIDTH * HEIGHT];
+        mActual = new int[WIDTH * HEIGHT];
+    }
+
+    @After
+    public void tearDown() {
+        mConverter.release();
+    }
+
+    @Test
+    public void everyPixelMatchesShaderMath() {
+        for (int y = 0; y < 256; y++) {
+            for (int u = 0; u < 256; u++) {
+                for (int v = 0; v < 256; v++) {
+                    int expected = YUVConverter.toARGB(y, u, v);
+                    int actual = ParallelYUVConverter.toARGB(y, u, v);
+                    if (channelDiff(expected, actual) > 1) {
+                        fail("mismatch at yuv(" + y + ", " + u + ", " + v + "): "
+                                + Integer.toHexString(expected) + " != " + Integer.toHexString(actual));
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void i420FrameMatchesShaderMath() {
+        YUVConverter.i420ToARGB(mI420, mExpected, WIDTH, HEIGHT);
+        mConverter.i420ToARGB(mI420, mActual, WIDTH, HEIGHT);
+        checkFrame(mExpected, mActual, "i420");
+    }
+
+    @Test
+    public void i420BufferMatchesShaderMath() {
+        IntBuffer argb = ByteBuffer.allocateDirect(mActual.length * 4).order(ByteOrder.nativeOrder()).asIntBuffer();
+        YUVConverter.i420ToARGB(mI420, mExpected, WIDTH, HEIGHT);
+        mConverter.i420ToARGB(mI420, argb, WIDTH, HEIGHT);
+        argb.get(mActual);
+        checkFrame(mExpected, mActual, "i420 buffer");
+    }
+
+    @Test
+    public void nv21FrameMatchesShaderMath() {
+        semiPlanarFrame(true);
+    }
+
+    @Test
+    public void nv12FrameMatchesShaderMath() {
+        semiPlanarFrame(false);
+    }
+
+    @Test
+    public void singleThreadMatchesPool() {
+        ParallelYUVConverter singleThread = new ParallelYUVConverter(1);
+        try {
+            singleThread.i420ToARGB(mI420, mExpected, WIDTH, HEIGHT);
+        } finally {
+            singleThread.release();
+        }
+        mConverter.i420ToARGB(mI420, mActual, WIDTH, HEIGHT);
+        checkFrame(mExpected, mActual, "single thread");
+    }
+
+    private void semiPlanarFrame(boolean vFirst) {
+        byte[] semiPlanar = new byte[mI420.length];
+        YUVConverter.i420ToSemiPlanar(mI420, semiPlanar, WIDTH, HEIGHT, vFirst);
+        YUVConverter.semiPlanarToARGB(semiPlanar, mExpected, WIDTH, HEIGHT, vFirst);
+        mConverter.semiPlanarToARGB(semiPlanar, mActual, WIDTH, HEIGHT, vFirst);
+        checkFrame(mExpected, mActual, vFirst ? "nv21" : "nv12");
+    }
+
+    private static void checkFrame(int[] expected, int[] actual, String name) {
+        for (int i = 0; i < expected.length; i++) {
+            if ((actual[i] >>> 24) != 0xff || channelDiff(expected[i], actual[i]) > 1) {
+                fail(name + " mismatch at pixel " + i + ": "
+                        + Integer.toHexString(expected[i]) + " != " + Integer.toHexString(actual[i]));
+            }
+        }
+    }
+
+    private static int channelDiff(int expected, int actual) {
+        int max = 0;
+        for (int shift = 0; shift < 24; shift += 8) {
+            int diff = Math.abs(((expected >> shift) & 0xff) - ((actual >> shift) & 0xff));
+            max = Math.max(max, diff);
+        }
+        return max;
+    }
+}
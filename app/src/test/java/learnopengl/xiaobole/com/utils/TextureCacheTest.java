@@ -0,0 +1,118 @@
+package learnopengl.xiaobole.com.utils;
+
+import android.graphics.Bitmap;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TextureCacheTest {
+
+    private static final int TEXTURE_BYTES = 100;
+
+    private final List<Integer> mDeleted = new ArrayList<>();
+    private int mUploadCount;
+    private TextureCache mCache;
+
+    @Before
+    public void setUp() {
+        // the bitmaps are null, the content objects stand in for them
+        mCache = new TextureCache(new TextureCache.TextureLoader() {
+            @Override
+            public int getByteCount(Bitmap bitmap) {
+                return TEXTURE_BYTES;
+            }
+
+            @Override
+            public int upload(Bitmap bitmap) {
+                return ++mUploadCount;
+            }
+
+            @Override
+            public void delete(int texId) {
+                mDeleted.add(texId);
+            }
+        });
+    }
+
+    @Test
+    public void sameGenerationHits() {
+        Object content = new Object();
+        int texId = mCache.getTexture(content, 1, null);
+        assertEquals(texId, mCache.getTexture(content, 1, null));
+        assertEquals(1, mUploadCount);
+        assertEquals(1, mCache.getHitCount());
+        assertEquals(1, mCache.getMissCount());
+    }
+
+    @Test
+    public void newGenerationReplacesTheOldTexture() {
+        Object content = new Object();
+        int first = mCache.getTexture(content, 1, null);
+        int second = mCache.getTexture(content, 2, null);
+        assertNotEquals(first, second);
+        assertEquals(Arrays.asList(first), mDeleted);
+        assertEquals(1, mCache.getCount());
+        assertEquals(TEXTURE_BYTES, mCache.getSizeBytes());
+
+        // going back uploads again, the old texture is gone
+        int third = mCache.getTexture(content, 1, null);
+        assertEquals(Arrays.asList(first, second), mDeleted);
+        assertEquals(1, mCache.getCount());
+        assertEquals(3, mUploadCount);
+        assertNotEquals(first, third);
+    }
+
+    @Test
+    public void modifiedBitmapDoesNotGrowTheCache() {
+        Object content = new Object();
+        for (int generation = 0; generation < 100; generation++) {
+            mCache.getTexture(content, generation, null);
+        }
+        assertEquals(1, mCache.getCount());
+        assertEquals(TEXTURE_BYTES, mCache.getSizeBytes());
+        assertEquals(99, mDeleted.size());
+        assertEquals(0, mCache.getEvictionCount());
+    }
+
+    @Test
+    public void otherContentIsKept() {
+        Object a = new Object();
+        Object b = new Object();
+        int texA = mCache.getTexture(a, 1, null);
+        mCache.getTexture(b, 1, null);
+        mCache.getTexture(b, 2, null);
+        assertEquals(texA, mCache.getTexture(a, 1, null));
+        assertEquals(2, mCache.getCount());
+    }
+
+    @Test
+    public void evictsOverBudget() {
+        mCache.setMaxBytes(2 * TEXTURE_BYTES);
+        Object a = new Object();
+        int texA = mCache.getTexture(a, 0, null);
+        mCache.getTexture(new Object(), 0, null);
+        mCache.getTexture(new Object(), 0, null);
+        assertEquals(Arrays.asList(texA), mDeleted);
+        assertEquals(1, mCache.getEvictionCount());
+        assertEquals(2 * TEXTURE_BYTES, mCache.getSizeBytes());
+    }
+
+    @Test
+    public void removeDeletesAnyGeneration() {
+        Object content = new Object();
+        int texId = mCache.getTexture(content, 5, null);
+        mCache.remove(content);
+        assertEquals(Arrays.asList(texId), mDeleted);
+        assertEquals(0, mCache.getCount());
+        assertEquals(0, mCache.getSizeBytes());
+        assertTrue(mCache.getTexture(content, 5, null) != texId);
+    }
+}
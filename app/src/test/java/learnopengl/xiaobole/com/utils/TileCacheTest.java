@@ -0,0 +1,140 @@
+package learnopengl.xiaobole.com.utils;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class TileCacheTest {
+
+    private final List<Long> mEvicted = new ArrayList<>();
+    private TileCache<String> mCache;
+
+    @Before
+    public void setUp() {
+        mCache = new TileCache<>(3, new TileCache.EvictionListener<String>() {
+            @Override
+            public void onEvicted(long key, String tile) {
+                assertEquals("tile " + key, tile);
+                mEvicted.add(key);
+            }
+        });
+    }
+
+    private void put(long... keys) {
+        for (long key : keys) {
+            mCache.put(key, "tile " + key);
+        }
+    }
+
+    @Test
+    public void evictsTheLeastRecentlyUsed() {
+        put(1, 2, 3);
+        assertTrue(mEvicted.isEmpty());
+        put(4);
+        assertEquals(Arrays.asList(1L), mEvicted);
+
+        // a lookup keeps a tile, a membership check does not
+        assertEquals("tile 2", mCache.get(2));
+        assertTrue(mCache.contains(3));
+        put(5, 6);
+        assertEquals(Arrays.asList(1L, 3L, 4L), mEvicted);
+        assertTrue(mCache.contains(2));
+        assertEquals(3, mCache.getCount());
+        assertEquals(3, mCache.getEvictionCount());
+    }
+
+    @Test
+    public void shrinkingEvictsOldestFirst() {
+        put(1, 2, 3);
+        mCache.get(1);
+        mCache.setMaxTiles(1);
+        assertEquals(Arrays.asList(2L, 3L), mEvicted);
+        assertTrue(mCache.contains(1));
+        assertEquals(1, mCache.getMaxTiles());
+    }
+
+    @Test
+    public void replacingNotifiesTheOldTile() {
+        final List<String> evicted = new ArrayList<>();
+        TileCache<String> cache = new TileCache<>(2, new TileCache.EvictionListener<String>() {
+            @Override
+            public void onEvicted(long key, String tile) {
+                evicted.add(tile);
+            }
+        });
+        String tile = "a";
+        cache.put(1, tile);
+        cache.put(1, tile);
+        assertTrue(evicted.isEmpty());
+        cache.put(1, "b");
+        assertEquals(Arrays.asList("a"), evicted);
+        assertEquals(1, cache.getCount());
+        assertEquals(0, cache.getEvictionCount());
+    }
+
+    @Test
+    public void countsHitsAndMisses() {
+        put(1);
+        mCache.get(1);
+        mCache.get(1);
+        assertNull(mCache.get(2));
+        assertEquals(2, mCache.getHitCount());
+        assertEquals(1, mCache.getMissCount());
+    }
+
+    @Test
+    public void fallsBackToTheClosestCachedAncestor() {
+        TileGrid grid = new TileGrid(4096, 4096, 256);
+        long tile = TileGrid.getKey(0, 13, 7);
+        long parent = grid.getParent(tile);
+        long root = TileGrid.getKey(grid.getLevelCount() - 1, 0, 0);
+        assertEquals(-1, mCache.getFallback(grid, tile));
+
+        mCache.put(root, "tile " + root);
+        assertEquals(root, mCache.getFallback(grid, tile));
+        mCache.put(parent, "tile " + parent);
+        assertEquals(parent, mCache.getFallback(grid, tile));
+        assertEquals(-1, mCache.getFallback(grid, root));
+    }
+
+    @Test
+    public void fallbackKeepsTheAncestor() {
+        TileGrid grid = new TileGrid(4096, 4096, 256);
+        long root = TileGrid.getKey(grid.getLevelCount() - 1, 0, 0);
+        put(root, 1, 2);
+        // drawn in place of a missing tile, so used this frame
+        assertEquals(root, mCache.getFallback(grid, TileGrid.getKey(0, 0, 0)));
+        put(3);
+        assertEquals(Arrays.asList(1L), mEvicted);
+        assertTrue(mCache.contains(root));
+    }
+
+    @Test
+    public void removeAndClearNotify() {
+        put(1, 2, 3);
+        mCache.remove(2);
+        mCache.remove(42);
+        assertEquals(Arrays.asList(2L), mEvicted);
+        mCache.clear();
+        assertEquals(Arrays.asList(2L, 1L, 3L), mEvicted);
+        assertEquals(0, mCache.getCount());
+        assertEquals(0, mCache.getEvictionCount());
+    }
+
+    @Test
+    public void resetForgetsSilently() {
+        put(1, 2);
+        mCache.reset();
+        assertTrue(mEvicted.isEmpty());
+        assertFalse(mCache.contains(1));
+        assertEquals(0, mCache.getCount());
+    }
+}
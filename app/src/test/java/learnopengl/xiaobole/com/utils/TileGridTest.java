@@ -0,0 +1,161 @@
+package learnopengl.xiaobole.com.utils;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TileGridTest {
+
+    private static final int IMAGE_WIDTH = 12000;
+    private static final int IMAGE_HEIGHT = 8000;
+    private static final int TILE_SIZE = 256;
+
+    private final TileGrid mGrid = new TileGrid(IMAGE_WIDTH, IMAGE_HEIGHT, TILE_SIZE);
+    private final long[] mKeys = new long[mGrid.getColumns(0) * mGrid.getRows(0)];
+    private final int[] mRect = new int[4];
+
+    @Test
+    public void levelsHalveDownToOneTile() {
+        assertEquals(7, mGrid.getLevelCount());
+        assertEquals(47, mGrid.getColumns(0));
+        assertEquals(32, mGrid.getRows(0));
+        assertEquals(24, mGrid.getColumns(1));
+        assertEquals(16, mGrid.getRows(1));
+        assertEquals(1, mGrid.getColumns(6));
+        assertEquals(1, mGrid.getRows(6));
+        assertEquals(TILE_SIZE << 6, mGrid.getSpan(6));
+    }
+
+    @Test
+    public void exactFitNeedsNoExtraLevel() {
+        assertEquals(1, new TileGrid(256, 100, 256).getLevelCount());
+        assertEquals(2, new TileGrid(257, 1, 256).getLevelCount());
+        assertEquals(2, new TileGrid(512, 512, 256).getLevelCount());
+        assertEquals(3, new TileGrid(513, 512, 256).getLevelCount());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsEmptyImage() {
+        new TileGrid(0, 100, 256);
+    }
+
+    @Test
+    public void selectsTheCoarsestSharpLevel() {
+        assertEquals(0, mGrid.selectLevel(2.0f));
+        assertEquals(0, mGrid.selectLevel(1.0f));
+        assertEquals(0, mGrid.selectLevel(0.51f));
+        assertEquals(1, mGrid.selectLevel(0.5f));
+        assertEquals(1, mGrid.selectLevel(0.3f));
+        assertEquals(2, mGrid.selectLevel(0.25f));
+        assertEquals(6, mGrid.selectLevel(0.01f));
+        // never past the single tile level
+        assertEquals(6, mGrid.selectLevel(0.0001f));
+    }
+
+    @Test
+    public void clipsEdgeTiles() {
+        mGrid.getTileRect(TileGrid.getKey(0, 0, 0), mRect);
+        assertArrayEquals(new int[]{0, 0, 256, 256}, mRect);
+        mGrid.getTileRect(TileGrid.getKey(0, 46, 31), mRect);
+        assertArrayEquals(new int[]{11776, 7936, IMAGE_WIDTH, IMAGE_HEIGHT}, mRect);
+        mGrid.getTileRect(TileGrid.getKey(1, 23, 0), mRect);
+        assertArrayEquals(new int[]{11776, 0, IMAGE_WIDTH, 512}, mRect);
+        mGrid.getTileRect(TileGrid.getKey(6, 0, 0), mRect);
+        assertArrayEquals(new int[]{0, 0, IMAGE_WIDTH, IMAGE_HEIGHT}, mRect);
+    }
+
+    @Test
+    public void visibleTilesInRowOrder() {
+        // straddles the corner of four tiles
+        int count = mGrid.getVisibleTiles(0, 200, 300, 300, 520, mKeys);
+        assertEquals(4, count);
+        assertEquals(TileGrid.getKey(0, 0, 1), mKeys[0]);
+        assertEquals(TileGrid.getKey(0, 1, 1), mKeys[1]);
+        assertEquals(TileGrid.getKey(0, 0, 2), mKeys[2]);
+        assertEquals(TileGrid.getKey(0, 1, 2), mKeys[3]);
+    }
+
+    @Test
+    public void visibleTilesEndOnTileBoundaries() {
+        assertEquals(1, mGrid.getVisibleTiles(0, 0, 0, 256, 256, mKeys));
+        assertEquals(TileGrid.getKey(0, 0, 0), mKeys[0]);
+    }
+
+    @Test
+    public void visibleTilesClipToTheImage() {
+        // hangs over the bottom right corner
+        int count = mGrid.getVisibleTiles(0, 11900, 7900, 13000, 9000, mKeys);
+        assertEquals(2, count);
+        assertEquals(TileGrid.getKey(0, 46, 30), mKeys[0]);
+        assertEquals(TileGrid.getKey(0, 46, 31), mKeys[1]);
+        // the whole image and more
+        assertEquals(47 * 32, mGrid.getVisibleTiles(0, -500, -500, 20000, 20000, mKeys));
+        // beside the image
+        assertEquals(0, mGrid.getVisibleTiles(0, -500, 0, -10, 100, mKeys));
+        assertEquals(0, mGrid.getVisibleTiles(2, 12500, 0, 13000, 100, mKeys));
+        // the single tile spans 16384 pixels, past the right edge is still beside the image
+        assertEquals(0, mGrid.getVisibleTiles(6, 12500, 0, 13000, 100, mKeys));
+        // empty
+        assertEquals(0, mGrid.getVisibleTiles(0, 100, 100, 100, 200, mKeys));
+    }
+
+    @Test
+    public void visibleTilesCoverTheView() {
+        Random random = new Random(42);
+        for (int i = 0; i < 1000; i++) {
+            int level = random.nextInt(mGrid.getLevelCount());
+            float left = random.nextFloat() * IMAGE_WIDTH * 1.2f - IMAGE_WIDTH * 0.1f;
+            float top = random.nextFloat() * IMAGE_HEIGHT * 1.2f - IMAGE_HEIGHT * 0.1f;
+            float right = left + random.nextFloat() * 4000;
+            float bottom = top + random.nextFloat() * 4000;
+            int count = mGrid.getVisibleTiles(level, left, top, right, bottom, mKeys);
+            // tiles don't overlap, so their clipped areas add up to the visible part of the image
+            double area = 0;
+            for (int j = 0; j < count; j++) {
+                assertEquals(level, TileGrid.getLevel(mKeys[j]));
+                mGrid.getTileRect(mKeys[j], mRect);
+                double tileArea = overlap(mRect[0], mRect[2], left, right) * overlap(mRect[1], mRect[3], top, bottom);
+                assertTrue(TileGrid.toString(mKeys[j]) + " is not visible", tileArea > 0);
+                area += tileArea;
+            }
+            double expected = overlap(0, IMAGE_WIDTH, left, right) * overlap(0, IMAGE_HEIGHT, top, bottom);
+            assertEquals(expected, area, expected * 1e-4 + 1e-3);
+        }
+    }
+
+    private static double overlap(float start, float end, float viewStart, float viewEnd) {
+        return Math.max(0, Math.min(end, viewEnd) - Math.max(start, viewStart));
+    }
+
+    @Test
+    public void parentsCoverTheirChildren() {
+        int[] parentRect = new int[4];
+        for (int level = 0; level < mGrid.getLevelCount() - 1; level++) {
+            for (int row = 0; row < mGrid.getRows(level); row++) {
+                for (int column = 0; column < mGrid.getColumns(level); column++) {
+                    long key = TileGrid.getKey(level, column, row);
+                    long parent = mGrid.getParent(key);
+                    assertEquals(level + 1, TileGrid.getLevel(parent));
+                    mGrid.getTileRect(key, mRect);
+                    mGrid.getTileRect(parent, parentRect);
+                    assertTrue(parentRect[0] <= mRect[0] && parentRect[1] <= mRect[1]
+                            && parentRect[2] >= mRect[2] && parentRect[3] >= mRect[3]);
+                }
+            }
+        }
+        assertEquals(-1, mGrid.getParent(TileGrid.getKey(6, 0, 0)));
+    }
+
+    @Test
+    public void keysRoundTrip() {
+        long key = TileGrid.getKey(9, (1 << 24) - 1, 12345);
+        assertEquals(9, TileGrid.getLevel(key));
+        assertEquals((1 << 24) - 1, TileGrid.getColumn(key));
+        assertEquals(12345, TileGrid.getRow(key));
+        assertEquals("tile 3/4/5", TileGrid.toString(TileGrid.getKey(3, 4, 5)));
+    }
+}
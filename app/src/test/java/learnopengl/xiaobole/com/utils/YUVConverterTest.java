@@ -0,0 +1,130 @@
+package learnopengl.xiaobole.com.utils;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class YUVConverterTest {
+
+    private static final int WIDTH = 64;
+    private static final int HEIGHT = 48;
+
+    private static byte[] randomFrame(int size) {
+        byte[] frame = new byte[size];
+        new Random(42).nextBytes(frame);
+        return frame;
+    }
+
+    @Test
+    public void nv21RoundTrip() {
+        roundTrip(true);
+    }
+
+    @Test
+    public void nv12RoundTrip() {
+        roundTrip(false);
+    }
+
+    private static void roundTrip(boolean vFirst) {
+        byte[] i420 = randomFrame(YUVConverter.getI420Size(WIDTH, HEIGHT));
+        byte[] semiPlanar = new byte[i420.length];
+        byte[] back = new byte[i420.length];
+        YUVConverter.i420ToSemiPlanar(i420, semiPlanar, WIDTH, HEIGHT, vFirst);
+        YUVConverter.semiPlanarToI420(semiPlanar, back, WIDTH, HEIGHT, vFirst);
+        assertArrayEquals(i420, back);
+    }
+
+    @Test
+    public void nv21InterleavesVFirst() {
+        byte[] i420 = new byte[YUVConverter.getI420Size(2, 2)];
+        Arrays.fill(i420, 0, 4, (byte) 16);
+        i420[4] = 1; // U
+        i420[5] = 2; // V
+        byte[] nv21 = new byte[i420.length];
+        byte[] nv12 = new byte[i420.length];
+        YUVConverter.i420ToSemiPlanar(i420, nv21, 2, 2, true);
+        YUVConverter.i420ToSemiPlanar(i420, nv12, 2, 2, false);
+        assertArrayEquals(new byte[]{16, 16, 16, 16, 2, 1}, nv21);
+        assertArrayEquals(new byte[]{16, 16, 16, 16, 1, 2}, nv12);
+    }
+
+    @Test
+    public void paddedRowsMatchPacked() {
+        int yStride = WIDTH + 16;
+        int uvStride = WIDTH + 8;
+        byte[] packed = new byte[YUVConverter.getI420Size(WIDTH, HEIGHT)];
+        YUVConverter.i420ToSemiPlanar(randomFrame(packed.length), packed, WIDTH, HEIGHT, true);
+        // copy the rows into a padded frame, the padding is garbage
+        byte[] padded = randomFrame(yStride * HEIGHT + uvStride * HEIGHT / 2);
+        for (int row = 0; row < HEIGHT; row++) {
+            System.arraycopy(packed, row * WIDTH, padded, row * yStride, WIDTH);
+        }
+        for (int row = 0; row < HEIGHT / 2; row++) {
+            System.arraycopy(packed, WIDTH * HEIGHT + row * WIDTH, padded, yStride * HEIGHT + row * uvStride, WIDTH);
+        }
+
+        byte[] expected = new byte[packed.length];
+        byte[] actual = new byte[packed.length];
+        YUVConverter.semiPlanarToI420(packed, expected, WIDTH, HEIGHT, true);
+        YUVConverter.semiPlanarToI420(padded, yStride, uvStride, actual, WIDTH, HEIGHT, true);
+        assertArrayEquals(expected, actual);
+    }
+
+    @Test
+    public void semiPlanarToARGBMatchesI420() {
+        byte[] i420 = randomFrame(YUVConverter.getI420Size(WIDTH, HEIGHT));
+        byte[] nv12 = new byte[i420.length];
+        YUVConverter.i420ToSemiPlanar(i420, nv12, WIDTH, HEIGHT, false);
+        int[] expected = new int[WIDTH * HEIGHT];
+        int[] actual = new int[WIDTH * HEIGHT];
+        YUVConverter.i420ToARGB(i420, expected, WIDTH, HEIGHT);
+        YUVConverter.semiPlanarToARGB(nv12, actual, WIDTH, HEIGHT, false);
+        assertArrayEquals(expected, actual);
+    }
+
+    @Test
+    public void neutralChromaIsGray() {
+        for (int y = 0; y < 256; y += 5) {
+            int argb = YUVConverter.toARGB(y, 128, 128);
+            assertEquals(0xff, argb >>> 24);
+            assertEquals(y, (argb >> 16) & 0xff, 1);
+            assertEquals(y, (argb >> 8) & 0xff, 1);
+            assertEquals(y, argb & 0xff, 1);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsOddWidth() {
+        byte[] frame = new byte[YUVConverter.getI420Size(WIDTH + 1, HEIGHT)];
+        YUVConverter.semiPlanarToI420(frame, new byte[frame.length], WIDTH + 1, HEIGHT, true);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsOddHeight() {
+        byte[] frame = new byte[YUVConverter.getI420Size(WIDTH, HEIGHT + 1)];
+        YUVConverter.i420ToSemiPlanar(frame, new byte[frame.length], WIDTH, HEIGHT + 1, false);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsOddChromaStride() {
+        int uvStride = WIDTH + 1;
+        byte[] frame = new byte[WIDTH * HEIGHT + uvStride * HEIGHT / 2];
+        YUVConverter.semiPlanarToI420(frame, WIDTH, uvStride, new byte[frame.length], WIDTH, HEIGHT, true);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsStrideShorterThanWidth() {
+        byte[] frame = new byte[YUVConverter.getI420Size(WIDTH, HEIGHT)];
+        YUVConverter.semiPlanarToI420(frame, WIDTH - 2, WIDTH, new byte[frame.length], WIDTH, HEIGHT, true);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsTruncatedFrame() {
+        byte[] frame = new byte[YUVConverter.getI420Size(WIDTH, HEIGHT) - 1];
+        YUVConverter.semiPlanarToI420(frame, new byte[frame.length + 1], WIDTH, HEIGHT, true);
+    }
+}
@@ -0,0 +1,102 @@
+package android.opengl;
+
+/**
+ * JVM stand-in for the framework class, whose multiplyMM is native in android-all.
+ * Only the methods used by the benchmarked sources, with the same math as the framework.
+ * It comes before android-all on the classpath, so it shadows the framework class.
+ */
+public class Matrix {
+
+    public static void multiplyMM(float[] result, int resultOffset,
+                                  float[] lhs, int lhsOffset, float[] rhs, int rhsOffset) {
+        for (int i = 0; i < 4; i++) {
+            float rhs0 = rhs[rhsOffset + 4 * i];
+            float rhs1 = rhs[rhsOffset + 4 * i + 1];
+            float rhs2 = rhs[rhsOffset + 4 * i + 2];
+            float rhs3 = rhs[rhsOffset + 4 * i + 3];
+            for (int j = 0; j < 4; j++) {
+                result[resultOffset + 4 * i + j] = lhs[lhsOffset + j] * rhs0
+                        + lhs[lhsOffset + 4 + j] * rhs1
+                        + lhs[lhsOffset + 8 + j] * rhs2
+                        + lhs[lhsOffset + 12 + j] * rhs3;
+            }
+        }
+    }
+
+    public static void orthoM(float[] m, int mOffset,
+                              float left, float right, float bottom, float top, float near, float far) {
+        if (left == right || bottom == top || near == far) {
+            throw new IllegalArgumentException();
+        }
+        float rWidth = 1.0f / (right - left);
+        float rHeight = 1.0f / (top - bottom);
+        float rDepth = 1.0f / (far - near);
+        setIdentityM(m, mOffset);
+        m[mOffset] = 2.0f * rWidth;
+        m[mOffset + 5] = 2.0f * rHeight;
+        m[mOffset + 10] = -2.0f * rDepth;
+        m[mOffset + 12] = -(right + left) * rWidth;
+        m[mOffset + 13] = -(top + bottom) * rHeight;
+        m[mOffset + 14] = -(far + near) * rDepth;
+    }
+
+    public static void setIdentityM(float[] sm, int smOffset) {
+        for (int i = 0; i < 16; i++) {
+            sm[smOffset + i] = 0;
+        }
+        for (int i = 0; i < 16; i += 5) {
+            sm[smOffset + i] = 1.0f;
+        }
+    }
+
+    public static void setLookAtM(float[] rm, int rmOffset,
+                                  float eyeX, float eyeY, float eyeZ,
+                                  float centerX, float centerY, float centerZ,
+                                  float upX, float upY, float upZ) {
+        float fx = centerX - eyeX;
+        float fy = centerY - eyeY;
+        float fz = centerZ - eyeZ;
+        float rlf = 1.0f / (float) Math.sqrt(fx * fx + fy * fy + fz * fz);
+        fx *= rlf;
+        fy *= rlf;
+        fz *= rlf;
+
+        // s = f x up
+        float sx = fy * upZ - fz * upY;
+        float sy = fz * upX - fx * upZ;
+        float sz = fx * upY - fy * upX;
+        float rls = 1.0f / (float) Math.sqrt(sx * sx + sy * sy + sz * sz);
+        sx *= rls;
+        sy *= rls;
+        sz *= rls;
+
+        // u = s x f
+        float ux = sy * fz - sz * fy;
+        float uy = sz * fx - sx * fz;
+        float uz = sx * fy - sy * fx;
+
+        rm[rmOffset] = sx;
+        rm[rmOffset + 1] = ux;
+        rm[rmOffset + 2] = -fx;
+        rm[rmOffset + 3] = 0.0f;
+        rm[rmOffset + 4] = sy;
+        rm[rmOffset + 5] = uy;
+        rm[rmOffset + 6] = -fy;
+        rm[rmOffset + 7] = 0.0f;
+        rm[rmOffset + 8] = sz;
+        rm[rmOffset + 9] = uz;
+        rm[rmOffset + 10] = -fz;
+        rm[rmOffset + 11] = 0.0f;
+        rm[rmOffset + 12] = 0.0f;
+        rm[rmOffset + 13] = 0.0f;
+        rm[rmOffset + 14] = 0.0f;
+        rm[rmOffset + 15] = 1.0f;
+
+        // translateM(rm, rmOffset, -eyeX, -eyeY, -eyeZ)
+        for (int i = 0; i < 4; i++) {
+            rm[rmOffset + 12 + i] += rm[rmOffset + i] * -eyeX
+                    + rm[rmOffset + 4 + i] * -eyeY
+                    + rm[rmOffset + 8 + i] * -eyeZ;
+        }
+    }
+}
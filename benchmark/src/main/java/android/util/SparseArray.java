@@ -0,0 +1,33 @@
+package android.util;
+
+import java.util.HashMap;
+
+/**
+ * JVM stand-in for the framework class, whose array allocation is native in android-all.
+ * Only the methods used by the benchmarked sources.
+ * It comes before android-all on the classpath, so it shadows the framework class.
+ */
+public class SparseArray<E> {
+
+    private final HashMap<Integer, E> mValues = new HashMap<>();
+
+    public E get(int key) {
+        return mValues.get(key);
+    }
+
+    public void put(int key, E value) {
+        mValues.put(key, value);
+    }
+
+    public void remove(int key) {
+        mValues.remove(key);
+    }
+
+    public void clear() {
+        mValues.clear();
+    }
+
+    public int size() {
+        return mValues.size();
+    }
+}
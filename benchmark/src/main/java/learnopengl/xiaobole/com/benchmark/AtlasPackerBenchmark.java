@@ -0,0 +1,117 @@
+package learnopengl.xiaobole.com.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import learnopengl.xiaobole.com.utils.MaxRectsPacker;
+
+/**
+ * Packing the atlas pages: filling a page with icon-sized rectangles, and replacing
+ * rectangles in a full page as stickers come and go.
+ *
+ * The setup checks that the packed rectangles stay inside the page and never overlap.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AtlasPackerBenchmark {
+
+    private static final int PAGE_SIZE = 2048;
+
+    @Param({"256", "1024"})
+    public int count;
+
+    private int[] mWidths;
+    private int[] mHeights;
+    private int[] mX;
+    private int[] mY;
+    private boolean[] mPlaced;
+    private final int[] mPosition = new int[2];
+    private final MaxRectsPacker mPacker = new MaxRectsPacker(PAGE_SIZE, PAGE_SIZE);
+    private final Random mRandom = new Random(42);
+    private int mChurnIndex;
+
+    @Setup
+    public void setup() {
+        mWidths = new int[count];
+        mHeights = new int[count];
+        mX = new int[count];
+        mY = new int[count];
+        mPlaced = new boolean[count];
+        Random random = new Random(42);
+        for (int i = 0; i < count; i++) {
+            mWidths[i] = 16 + random.nextInt(113);
+            mHeights[i] = 16 + random.nextInt(113);
+        }
+        packAll();
+        verify();
+        // churn a while so the page is fragmented like a long running session
+        for (int i = 0; i < count * 4; i++) {
+            churn();
+        }
+        verify();
+    }
+
+    private void verify() {
+        for (int i = 0; i < count; i++) {
+            if (!mPlaced[i]) {
+                continue;
+            }
+            if (mX[i] < 0 || mY[i] < 0 || mX[i] + mWidths[i] > PAGE_SIZE || mY[i] + mHeights[i] > PAGE_SIZE) {
+                throw new IllegalStateException("rect " + i + " is outside the page");
+            }
+            for (int j = i + 1; j < count; j++) {
+                if (mPlaced[j] && mX[i] < mX[j] + mWidths[j] && mX[j] < mX[i] + mWidths[i]
+                        && mY[i] < mY[j] + mHeights[j] && mY[j] < mY[i] + mHeights[i]) {
+                    throw new IllegalStateException("rects " + i + " and " + j + " overlap");
+                }
+            }
+        }
+    }
+
+    @Benchmark
+    public int packAll() {
+        mPacker.reset();
+        int placed = 0;
+        for (int i = 0; i < count; i++) {
+            mPlaced[i] = mPacker.insert(mWidths[i], mHeights[i], mPosition);
+            mX[i] = mPosition[0];
+            mY[i] = mPosition[1];
+            if (mPlaced[i]) {
+                placed++;
+            }
+        }
+        return placed;
+    }
+
+    @Benchmark
+    public boolean churn() {
+        // free one rectangle and place one of a new size
+        int i = mChurnIndex;
+        mChurnIndex = (mChurnIndex + 1) % count;
+        if (mPlaced[i]) {
+            mPacker.free(mX[i], mY[i], mWidths[i], mHeights[i]);
+        }
+        mWidths[i] = 16 + mRandom.nextInt(113);
+        mHeights[i] = 16 + mRandom.nextInt(113);
+        mPlaced[i] = mPacker.insert(mWidths[i], mHeights[i], mPosition);
+        mX[i] = mPosition[0];
+        mY[i] = mPosition[1];
+        return mPlaced[i];
+    }
+}
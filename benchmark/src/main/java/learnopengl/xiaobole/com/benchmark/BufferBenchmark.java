@@ -0,0 +1,60 @@
+package learnopengl.xiaobole.com.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.FloatBuffer;
+import java.nio.ShortBuffer;
+import java.util.concurrent.TimeUnit;
+
+import learnopengl.xiaobole.com.utils.GLUtils;
+
+/**
+ * Direct buffer creation for the vertex data, done every time a drawer is set up.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BufferBenchmark {
+
+    // a textured quad, and a larger mesh
+    @Param({"20", "4096"})
+    public int vertexCount;
+
+    private float[] mVertices;
+    private short[] mIndices;
+
+    @Setup
+    public void setup() {
+        mVertices = new float[vertexCount];
+        for (int i = 0; i < vertexCount; i++) {
+            mVertices[i] = i / (float) vertexCount;
+        }
+        mIndices = new short[vertexCount * 3 / 10];
+        for (int i = 0; i < mIndices.length; i++) {
+            mIndices[i] = (short) i;
+        }
+    }
+
+    @Benchmark
+    public FloatBuffer createFloatBuffer() {
+        return GLUtils.createFloatBuffer(mVertices);
+    }
+
+    @Benchmark
+    public ShortBuffer createShortBuffer() {
+        return GLUtils.createShortBuffer(mIndices);
+    }
+}
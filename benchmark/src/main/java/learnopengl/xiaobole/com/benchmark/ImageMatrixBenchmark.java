@@ -0,0 +1,38 @@
+package learnopengl.xiaobole.com.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+import learnopengl.xiaobole.com.utils.ImageMatrix;
+
+/**
+ * The viewport matrix math done on every surface change.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ImageMatrixBenchmark {
+
+    private final ImageMatrix mImageMatrix = new ImageMatrix();
+    private int mViewWidth = 1080;
+
+    @Benchmark
+    public float[] setViewport() {
+        // alternate the orientation so both branches are measured
+        mViewWidth = mViewWidth == 1080 ? 1920 : 1080;
+        mImageMatrix.setViewport(1280, 720, mViewWidth, 3000 - mViewWidth);
+        return mImageMatrix.getMVPMatrix();
+    }
+}
@@ -0,0 +1,134 @@
+package learnopengl.xiaobole.com.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.TimeUnit;
+
+import learnopengl.xiaobole.com.utils.KTXTexture;
+
+/**
+ * Parsing KTX containers before the compressed upload, the levels are sliced, not copied.
+ *
+ * The setup writes a 1024x1024 ETC2 texture with a full mip chain as KTX 1.1 in both byte
+ * orders and an ASTC 4x4 one as KTX 2.0, and checks what the parser reads back.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class KTXBenchmark {
+
+    private static final int SIZE = 1024;
+    private static final int LEVELS = 11;
+    private static final int VK_FORMAT_ASTC_4x4_SRGB_BLOCK = 158;
+
+    private ByteBuffer mKTX1;
+    private ByteBuffer mKTX2;
+
+    @Setup
+    public void setup() throws IOException {
+        mKTX1 = writeKTX1(ByteOrder.LITTLE_ENDIAN);
+        mKTX2 = writeKTX2();
+        verify(KTXTexture.parse(mKTX1), KTXTexture.GL_COMPRESSED_RGB8_ETC2, 8);
+        verify(KTXTexture.parse(writeKTX1(ByteOrder.BIG_ENDIAN)), KTXTexture.GL_COMPRESSED_RGB8_ETC2, 8);
+        verify(KTXTexture.parse(mKTX2), KTXTexture.GL_COMPRESSED_SRGB8_ALPHA8_ASTC_4x4, 16);
+        try {
+            ByteBuffer truncated = mKTX2.duplicate();
+            truncated.limit(truncated.capacity() / 2);
+            KTXTexture.parse(truncated);
+            throw new IllegalStateException("truncated container accepted");
+        } catch (IOException expected) {
+            // the level index points past the end
+        }
+    }
+
+    private static void verify(KTXTexture texture, int format, int blockBytes) {
+        if (texture.getInternalFormat() != format || texture.getWidth() != SIZE || texture.getHeight() != SIZE
+                || texture.getLevelCount() != LEVELS) {
+            throw new IllegalStateException("header mismatch, format 0x" + Integer.toHexString(texture.getInternalFormat()));
+        }
+        for (int level = 0; level < LEVELS; level++) {
+            ByteBuffer data = texture.getLevel(level);
+            if (data.remaining() != getLevelSize(level, blockBytes) || data.get(0) != (byte) level) {
+                throw new IllegalStateException("level " + level + " mismatch");
+            }
+        }
+    }
+
+    private static int getLevelSize(int level, int blockBytes) {
+        int blocks = (Math.max(1, SIZE >> level) + 3) / 4;
+        return blocks * blocks * blockBytes;
+    }
+
+    private static ByteBuffer writeKTX1(ByteOrder order) {
+        int size = 64 + 8;
+        for (int level = 0; level < LEVELS; level++) {
+            size += 4 + getLevelSize(level, 8);
+        }
+        ByteBuffer buffer = ByteBuffer.allocateDirect(size).order(order);
+        buffer.put(new byte[]{(byte) 0xAB, 'K', 'T', 'X', ' ', '1', '1', (byte) 0xBB, '\r', '\n', 0x1A, '\n'});
+        buffer.putInt(0x04030201);
+        // glType, glTypeSize, glFormat, glInternalFormat, glBaseInternalFormat
+        buffer.putInt(0).putInt(1).putInt(0).putInt(KTXTexture.GL_COMPRESSED_RGB8_ETC2).putInt(0x1907);
+        // width, height, depth, array elements, faces, levels, key value bytes
+        buffer.putInt(SIZE).putInt(SIZE).putInt(0).putInt(0).putInt(1).putInt(LEVELS).putInt(8);
+        buffer.putLong(0);
+        for (int level = 0; level < LEVELS; level++) {
+            int levelSize = getLevelSize(level, 8);
+            buffer.putInt(levelSize);
+            buffer.put((byte) level);
+            buffer.position(buffer.position() + levelSize - 1);
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    private static ByteBuffer writeKTX2() {
+        int dataStart = 80 + LEVELS * 24;
+        int size = dataStart;
+        for (int level = 0; level < LEVELS; level++) {
+            size += getLevelSize(level, 16);
+        }
+        ByteBuffer buffer = ByteBuffer.allocateDirect(size).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.put(new byte[]{(byte) 0xAB, 'K', 'T', 'X', ' ', '2', '0', (byte) 0xBB, '\r', '\n', 0x1A, '\n'});
+        // vkFormat, typeSize, width, height, depth, layers, faces, levels, supercompression
+        buffer.putInt(VK_FORMAT_ASTC_4x4_SRGB_BLOCK).putInt(1).putInt(SIZE).putInt(SIZE)
+                .putInt(0).putInt(0).putInt(1).putInt(LEVELS).putInt(0);
+        // dfd, kvd and sgd offsets and lengths, unused by the parser
+        buffer.putInt(0).putInt(0).putInt(0).putInt(0).putLong(0).putLong(0);
+        // the smallest level comes first in the file
+        int offset = size;
+        for (int level = 0; level < LEVELS; level++) {
+            int levelSize = getLevelSize(level, 16);
+            offset -= levelSize;
+            buffer.putLong(offset).putLong(levelSize).putLong(levelSize);
+            buffer.put(offset, (byte) level);
+        }
+        buffer.clear();
+        return buffer;
+    }
+
+    @Benchmark
+    public long parseKTX1() throws IOException {
+        return KTXTexture.parse(mKTX1).getDataSize();
+    }
+
+    @Benchmark
+    public long parseKTX2() throws IOException {
+        return KTXTexture.parse(mKTX2).getDataSize();
+    }
+}
@@ -0,0 +1,116 @@
+package learnopengl.xiaobole.com.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+import learnopengl.xiaobole.com.utils.TileCache;
+import learnopengl.xiaobole.com.utils.TileGrid;
+
+/**
+ * The per frame CPU work of the tiled image viewer: picking the level and the visible tiles
+ * of a 96 megapixel image, looking them up and falling back to coarser tiles, while the
+ * view pans and zooms. Missing tiles "arrive" on the next frame, a few per frame.
+ *
+ * The setup pans once to fill the cache, failing if it grows past its bound or a drawn tile
+ * has neither a cached tile nor a cached fallback. TileGridTest and TileCacheTest check the
+ * tile selection and the eviction order.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TileStreamingBenchmark {
+
+    private static final int IMAGE_WIDTH = 12000;
+    private static final int IMAGE_HEIGHT = 8000;
+    private static final int VIEW_WIDTH = 1080;
+    private static final int VIEW_HEIGHT = 2340;
+    private static final int MAX_TILES = 160;
+    // a frame loads this many missing tiles, like the uploads of a frame
+    private static final int LOADS_PER_FRAME = 4;
+    private static final int FRAMES = 600;
+
+    private final TileGrid mGrid = new TileGrid(IMAGE_WIDTH, IMAGE_HEIGHT, 256);
+    private final TileCache<Integer> mCache = new TileCache<>(MAX_TILES, null);
+    private final long[] mVisible = new long[mGrid.getColumns(0) * mGrid.getRows(0)];
+    private final long[] mMissing = new long[mVisible.length];
+    private int mMissingCount;
+    private int mFrame;
+
+    @Setup
+    public void setup() {
+        for (int frame = 0; frame < FRAMES; frame++) {
+            drawFrame(frame);
+            if (mCache.getCount() > MAX_TILES) {
+                throw new IllegalStateException("cache holds " + mCache.getCount() + " tiles");
+            }
+        }
+        if (mCache.getEvictionCount() == 0) {
+            throw new IllegalStateException("the pan never evicted");
+        }
+        mCache.clear();
+    }
+
+    /**
+     * @return the left, top, right, bottom and scale of a frame, a slow zoom in while panning
+     */
+    private static float[] getView(int frame) {
+        float t = (frame % FRAMES) / (float) FRAMES;
+        float fitScale = Math.min((float) VIEW_WIDTH / IMAGE_WIDTH, (float) VIEW_HEIGHT / IMAGE_HEIGHT);
+        float scale = fitScale * (float) Math.pow(2.0, t * 7);
+        float centerX = IMAGE_WIDTH * (0.2f + 0.6f * t);
+        float centerY = IMAGE_HEIGHT * (0.5f + 0.3f * (float) Math.sin(t * 6 * Math.PI));
+        float left = centerX - VIEW_WIDTH / 2.0f / scale;
+        float top = centerY - VIEW_HEIGHT / 2.0f / scale;
+        return new float[]{left, top, left + VIEW_WIDTH / scale, top + VIEW_HEIGHT / scale, scale};
+    }
+
+    private int drawFrame(int frame) {
+        float[] view = getView(frame);
+        // the tiles missed by the previous frame arrive before this one is drawn, the root first
+        long root = TileGrid.getKey(mGrid.getLevelCount() - 1, 0, 0);
+        if (!mCache.contains(root)) {
+            mCache.put(root, 0);
+        }
+        for (int i = 0; i < Math.min(mMissingCount, LOADS_PER_FRAME); i++) {
+            mCache.put(mMissing[i], i);
+        }
+        mMissingCount = 0;
+
+        int level = mGrid.selectLevel(view[4]);
+        int count = mGrid.getVisibleTiles(level, view[0], view[1], view[2], view[3], mVisible);
+        int drawn = 0;
+        for (int i = 0; i < count; i++) {
+            long key = mVisible[i];
+            if (mCache.get(key) != null) {
+                drawn++;
+            } else {
+                mMissing[mMissingCount++] = key;
+                if (mCache.getFallback(mGrid, key) != -1) {
+                    drawn++;
+                }
+            }
+        }
+        if (drawn != count) {
+            throw new IllegalStateException("frame " + frame + " left " + (count - drawn) + " tiles blank");
+        }
+        return drawn;
+    }
+
+    @Benchmark
+    public int frame() {
+        return drawFrame(mFrame++);
+    }
+}
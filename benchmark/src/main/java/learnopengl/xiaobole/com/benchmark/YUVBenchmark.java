@@ -0,0 +1,154 @@
+package learnopengl.xiaobole.com.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import learnopengl.xiaobole.com.drawer.YUVImageDrawer;
+import learnopengl.xiaobole.com.utils.ParallelYUVConverter;
+import learnopengl.xiaobole.com.utils.YUVConverter;
+
+/**
+ * Per-frame CPU work on YUV frames: handing the planes to the drawer before the texture
+ * upload, wrapped in place or copied into separate plane buffers as YUVImageDrawer used to,
+ * and the conversions between the 4:2:0 layouts.
+ *
+ * ParallelYUVConverterTest checks the fixed point converter against the float shader math.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class YUVBenchmark {
+
+    @Param({"1280x720", "1920x1080"})
+    public String size;
+
+    private int mWidth;
+    private int mHeight;
+    private byte[] mI420;
+    private byte[] mNV21;
+    private ByteBuffer mI420Buffer;
+    private ByteBuffer[] mPlanes;
+    private int[] mARGB;
+    private IntBuffer mARGBBuffer;
+    private YUVImageDrawer mDrawer;
+    private ParallelYUVConverter mConverter;
+    private ParallelYUVConverter mSingleThreadConverter;
+
+    @Setup
+    public void setup() {
+        String[] dimensions = size.split("x");
+        mWidth = Integer.parseInt(dimensions[0]);
+        mHeight = Integer.parseInt(dimensions[1]);
+        mI420 = new byte[YUVConverter.getI420Size(mWidth, mHeight)];
+        new Random(42).nextBytes(mI420);
+        mNV21 = new byte[mI420.length];
+        YUVConverter.i420ToSemiPlanar(mI420, mNV21, mWidth, mHeight, true);
+        mI420Buffer = ByteBuffer.allocateDirect(mI420.length);
+        mI420Buffer.put(mI420).position(0);
+        int ySize = mWidth * mHeight;
+        mPlanes = new ByteBuffer[]{ByteBuffer.allocateDirect(ySize),
+                ByteBuffer.allocateDirect(ySize / 4), ByteBuffer.allocateDirect(ySize / 4)};
+        mARGB = new int[mWidth * mHeight];
+        mARGBBuffer = ByteBuffer.allocateDirect(mARGB.length * 4).order(ByteOrder.nativeOrder()).asIntBuffer();
+        mDrawer = new YUVImageDrawer();
+        mConverter = new ParallelYUVConverter();
+        mSingleThreadConverter = new ParallelYUVConverter(1);
+    }
+
+    @TearDown
+    public void tearDown() {
+        mConverter.release();
+        mSingleThreadConverter.release();
+    }
+
+    /**
+     * the baseline, the planes copied out of the frame before every upload
+     */
+    @Benchmark
+    public ByteBuffer[] copyI420Planes() {
+        int offset = 0;
+        for (ByteBuffer plane : mPlanes) {
+            int size = plane.capacity();
+            plane.put(mI420, offset, size).position(0);
+            offset += size;
+        }
+        return mPlanes;
+    }
+
+    @Benchmark
+    public YUVImageDrawer wrapI420Array() {
+        return mDrawer.setI420Frame(mI420, mWidth, mHeight);
+    }
+
+    @Benchmark
+    public YUVImageDrawer wrapI420Buffer() {
+        return mDrawer.setI420Frame(mI420Buffer, mWidth, mHeight);
+    }
+
+    @Benchmark
+    public byte[] nv21ToI420() {
+        YUVConverter.semiPlanarToI420(mNV21, mI420, mWidth, mHeight, true);
+        return mI420;
+    }
+
+    @Benchmark
+    public byte[] i420ToNV21() {
+        YUVConverter.i420ToSemiPlanar(mI420, mNV21, mWidth, mHeight, true);
+        return mNV21;
+    }
+
+    @Benchmark
+    public int[] nv21ToARGB() {
+        YUVConverter.semiPlanarToARGB(mNV21, mARGB, mWidth, mHeight, true);
+        return mARGB;
+    }
+
+    @Benchmark
+    public int[] i420ToARGB() {
+        YUVConverter.i420ToARGB(mI420, mARGB, mWidth, mHeight);
+        return mARGB;
+    }
+
+    @Benchmark
+    public int[] i420ToARGBFixedPoint() {
+        mSingleThreadConverter.i420ToARGB(mI420, mARGB, mWidth, mHeight);
+        return mARGB;
+    }
+
+    @Benchmark
+    public int[] i420ToARGBParallel() {
+        mConverter.i420ToARGB(mI420, mARGB, mWidth, mHeight);
+        return mARGB;
+    }
+
+    @Benchmark
+    public IntBuffer i420ToARGBParallelBuffer() {
+        mConverter.i420ToARGB(mI420, mARGBBuffer, mWidth, mHeight);
+        return mARGBBuffer;
+    }
+
+    @Benchmark
+    public int[] nv21ToARGBParallel() {
+        mConverter.semiPlanarToARGB(mNV21, mARGB, mWidth, mHeight, true);
+        return mARGB;
+    }
+}